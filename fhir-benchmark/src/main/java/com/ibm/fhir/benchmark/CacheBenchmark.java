@@ -0,0 +1,89 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import com.ibm.fhir.core.util.ConcurrentBoundedCache;
+import com.ibm.fhir.core.util.LRUCache;
+
+/**
+ * Measures the read throughput of the ConcurrentBoundedCache as the number of threads grows, against the synchronized
+ * LRUCache it replaces. Both caches are sized like FHIRPathEvaluator.EXPRESSION_CONTEXT_CACHE and the keys are drawn
+ * from a slightly larger set, so most lookups hit and a few miss and evict.
+ */
+public class CacheBenchmark {
+    private static final int MAX_ENTRIES = 512;
+
+    @State(Scope.Benchmark)
+    public static class CacheState {
+        @Param({ "480", "640" })
+        public int keyCount;
+
+        public String[] keys;
+        public Map<String, String> lruCache;
+        public ConcurrentBoundedCache<String, String> concurrentCache;
+
+        @SuppressWarnings("deprecation")
+        @Setup
+        public void setUp() {
+            keys = new String[keyCount];
+            for (int i = 0; i < keyCount; i++) {
+                keys[i] = "Patient.name.where(use = 'official').given[" + i + "]";
+            }
+            lruCache = LRUCache.createLRUCache(MAX_ENTRIES);
+            concurrentCache = ConcurrentBoundedCache.createCache(MAX_ENTRIES);
+            for (String key : keys) {
+                lruCache.computeIfAbsent(key, String::toUpperCase);
+                concurrentCache.computeIfAbsent(key, String::toUpperCase);
+            }
+        }
+
+        public String nextKey() {
+            return keys[ThreadLocalRandom.current().nextInt(keyCount)];
+        }
+    }
+
+    @Benchmark
+    public String benchmarkLRUCache(CacheState state) {
+        return state.lruCache.computeIfAbsent(state.nextKey(), String::toUpperCase);
+    }
+
+    @Benchmark
+    public String benchmarkConcurrentBoundedCache(CacheState state) {
+        return state.concurrentCache.computeIfAbsent(state.nextKey(), String::toUpperCase);
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int threads : new int[] { 1, 4, 16, 64 }) {
+            Options opt = new OptionsBuilder()
+                    .include(".*" + CacheBenchmark.class.getSimpleName() + ".*")
+                    .jvmArgsPrepend("-Xms2g", "-Xmx2g")
+                    .verbosity(VerboseMode.NORMAL)
+                    .warmupIterations(1)
+                    .warmupTime(TimeValue.seconds(10))
+                    .measurementIterations(2)
+                    .measurementTime(TimeValue.seconds(10))
+                    .forks(1)
+                    .threads(threads)
+                    .build();
+            new Runner(opt).run();
+        }
+    }
+}
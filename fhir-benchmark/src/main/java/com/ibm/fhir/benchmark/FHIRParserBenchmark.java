@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019
+ * (C) Copyright IBM Corp. 2019, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -9,6 +9,10 @@ package com.ibm.fhir.benchmark;
 import java.io.IOException;
 import java.io.StringReader;
 
+import javax.json.Json;
+import javax.json.JsonReader;
+import javax.json.JsonReaderFactory;
+
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
@@ -18,6 +22,7 @@ import org.openjdk.jmh.annotations.State;
 import com.ibm.fhir.benchmark.runner.FHIRBenchmarkRunner;
 import com.ibm.fhir.benchmark.util.BenchmarkUtil;
 import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRJsonParser;
 import com.ibm.fhir.model.parser.FHIRParser;
 import com.ibm.fhir.model.resource.Resource;
 
@@ -26,6 +31,8 @@ import ca.uhn.fhir.parser.StrictErrorHandler;
 
 
 public class FHIRParserBenchmark {
+    private static final JsonReaderFactory JSON_READER_FACTORY = Json.createReaderFactory(null);
+
     @State(Scope.Thread)
     public static class FHIRParsers {
         FHIRParser jsonParser = FHIRParser.parser(Format.JSON);
@@ -61,6 +68,17 @@ public class FHIRParserBenchmark {
         return parsers.jsonParser.parse(new StringReader(state.JSON_SPEC_EXAMPLE));
     }
     
+    /**
+     * Reads the whole example into a JsonObject before parsing it, for comparison with
+     * {@link #benchmarkJsonParser}, which parses the entries of a Bundle as they are streamed.
+     */
+    @Benchmark
+    public Resource benchmarkJsonParserFromJsonObject(FHIRParsers parsers, FHIRParserState state) throws Exception {
+        try (JsonReader jsonReader = JSON_READER_FACTORY.createReader(new StringReader(state.JSON_SPEC_EXAMPLE))) {
+            return parsers.jsonParser.as(FHIRJsonParser.class).parse(jsonReader.readObject());
+        }
+    }
+    
     @Benchmark
     public Resource benchmarkXMLParser(FHIRParsers parsers, FHIRParserState state) throws Exception {
         return parsers.xmlParser.parse(new StringReader(state.XML_SPEC_EXAMPLE));
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019
+ * (C) Copyright IBM Corp. 2019, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -11,6 +11,7 @@ import java.time.Instant;
 
 import javax.json.Json;
 import javax.json.JsonObject;
+import javax.json.JsonPatch;
 
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Param;
@@ -21,11 +22,13 @@ import org.openjdk.jmh.annotations.State;
 import com.ibm.fhir.benchmark.runner.FHIRBenchmarkRunner;
 import com.ibm.fhir.benchmark.util.BenchmarkUtil;
 import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRJsonParser;
 import com.ibm.fhir.model.parser.FHIRParser;
 import com.ibm.fhir.model.patch.FHIRPatch;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.type.DateTime;
 import com.ibm.fhir.model.type.Extension;
+import com.ibm.fhir.model.util.JsonSupport;
 import com.ibm.fhir.model.util.ModelSupport;
 import com.ibm.fhir.path.patch.FHIRPathPatch;
 
@@ -78,6 +81,30 @@ public class FHIRPatchBenchmark {
         return patch.apply(state.resource);
     }
 
+    @Benchmark
+    public Resource benchmarkJSONPatchReplace(FHIRPathEvaluatorState state) throws Exception {
+        FHIRPatch patch = FHIRPatch.patch(Json.createPatchBuilder()
+            .add("/language", "en-US")
+            .replace("/language", "fr-CA")
+            .build());
+        return patch.apply(state.resource);
+    }
+
+    /**
+     * The same patch as {@link #benchmarkJSONPatchReplace(FHIRPathEvaluatorState)}, applied to the JSON
+     * representation of the resource
+     */
+    @Benchmark
+    public Resource benchmarkJSONPatchReplaceRoundTrip(FHIRPathEvaluatorState state) throws Exception {
+        JsonPatch patch = Json.createPatchBuilder()
+            .add("/language", "en-US")
+            .replace("/language", "fr-CA")
+            .build();
+        return FHIRParser.parser(Format.JSON)
+                .as(FHIRJsonParser.class)
+                .parse(patch.apply(JsonSupport.toJsonObject(state.resource)));
+    }
+
     public static void main(String[] args) throws Exception {
         new FHIRBenchmarkRunner(FHIRPatchBenchmark.class)
                 .run(BenchmarkUtil.getRandomSpecExampleName());
@@ -0,0 +1,385 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.benchmark;
+
+import static com.ibm.fhir.model.type.String.string;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import com.ibm.fhir.benchmark.util.BenchmarkUtil;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.generator.FHIRGenerator;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.resource.SearchParameter;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.CodeableConcept;
+import com.ibm.fhir.model.type.Coding;
+import com.ibm.fhir.model.type.DateTime;
+import com.ibm.fhir.model.type.HumanName;
+import com.ibm.fhir.model.type.Reference;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.path.FHIRPathNode;
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.MultiResourceResult;
+import com.ibm.fhir.persistence.SingleResourceResult;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
+import com.ibm.fhir.persistence.jdbc.FHIRResourceDAOFactory;
+import com.ibm.fhir.persistence.jdbc.codec.PayloadCodec;
+import com.ibm.fhir.persistence.jdbc.codec.PayloadCodecs;
+import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDAO;
+import com.ibm.fhir.persistence.jdbc.impl.FHIRPersistenceJDBCImpl;
+import com.ibm.fhir.persistence.jdbc.util.DerbyBootstrapper;
+import com.ibm.fhir.search.context.FHIRSearchContext;
+import com.ibm.fhir.search.util.SearchUtil;
+
+/**
+ * Measures the JDBC persistence layer against an in-memory Derby database, so that the results can be reproduced
+ * offline without a database server.
+ * <br>
+ * The setup bootstraps the FHIR schema with {@link DerbyBootstrapper} and loads patients and observations derived
+ * from the patient-example and observation-example spec examples. The observations are spread over a few codes and
+ * a year of effective dates, and each patient gets the same number of observations.
+ * <br>
+ * The benchmarks cover the create, update, read, vread and history interactions and representative searches. The
+ * stage benchmarks time the steps of a write and a read separately: search parameter extraction, payload
+ * compression, the SQL read of the stored payload, decompression and parsing. Run {@link #main(String[])} to get
+ * the throughput together with the allocation rate reported by the GC profiler.
+ * <br>
+ * The persistence layer uses a single connection, so the benchmarks must be run with one thread.
+ */
+public class FHIRPersistenceJDBCBenchmark {
+    private static final String DB_URL = "jdbc:derby:memory:fhirBenchmarkDB";
+    private static final String ADMIN_SCHEMA_NAME = "FHIR_ADMIN";
+    private static final String DATA_SCHEMA_NAME = "FHIRDATA";
+
+    private static final String LOINC = "http://loinc.org";
+    private static final String[] CODES = { "29463-7", "8867-4", "8310-5", "9279-1" };
+    private static final String[] FAMILY_NAMES = { "Chalmers", "Donald", "Everett", "Ford", "Garcia", "Hill", "Ito", "Jones" };
+    private static final LocalDate FIRST_DATE = LocalDate.of(2019, 1, 1);
+    private static final int DAYS = 365;
+
+    @State(Scope.Benchmark)
+    public static class PersistenceState {
+        // JMH will inject the values into the annotated fields before any Setup method is called.
+        @Param({ "1000" })
+        public int patientCount;
+
+        @Param({ "5" })
+        public int observationsPerPatient;
+
+        @Param({ "gzip", "lz4" })
+        public String payloadCodec;
+
+        FHIRPersistence persistence;
+        Connection connection;
+        ResourceDAO resourceDao;
+        PayloadCodec codec;
+
+        Patient patientTemplate;
+        Observation observationTemplate;
+        List<Patient> patients = new ArrayList<>();
+        List<Observation> observations = new ArrayList<>();
+
+        // the stored form of an observation, for the stage benchmarks
+        byte[] observationJson;
+        byte[] observationPayload;
+
+        @Setup
+        public void setUp() throws Exception {
+            String dbUrl = DB_URL + "_" + payloadCodec;
+            try (Connection c = DriverManager.getConnection(dbUrl + ";create=true")) {
+                DerbyBootstrapper.bootstrap(c, ADMIN_SCHEMA_NAME, DATA_SCHEMA_NAME);
+                if (!c.getAutoCommit()) {
+                    c.commit();
+                }
+            }
+
+            Properties props = new Properties();
+            props.setProperty("dbDriverName", "org.apache.derby.jdbc.EmbeddedDriver");
+            props.setProperty("dbUrl", dbUrl);
+            props.setProperty("schemaName", DATA_SCHEMA_NAME);
+            props.setProperty("updateCreateEnabled", "true");
+            props.setProperty("payloadCodec", payloadCodec);
+            persistence = new FHIRPersistenceJDBCImpl(props);
+
+            connection = DriverManager.getConnection(dbUrl);
+            connection.setSchema(DATA_SCHEMA_NAME);
+            resourceDao = FHIRResourceDAOFactory.getResourceDAO(connection);
+            codec = PayloadCodecs.getCodec(payloadCodec);
+
+            patientTemplate = FHIRParser.parser(Format.JSON).parse(new StringReader(BenchmarkUtil.getSpecExample(Format.JSON, "patient-example")));
+            observationTemplate = FHIRParser.parser(Format.JSON).parse(new StringReader(BenchmarkUtil.getSpecExample(Format.JSON, "observation-example")));
+
+            for (int i = 0; i < patientCount; i++) {
+                persistence.getTransaction().begin();
+                Patient patient = persistence.create(context(), newPatient(i)).getResource();
+                patients.add(patient);
+                for (int j = 0; j < observationsPerPatient; j++) {
+                    observations.add(persistence.create(context(), newObservation(patient, i * observationsPerPatient + j)).getResource());
+                }
+                persistence.getTransaction().commit();
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            FHIRGenerator.generator(Format.JSON, false).generate(observations.get(0), out);
+            observationJson = out.toByteArray();
+            observationPayload = codec.encode(observationJson);
+        }
+
+        @TearDown
+        public void tearDown() throws SQLException {
+            connection.close();
+        }
+
+        Patient newPatient(int i) {
+            return patientTemplate.toBuilder()
+                    .id(null)
+                    .meta(null)
+                    .name(HumanName.builder()
+                        .family(string(FAMILY_NAMES[i % FAMILY_NAMES.length]))
+                        .given(string("Given" + i))
+                        .build())
+                    .build();
+        }
+
+        Observation newObservation(Patient patient, int i) {
+            return observationTemplate.toBuilder()
+                    .id(null)
+                    .meta(null)
+                    .subject(Reference.builder()
+                        .reference(string("Patient/" + patient.getId()))
+                        .build())
+                    .code(CodeableConcept.builder()
+                        .coding(Coding.builder()
+                            .system(Uri.of(LOINC))
+                            .code(Code.of(CODES[i % CODES.length]))
+                            .build())
+                        .build())
+                    .effective(DateTime.of(FIRST_DATE.plusDays(i % DAYS)))
+                    .build();
+        }
+
+        Patient randomPatient() {
+            return patients.get(ThreadLocalRandom.current().nextInt(patients.size()));
+        }
+
+        Observation randomObservation() {
+            return observations.get(ThreadLocalRandom.current().nextInt(observations.size()));
+        }
+    }
+
+    /**
+     * Holds the patient written by the update benchmark, so that each update builds on the latest version
+     */
+    @State(Scope.Thread)
+    public static class UpdateState {
+        Patient patient;
+
+        @Setup(Level.Iteration)
+        public void setUp(PersistenceState state) {
+            patient = state.randomPatient();
+        }
+    }
+
+    private static FHIRPersistenceContext context() {
+        return FHIRPersistenceContextFactory.createPersistenceContext(null);
+    }
+
+    private static Map<String, List<String>> query(String... nameValuePairs) {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        for (int i = 0; i < nameValuePairs.length; i += 2) {
+            queryParameters.computeIfAbsent(nameValuePairs[i], k -> new ArrayList<>()).add(nameValuePairs[i + 1]);
+        }
+        return queryParameters;
+    }
+
+    private static MultiResourceResult<Resource> search(PersistenceState state, Class<? extends Resource> resourceType,
+            Map<String, List<String>> queryParameters) throws Exception {
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(resourceType, queryParameters);
+        return search(state, resourceType, searchContext);
+    }
+
+    private static MultiResourceResult<Resource> search(PersistenceState state, Class<? extends Resource> resourceType,
+            FHIRSearchContext searchContext) throws Exception {
+        state.persistence.getTransaction().begin();
+        try {
+            return state.persistence.search(FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext), resourceType);
+        } finally {
+            state.persistence.getTransaction().commit();
+        }
+    }
+
+    @Benchmark
+    public SingleResourceResult<Patient> benchmarkCreate(PersistenceState state) throws Exception {
+        state.persistence.getTransaction().begin();
+        try {
+            return state.persistence.create(context(), state.newPatient(ThreadLocalRandom.current().nextInt(state.patientCount)));
+        } finally {
+            state.persistence.getTransaction().commit();
+        }
+    }
+
+    @Benchmark
+    public SingleResourceResult<Patient> benchmarkUpdate(PersistenceState state, UpdateState updateState) throws Exception {
+        state.persistence.getTransaction().begin();
+        try {
+            SingleResourceResult<Patient> result = state.persistence.update(context(), updateState.patient.getId(), updateState.patient);
+            updateState.patient = result.getResource();
+            return result;
+        } finally {
+            state.persistence.getTransaction().commit();
+        }
+    }
+
+    @Benchmark
+    public SingleResourceResult<Observation> benchmarkRead(PersistenceState state) throws Exception {
+        state.persistence.getTransaction().begin();
+        try {
+            return state.persistence.read(context(), Observation.class, state.randomObservation().getId());
+        } finally {
+            state.persistence.getTransaction().commit();
+        }
+    }
+
+    @Benchmark
+    public SingleResourceResult<Observation> benchmarkVread(PersistenceState state) throws Exception {
+        state.persistence.getTransaction().begin();
+        try {
+            return state.persistence.vread(context(), Observation.class, state.randomObservation().getId(), "1");
+        } finally {
+            state.persistence.getTransaction().commit();
+        }
+    }
+
+    @Benchmark
+    public MultiResourceResult<Patient> benchmarkHistory(PersistenceState state) throws Exception {
+        state.persistence.getTransaction().begin();
+        try {
+            FHIRPersistenceContext context = FHIRPersistenceContextFactory.createPersistenceContext(null,
+                FHIRPersistenceContextFactory.createHistoryContext());
+            return state.persistence.history(context, Patient.class, state.randomPatient().getId());
+        } finally {
+            state.persistence.getTransaction().commit();
+        }
+    }
+
+    @Benchmark
+    public MultiResourceResult<Resource> benchmarkSearchToken(PersistenceState state) throws Exception {
+        String code = CODES[ThreadLocalRandom.current().nextInt(CODES.length)];
+        return search(state, Observation.class, query("code", LOINC + "|" + code));
+    }
+
+    @Benchmark
+    public MultiResourceResult<Resource> benchmarkSearchDateRange(PersistenceState state) throws Exception {
+        // a week within the dates that were loaded
+        int loadedDays = Math.min(DAYS, state.observations.size());
+        LocalDate from = FIRST_DATE.plusDays(ThreadLocalRandom.current().nextInt(Math.max(loadedDays - 7, 1)));
+        return search(state, Observation.class, query("date", "ge" + from, "date", "lt" + from.plusDays(7)));
+    }
+
+    @Benchmark
+    public MultiResourceResult<Resource> benchmarkSearchChained(PersistenceState state) throws Exception {
+        String family = FAMILY_NAMES[ThreadLocalRandom.current().nextInt(FAMILY_NAMES.length)];
+        return search(state, Observation.class, query("subject:Patient.family", family));
+    }
+
+    @Benchmark
+    public MultiResourceResult<Resource> benchmarkSearchInclude(PersistenceState state) throws Exception {
+        String code = CODES[ThreadLocalRandom.current().nextInt(CODES.length)];
+        return search(state, Observation.class, query("code", LOINC + "|" + code, "_include", "Observation:subject"));
+    }
+
+    @Benchmark
+    public MultiResourceResult<Resource> benchmarkSearchSort(PersistenceState state) throws Exception {
+        return search(state, Patient.class, query("_sort", "family,-_lastUpdated"));
+    }
+
+    @Benchmark
+    public MultiResourceResult<Resource> benchmarkSearchCompartment(PersistenceState state) throws Exception {
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters("Patient", state.randomPatient().getId(),
+            Observation.class, Collections.emptyMap(), true);
+        return search(state, Observation.class, searchContext);
+    }
+
+    @Benchmark
+    public Map<SearchParameter, List<FHIRPathNode>> benchmarkStageExtract(PersistenceState state) throws Exception {
+        return SearchUtil.extractParameterValues(state.randomObservation());
+    }
+
+    @Benchmark
+    public byte[] benchmarkStageCompress(PersistenceState state) throws Exception {
+        return state.codec.encode(state.observationJson);
+    }
+
+    @Benchmark
+    public com.ibm.fhir.persistence.jdbc.dto.Resource benchmarkStageSql(PersistenceState state) throws Exception {
+        try {
+            return state.resourceDao.read(state.randomObservation().getId(), "Observation");
+        } finally {
+            state.connection.commit();
+        }
+    }
+
+    @Benchmark
+    public byte[] benchmarkStageDecompress(PersistenceState state) throws Exception {
+        return state.codec.decode(state.observationPayload);
+    }
+
+    @Benchmark
+    public Observation benchmarkStageParse(PersistenceState state) throws Exception {
+        return FHIRParser.parser(Format.JSON).parse(new ByteArrayInputStream(state.observationJson));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(".*" + FHIRPersistenceJDBCBenchmark.class.getSimpleName() + ".*")
+                .jvmArgsPrepend("-Xms2g", "-Xmx2g")
+                .verbosity(VerboseMode.NORMAL)
+                .mode(Mode.Throughput)
+                .warmupIterations(2)
+                .warmupTime(TimeValue.seconds(5))
+                .measurementIterations(3)
+                .measurementTime(TimeValue.seconds(10))
+                .forks(1)
+                .threads(1)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+}
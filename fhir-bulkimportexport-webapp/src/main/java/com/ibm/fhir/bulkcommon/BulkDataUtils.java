@@ -8,8 +8,10 @@ package com.ibm.fhir.bulkcommon;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.net.URL;
 import java.net.URLDecoder;
@@ -73,6 +75,8 @@ import com.ibm.fhir.validation.exception.FHIRValidationException;
 
 public class BulkDataUtils {
     private final static Logger logger = Logger.getLogger(BulkDataUtils.class.getName());
+    // A FHIRValidator can be reused, but not shared by threads which validate at the same time.
+    private final static ThreadLocal<FHIRValidator> validator = ThreadLocal.withInitial(FHIRValidator::validator);
 
     /**
      * Logging helper.
@@ -363,7 +367,7 @@ public class BulkDataUtils {
       }
 
     /**
-     * Validate the input resource and throw if there are validation errors
+     * Validate the input resource and throw if there are validation errors; this can be called by multiple threads at once.
      *
      * @param resource
      * @throws FHIRValidationException
@@ -371,7 +375,7 @@ public class BulkDataUtils {
      */
     public static List<OperationOutcome.Issue> validateInput(Resource resource)
             throws FHIRValidationException, FHIROperationException {
-        List<OperationOutcome.Issue> issues = FHIRValidator.validator().validate(resource);
+        List<OperationOutcome.Issue> issues = validator.get().validate(resource);
         if (!issues.isEmpty()) {
             boolean includesFailure = false;
             for (OperationOutcome.Issue issue : issues) {
@@ -394,6 +398,22 @@ public class BulkDataUtils {
         return issues;
     }
 
+    /**
+     * Copy a single-line JSON resource payload to the output stream as a line of ndjson.
+     *
+     * @param payload
+     * @param out
+     * @throws IOException
+     */
+    public static void writeNdJsonLine(InputStream payload, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = payload.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        out.write(Constants.NDJSON_LINESEPERATOR);
+    }
+
 
     public static Map<Class<? extends Resource>, List<Map<String, List<String>>>> getSearchParemetersFromTypeFilters (String typeFilters) throws Exception {
         HashMap<Class<? extends Resource>, List<Map<String, List<String>>>> searchParametersForResoureTypes = new HashMap<>();
@@ -31,6 +31,8 @@ public class Constants {
     public static final String IMPORT_INPUT_RESOURCE_TYPE = "type";
     public static final String IMPORT_INPUT_RESOURCE_URL = "url";
     public static final int IMPORT_INFLY_RATE_NUMOFFHIRRESOURCES = 2000;
+    // The default number of resources of an import partition which are validated at once before they are written to DB.
+    public static final int IMPORT_DEFAULT_VALIDATION_THREADS = 4;
 
 
     // Job parameters
@@ -46,6 +48,7 @@ public class Constants {
     public static final String FHIR_DATASTORE_ID = "fhir.datastoreid";
     public static final String IMPORT_FHIR_STORAGE_TYPE = "import.fhir.storagetype";
     public static final String IMPORT_FHIR_IS_VALIDATION_ON = "import.fhir.validation";
+    public static final String IMPORT_FHIR_VALIDATION_THREADS = "import.fhir.validation.threads";
     public static final String IMPORT_FHIR_DATASOURCES = "fhir.dataSourcesInfo";
     
     // Partition work item info generated in ImportPartitionMapper.
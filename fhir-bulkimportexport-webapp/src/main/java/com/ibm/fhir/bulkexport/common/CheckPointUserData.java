@@ -26,6 +26,8 @@ public class CheckPointUserData implements java.io.Serializable {
     private int currentPartResourceNum = 0;
     // One resource type can have 0 to multiple typeFilters, indexOfCurrentTypeFilter is used to tell the currently processed typeFilter.
     private int indexOfCurrentTypeFilter;
+    // Opaque position of the next search page, used for keyset pagination of the current resource type and typeFilter.
+    private String pageToken;
 
     public CheckPointUserData(int pageNum, String uploadId, List<PartETag> cosDataPacks, int partNum, int indexOfCurrentResourceType, int indexOfCurrentTypeFilter) {
         super();
@@ -38,8 +40,10 @@ public class CheckPointUserData implements java.io.Serializable {
     }
 
     public static CheckPointUserData fromTransientUserData(TransientUserData userData) {
-        return new CheckPointUserData(userData.getPageNum(), userData.getUploadId(), userData.getCosDataPacks(),
+        CheckPointUserData checkPointData = new CheckPointUserData(userData.getPageNum(), userData.getUploadId(), userData.getCosDataPacks(),
                 userData.getPartNum(), userData.getIndexOfCurrentResourceType(), userData.getIndexOfCurrentTypeFilter());
+        checkPointData.setPageToken(userData.getPageToken());
+        return checkPointData;
     }
 
     public int getPageNum() {
@@ -114,4 +118,12 @@ public class CheckPointUserData implements java.io.Serializable {
         this.indexOfCurrentTypeFilter = indexOfCurrentTypeFilter;
     }
 
+    public String getPageToken() {
+        return pageToken;
+    }
+
+    public void setPageToken(String pageToken) {
+        this.pageToken = pageToken;
+    }
+
 }
@@ -24,8 +24,10 @@ public class TransientUserData extends CheckPointUserData {
     }
 
     public static TransientUserData fromCheckPointUserData(CheckPointUserData checkPointData) {
-        return new TransientUserData(checkPointData.getPageNum(), checkPointData.getUploadId(),
+        TransientUserData transientUserData = new TransientUserData(checkPointData.getPageNum(), checkPointData.getUploadId(),
                 checkPointData.getCosDataPacks(), checkPointData.getPartNum(), checkPointData.getIndexOfCurrentResourceType(), checkPointData.getIndexOfCurrentTypeFilter());
+        transientUserData.setPageToken(checkPointData.getPageToken());
+        return transientUserData;
     }
 
     public ByteArrayOutputStream getBufferStream() {
@@ -30,9 +30,6 @@ import com.ibm.fhir.bulkcommon.Constants;
 import com.ibm.fhir.bulkexport.common.CheckPointUserData;
 import com.ibm.fhir.bulkexport.common.TransientUserData;
 import com.ibm.fhir.config.FHIRRequestContext;
-import com.ibm.fhir.model.format.Format;
-import com.ibm.fhir.model.generator.FHIRGenerator;
-import com.ibm.fhir.model.generator.exception.FHIRGeneratorException;
 import com.ibm.fhir.model.resource.Patient;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.util.ModelSupport;
@@ -132,7 +129,8 @@ public class ChunkReader extends AbstractItemReader {
         TransientUserData chunkData = (TransientUserData) jobContext.getTransientUserData();
         int indexOfCurrentTypeFilter = 0;
         int compartmentPageNum = 1;
-        int resSubTotal = 0;
+        // Counted from the payload consumer, so it must be effectively final.
+        int[] resSubTotal = { 0 };
         FHIRSearchContext searchContext;
         Class<? extends Resource> resourceType = ModelSupport.getResourceType(resourceTypes.get(indexOfCurrentResourceType));
 
@@ -171,34 +169,24 @@ public class ChunkReader extends AbstractItemReader {
                         FHIRTransactionHelper txn = new FHIRTransactionHelper(fhirPersistence.getTransaction());
                         txn.enroll();
                         FHIRPersistenceContext persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext);
-                        List<Resource> resources = fhirPersistence.search(persistenceContext, resourceType).getResource();
-                        txn.unenroll();
-                        compartmentPageNum++;
-
-                        for (Resource res : resources) {
-                            if (res == null || (isDoDuplicationCheck && loadedResourceIds.contains(res.getId()))) {
-                                continue;
+                        // The stored JSON of the resources is copied straight to the buffer, so the resources are never parsed.
+                        fhirPersistence.searchPayloads(persistenceContext, resourceType, (logicalId, payload) -> {
+                            if (isDoDuplicationCheck && loadedResourceIds.contains(logicalId)) {
+                                return;
                             }
                             try {
-                                FHIRGenerator.generator(Format.JSON).generate(res, chunkData.getBufferStream());
-                                chunkData.getBufferStream().write(Constants.NDJSON_LINESEPERATOR);
-                                resSubTotal++;
-                                if (isDoDuplicationCheck) {
-                                    loadedResourceIds.add(res.getId());
-                                }
-                            } catch (FHIRGeneratorException e) {
-                                if (res.getId() != null) {
-                                    logger.log(Level.WARNING, "fillChunkDataBuffer: Error while writing resources with id '"
-                                            + res.getId() + "'", e);
-                                } else {
-                                    logger.log(Level.WARNING,
-                                            "fillChunkDataBuffer: Error while writing resources with unknown id", e);
-                                }
+                                BulkDataUtils.writeNdJsonLine(payload, chunkData.getBufferStream());
                             } catch (IOException e) {
                                 logger.warning("fillChunkDataBuffer: chunkDataBuffer written error!");
                                 throw e;
                             }
-                        }
+                            resSubTotal[0]++;
+                            if (isDoDuplicationCheck) {
+                                loadedResourceIds.add(logicalId);
+                            }
+                        });
+                        txn.unenroll();
+                        compartmentPageNum++;
 
                     } while (searchContext.getLastPageNumber() >= compartmentPageNum);
                 }
@@ -206,9 +194,9 @@ public class ChunkReader extends AbstractItemReader {
                 indexOfCurrentTypeFilter++;
             } while (searchParametersForResoureTypes.get(resourceType) != null && indexOfCurrentTypeFilter < searchParametersForResoureTypes.get(resourceType).size());
 
-            chunkData.setCurrentPartResourceNum(chunkData.getCurrentPartResourceNum() + resSubTotal);
+            chunkData.setCurrentPartResourceNum(chunkData.getCurrentPartResourceNum() + resSubTotal[0]);
             if (logger.isLoggable(Level.FINE)) {
-                logger.fine("fillChunkDataBuffer: Processed resources - " + resSubTotal + "; Bufferred data size - "
+                logger.fine("fillChunkDataBuffer: Processed resources - " + resSubTotal[0] + "; Bufferred data size - "
                         + chunkData.getBufferStream().size());
             }
 
@@ -15,7 +15,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.batch.api.BatchProperty;
@@ -29,9 +28,6 @@ import com.ibm.fhir.bulkcommon.Constants;
 import com.ibm.fhir.bulkexport.common.CheckPointUserData;
 import com.ibm.fhir.bulkexport.common.TransientUserData;
 import com.ibm.fhir.config.FHIRRequestContext;
-import com.ibm.fhir.model.format.Format;
-import com.ibm.fhir.model.generator.FHIRGenerator;
-import com.ibm.fhir.model.generator.exception.FHIRGeneratorException;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.util.ModelSupport;
 import com.ibm.fhir.persistence.FHIRPersistence;
@@ -50,6 +46,8 @@ public class ChunkReader extends AbstractItemReader {
     private final static Logger logger = Logger.getLogger(ChunkReader.class.getName());
     boolean isSingleCosObject = false;
     int pageNum = 1;
+    // Opaque position of the next page, which lets the persistence layer seek to it instead of using an offset.
+    String pageToken = null;
     int indexOfCurrentResourceType = 0;
     // Control the number of records to read in each "item".
     int pageSize = Constants.DEFAULT_SEARCH_PAGE_SIZE;
@@ -129,43 +127,33 @@ public class ChunkReader extends AbstractItemReader {
         super();
     }
 
-    private void fillChunkDataBuffer(List<Resource> resources) throws Exception {
-        TransientUserData chunkData = (TransientUserData) jobContext.getTransientUserData();
-        int resSubTotal = 0;
-        if (chunkData != null) {
-            for (Resource res : resources) {
-                if (res == null || (isDoDuplicationCheck && loadedResourceIds.contains(res.getId()))) {
-                    continue;
-                }
-
-                try {
-                    FHIRGenerator.generator(Format.JSON).generate(res, chunkData.getBufferStream());
-                    chunkData.getBufferStream().write(Constants.NDJSON_LINESEPERATOR);
-                    resSubTotal++;
-                    if (isDoDuplicationCheck) {
-                        loadedResourceIds.add(res.getId());
-                    }
-                } catch (FHIRGeneratorException e) {
-                    if (res.getId() != null) {
-                        logger.log(Level.WARNING, "fillChunkDataBuffer: Error while writing resources with id '"
-                                + res.getId() + "'", e);
-                    } else {
-                        logger.log(Level.WARNING,
-                                "fillChunkDataBuffer: Error while writing resources with unknown id", e);
-                    }
-                } catch (IOException e) {
-                    logger.warning("fillChunkDataBuffer: chunkDataBuffer written error!");
-                    throw e;
-                }
+    /**
+     * Search the current page and write the stored JSON of each resource to the chunk data buffer, without parsing it.
+     *
+     * @return the logical ids of the resources written to the buffer
+     */
+    private List<String> fillChunkDataBuffer(TransientUserData chunkData, FHIRPersistenceContext persistenceContext,
+            Class<? extends Resource> resourceType) throws Exception {
+        List<String> resourceIds = new ArrayList<>();
+        fhirPersistence.searchPayloads(persistenceContext, resourceType, (logicalId, payload) -> {
+            if (isDoDuplicationCheck && loadedResourceIds.contains(logicalId)) {
+                return;
             }
-            chunkData.setCurrentPartResourceNum(chunkData.getCurrentPartResourceNum() + resSubTotal);
-            logger.fine("fillChunkDataBuffer: Processed resources - " + resSubTotal + "; Bufferred data size - "
-                    + chunkData.getBufferStream().size());
-        } else {
-            logger.warning("fillChunkDataBuffer: chunkData is null, this should never happen!");
-            throw new Exception("fillChunkDataBuffer: chunkData is null, this should never happen!");
-        }
-
+            try {
+                BulkDataUtils.writeNdJsonLine(payload, chunkData.getBufferStream());
+            } catch (IOException e) {
+                logger.warning("fillChunkDataBuffer: chunkDataBuffer written error!");
+                throw e;
+            }
+            resourceIds.add(logicalId);
+            if (isDoDuplicationCheck) {
+                loadedResourceIds.add(logicalId);
+            }
+        });
+        chunkData.setCurrentPartResourceNum(chunkData.getCurrentPartResourceNum() + resourceIds.size());
+        logger.fine("fillChunkDataBuffer: Processed resources - " + resourceIds.size() + "; Bufferred data size - "
+                + chunkData.getBufferStream().size());
+        return resourceIds;
     }
 
     @Override
@@ -183,6 +171,7 @@ public class ChunkReader extends AbstractItemReader {
                 } else {
                     // More resource types to read, so reset pageNum, partNum and move resource type index to the next and reset indexOfCurrentTypeFilter.
                     pageNum = 1;
+                    pageToken = null;
                     chunkData.setPartNum(1);
                     indexOfCurrentResourceType++;
                     indexOfCurrentTypeFilter = 0;
@@ -192,6 +181,7 @@ public class ChunkReader extends AbstractItemReader {
             } else {
              // If there is more typeFilter to process for current resource type, then reset pageNum only and move to the next typeFilter.
                 pageNum = 1;
+                pageToken = null;
                 indexOfCurrentTypeFilter++;
             }
         }
@@ -223,40 +213,37 @@ public class ChunkReader extends AbstractItemReader {
             queryParameters.put(Constants.FHIR_SEARCH_LASTUPDATED, searchCriteria);
         }
 
-        queryParameters.put("_sort", Arrays.asList(new String[] { Constants.FHIR_SEARCH_LASTUPDATED }));
+        // No _sort here: unsorted searches are ordered by resource id, which follows the order in which the current
+        // versions were written, and can be paged with keyset pagination so that each page costs the same as the first.
         searchContext = SearchUtil.parseQueryParameters(resourceType, queryParameters);
         searchContext.setPageSize(pageSize);
         searchContext.setPageNumber(pageNum);
-        List<Resource> resources = null;
-        FHIRTransactionHelper txn = new FHIRTransactionHelper(fhirPersistence.getTransaction());
-        txn.enroll();
-        persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext);
-        resources = fhirPersistence.search(persistenceContext, resourceType).getResource();
-        txn.unenroll();
-        pageNum++;
-
+        searchContext.setPageToken(pageToken);
         if (chunkData == null) {
             chunkData = new TransientUserData(pageNum, null, new ArrayList<PartETag>(), 1, 0, 0);
-            chunkData.setLastPageNum(searchContext.getLastPageNumber());
             if (isSingleCosObject) {
                 chunkData.setSingleCosObject(true);
             }
             jobContext.setTransientUserData(chunkData);
-        } else {
-            chunkData.setPageNum(pageNum);
-            chunkData.setIndexOfCurrentResourceType(indexOfCurrentResourceType);
-            chunkData.setIndexOfCurrentTypeFilter(indexOfCurrentTypeFilter);
-            chunkData.setLastPageNum(searchContext.getLastPageNumber());
         }
 
-        if (resources != null) {
-            logger.fine("readItem: loaded resources number - " + resources.size());
-            fillChunkDataBuffer(resources);
-        } else {
-            logger.fine("readItem: End of reading!");
-        }
+        FHIRTransactionHelper txn = new FHIRTransactionHelper(fhirPersistence.getTransaction());
+        txn.enroll();
+        persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext);
+        // The stored JSON of the resources is copied straight to the buffer, so the resources are never parsed.
+        List<String> resourceIds = fillChunkDataBuffer(chunkData, persistenceContext, resourceType);
+        txn.unenroll();
+        pageNum++;
+        pageToken = searchContext.getNextPageToken();
+
+        chunkData.setPageNum(pageNum);
+        chunkData.setIndexOfCurrentResourceType(indexOfCurrentResourceType);
+        chunkData.setIndexOfCurrentTypeFilter(indexOfCurrentTypeFilter);
+        chunkData.setLastPageNum(searchContext.getLastPageNumber());
+        chunkData.setPageToken(pageToken);
+        logger.fine("readItem: loaded resources number - " + resourceIds.size());
 
-        return resources;
+        return resourceIds;
     }
 
     @Override
@@ -266,6 +253,7 @@ public class ChunkReader extends AbstractItemReader {
             pageNum = checkPointData.getPageNum();
             indexOfCurrentResourceType = checkPointData.getIndexOfCurrentResourceType();
             indexOfCurrentTypeFilter = checkPointData.getIndexOfCurrentTypeFilter();
+            pageToken = checkPointData.getPageToken();
             jobContext.setTransientUserData(TransientUserData.fromCheckPointUserData(checkPointData));
         }
 
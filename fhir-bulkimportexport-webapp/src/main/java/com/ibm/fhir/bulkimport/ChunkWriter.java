@@ -7,9 +7,10 @@
 package com.ibm.fhir.bulkimport;
 
 import java.io.ByteArrayInputStream;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -17,10 +18,13 @@ import javax.batch.api.BatchProperty;
 import javax.batch.api.chunk.AbstractItemWriter;
 import javax.batch.runtime.context.StepContext;
 import javax.inject.Inject;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
 
 import com.ibm.cloud.objectstorage.services.s3.AmazonS3;
 import com.ibm.fhir.bulkcommon.BulkDataUtils;
 import com.ibm.fhir.bulkcommon.Constants;
+import com.ibm.fhir.bulkimport.ValidationPipeline.Result;
 import com.ibm.fhir.config.FHIRRequestContext;
 import com.ibm.fhir.exception.FHIROperationException;
 import com.ibm.fhir.model.format.Format;
@@ -29,11 +33,12 @@ import com.ibm.fhir.model.resource.OperationOutcome;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.util.FHIRUtil;
 import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.SingleResourceResult;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.helper.FHIRPersistenceHelper;
 import com.ibm.fhir.persistence.helper.FHIRTransactionHelper;
-import com.ibm.fhir.validation.exception.FHIRValidationException;
 
 /**
  * Bulk import Chunk implementation - the Writer.
@@ -41,6 +46,7 @@ import com.ibm.fhir.validation.exception.FHIRValidationException;
  */
 public class ChunkWriter extends AbstractItemWriter {
     private static final Logger logger = Logger.getLogger(ChunkWriter.class.getName());
+    private static final String EXECUTOR_JNDI_NAME = "java:comp/DefaultManagedExecutorService";
     AmazonS3 cosClient = null;
 
     @Inject
@@ -118,19 +124,46 @@ public class ChunkWriter extends AbstractItemWriter {
     String fhirValidation;
 
 
+    /**
+     * The max number of resources of each import partition which are validated at once.
+     */
+    @Inject
+    @BatchProperty(name = Constants.IMPORT_FHIR_VALIDATION_THREADS)
+    String fhirValidationThreads;
+
+    // The managed executor which runs the validations, looked up once per partition.
+    private Executor validationExecutor = null;
+    private boolean isValidationExecutorLookedUp = false;
+
+    // Set when a batch write fails, so that the retry of the rolled back chunk writes its resources one by one.
+    private boolean writePerResource = false;
+
     public ChunkWriter() {
         super();
     }
 
+    /**
+     * The resources are validated on the managed executor of the server while this thread writes the resources which
+     * have already been validated into the DB, so the validation of the resources later in the chunk overlaps with the
+     * writing of the resources earlier in the chunk. The number of validations in flight is bounded, and the resources
+     * are written in their original order.
+     */
     // This is for the warning triggered by IMPORT_IS_COLLECT_OPERATIONOUTCOMES which controls if upload OperationOutcomes to COS/S3.
     @Override
     public void writeItems(List<java.lang.Object> arg0) throws Exception {
         boolean isValidationOn = false;
-        Set<String> failValidationIds = new HashSet<>();
+        int numOfValidationThreads = Constants.IMPORT_DEFAULT_VALIDATION_THREADS;
 
         if (fhirValidation != null) {
             isValidationOn = fhirValidation.equalsIgnoreCase("Y");
         }
+        if (fhirValidationThreads != null) {
+            try {
+                numOfValidationThreads = Integer.parseInt(fhirValidationThreads);
+            } catch (NumberFormatException e) {
+                logger.warning("writeItems: Set number of validation threads to default(" + Constants.IMPORT_DEFAULT_VALIDATION_THREADS + ").");
+            }
+        }
         if (fhirTenant == null) {
             fhirTenant = "default";
             logger.info("writeItems: Set tenant to default!");
@@ -140,7 +173,8 @@ public class ChunkWriter extends AbstractItemWriter {
             logger.info("writeItems: Set DatastoreId to default!");
         }
 
-        FHIRRequestContext.set(new FHIRRequestContext(fhirTenant, fhirDatastoreId));
+        FHIRRequestContext requestContext = new FHIRRequestContext(fhirTenant, fhirDatastoreId);
+        FHIRRequestContext.set(requestContext);
 
         FHIRPersistenceHelper fhirPersistenceHelper = new FHIRPersistenceHelper();
         FHIRPersistence fhirPersistence = fhirPersistenceHelper.getFHIRPersistenceImplementation();
@@ -149,82 +183,100 @@ public class ChunkWriter extends AbstractItemWriter {
 
         int processedNum = 0, succeededNum =0, failedNum = 0;
         ImportTransientUserData chunkData = (ImportTransientUserData) stepCtx.getTransientUserData();
+        long chunkStartTimeInMilliSeconds = System.currentTimeMillis();
+        long validationWaitMilliSeconds = 0;
+        long validationMilliSeconds = 0;
+        long writeMilliSeconds = 0;
 
-        // Validate the resources first if required.
-        if (isValidationOn) {
-            long validationStartTimeInMilliSeconds = System.currentTimeMillis();
-            for (Object objResJsonList : arg0) {
-                @SuppressWarnings("unchecked")
-                List<Resource> fhirResourceList = (List<Resource>) objResJsonList;
-
-                for (Resource fhirResource : fhirResourceList) {
-                    try {
-                        BulkDataUtils.validateInput(fhirResource);
-                    } catch (FHIRValidationException|FHIROperationException e) {
-                        logger.warning("Failed to validate '" + fhirResource.getId() + "' due to error: " + e.getMessage());
-                        failedNum++;
-                        failValidationIds.add(fhirResource.getId());
-                        if (Constants.IMPORT_IS_COLLECT_OPERATIONOUTCOMES) {
-                            OperationOutcome operationOutCome = FHIRUtil.buildOperationOutcome(e, false);
-                            FHIRGenerator.generator(Format.JSON).generate(operationOutCome, chunkData.getBufferStreamForImportError());
-                            chunkData.getBufferStreamForImportError().write(Constants.NDJSON_LINESEPERATOR);
-                        }
-                    }
-                }
-            }
-            chunkData.setTotalValidationMilliSeconds(chunkData.getTotalValidationMilliSeconds()
-                    + (System.currentTimeMillis() - validationStartTimeInMilliSeconds));
+        List<Resource> fhirResources = new ArrayList<>();
+        for (Object objResJsonList : arg0) {
+            @SuppressWarnings("unchecked")
+            List<Resource> fhirResourceList = (List<Resource>) objResJsonList;
+            fhirResources.addAll(fhirResourceList);
         }
+        processedNum = fhirResources.size();
 
-        // Begin writing the resources into DB.
-        long writeStartTimeInMilliSeconds = System.currentTimeMillis();
         // Acquire a DB connection which will be used in the batch.
         // This doesn't really start the transaction, because the transaction has already been started by the JavaBatch
         // framework at this time point.
         txn.enroll();
-        for (Object objResJsonList : arg0) {
-            @SuppressWarnings("unchecked")
-            List<Resource> fhirResourceList = (List<Resource>) objResJsonList;
-
-            for (Resource fhirResource : fhirResourceList) {
-                try {
-                    String id = fhirResource.getId();
-                    processedNum++;
-                    // Skip the resources which failed the validation
-                    if (failValidationIds.contains(id)) {
+        Iterator<Resource> resourceIterator = fhirResources.iterator();
+        ValidationPipeline validations = isValidationOn
+                ? new ValidationPipeline(getValidationExecutor(), numOfValidationThreads, requestContext,
+                        BulkDataUtils::validateInput, resourceIterator)
+                : null;
+        try {
+            List<Resource> resourcesToStore = new ArrayList<>(Constants.IMPORT_NUMOFFHIRRESOURCES_PERREAD);
+
+            while (isValidationOn ? validations.hasNext() : resourceIterator.hasNext()) {
+                Resource fhirResource;
+                if (isValidationOn) {
+                    Result validation = validations.next();
+                    if (!validation.isValid()) {
+                        Exception validationException = validation.getValidationException();
+                        logger.warning("Failed to validate '" + validation.getResource().getId() + "' due to error: " + validationException.getMessage());
+                        failedNum++;
+                        if (Constants.IMPORT_IS_COLLECT_OPERATIONOUTCOMES) {
+                            OperationOutcome operationOutCome = FHIRUtil.buildOperationOutcome(validationException, false);
+                            FHIRGenerator.generator(Format.JSON).generate(operationOutCome, chunkData.getBufferStreamForImportError());
+                            chunkData.getBufferStreamForImportError().write(Constants.NDJSON_LINESEPERATOR);
+                        }
                         continue;
                     }
-                    OperationOutcome operationOutcome =
-                            fhirPersistence.update(persistenceContext, id, fhirResource).getOutcome();
-                    succeededNum++;
-                    if (Constants.IMPORT_IS_COLLECT_OPERATIONOUTCOMES && operationOutcome != null) {
-                        FHIRGenerator.generator(Format.JSON).generate(operationOutcome, chunkData.getBufferStreamForImport());
-                        chunkData.getBufferStreamForImport().write(Constants.NDJSON_LINESEPERATOR);
-                    }
-                } catch (FHIROperationException e) {
-                    logger.warning("Failed to import '" + fhirResource.getId() + "' due to error: " + e.getMessage());
-                    failedNum++;
-                    if (Constants.IMPORT_IS_COLLECT_OPERATIONOUTCOMES) {
-                        OperationOutcome operationOutCome = FHIRUtil.buildOperationOutcome(e, false);
-                        FHIRGenerator.generator(Format.JSON).generate(operationOutCome, chunkData.getBufferStreamForImportError());
-                        chunkData.getBufferStreamForImportError().write(Constants.NDJSON_LINESEPERATOR);
-                    }
+                    fhirResource = validation.getResource();
+                } else {
+                    fhirResource = resourceIterator.next();
                 }
+
+                resourcesToStore.add(fhirResource);
+                if (resourcesToStore.size() == Constants.IMPORT_NUMOFFHIRRESOURCES_PERREAD) {
+                    long writeStartTimeInMilliSeconds = System.currentTimeMillis();
+                    int succeeded = writeResources(fhirPersistence, persistenceContext, resourcesToStore, chunkData);
+                    writeMilliSeconds += System.currentTimeMillis() - writeStartTimeInMilliSeconds;
+                    succeededNum += succeeded;
+                    failedNum += resourcesToStore.size() - succeeded;
+                    resourcesToStore.clear();
+                }
+            }
+
+            if (!resourcesToStore.isEmpty()) {
+                long writeStartTimeInMilliSeconds = System.currentTimeMillis();
+                int succeeded = writeResources(fhirPersistence, persistenceContext, resourcesToStore, chunkData);
+                writeMilliSeconds += System.currentTimeMillis() - writeStartTimeInMilliSeconds;
+                succeededNum += succeeded;
+                failedNum += resourcesToStore.size() - succeeded;
             }
+        } finally {
+            // Don't leave validations of this chunk running if the chunk failed.
+            if (validations != null) {
+                validations.close();
+            }
+            // Release the DB connection.
+            // This doesn't really commit the transaction, because the transaction was started and will be committed
+            // by the JavaBatch framework.
+            txn.unenroll();
         }
-        // Release the DB connection.
-        // This doesn't really commit the transaction, because the transaction was started and will be committed
-        // by the JavaBatch framework.
-        txn.unenroll();
 
-        chunkData.setTotalWriteMilliSeconds(chunkData.getTotalWriteMilliSeconds() + (System.currentTimeMillis() - writeStartTimeInMilliSeconds));
+        // The chunk has been written, so go back to batch writes for the next one.
+        writePerResource = false;
+
+        if (validations != null) {
+            validationMilliSeconds = validations.getValidationMilliSeconds();
+            validationWaitMilliSeconds = validations.getWaitMilliSeconds();
+        }
+        chunkData.setTotalValidationMilliSeconds(chunkData.getTotalValidationMilliSeconds() + validationMilliSeconds);
+        chunkData.setTotalValidationWaitMilliSeconds(chunkData.getTotalValidationWaitMilliSeconds() + validationWaitMilliSeconds);
+        chunkData.setTotalWriteMilliSeconds(chunkData.getTotalWriteMilliSeconds() + writeMilliSeconds);
+        chunkData.setTotalChunkWriterMilliSeconds(chunkData.getTotalChunkWriterMilliSeconds() + (System.currentTimeMillis() - chunkStartTimeInMilliSeconds));
         chunkData.setNumOfProcessedResources(chunkData.getNumOfProcessedResources() + processedNum + chunkData.getNumOfParseFailures());
         chunkData.setNumOfImportedResources(chunkData.getNumOfImportedResources() + succeededNum);
         chunkData.setNumOfImportFailures(chunkData.getNumOfImportFailures() + failedNum + chunkData.getNumOfParseFailures());
         // Reset NumOfParseFailures for next batch.
         chunkData.setNumOfParseFailures(0);
         if (logger.isLoggable(Level.FINE)) {
-            logger.fine("writeItems: processed " + processedNum + " " + importPartitionResourceType + " from " +  chunkData.getImportPartitionWorkitem());
+            logger.fine("writeItems: processed " + processedNum + " " + importPartitionResourceType + " from " +  chunkData.getImportPartitionWorkitem()
+                + "; validation(summed over threads)/validation wait/write/total milliseconds - " + validationMilliSeconds + "/"
+                + validationWaitMilliSeconds + "/" + writeMilliSeconds + "/" + (System.currentTimeMillis() - chunkStartTimeInMilliSeconds));
         }
 
         if (Constants.IMPORT_IS_COLLECT_OPERATIONOUTCOMES) {
@@ -232,6 +284,93 @@ public class ChunkWriter extends AbstractItemWriter {
         }
     }
 
+    /**
+     * @return the managed executor of the server, or null to validate the resources on the writer thread if there
+     *     is none
+     */
+    private Executor getValidationExecutor() {
+        if (!isValidationExecutorLookedUp) {
+            try {
+                validationExecutor = (Executor) new InitialContext().lookup(EXECUTOR_JNDI_NAME);
+            } catch (NamingException e) {
+                logger.warning("getValidationExecutor: " + EXECUTOR_JNDI_NAME + " is not available, validating on the writer thread.");
+            }
+            isValidationExecutorLookedUp = true;
+        }
+        return validationExecutor;
+    }
+
+    /**
+     * Write the resources into the DB with a single updateAll call and collect the OperationOutcomes.
+     * If updateAll fails, the resources it has already written can't be told apart from the others, so the exception
+     * is rethrown to roll back the chunk, and the chunk is then retried with one update call per resource.
+     *
+     * @return the number of resources which were written successfully
+     */
+    private int writeResources(FHIRPersistence fhirPersistence, FHIRPersistenceContext persistenceContext, List<Resource> resourcesToStore,
+            ImportTransientUserData chunkData) throws Exception {
+        if (writePerResource) {
+            return writeResourcesOneByOne(fhirPersistence, persistenceContext, resourcesToStore, chunkData);
+        }
+
+        int succeededNum = 0;
+        List<SingleResourceResult<Resource>> results;
+        try {
+            results = fhirPersistence.updateAll(persistenceContext, resourcesToStore);
+        } catch (FHIRPersistenceException e) {
+            logger.warning("Failed to import " + resourcesToStore.size() + " " + importPartitionResourceType
+                + " in one batch, rolling back to retry them one by one; error: " + e.getMessage());
+            writePerResource = true;
+            throw e;
+        }
+        for (int i = 0; i < results.size(); i++) {
+            SingleResourceResult<Resource> result = results.get(i);
+            OperationOutcome operationOutcome = result.getOutcome();
+            if (result.isSuccess()) {
+                succeededNum++;
+                if (Constants.IMPORT_IS_COLLECT_OPERATIONOUTCOMES && operationOutcome != null) {
+                    FHIRGenerator.generator(Format.JSON).generate(operationOutcome, chunkData.getBufferStreamForImport());
+                    chunkData.getBufferStreamForImport().write(Constants.NDJSON_LINESEPERATOR);
+                }
+            } else {
+                logger.warning("Failed to import '" + resourcesToStore.get(i).getId() + "'");
+                if (Constants.IMPORT_IS_COLLECT_OPERATIONOUTCOMES && operationOutcome != null) {
+                    FHIRGenerator.generator(Format.JSON).generate(operationOutcome, chunkData.getBufferStreamForImportError());
+                    chunkData.getBufferStreamForImportError().write(Constants.NDJSON_LINESEPERATOR);
+                }
+            }
+        }
+        return succeededNum;
+    }
+
+    /**
+     * Write the resources into the DB with one update call per resource, so that a failure only affects its own resource.
+     *
+     * @return the number of resources which were written successfully
+     */
+    private int writeResourcesOneByOne(FHIRPersistence fhirPersistence, FHIRPersistenceContext persistenceContext, List<Resource> resourcesToStore,
+            ImportTransientUserData chunkData) throws Exception {
+        int succeededNum = 0;
+        for (Resource fhirResource : resourcesToStore) {
+            try {
+                OperationOutcome operationOutcome =
+                        fhirPersistence.update(persistenceContext, fhirResource.getId(), fhirResource).getOutcome();
+                succeededNum++;
+                if (Constants.IMPORT_IS_COLLECT_OPERATIONOUTCOMES && operationOutcome != null) {
+                    FHIRGenerator.generator(Format.JSON).generate(operationOutcome, chunkData.getBufferStreamForImport());
+                    chunkData.getBufferStreamForImport().write(Constants.NDJSON_LINESEPERATOR);
+                }
+            } catch (FHIROperationException e) {
+                logger.warning("Failed to import '" + fhirResource.getId() + "' due to error: " + e.getMessage());
+                if (Constants.IMPORT_IS_COLLECT_OPERATIONOUTCOMES) {
+                    OperationOutcome operationOutCome = FHIRUtil.buildOperationOutcome(e, false);
+                    FHIRGenerator.generator(Format.JSON).generate(operationOutCome, chunkData.getBufferStreamForImportError());
+                    chunkData.getBufferStreamForImportError().write(Constants.NDJSON_LINESEPERATOR);
+                }
+            }
+        }
+        return succeededNum;
+    }
 
     private void pushImportOperationOutcomes2COS(ImportTransientUserData chunkData) throws Exception{
         // Create the COS/S3 client if it's not created yet.
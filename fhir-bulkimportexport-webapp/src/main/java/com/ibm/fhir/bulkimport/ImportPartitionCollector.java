@@ -152,6 +152,13 @@ public class ImportPartitionCollector implements PartitionCollector {
                 }
             }
 
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("collectPartitionData: " + partitionSummaryData.getImportPartitionWorkitem()
+                    + " - validation(summed over threads)/validation wait/write/total ChunkWriter milliseconds - "
+                    + partitionSummaryData.getTotalValidationMilliSeconds() + "/" + partitionSummaryData.getTotalValidationWaitMilliSeconds() + "/"
+                    + partitionSummaryData.getTotalWriteMilliSeconds() + "/" + partitionSummaryData.getTotalChunkWriterMilliSeconds());
+            }
+
             // Clean up.
             BulkDataUtils.cleanupTransientUserData(partitionSummaryData, false);
         }
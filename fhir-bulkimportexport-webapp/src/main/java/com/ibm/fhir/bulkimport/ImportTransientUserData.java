@@ -23,6 +23,11 @@ public class ImportTransientUserData extends ImportCheckPointData {
     private InputStream inputStream = null;
     private BufferedReader bufferReader = null;
 
+    // Stage timings of the ChunkWriter which are not checkpointed: the time spent waiting for the validation of resources
+    // which were not validated yet when they were due to be written, and the total time spent in the ChunkWriter.
+    private long totalValidationWaitMilliSeconds = 0;
+    private long totalChunkWriterMilliSeconds = 0;
+
     public ImportTransientUserData(String importPartitionWorkitem, int numOfProcessedResources,
             String importPartitionResourceType, int numOfImportedResource, int numOfImportFailures,
             String uniqueIDForImportFailureOperationOutcomes, String uniqueIDForImportOperationOutcome,
@@ -75,4 +80,20 @@ public class ImportTransientUserData extends ImportCheckPointData {
         this.bufferReader = bufferReader;
     }
 
+    public long getTotalValidationWaitMilliSeconds() {
+        return totalValidationWaitMilliSeconds;
+    }
+
+    public void setTotalValidationWaitMilliSeconds(long totalValidationWaitMilliSeconds) {
+        this.totalValidationWaitMilliSeconds = totalValidationWaitMilliSeconds;
+    }
+
+    public long getTotalChunkWriterMilliSeconds() {
+        return totalChunkWriterMilliSeconds;
+    }
+
+    public void setTotalChunkWriterMilliSeconds(long totalChunkWriterMilliSeconds) {
+        this.totalChunkWriterMilliSeconds = totalChunkWriterMilliSeconds;
+    }
+
 }
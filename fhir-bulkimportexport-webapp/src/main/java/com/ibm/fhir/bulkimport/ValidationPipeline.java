@@ -0,0 +1,193 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkimport;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.exception.FHIROperationException;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.validation.exception.FHIRValidationException;
+
+/**
+ * Validates resources on an executor ahead of the caller, which takes the results in the original order of the
+ * resources. This lets the validation of the resources later in a chunk overlap with the writing of the resources
+ * earlier in the chunk.
+ * <br>
+ * At most maxInFlight validations are submitted at once. Each validation runs with its own copy of the request
+ * context, which is removed from the executor thread when the validation ends.
+ */
+public class ValidationPipeline implements AutoCloseable {
+
+    /**
+     * Validates a resource, throwing if it isn't valid
+     */
+    @FunctionalInterface
+    public interface Validator {
+        void validate(Resource resource) throws FHIRValidationException, FHIROperationException;
+    }
+
+    /**
+     * The outcome of the validation of a resource
+     */
+    public static class Result {
+        private final Resource resource;
+        private final Exception validationException;
+
+        private Result(Resource resource, Exception validationException) {
+            this.resource = resource;
+            this.validationException = validationException;
+        }
+
+        /**
+         * @return the validated resource
+         */
+        public Resource getResource() {
+            return resource;
+        }
+
+        /**
+         * @return true if the resource passed the validation
+         */
+        public boolean isValid() {
+            return validationException == null;
+        }
+
+        /**
+         * @return the FHIRValidationException or FHIROperationException of a resource which failed the validation
+         */
+        public Exception getValidationException() {
+            return validationException;
+        }
+    }
+
+    private final Executor executor;
+    private final int maxInFlight;
+    private final FHIRRequestContext requestContext;
+    private final Validator validator;
+    private final Iterator<Resource> resources;
+
+    private final Deque<FutureTask<Resource>> validations = new ArrayDeque<>();
+    private final Deque<Resource> validatingResources = new ArrayDeque<>();
+    private final LongAdder validationMilliSeconds = new LongAdder();
+    private long waitMilliSeconds = 0;
+
+    /**
+     * @param executor runs the validations, or null to validate each resource on the caller's thread
+     * @param maxInFlight the maximum number of validations submitted to the executor at once
+     * @param requestContext the request context the validations run with
+     * @param validator
+     * @param resources the resources to validate
+     */
+    public ValidationPipeline(Executor executor, int maxInFlight, FHIRRequestContext requestContext, Validator validator,
+            Iterator<Resource> resources) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.requestContext = requestContext;
+        this.validator = validator;
+        this.resources = resources;
+    }
+
+    /**
+     * @return true if there are resources left to take
+     */
+    public boolean hasNext() {
+        return resources.hasNext() || !validations.isEmpty();
+    }
+
+    /**
+     * Take the result for the next resource, waiting for its validation if needed.
+     *
+     * @return the result of the validation of the next resource
+     * @throws ExecutionException if the validation failed with an unexpected error
+     * @throws InterruptedException
+     */
+    public Result next() throws ExecutionException, InterruptedException {
+        // Keep the validations in flight topped up.
+        while (resources.hasNext() && validations.size() < maxInFlight) {
+            submit(resources.next());
+        }
+
+        long waitStartTimeInMilliSeconds = System.currentTimeMillis();
+        FutureTask<Resource> validation = validations.poll();
+        Resource resource = validatingResources.poll();
+        try {
+            return new Result(validation.get(), null);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof FHIRValidationException || e.getCause() instanceof FHIROperationException) {
+                return new Result(resource, (Exception) e.getCause());
+            }
+            throw e;
+        } finally {
+            waitMilliSeconds += System.currentTimeMillis() - waitStartTimeInMilliSeconds;
+        }
+    }
+
+    /**
+     * @return the time spent validating, summed over the validations
+     */
+    public long getValidationMilliSeconds() {
+        return validationMilliSeconds.sum();
+    }
+
+    /**
+     * @return the time the caller spent waiting for validations to finish
+     */
+    public long getWaitMilliSeconds() {
+        return waitMilliSeconds;
+    }
+
+    /**
+     * Cancel the validations which are still in flight, for example because the chunk failed.
+     */
+    @Override
+    public void close() {
+        for (FutureTask<Resource> validation : validations) {
+            validation.cancel(true);
+        }
+        validations.clear();
+        validatingResources.clear();
+    }
+
+    private void submit(Resource resource) {
+        FHIRRequestContext validationContext = new FHIRRequestContext(requestContext);
+        Thread submitter = Thread.currentThread();
+        FutureTask<Resource> validation = new FutureTask<>(() -> {
+            // the caller's thread already has the request context, and keeps it
+            boolean onOtherThread = Thread.currentThread() != submitter;
+            if (onOtherThread) {
+                FHIRRequestContext.set(validationContext);
+            }
+            long validationStartTimeInMilliSeconds = System.currentTimeMillis();
+            try {
+                validator.validate(resource);
+                return resource;
+            } finally {
+                validationMilliSeconds.add(System.currentTimeMillis() - validationStartTimeInMilliSeconds);
+                if (onOtherThread) {
+                    FHIRRequestContext.remove();
+                }
+            }
+        });
+        validations.add(validation);
+        validatingResources.add(resource);
+        if (executor != null) {
+            executor.execute(validation);
+        } else {
+            validation.run();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkimport;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.bulkimport.ValidationPipeline.Result;
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.validation.exception.FHIRValidationException;
+
+public class ValidationPipelineTest {
+    private ExecutorService executor;
+
+    @BeforeClass
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testOrderAndFailures() throws Exception {
+        List<Resource> resources = createPatients(50);
+        ValidationPipeline validations = new ValidationPipeline(executor, 8, new FHIRRequestContext("tenant1"),
+            resource -> {
+                int i = Integer.parseInt(resource.getId());
+                // finish out of order
+                pause((50 - i) % 5);
+                if (i % 7 == 0) {
+                    throw new FHIRValidationException("invalid " + i, null);
+                }
+            }, resources.iterator());
+
+        int i = 0;
+        while (validations.hasNext()) {
+            Result result = validations.next();
+            assertSame(result.getResource(), resources.get(i));
+            if (i % 7 == 0) {
+                assertFalse(result.isValid());
+                assertEquals(result.getValidationException().getMessage(), "invalid " + i);
+            } else {
+                assertTrue(result.isValid());
+                assertNull(result.getValidationException());
+            }
+            i++;
+        }
+        assertEquals(i, 50);
+        assertTrue(validations.getValidationMilliSeconds() >= 0);
+        assertTrue(validations.getWaitMilliSeconds() >= 0);
+    }
+
+    @Test
+    public void testMaxInFlight() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        ValidationPipeline validations = new ValidationPipeline(executor, 3, new FHIRRequestContext("tenant1"),
+            resource -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                pause(2);
+                inFlight.decrementAndGet();
+            }, createPatients(30).iterator());
+
+        int count = 0;
+        while (validations.hasNext()) {
+            assertTrue(validations.next().isValid());
+            count++;
+        }
+        assertEquals(count, 30);
+        assertTrue(maxInFlight.get() <= 3, "max in flight: " + maxInFlight.get());
+    }
+
+    @Test
+    public void testRequestContext() throws Exception {
+        FHIRRequestContext requestContext = new FHIRRequestContext("tenant1", "study1");
+        Map<String, FHIRRequestContext> contexts = new ConcurrentHashMap<>();
+        ValidationPipeline validations = new ValidationPipeline(executor, 4, requestContext,
+            resource -> contexts.put(resource.getId(), FHIRRequestContext.get()), createPatients(20).iterator());
+        while (validations.hasNext()) {
+            validations.next();
+        }
+
+        assertEquals(contexts.size(), 20);
+        for (FHIRRequestContext context : contexts.values()) {
+            assertEquals(context.getTenantId(), "tenant1");
+            assertEquals(context.getDataStoreId(), "study1");
+        }
+
+        // the contexts don't stay behind on the executor threads
+        List<String> tenantIds = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            tenantIds.add(executor.submit(() -> FHIRRequestContext.get().getTenantId()).get());
+        }
+        for (String tenantId : tenantIds) {
+            assertEquals(tenantId, "default");
+        }
+    }
+
+    @Test
+    public void testWithoutExecutor() throws Exception {
+        FHIRRequestContext requestContext = new FHIRRequestContext("tenant1");
+        FHIRRequestContext.set(requestContext);
+        try {
+            Thread caller = Thread.currentThread();
+            List<Thread> threads = new ArrayList<>();
+            ValidationPipeline validations = new ValidationPipeline(null, 4, requestContext,
+                resource -> threads.add(Thread.currentThread()), createPatients(10).iterator());
+            while (validations.hasNext()) {
+                assertTrue(validations.next().isValid());
+            }
+            assertEquals(threads.size(), 10);
+            for (Thread thread : threads) {
+                assertSame(thread, caller);
+            }
+            // the context of the caller is kept
+            assertSame(FHIRRequestContext.get(), requestContext);
+        } finally {
+            FHIRRequestContext.remove();
+        }
+    }
+
+    @Test(expectedExceptions = ExecutionException.class)
+    public void testUnexpectedError() throws Exception {
+        ValidationPipeline validations = new ValidationPipeline(executor, 4, new FHIRRequestContext("tenant1"),
+            resource -> {
+                throw new IllegalStateException("unexpected");
+            }, createPatients(5).iterator());
+        try {
+            validations.next();
+        } finally {
+            validations.close();
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger validated = new AtomicInteger();
+        ValidationPipeline validations = new ValidationPipeline(executor, 2, new FHIRRequestContext("tenant1"),
+            resource -> {
+                if ("0".equals(resource.getId())) {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                validated.incrementAndGet();
+            }, createPatients(10).iterator());
+
+        // submits the first validations and leaves them in flight
+        Thread taker = new Thread(() -> {
+            try {
+                validations.next();
+            } catch (Exception e) {
+                // cancelled
+            }
+        });
+        taker.start();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        taker.interrupt();
+        taker.join(10000);
+
+        validations.close();
+        release.countDown();
+        assertTrue(validated.get() <= 2, "validated: " + validated.get());
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<Resource> createPatients(int count) {
+        List<Resource> resources = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            resources.add(Patient.builder().id(Integer.toString(i)).build());
+        }
+        return resources;
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2017,2019
+ * (C) Copyright IBM Corp. 2017,2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -7,6 +7,8 @@
 package com.ibm.fhir.config;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -16,10 +18,17 @@ import javax.json.JsonValue;
  * This class contains a set of static helper methods related to configuration parameters.
  * The functions in this class will try to first retrieve a config property from the current
  * tenant's configuration, then (if not found) look in the "default" configuration.
+ * <p>
+ * Resolved properties are kept in an immutable-once-built snapshot per tenant, so that repeated lookups
+ * don't walk the JSON configuration again. A snapshot is replaced as soon as the tenant's or the default
+ * configuration is reloaded.
  */
 public class FHIRConfigHelper {
     private static final Logger log = Logger.getLogger(FHIRConfigHelper.class.getName());
 
+    // The current snapshot for each tenant
+    private static final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
     public static String getStringProperty(String propertyName, String defaultValue) {
         return getTypedProperty(String.class, propertyName, defaultValue);
     }
@@ -46,44 +55,37 @@ public class FHIRConfigHelper {
     }
 
     /**
-     * This function retrieves the specified property as a generic JsonValue. First we try to retrieve the property from
-     * the current tenant's config, and then if not found we'll also look in the "default" config.
-     * 
-     * @param propertyName
-     *            the hierarchical name of the property to be retrieved (e.g. "level1/level2/prop1")
-     * @return a JsonValue representing the property's value or null if it wasn't found in either config
+     * Returns the snapshot of the current thread's tenant, building a new one if the tenant's or the default
+     * configuration was reloaded since the snapshot was built.
      */
-    private static JsonValue getPropertyFromTenantOrDefault(String propertyName) {
-        JsonValue result = null;
-
-        PropertyGroup pg = null;
+    private static Snapshot getSnapshot() {
         String tenantId = FHIRRequestContext.get().getTenantId();
 
         // First, try to retrieve the configuration (property group) associated with the
         // current thread's tenant-id.
+        PropertyGroup tenantConfig = null;
         try {
-            pg = FHIRConfiguration.getInstance().loadConfigurationForTenant(tenantId);
-            if (pg != null) {
-                result = pg.getJsonValue(propertyName);
-            }
+            tenantConfig = FHIRConfiguration.getInstance().loadConfigurationForTenant(tenantId);
         } catch (Exception e) {
             log.log(Level.WARNING, "Error loading configuration for tenant-id '" + tenantId + "': " + e.getMessage());
         }
 
-        // If we didn't find the property in the tenant-specific config, then
-        // let's try to find it in the default config.
-        if (result == null && !tenantId.equals(FHIRConfiguration.DEFAULT_TENANT_ID)) {
+        // Properties not found in the tenant-specific config are looked up in the default config.
+        PropertyGroup defaultConfig = null;
+        if (!tenantId.equals(FHIRConfiguration.DEFAULT_TENANT_ID)) {
             try {
-                pg = FHIRConfiguration.getInstance().loadConfiguration();
-                if (pg != null) {
-                    result = pg.getJsonValue(propertyName);
-                }
+                defaultConfig = FHIRConfiguration.getInstance().loadConfiguration();
             } catch (Exception e) {
                 log.log(Level.WARNING, "Error loading default configuration: " + e.getMessage());
             }
         }
 
-        return result;
+        Snapshot snapshot = snapshots.get(tenantId);
+        if (snapshot == null || snapshot.tenantConfig != tenantConfig || snapshot.defaultConfig != defaultConfig) {
+            snapshot = new Snapshot(tenantConfig, defaultConfig);
+            snapshots.put(tenantId, snapshot);
+        }
+        return snapshot;
     }
 
     /**
@@ -100,14 +102,15 @@ public class FHIRConfigHelper {
     private static <T> T getTypedProperty(Class<T> expectedDataType, String propertyName, T defaultValue) {
         T result = null;
 
-        // Find the property as a generic JsonValue from either the current tenant's config or the default config.
-        JsonValue jsonValue = getPropertyFromTenantOrDefault(propertyName);
+        // Find the property from either the current tenant's config or the default config.
+        Snapshot snapshot = getSnapshot();
+        Object value = snapshot.getValue(propertyName);
 
         // If found, then convert the value to the expected type.
-        if (jsonValue != null) {
+        if (value != null) {
             Object obj = null;
             try {
-                obj = PropertyGroup.convertJsonValue(jsonValue);
+                obj = Snapshot.convert(value);
                 if (obj != null) {
                     // If the property was of the expected type, then just do the assignment.
                     // Otherwise, we'll try to do some simple conversions (e.g. String --> Boolean).
@@ -145,4 +148,67 @@ public class FHIRConfigHelper {
 
         return (result != null ? result : defaultValue);
     }
+
+    /**
+     * The properties resolved so far for one tenant, with the default configuration merged in.
+     * Scalar values are kept in their converted form; arrays and objects are kept as JsonValue
+     * and converted on each lookup, because their converted forms are mutable.
+     */
+    private static class Snapshot {
+        // Marks a property found in neither config
+        private static final Object NOT_FOUND = new Object();
+
+        private final PropertyGroup tenantConfig;
+        private final PropertyGroup defaultConfig;
+        private final Map<String, Object> values = new ConcurrentHashMap<>();
+
+        private Snapshot(PropertyGroup tenantConfig, PropertyGroup defaultConfig) {
+            this.tenantConfig = tenantConfig;
+            this.defaultConfig = defaultConfig;
+        }
+
+        /**
+         * @return the resolved value of the property or null if it wasn't found in either config
+         */
+        private Object getValue(String propertyName) {
+            Object value = values.get(propertyName);
+            if (value == null) {
+                value = resolve(propertyName);
+                values.put(propertyName, value);
+            }
+            return value != NOT_FOUND ? value : null;
+        }
+
+        private Object resolve(String propertyName) {
+            JsonValue jsonValue = null;
+            if (tenantConfig != null) {
+                jsonValue = tenantConfig.getJsonValue(propertyName);
+            }
+            if (jsonValue == null && defaultConfig != null) {
+                jsonValue = defaultConfig.getJsonValue(propertyName);
+            }
+            if (jsonValue == null) {
+                return NOT_FOUND;
+            }
+            switch (jsonValue.getValueType()) {
+            case ARRAY:
+            case OBJECT:
+                return jsonValue;
+            default:
+                try {
+                    return PropertyGroup.convertJsonValue(jsonValue);
+                } catch (Exception e) {
+                    // reported when the property is converted
+                    return jsonValue;
+                }
+            }
+        }
+
+        /**
+         * @return the native form of a value returned by {@link #getValue(String)}
+         */
+        private static Object convert(Object value) throws Exception {
+            return value instanceof JsonValue ? PropertyGroup.convertJsonValue((JsonValue) value) : value;
+        }
+    }
 }
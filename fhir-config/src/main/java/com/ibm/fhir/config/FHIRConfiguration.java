@@ -33,6 +33,11 @@ public class FHIRConfiguration {
     public static final String PROPERTY_CHECK_REFERENCE_TYPES = "fhirServer/core/checkReferenceTypes";
     public static final String PROPERTY_CONDITIONAL_DELETE_MAX_NUMBER = "fhirServer/core/conditionalDeleteMaxNumber";
     public static final String PROPERTY_SERVER_REGISTRY_RESOURCE_PROVIDER_ENABLED = "fhirServer/core/serverRegistryResourceProviderEnabled";
+    public static final String PROPERTY_REGISTRY_SOFT_EVICTION = "fhirServer/core/registrySoftEviction";
+    public static final String PROPERTY_REGISTRY_WARM_UP = "fhirServer/core/registryWarmUp";
+    public static final String PROPERTY_REGISTRY_WARM_UP_PARALLELISM = "fhirServer/core/registryWarmUpParallelism";
+    public static final String PROPERTY_BATCH_PARALLELISM = "fhirServer/core/batchParallelism";
+    public static final String PROPERTY_BATCH_MAX_CONCURRENCY_PER_TENANT = "fhirServer/core/batchMaxConcurrencyPerTenant";
 
     public static final String PROPERTY_SEARCH_PARAMETER_FILTER = "fhirServer/searchParameterFilter";
 
@@ -52,6 +57,10 @@ public class FHIRConfiguration {
 
     // Notification config properties
     public static final String PROPERTY_NOTIFICATION_RESOURCE_TYPES = "fhirServer/notifications/common/includeResourceTypes";
+    public static final String PROPERTY_NOTIFICATION_ASYNC = "fhirServer/notifications/common/asyncDelivery";
+    public static final String PROPERTY_NOTIFICATION_QUEUE_SIZE = "fhirServer/notifications/common/queueSize";
+    public static final String PROPERTY_NOTIFICATION_OVERFLOW_POLICY = "fhirServer/notifications/common/overflowPolicy";
+    public static final String PROPERTY_NOTIFICATION_MAX_BLOCK_MILLIS = "fhirServer/notifications/common/maxBlockMillis";
     public static final String PROPERTY_WEBSOCKET_ENABLED = "fhirServer/notifications/websocket/enabled";
     public static final String PROPERTY_KAFKA_ENABLED = "fhirServer/notifications/kafka/enabled";
     public static final String PROPERTY_KAFKA_TOPICNAME = "fhirServer/notifications/kafka/topicName";
@@ -66,9 +75,15 @@ public class FHIRConfiguration {
     public static final String PROPERTY_JDBC_ENABLE_CODE_SYSTEMS_CACHE = "fhirServer/persistence/jdbc/enableCodeSystemsCache";
     public static final String PROPERTY_JDBC_ENABLE_PARAMETER_NAMES_CACHE = "fhirServer/persistence/jdbc/enableParameterNamesCache";
     public static final String PROPERTY_JDBC_ENABLE_RESOURCE_TYPES_CACHE = "fhirServer/persistence/jdbc/enableResourceTypesCache";
+    public static final String PROPERTY_JDBC_RESOURCE_CACHE_ENABLED = "fhirServer/persistence/jdbc/resourceCache/enabled";
+    public static final String PROPERTY_JDBC_RESOURCE_CACHE_MAX_ENTRIES = "fhirServer/persistence/jdbc/resourceCache/maxEntries";
+    public static final String PROPERTY_JDBC_RESOURCE_CACHE_TTL_SECONDS = "fhirServer/persistence/jdbc/resourceCache/ttlSeconds";
+    public static final String PROPERTY_JDBC_RESOURCE_CACHE_VERSION_CHECK = "fhirServer/persistence/jdbc/resourceCache/versionCheck";
 
     // fhir-search - Bounding area
     public static final String PROPERTY_SEARCH_BOUNDING_AREA_RADIUS_TYPE = "fhirServer/search/useBoundingRadius";
+    public static final String PROPERTY_SEARCH_KEYSET_PAGING = "fhirServer/search/enableKeysetPaging";
+    public static final String PROPERTY_SEARCH_USE_STORED_COMPARTMENT_PARAM = "fhirServer/search/useStoredCompartmentParam";
 
     // bulkdata
     // JavaBatch Job id encryption key
@@ -7,6 +7,7 @@
 package com.ibm.fhir.config;
 
 import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -71,6 +72,21 @@ public class FHIRRequestContext {
         setDataStoreId(dataStoreId);
     }
 
+    /**
+     * Creates a copy of the given request context, for another thread processing part of the same request.
+     * The copy has the same request unique id, and changes made to either context don't affect the other.
+     */
+    public FHIRRequestContext(FHIRRequestContext other) {
+        this.tenantId = other.tenantId;
+        this.tenantKey = other.tenantKey;
+        this.dataStoreId = other.dataStoreId;
+        this.requestUniqueId = other.requestUniqueId;
+        this.originalRequestUri = other.originalRequestUri;
+        this.httpHeaders = (other.httpHeaders != null) ? new HashMap<>(other.httpHeaders) : null;
+        this.handlingPreference = other.handlingPreference;
+        this.returnPreference = other.returnPreference;
+    }
+
     public String getTenantId() {
         return tenantId;
     }
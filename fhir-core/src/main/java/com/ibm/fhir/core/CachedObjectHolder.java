@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2017,2019
+ * (C) Copyright IBM Corp. 2017,2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -7,6 +7,7 @@
 package com.ibm.fhir.core;
 
 import java.io.File;
+import java.util.concurrent.TimeUnit;
 
 /**
  * CachedObjectHolder is a generic type which provides common behavior for a file-based object
@@ -18,12 +19,15 @@ public class CachedObjectHolder<T> {
     private String fileName;
     private long lastModified;
     private T cachedObject;
+    // System.nanoTime() of the last time the file was checked
+    private volatile long lastChecked;
 
     public CachedObjectHolder(String fileName, T cachedObject) {
         setFileName(fileName);
         File f = new File(fileName);
         setLastModified(f.lastModified());
         setCachedObject(cachedObject);
+        this.lastChecked = System.nanoTime();
     }
     
     public CachedObjectHolder(T cachedObject) {
@@ -66,4 +70,23 @@ public class CachedObjectHolder<T> {
         
         return false;
     }
+
+    /**
+     * Like {@link #isStale()}, but only checks the file if it was not checked within the given interval,
+     * so that frequent callers don't pay for a file system call on each access.
+     *
+     * @param checkIntervalMillis
+     *            the minimum time between two checks of the file; 0 to check it each time
+     * @return true iff the file was checked and has been modified since the object was cached.
+     */
+    public boolean isStale(long checkIntervalMillis) {
+        if (checkIntervalMillis > 0) {
+            long now = System.nanoTime();
+            if (now - lastChecked < TimeUnit.MILLISECONDS.toNanos(checkIntervalMillis)) {
+                return false;
+            }
+            lastChecked = now;
+        }
+        return isStale();
+    }
 }
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2017,2019
+ * (C) Copyright IBM Corp. 2017,2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -7,8 +7,9 @@
 package com.ibm.fhir.core;
 
 import java.io.File;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -16,19 +17,32 @@ import java.util.logging.Logger;
  * This class is a parameterized abstract base class to be used for situations where
  * we need to implement a tenant-specific cache of file-based objects.
  * Examples include: configuration parameters, structure definitions, search parameters, etc.
+ * <p>
+ * To keep lookups free of file system calls, the file behind a cache entry (or the absence of a file)
+ * is re-checked at most once per check interval. The interval defaults to 2 seconds and can be set
+ * with the {@value #CHECK_INTERVAL_PROPERTY} system property; 0 checks the file on each lookup.
  * 
  * @author padams
  */
 public abstract class TenantSpecificFileBasedCache<T> {
     private static final Logger log = Logger.getLogger(TenantSpecificFileBasedCache.class.getName());
 
+    public static final String CHECK_INTERVAL_PROPERTY = "com.ibm.fhir.core.TenantSpecificFileBasedCache.checkInterval";
+    public static final long DEFAULT_CHECK_INTERVAL = 2000;
+
     private Map<String, CachedObjectHolder<T>> cache;
+
+    // System.nanoTime() of the last check for each tenant that has no file
+    private Map<String, Long> missing = new ConcurrentHashMap<>();
+
+    // The minimum time in milliseconds between two checks of a file
+    private volatile long checkInterval = Long.getLong(CHECK_INTERVAL_PROPERTY, DEFAULT_CHECK_INTERVAL);
     
     // cacheType is used only in trace messages.
     private String cacheType = "<unknown>";
     
     public TenantSpecificFileBasedCache() {
-        cache = new HashMap<String, CachedObjectHolder<T>>();
+        cache = new ConcurrentHashMap<String, CachedObjectHolder<T>>();
     }
     
     public TenantSpecificFileBasedCache(String cacheType) {
@@ -43,9 +57,26 @@ public abstract class TenantSpecificFileBasedCache<T> {
     public void clearCache() {
         synchronized(cache) {
             cache.clear();
+            missing.clear();
         }
     }
 
+    /**
+     * @return the minimum time in milliseconds between two checks of the file behind a cache entry
+     */
+    public long getCheckInterval() {
+        return checkInterval;
+    }
+
+    /**
+     * @param checkInterval
+     *            the minimum time in milliseconds between two checks of the file behind a cache entry;
+     *            0 to check the file on each lookup
+     */
+    public void setCheckInterval(long checkInterval) {
+        this.checkInterval = checkInterval;
+    }
+
     public abstract String getCacheEntryFilename(String tenantId);
     public abstract T createCachedObject(File file) throws Exception;
     
@@ -62,8 +93,13 @@ public abstract class TenantSpecificFileBasedCache<T> {
             // Try to retrieve tenant's cached object from the cache.
             CachedObjectHolder<T> holder = cache.get(tenantId);
 
+            // If there was no file for the tenant when we last checked, don't look again too soon.
+            if (holder == null && isRecentlyMissing(tenantId)) {
+                return null;
+            }
+
             // If we didn't find it or it was stale, then we'll need to lock the cache.
-            if (holder == null || holder.isStale()) {
+            if (holder == null || holder.isStale(checkInterval)) {
                 synchronized (cache) {
 
                     // Check again to see if we can retrieve the cached object from the cache.
@@ -91,8 +127,10 @@ public abstract class TenantSpecificFileBasedCache<T> {
                         if (cachedObject != null) {
                             holder = new CachedObjectHolder<T>(fileName, cachedObject);
                             cache.put(tenantId, holder);
+                            missing.remove(tenantId);
                             log.fine("Loaded " + this.cacheType + " for tenant-id '" + tenantId + "' and added it to the cache.");
                         } else {
+                            missing.put(tenantId, System.nanoTime());
                             log.fine("Tenant-specific " + this.cacheType + " for tenant '" + tenantId + "' not found, skipping...");
                         }
                     }
@@ -106,4 +144,12 @@ public abstract class TenantSpecificFileBasedCache<T> {
             }
         }
     }
+
+    /**
+     * @return true iff the tenant had no file when it was checked within the check interval
+     */
+    private boolean isRecentlyMissing(String tenantId) {
+        Long lastChecked = missing.get(tenantId);
+        return lastChecked != null && System.nanoTime() - lastChecked < TimeUnit.MILLISECONDS.toNanos(checkInterval);
+    }
 }
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016,2019
+ * (C) Copyright IBM Corp. 2016,2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -17,4 +17,8 @@ public interface FHIRPagingContext {
     void setTotalCount(int totalCount);
     boolean isLenient();
     void setLenient(boolean lenient);
+    String getPageToken();
+    void setPageToken(String pageToken);
+    String getNextPageToken();
+    void setNextPageToken(String nextPageToken);
 }
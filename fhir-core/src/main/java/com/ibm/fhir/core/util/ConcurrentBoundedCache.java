@@ -0,0 +1,287 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.core.util;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A bounded cache that can be read concurrently without locking.
+ * <br>
+ * Entries are stored in a {@link ConcurrentHashMap} and evicted using the CLOCK (second chance) approximation
+ * of LRU: a read only marks the entry as referenced, and when the cache grows beyond its maximum size,
+ * entries are examined in insertion order; referenced entries get their flag cleared and another chance,
+ * while the first unreferenced entry is evicted. Unlike {@link LRUCache}, a read never reorders a shared
+ * list, so concurrent readers do not contend on a common monitor. Only writes that overflow the cache
+ * take the eviction lock.
+ * <br>
+ * An entry which is replaced or removed is only marked as removed, because removing it from the middle of the
+ * clock would take time proportional to the size of the cache. Marked entries are dropped when the eviction
+ * reaches them, and purged in one pass once there are more of them than the maximum number of entries.
+ * <br>
+ * Hit, miss and eviction counts are kept for monitoring.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public class ConcurrentBoundedCache<K, V> {
+    private final int maxEntries;
+    private final ConcurrentHashMap<K, Node<K, V>> map;
+    private final ConcurrentLinkedQueue<Node<K, V>> clock = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    // approximately the number of nodes in the clock which are marked as removed
+    private final AtomicInteger removedNodeCount = new AtomicInteger();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    private ConcurrentBoundedCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be greater than 0");
+        }
+        this.maxEntries = maxEntries;
+        this.map = new ConcurrentHashMap<>(maxEntries + (maxEntries / 3) + 1);
+    }
+
+    /**
+     * Create a new cache that holds at most (approximately) maxEntries entries.
+     *
+     * @param maxEntries
+     *     the maximum number of entries
+     * @return
+     *     a new, empty cache
+     */
+    public static <K, V> ConcurrentBoundedCache<K, V> createCache(int maxEntries) {
+        return new ConcurrentBoundedCache<>(maxEntries);
+    }
+
+    /**
+     * @param key
+     *     the key
+     * @return
+     *     the cached value or null if there is no value cached for the key
+     */
+    public V get(K key) {
+        Node<K, V> node = map.get(Objects.requireNonNull(key));
+        if (node == null) {
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return node.read();
+    }
+
+    /**
+     * Return the cached value for the key or, if it is not cached, compute it with the mapping function and cache it.
+     * <br>
+     * The mapping function is called without holding any lock, so it may safely use this cache. If two threads
+     * miss on the same key at the same time, both compute a value, and the value cached first is returned to both.
+     * A null value is returned to the caller, but not cached.
+     *
+     * @param key
+     *     the key
+     * @param mappingFunction
+     *     the function that computes the value for a key that is not cached
+     * @return
+     *     the cached or computed value
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        value = mappingFunction.apply(key);
+        if (value == null) {
+            return null;
+        }
+        Node<K, V> node = new Node<>(key, value);
+        Node<K, V> existing = map.putIfAbsent(key, node);
+        if (existing != null) {
+            return existing.read();
+        }
+        clock.offer(node);
+        evictIfNeeded();
+        return value;
+    }
+
+    /**
+     * Cache the value for the key, replacing any value that was previously cached for it.
+     *
+     * @param key
+     *     the key
+     * @param value
+     *     the value
+     * @return
+     *     the previously cached value or null
+     */
+    public V put(K key, V value) {
+        Node<K, V> node = new Node<>(key, Objects.requireNonNull(value));
+        Node<K, V> previous = map.put(key, node);
+        if (previous != null) {
+            markRemoved(previous);
+        }
+        clock.offer(node);
+        evictIfNeeded();
+        return (previous != null) ? previous.value : null;
+    }
+
+    /**
+     * @param key
+     *     the key
+     * @return
+     *     the value that was cached for the key or null
+     */
+    public V remove(K key) {
+        Node<K, V> previous = map.remove(Objects.requireNonNull(key));
+        if (previous == null) {
+            return null;
+        }
+        markRemoved(previous);
+        purgeIfNeeded();
+        return previous.value;
+    }
+
+    /**
+     * Remove all entries from the cache. The statistics are not reset.
+     */
+    public void clear() {
+        evictionLock.lock();
+        try {
+            map.clear();
+            clock.clear();
+            removedNodeCount.set(0);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * @return
+     *     the number of entries currently in the cache
+     */
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * @return
+     *     the maximum number of entries in the cache
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return
+     *     the number of lookups that found a cached value
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * @return
+     *     the number of lookups that did not find a cached value
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return
+     *     the number of entries that were evicted to keep the cache within its maximum size
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentBoundedCache [size=" + size() + ", maxEntries=" + maxEntries + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "]";
+    }
+
+    private void markRemoved(Node<K, V> node) {
+        node.removed = true;
+        removedNodeCount.incrementAndGet();
+    }
+
+    private void evictIfNeeded() {
+        purgeIfNeeded();
+        if (map.size() <= maxEntries) {
+            return;
+        }
+        evictionLock.lock();
+        try {
+            while (map.size() > maxEntries) {
+                Node<K, V> node = clock.poll();
+                if (node == null) {
+                    // the node of a concurrent insert has not been offered yet
+                    break;
+                }
+                if (node.removed) {
+                    // replaced or removed since it was offered
+                    removedNodeCount.decrementAndGet();
+                } else if (node.referenced) {
+                    // second chance
+                    node.referenced = false;
+                    clock.offer(node);
+                } else if (map.remove(node.key, node)) {
+                    evictionCount.increment();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Drop the nodes which are marked as removed from the clock once there are too many of them, for example
+     * because the same keys are put over and over again without the cache growing beyond its maximum size.
+     */
+    private void purgeIfNeeded() {
+        if (removedNodeCount.get() <= maxEntries) {
+            return;
+        }
+        evictionLock.lock();
+        try {
+            if (removedNodeCount.get() > maxEntries) {
+                // nodes marked during the pass may be counted again, which only brings the next purge forward
+                removedNodeCount.set(0);
+                clock.removeIf(node -> node.removed);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static final class Node<K, V> {
+        private final K key;
+        private final V value;
+        private volatile boolean referenced;
+        private volatile boolean removed;
+
+        private Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        private V read() {
+            // avoid writing to a shared cache line when the flag is already set
+            if (!referenced) {
+                referenced = true;
+            }
+            return value;
+        }
+    }
+}
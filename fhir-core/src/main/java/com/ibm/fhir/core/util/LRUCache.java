@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019
+ * (C) Copyright IBM Corp. 2019, 2020
  * 
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -14,7 +14,11 @@ import java.util.Map;
  * A simple Least Recently Used (LRU) cache implementation using LinkedHashMap
  * 
  * see {@link java.util.LinkedHashMap#removeEldestEntry}
+ * 
+ * @deprecated every read of the synchronized map returned by {@link #createLRUCache(int)} reorders the entries
+ *     under a single lock; use {@link ConcurrentBoundedCache} instead
  */
+@Deprecated
 public class LRUCache<K, V> extends LinkedHashMap<K, V> {
     private static final long serialVersionUID = 1L;
     
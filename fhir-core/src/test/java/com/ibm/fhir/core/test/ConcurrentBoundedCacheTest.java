@@ -0,0 +1,143 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.core.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.core.util.ConcurrentBoundedCache;
+
+public class ConcurrentBoundedCacheTest {
+    @Test
+    public void testComputeIfAbsent() {
+        ConcurrentBoundedCache<String, String> cache = ConcurrentBoundedCache.createCache(4);
+        assertEquals(cache.computeIfAbsent("a", k -> k.toUpperCase()), "A");
+        assertEquals(cache.computeIfAbsent("a", k -> "unexpected"), "A");
+        assertNull(cache.computeIfAbsent("b", k -> null));
+        assertEquals(cache.size(), 1);
+
+        assertEquals(cache.getHitCount(), 1);
+        assertEquals(cache.getMissCount(), 2);
+        assertEquals(cache.getEvictionCount(), 0);
+
+        assertEquals(cache.remove("a"), "A");
+        assertNull(cache.get("a"));
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testEviction() {
+        ConcurrentBoundedCache<Integer, Integer> cache = ConcurrentBoundedCache.createCache(3);
+        cache.put(1, 1);
+        cache.put(2, 2);
+        cache.put(3, 3);
+
+        // entry 1 is referenced, so it gets a second chance and entry 2 is evicted instead
+        cache.get(1);
+        cache.put(4, 4);
+
+        assertEquals(cache.size(), 3);
+        assertEquals(cache.getEvictionCount(), 1);
+        assertEquals(cache.get(1), Integer.valueOf(1));
+        assertNull(cache.get(2));
+        assertEquals(cache.get(3), Integer.valueOf(3));
+        assertEquals(cache.get(4), Integer.valueOf(4));
+    }
+
+    @Test
+    public void testPutReplacesValue() {
+        ConcurrentBoundedCache<String, String> cache = ConcurrentBoundedCache.createCache(2);
+        assertNull(cache.put("a", "1"));
+        assertEquals(cache.put("a", "2"), "1");
+        cache.put("b", "3");
+        cache.put("c", "4");
+
+        assertEquals(cache.size(), 2);
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void testRemovedEntriesAreSkipped() {
+        ConcurrentBoundedCache<Integer, Integer> cache = ConcurrentBoundedCache.createCache(3);
+        cache.put(1, 1);
+        cache.put(2, 2);
+        cache.put(3, 3);
+        cache.remove(1);
+        cache.put(2, 20);
+        cache.put(4, 4);
+
+        // the removed entry 1 and the replaced entry 2 are skipped, so entry 3 is the one evicted
+        cache.put(5, 5);
+        assertEquals(cache.size(), 3);
+        assertEquals(cache.getEvictionCount(), 1);
+        assertNull(cache.get(3));
+        assertEquals(cache.get(2), Integer.valueOf(20));
+        assertEquals(cache.get(4), Integer.valueOf(4));
+        assertEquals(cache.get(5), Integer.valueOf(5));
+    }
+
+    @Test
+    public void testRepeatedPuts() {
+        ConcurrentBoundedCache<Integer, Integer> cache = ConcurrentBoundedCache.createCache(5);
+        // replaced and removed entries are purged without any eviction
+        for (int i = 0; i < 100000; i++) {
+            cache.put(i % 4, i);
+        }
+        for (int i = 0; i < 100000; i++) {
+            cache.put(4, i);
+            cache.remove(4);
+        }
+        assertEquals(cache.size(), 4);
+        assertEquals(cache.getEvictionCount(), 0);
+        for (int key = 0; key < 4; key++) {
+            assertEquals(cache.get(key), Integer.valueOf(99996 + key));
+        }
+
+        cache.put(4, 4);
+        cache.put(5, 5);
+        assertEquals(cache.size(), 5);
+        assertEquals(cache.getEvictionCount(), 1);
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        int maxEntries = 64;
+        ConcurrentBoundedCache<Integer, Integer> cache = ConcurrentBoundedCache.createCache(maxEntries);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        Integer key = i % 256;
+                        assertEquals(cache.computeIfAbsent(key, k -> k * 2), Integer.valueOf(key * 2));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(cache.size() <= maxEntries);
+        assertEquals(cache.getHitCount() + cache.getMissCount(), 8 * 10000);
+        assertTrue(cache.getEvictionCount() > 0);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.core.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.core.TenantSpecificFileBasedCache;
+
+public class TenantSpecificFileBasedCacheTest {
+    private static class StringCache extends TenantSpecificFileBasedCache<String> {
+        private final File dir;
+        private final AtomicInteger loadCount = new AtomicInteger();
+
+        StringCache(File dir) {
+            super("String");
+            this.dir = dir;
+        }
+
+        @Override
+        public String getCacheEntryFilename(String tenantId) {
+            return new File(dir, tenantId + ".txt").getPath();
+        }
+
+        @Override
+        public String createCachedObject(File file) throws Exception {
+            loadCount.incrementAndGet();
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testCheckInterval() throws Exception {
+        File dir = Files.createTempDirectory("cache").toFile();
+        File file = new File(dir, "tenant1.txt");
+        StringCache cache = new StringCache(dir);
+        cache.setCheckInterval(60000);
+
+        // a missing file is remembered for the check interval
+        assertNull(cache.getCachedObjectForTenant("tenant1"));
+        write(file, "value1", 0);
+        assertNull(cache.getCachedObjectForTenant("tenant1"));
+
+        cache.clearCache();
+        assertEquals(cache.getCachedObjectForTenant("tenant1"), "value1");
+
+        // a modified file is not noticed within the check interval
+        write(file, "value2", 10000);
+        assertEquals(cache.getCachedObjectForTenant("tenant1"), "value1");
+        assertEquals(cache.loadCount.get(), 1);
+
+        // but it is as soon as the file is checked again
+        cache.setCheckInterval(0);
+        assertEquals(cache.getCachedObjectForTenant("tenant1"), "value2");
+        assertEquals(cache.getCachedObjectForTenant("tenant1"), "value2");
+        assertEquals(cache.loadCount.get(), 2);
+
+        file.delete();
+        assertNull(cache.getCachedObjectForTenant("tenant1"));
+        dir.delete();
+    }
+
+    private static void write(File file, String value, long age) throws Exception {
+        Files.write(file.toPath(), value.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(System.currentTimeMillis() + age));
+    }
+}
@@ -1,18 +1,26 @@
 /*
- * (C) Copyright IBM Corp. 2019
+ * (C) Copyright IBM Corp. 2019, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
 
 package com.ibm.fhir.database.utils.pool;
 
+import java.lang.ref.WeakReference;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.sql.SQLTransientConnectionException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.ibm.fhir.database.utils.api.DataAccessException;
@@ -25,117 +33,185 @@ import com.ibm.fhir.database.utils.api.IDatabaseTranslator;
  * get the same connection back. Cooperates with the TransactionFactory
  * to provide a JEE-flavored experience, and makes it easy to write
  * code which will work in both J2SE and JEE environments.
- * 
+ * <p>
+ * Checkout doesn't take a lock: idle connections are kept in a concurrent deque (most recently
+ * used first, so warm connections are preferred) and the number of connections in use is bounded
+ * by a fair semaphore, so waiting threads are served in order. Idle connections are validated
+ * before reuse, retired when they exceed their maximum lifetime and evicted when they stay idle
+ * for too long. A background task keeps idle connections alive and reports connections which
+ * have been checked out for longer than the leak detection threshold.
+ * <p>
  * Does not support distributed transactions.
  */
-public class PoolConnectionProvider implements IConnectionProvider {
+public class PoolConnectionProvider implements IConnectionProvider, AutoCloseable {
     private static final Logger logger = Logger.getLogger(PoolConnectionProvider.class.getName());
-        
-    // Concurrency control for the pool
-    private final Lock lock = new ReentrantLock();
-    private final Condition waitForConnectionCondition = lock.newCondition();
-    
-    // The number of connections allocated
-    int allocated;
-    
-    // The list of free connections, available to be allocated
-    private Queue<Connection> free = new LinkedList<>();
-    
+
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 0;
+    public static final long DEFAULT_VALIDATION_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    public static final long DEFAULT_MAX_LIFETIME_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    public static final long DEFAULT_KEEPALIVE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(2);
+    public static final long DEFAULT_LEAK_DETECTION_THRESHOLD_MILLIS = 0;
+    public static final long HOUSEKEEPING_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    // Upper bounds (exclusive) of the wait time histogram buckets. The last bucket has no upper bound.
+    private static final long[] WAIT_TIME_BUCKETS_MILLIS = { 1, 10, 100, 1000, 10000 };
+
+    // How long a waiting thread waits before it logs that it is still waiting
+    private static final long WAIT_WARNING_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    // Shared by all pools, only runs the short housekeeping tasks. The tasks only hold weak references
+    // to their pools, so a pool which is never closed can still be garbage collected
+    private static final ScheduledExecutorService housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "fhir-pool-housekeeper");
+        t.setDaemon(true);
+        return t;
+    });
+
     // The connection provider we are decorating with pooling abilities
     private final IConnectionProvider connectionProvider;
 
-    // Connection active on the current thread, if any
-    private ThreadLocal<PooledConnection> activeConnection = new ThreadLocal<>();
-
     // The maximum number of connections allowed to be active
     private final int maxPoolSize;
-            
+
+    // One permit for each connection which may be checked out
+    private final Semaphore permits;
+
+    // The idle connections, most recently returned first
+    private final ConcurrentLinkedDeque<PoolEntry> free = new ConcurrentLinkedDeque<>();
+
+    // The connections currently checked out, for leak detection
+    private final Set<Checkout> active = ConcurrentHashMap.newKeySet();
+
+    // The number of physical connections open, active or idle
+    private final AtomicInteger allocated = new AtomicInteger();
+
+    // Connection active on the current thread, if any
+    private final ThreadLocal<Checkout> activeConnection = new ThreadLocal<>();
+
+    private volatile long maxWaitMillis = DEFAULT_MAX_WAIT_MILLIS;
+    private volatile long validationIntervalMillis = DEFAULT_VALIDATION_INTERVAL_MILLIS;
+    private volatile long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+    private volatile long maxLifetimeMillis = DEFAULT_MAX_LIFETIME_MILLIS;
+    private volatile long keepaliveIntervalMillis = DEFAULT_KEEPALIVE_INTERVAL_MILLIS;
+    private volatile long leakDetectionThresholdMillis = DEFAULT_LEAK_DETECTION_THRESHOLD_MILLIS;
+
+    // Statistics
+    private final LongAdder checkoutCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder discardCount = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAdder[] waitTimeHistogram = new LongAdder[WAIT_TIME_BUCKETS_MILLIS.length + 1];
+
+    private final Housekeeping housekeeping;
+
     /**
      * Public constructor
      * @param cp
      * @param maxPoolSize
      */
     public PoolConnectionProvider(IConnectionProvider cp, int maxPoolSize) {
+        if (maxPoolSize < 1) {
+            throw new IllegalArgumentException("maxPoolSize must be >= 1");
+        }
         this.connectionProvider = cp;
         this.maxPoolSize = maxPoolSize;
+        this.permits = new Semaphore(maxPoolSize, true);
+        for (int i = 0; i < waitTimeHistogram.length; i++) {
+            waitTimeHistogram[i] = new LongAdder();
+        }
+        this.housekeeping = new Housekeeping(this);
     }
 
     @Override
     public Connection getConnection() throws SQLException {
         // We use the same connection on a given thread each time it is requested
-        PooledConnection result = activeConnection.get();
-        if (result != null) {
-            if (result.incOpenCount() > 1) {
+        Checkout current = activeConnection.get();
+        if (current != null) {
+            if (current.connection.incOpenCount() > 1) {
                 // likely a programming error such as not using try-with-resource
                 logger.warning("Connection open count is > 1");
             }
-            return result;
+            return current.connection;
         }
-        
-        // No connection currently on this thread, so try to obtain the underlying
-        // connection from the pool
-        Connection c = null;
-        lock.lock();
+
+        // No connection currently on this thread, so wait for our turn to use one
+        long start = System.nanoTime();
+        acquirePermit(start);
+        long waitNanos = System.nanoTime() - start;
+        recordWait(waitNanos);
+
+        // Take the most recently used idle connection, or open a new one if there are none.
+        // It might take a while to establish a new connection, but we don't hold any lock
+        PoolEntry entry = null;
         try {
-            boolean assigned = false;
-            while (!assigned) {
-                if (free.isEmpty()) {
-                    if (this.allocated < this.maxPoolSize) {
-                        this.allocated++;
-                        assigned = true; // get connection outside of lock
-                    }
-                    else {
-                        // block until a connection frees up
-                        logger.info("Max connections allocated, waiting for connection to be freed");
-                        this.waitForConnectionCondition.await();
-                    }
-                }
-                else {
-                    // simply take the next connection from the head of the list
+            while (entry == null) {
+                entry = free.pollFirst();
+                if (entry == null) {
+                    entry = new PoolEntry(connectionProvider.getConnection());
+                    allocated.incrementAndGet();
+                } else if (isExpired(entry, System.nanoTime()) || !validate(entry, validationIntervalMillis)) {
+                    discard(entry);
+                    entry = null;
+                } else {
                     logger.fine("Using db connection from pool");
-                    c = free.poll();
-                    logger.fine("Got db connection from pool: " + c.toString());
-                    assigned = true;
                 }
             }
-        }
-        catch (InterruptedException x) {
-            throw new DataAccessException("Interrupted waiting for connection");
-        }
-        finally {
-            lock.unlock();
-        }
-        
-        // It might take a while to establish a new connection, so we do this after
-        // releasing the above lock to try and maximize concurrency.
-        if (c == null) {
-            try {
-                c = connectionProvider.getConnection();
-            }
-            catch (SQLException x) {
-                // Failed to acquire a connection, so we need to relinquish
-                // our allocation and give others a chance
-                lock.lock();
-                try {
-                    this.allocated--;
-                    this.waitForConnectionCondition.signal();
-                }
-                finally {
-                    lock.unlock();
-                }
-                throw x;
-            }
+        } catch (SQLException | RuntimeException x) {
+            // Failed to acquire a connection, so we need to relinquish
+            // our permit and give others a chance
+            permits.release();
+            throw x;
         }
 
         // Wrap the connection, and set it as active on this thread so we will always
         // use it until the current transaction is complete
-        result = new PooledConnection(this, c);
+        PooledConnection result = new PooledConnection(this, entry.connection);
         result.incOpenCount();
-        activeConnection.set(result);
-        
+        Checkout checkout = new Checkout(entry, result, leakDetectionThresholdMillis > 0 ? new Throwable("Connection acquired here") : null);
+        active.add(checkout);
+        activeConnection.set(checkout);
+        checkoutCount.increment();
+
         return result;
     }
-    
+
+    /**
+     * Wait until a connection may be checked out, up to the maximum wait time if one is configured
+     * @param start
+     * @throws SQLException
+     */
+    private void acquirePermit(long start) throws SQLException {
+        try {
+            if (permits.tryAcquire()) {
+                return;
+            }
+            logger.fine("Max connections in use, waiting for a connection to be freed");
+            while (true) {
+                long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                long timeout = WAIT_WARNING_MILLIS;
+                if (maxWaitMillis > 0) {
+                    if (waited >= maxWaitMillis) {
+                        timeoutCount.increment();
+                        throw new SQLTransientConnectionException("Timed out after " + waited + "ms waiting for a connection. " + getStatistics());
+                    }
+                    timeout = Math.min(timeout, maxWaitMillis - waited);
+                }
+                if (permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+                if (maxWaitMillis <= 0 || timeout == WAIT_WARNING_MILLIS) {
+                    logger.warning("Still waiting for a connection after " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms. " + getStatistics());
+                }
+            }
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("Interrupted waiting for connection");
+        }
+    }
+
     /**
      * Called when the connection is closed, which in this case is pretty much a NOP,
      * because this connection will stay active on this thread until the transaction
@@ -143,66 +219,67 @@ public class PoolConnectionProvider implements IConnectionProvider {
      * @param pc
      */
     protected void returnConnection(PooledConnection pc, boolean reuse) {
-        PooledConnection active = activeConnection.get();
-        
+        Checkout active = activeConnection.get();
+
         // Just look out for programming errors
         if (active == null) {
             throw new IllegalStateException("No active connection");
         }
-        else if (active != pc) {
+        else if (active.connection != pc) {
             throw new IllegalStateException("Active connection mismatch");
         }
     }
 
     /**
      * Remove the active connection on this thread. Called when the transaction completes
-     * @throws SQLException 
+     * @throws SQLException
      */
     protected void clearActiveConnection() throws SQLException {
-        PooledConnection pc = activeConnection.get();
-        if (pc != null) {
+        Checkout checkout = activeConnection.get();
+        if (checkout != null) {
+            PooledConnection pc = checkout.connection;
             // If the open count of current connection is bigger than 0, then it means the connection is
             // not "closed" yet, then we need to close it to reduce the open count by 1 before the connection
             // is added back to the connection pool.
-            // This could happen, e.g, in FHIRDbDAOImpl, the external connection is not closed after each 
-            // operation, instead, the connection should be closed only after the whole transaction is committed 
+            // This could happen, e.g, in FHIRDbDAOImpl, the external connection is not closed after each
+            // operation, instead, the connection should be closed only after the whole transaction is committed
             // or rolled back.
             if (pc.getOpenCount() > 0) {
                 pc.close();
             }
             this.activeConnection.remove();
+            this.active.remove(checkout);
             if (pc.getOpenCount() != 0) {
                 // Whoops. getConnection called again on the thread...possibly
                 // indicates the prior connection wasn't closed
                 logger.warning("PooledConnection open/close mismatch: " + pc.getOpenCount());
             }
-            
-            lock.lock();
+
             try {
-                if (pc.isReusable()) {
+                PoolEntry entry = checkout.entry;
+                if (pc.isReusable() && !isExpired(entry, System.nanoTime())) {
                     // underlying connection should still be good, so add it back into the pool
                     logger.fine("Adding connection back to pool");
-                    free.add(pc.getWrapped());
+                    entry.lastUsed = System.nanoTime();
+                    free.offerFirst(entry);
                 }
                 else {
-                    // Connection appears to be broken, so just close it and walk away
-                    logger.fine("Connection is broken, so closing it");
+                    // Connection appears to be broken or is too old, so just close it and walk away.
+                    // We now have one less allocated connection, which allows a waiting thread
+                    // to create a new one
+                    logger.fine("Connection is broken or expired, so closing it");
                     pc.forceClosed();
-                    // We now have one less allocated connection, so need to reduce our
-                    // count accordingly, which might unblock another thread waiting to
-                    // create a new connection
-                    this.allocated--;
+                    allocated.decrementAndGet();
+                    discardCount.increment();
                 }
-                
-                // Wake up a thread waiting for an available connection
-                this.waitForConnectionCondition.signal();
             }
             finally {
-                lock.unlock();
+                // Wake up a thread waiting for an available connection
+                permits.release();
             }
         }
     }
-    
+
     /**
      * Simple check to see if the exception is related to a connection error,
      * in which case the connection shouldn't be returned to the pool when closed
@@ -222,11 +299,11 @@ public class PoolConnectionProvider implements IConnectionProvider {
     public void commitTransaction() throws SQLException {
 
         // Run commit on the connection associated with the current thread
-        PooledConnection c = activeConnection.get();
-        if (c != null) {
+        Checkout checkout = activeConnection.get();
+        if (checkout != null) {
             try {
                 logger.fine("Committing transaction");
-                c.getWrapped().commit();
+                checkout.connection.getWrapped().commit();
             }
             finally {
                 clearActiveConnection();
@@ -237,15 +314,16 @@ public class PoolConnectionProvider implements IConnectionProvider {
             // and so there's nothing to do. Not a problem.
             logger.warning("No connection on this thread");
         }
-        
+
     }
 
     @Override
     public void rollbackTransaction() throws SQLException {
 
         // Run commit on the connection associated with the current thread
-        PooledConnection pc = activeConnection.get();
-        if (pc != null) {
+        Checkout checkout = activeConnection.get();
+        if (checkout != null) {
+            PooledConnection pc = checkout.connection;
             try {
                 logger.warning("Rolling back transaction");
                 pc.getWrapped().rollback();
@@ -266,7 +344,337 @@ public class PoolConnectionProvider implements IConnectionProvider {
 
     @Override
     public void describe(String prefix, StringBuilder cfg, String key) {
-        // Not Implemented
+        cfg.append(String.format("%s.%s.maxPoolSize=%d\n", prefix, key, maxPoolSize));
+        cfg.append(String.format("%s.%s.maxWaitMillis=%d\n", prefix, key, maxWaitMillis));
+        cfg.append(String.format("%s.%s.idleTimeoutMillis=%d\n", prefix, key, idleTimeoutMillis));
+        cfg.append(String.format("%s.%s.maxLifetimeMillis=%d\n", prefix, key, maxLifetimeMillis));
+        connectionProvider.describe(prefix, cfg, key);
+    }
+
+    /**
+     * Stop the housekeeping of this pool and close its idle connections. Connections which are
+     * still checked out are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        housekeeping.cancel();
+        maxLifetimeMillis = -1;
+        PoolEntry entry;
+        while ((entry = free.pollFirst()) != null) {
+            discard(entry);
+        }
+    }
+
+    /**
+     * Background task which reports leaked connections, evicts idle and expired connections
+     * and validates the idle connections which haven't been used for a while
+     */
+    private void housekeep() {
+        try {
+            long now = System.nanoTime();
+
+            long leakThreshold = leakDetectionThresholdMillis;
+            if (leakThreshold > 0) {
+                for (Checkout checkout : active) {
+                    if (!checkout.leakReported && now - checkout.checkedOut > TimeUnit.MILLISECONDS.toNanos(leakThreshold)) {
+                        checkout.leakReported = true;
+                        logger.log(Level.WARNING, "Connection has been checked out for more than " + leakThreshold
+                                + "ms, it may have been leaked", checkout.acquiredAt);
+                    }
+                }
+            }
+
+            for (PoolEntry entry : free) {
+                boolean idle = idleTimeoutMillis > 0 && now - entry.lastUsed > TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+                boolean expired = idle || isExpired(entry, now);
+                boolean keepalive = keepaliveIntervalMillis > 0 && now - entry.lastValidated > TimeUnit.MILLISECONDS.toNanos(keepaliveIntervalMillis);
+
+                // Only touch the entry if we win the race against a checkout
+                if ((expired || keepalive) && free.remove(entry)) {
+                    if (expired || !validate(entry, 0)) {
+                        discard(entry);
+                    } else {
+                        free.offerLast(entry);
+                    }
+                }
+            }
+
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Connection pool " + getStatistics());
+            }
+        } catch (Throwable t) {
+            // Don't let a failure stop future runs
+            logger.log(Level.WARNING, "Connection pool housekeeping failed", t);
+        }
+    }
+
+    /**
+     * @return true if the connection has outlived its maximum lifetime
+     */
+    private boolean isExpired(PoolEntry entry, long now) {
+        long maxLifetime = maxLifetimeMillis;
+        return maxLifetime < 0 || maxLifetime > 0 && now - entry.created > TimeUnit.MILLISECONDS.toNanos(maxLifetime);
+    }
+
+    /**
+     * Check that the connection still works, unless it was validated within the given interval
+     * @return false if the connection is broken
+     */
+    private boolean validate(PoolEntry entry, long intervalMillis) {
+        long now = System.nanoTime();
+        if (intervalMillis > 0 && now - entry.lastValidated < TimeUnit.MILLISECONDS.toNanos(intervalMillis)) {
+            return true;
+        }
+        try {
+            if (entry.connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                entry.lastValidated = now;
+                return true;
+            }
+        } catch (SQLException x) {
+            logger.fine("Connection validation failed: " + x.getMessage());
+        }
+        logger.info("Discarding broken connection from pool");
+        return false;
+    }
+
+    /**
+     * Close the physical connection of an entry which is no longer in the pool
+     */
+    private void discard(PoolEntry entry) {
+        try {
+            entry.connection.close();
+        } catch (Exception x) {
+            // nop
+        } finally {
+            allocated.decrementAndGet();
+            discardCount.increment();
+        }
+    }
+
+    private void recordWait(long waitNanos) {
+        totalWaitNanos.add(waitNanos);
+        long waitMillis = TimeUnit.NANOSECONDS.toMillis(waitNanos);
+        int bucket = 0;
+        while (bucket < WAIT_TIME_BUCKETS_MILLIS.length && waitMillis >= WAIT_TIME_BUCKETS_MILLIS[bucket]) {
+            bucket++;
+        }
+        waitTimeHistogram[bucket].increment();
+    }
+
+    /**
+     * @param maxWaitMillis the maximum time to wait for a connection, or 0 to wait as long as it takes
+     */
+    public void setMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * @param validationIntervalMillis an idle connection is validated before it is reused if it wasn't
+     *     validated within this interval; 0 to validate it each time
+     */
+    public void setValidationIntervalMillis(long validationIntervalMillis) {
+        this.validationIntervalMillis = validationIntervalMillis;
+    }
+
+    /**
+     * @param idleTimeoutMillis the time after which an idle connection is closed, or 0 to keep it open
+     */
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * @param maxLifetimeMillis the time after which a connection is closed once it is returned, or 0 for no limit
+     */
+    public void setMaxLifetimeMillis(long maxLifetimeMillis) {
+        this.maxLifetimeMillis = maxLifetimeMillis;
+    }
+
+    /**
+     * @param keepaliveIntervalMillis the interval at which idle connections are validated in the background,
+     *     or 0 to disable
+     */
+    public void setKeepaliveIntervalMillis(long keepaliveIntervalMillis) {
+        this.keepaliveIntervalMillis = keepaliveIntervalMillis;
+    }
+
+    /**
+     * @param leakDetectionThresholdMillis the time after which a connection which is still checked out is reported
+     *     as a possible leak, together with the stack trace of its checkout, or 0 to disable
+     */
+    public void setLeakDetectionThresholdMillis(long leakDetectionThresholdMillis) {
+        this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
     }
 
+    /**
+     * @return the maximum number of connections
+     */
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    /**
+     * @return the number of connections currently checked out
+     */
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    /**
+     * @return the number of open connections which are not checked out
+     */
+    public int getIdleCount() {
+        return free.size();
+    }
+
+    /**
+     * @return the number of open connections
+     */
+    public int getTotalCount() {
+        return allocated.get();
+    }
+
+    /**
+     * @return the (estimated) number of threads waiting for a connection
+     */
+    public int getWaiterCount() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * @return the number of connections checked out so far
+     */
+    public long getCheckoutCount() {
+        return checkoutCount.sum();
+    }
+
+    /**
+     * @return the number of times a thread gave up waiting for a connection
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    /**
+     * @return the number of connections closed because they were broken, expired or idle
+     */
+    public long getDiscardCount() {
+        return discardCount.sum();
+    }
+
+    /**
+     * @return the total time spent by threads waiting for a connection, in milliseconds
+     */
+    public long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.sum());
+    }
+
+    /**
+     * @return the upper bounds (exclusive) in milliseconds of the buckets of {@link #getWaitTimeHistogram()},
+     *     except for the last bucket which has no upper bound
+     */
+    public static long[] getWaitTimeBucketBounds() {
+        return WAIT_TIME_BUCKETS_MILLIS.clone();
+    }
+
+    /**
+     * @return the number of checkouts which waited for a connection for a time within each bucket
+     */
+    public long[] getWaitTimeHistogram() {
+        long[] result = new long[waitTimeHistogram.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = waitTimeHistogram[i].sum();
+        }
+        return result;
+    }
+
+    /**
+     * @return a one-line summary of the pool statistics, for logging
+     */
+    public String getStatistics() {
+        StringBuilder result = new StringBuilder();
+        result.append("active=").append(getActiveCount());
+        result.append(" idle=").append(getIdleCount());
+        result.append(" total=").append(getTotalCount());
+        result.append(" max=").append(maxPoolSize);
+        result.append(" waiters=").append(getWaiterCount());
+        result.append(" checkouts=").append(getCheckoutCount());
+        result.append(" timeouts=").append(getTimeoutCount());
+        result.append(" discarded=").append(getDiscardCount());
+        result.append(" waitMillis=").append(getTotalWaitMillis());
+        long[] histogram = getWaitTimeHistogram();
+        result.append(" waitHistogram=[");
+        for (int i = 0; i < histogram.length; i++) {
+            if (i > 0) {
+                result.append(", ");
+            }
+            result.append(i < WAIT_TIME_BUCKETS_MILLIS.length ? "<" + WAIT_TIME_BUCKETS_MILLIS[i] + "ms" : ">=" + WAIT_TIME_BUCKETS_MILLIS[i - 1] + "ms");
+            result.append(": ").append(histogram[i]);
+        }
+        result.append("]");
+        return result.toString();
+    }
+
+    /**
+     * The scheduled housekeeping of a pool. Cancels itself once the pool has been garbage collected
+     */
+    private static class Housekeeping implements Runnable {
+        private final WeakReference<PoolConnectionProvider> pool;
+        private final ScheduledFuture<?> future;
+
+        private Housekeeping(PoolConnectionProvider pool) {
+            this.pool = new WeakReference<>(pool);
+            this.future = housekeeper.scheduleWithFixedDelay(this, HOUSEKEEPING_INTERVAL_MILLIS,
+                HOUSEKEEPING_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            PoolConnectionProvider pool = this.pool.get();
+            if (pool != null) {
+                pool.housekeep();
+            } else {
+                cancel();
+            }
+        }
+
+        private void cancel() {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * A physical connection owned by the pool
+     */
+    private static class PoolEntry {
+        private final Connection connection;
+        private final long created;
+        private volatile long lastUsed;
+        private volatile long lastValidated;
+
+        private PoolEntry(Connection connection) {
+            this.connection = connection;
+            this.created = System.nanoTime();
+            this.lastUsed = created;
+            this.lastValidated = created;
+        }
+    }
+
+    /**
+     * A connection checked out by a thread
+     */
+    private static class Checkout {
+        private final PoolEntry entry;
+        private final PooledConnection connection;
+        private final long checkedOut = System.nanoTime();
+        // Where the connection was acquired, if leak detection is enabled
+        private final Throwable acquiredAt;
+        private volatile boolean leakReported;
+
+        private Checkout(PoolEntry entry, PooledConnection connection, Throwable acquiredAt) {
+            this.entry = entry;
+            this.connection = connection;
+            this.acquiredAt = acquiredAt;
+        }
+    }
 }
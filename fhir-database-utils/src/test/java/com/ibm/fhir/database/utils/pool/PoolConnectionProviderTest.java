@@ -0,0 +1,193 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.database.utils.pool;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.database.utils.api.IConnectionProvider;
+import com.ibm.fhir.database.utils.api.IDatabaseTranslator;
+import com.ibm.fhir.database.utils.derby.DerbyTranslator;
+
+/**
+ * Tests the checkout, validation and eviction behavior of the connection pool
+ */
+public class PoolConnectionProviderTest {
+
+    /**
+     * Opens connections to an in-memory Derby database
+     */
+    private static class DerbyMemoryProvider implements IConnectionProvider {
+        private final IDatabaseTranslator translator = new DerbyTranslator();
+        private int opened;
+
+        @Override
+        public synchronized Connection getConnection() throws SQLException {
+            opened++;
+            Connection c = DriverManager.getConnection("jdbc:derby:memory:poolTest;create=true");
+            c.setAutoCommit(false);
+            return c;
+        }
+
+        @Override
+        public IDatabaseTranslator getTranslator() {
+            return translator;
+        }
+
+        @Override
+        public void commitTransaction() throws SQLException {
+            // NOP
+        }
+
+        @Override
+        public void rollbackTransaction() throws SQLException {
+            // NOP
+        }
+
+        @Override
+        public void describe(String prefix, StringBuilder cfg, String key) {
+            // NOP
+        }
+    }
+
+    @Test
+    public void testThreadAffinityAndReuse() throws Exception {
+        DerbyMemoryProvider cp = new DerbyMemoryProvider();
+        try (PoolConnectionProvider pool = new PoolConnectionProvider(cp, 2)) {
+            Connection first;
+            try (Connection c = pool.getConnection()) {
+                first = ((PooledConnection) c).getWrapped();
+                try (Connection again = pool.getConnection()) {
+                    assertSame(again, c);
+                }
+                assertEquals(pool.getActiveCount(), 1);
+            }
+            pool.commitTransaction();
+            assertEquals(pool.getActiveCount(), 0);
+            assertEquals(pool.getIdleCount(), 1);
+
+            // the idle connection is reused rather than opening a new one
+            try (Connection c = pool.getConnection()) {
+                assertSame(((PooledConnection) c).getWrapped(), first);
+            }
+            pool.commitTransaction();
+            assertEquals(cp.opened, 1);
+            assertEquals(pool.getCheckoutCount(), 2);
+        }
+    }
+
+    @Test
+    public void testMaxWait() throws Exception {
+        DerbyMemoryProvider cp = new DerbyMemoryProvider();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (PoolConnectionProvider pool = new PoolConnectionProvider(cp, 1)) {
+            pool.setMaxWaitMillis(100);
+            pool.getConnection();
+
+            // the only connection is held by this thread, so another thread has to give up
+            Future<?> other = executor.submit(() -> {
+                try {
+                    pool.getConnection();
+                    fail("expected a timeout");
+                } catch (SQLTransientConnectionException x) {
+                    // expected
+                }
+                return null;
+            });
+            other.get(10, TimeUnit.SECONDS);
+            assertEquals(pool.getTimeoutCount(), 1);
+
+            // and succeeds once it is returned
+            pool.commitTransaction();
+            Future<?> retry = executor.submit(() -> {
+                pool.getConnection();
+                pool.commitTransaction();
+                return null;
+            });
+            retry.get(10, TimeUnit.SECONDS);
+            assertEquals(pool.getTotalCount(), 1);
+
+            long checkouts = 0;
+            for (long count : pool.getWaitTimeHistogram()) {
+                checkouts += count;
+            }
+            assertEquals(checkouts, 2);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testBrokenConnectionDiscarded() throws Exception {
+        DerbyMemoryProvider cp = new DerbyMemoryProvider();
+        try (PoolConnectionProvider pool = new PoolConnectionProvider(cp, 2)) {
+            pool.setValidationIntervalMillis(0);
+            Connection first;
+            try (Connection c = pool.getConnection()) {
+                first = ((PooledConnection) c).getWrapped();
+            }
+            pool.commitTransaction();
+
+            // closed behind the pool's back, so validation must fail on checkout
+            first.close();
+            try (Connection c = pool.getConnection()) {
+                assertNotSame(((PooledConnection) c).getWrapped(), first);
+            }
+            pool.commitTransaction();
+            assertEquals(pool.getDiscardCount(), 1);
+            assertEquals(pool.getTotalCount(), 1);
+        }
+    }
+
+    @Test
+    public void testRollbackAndMaxLifetime() throws Exception {
+        DerbyMemoryProvider cp = new DerbyMemoryProvider();
+        try (PoolConnectionProvider pool = new PoolConnectionProvider(cp, 2)) {
+            // rolled back connections are not trusted, so they are closed
+            pool.getConnection().close();
+            pool.rollbackTransaction();
+            assertEquals(pool.getTotalCount(), 0);
+            assertEquals(pool.getIdleCount(), 0);
+
+            // connections past their lifetime are closed when returned
+            pool.setMaxLifetimeMillis(1);
+            pool.getConnection().close();
+            Thread.sleep(5);
+            pool.commitTransaction();
+            assertEquals(pool.getTotalCount(), 0);
+            assertEquals(cp.opened, 2);
+            assertTrue(pool.getStatistics().contains("discarded=2"));
+        }
+    }
+
+    @Test
+    public void testUnclosedPoolIsCollected() throws Exception {
+        // the scheduled housekeeping must not keep a pool reachable after it has been dropped
+        WeakReference<PoolConnectionProvider> ref = new WeakReference<>(new PoolConnectionProvider(new DerbyMemoryProvider(), 2));
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+    }
+}
@@ -17,6 +17,7 @@ import static com.ibm.fhir.model.util.ModelSupport.getChoiceElementName;
 import java.io.InputStream;
 import java.io.Reader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Stack;
 import java.util.StringJoiner;
@@ -25,11 +26,13 @@ import javax.annotation.Generated;
 import javax.json.Json;
 import javax.json.JsonArray;
 import javax.json.JsonNumber;
+import javax.json.JsonBuilderFactory;
 import javax.json.JsonObject;
-import javax.json.JsonReader;
-import javax.json.JsonReaderFactory;
+import javax.json.JsonObjectBuilder;
 import javax.json.JsonString;
 import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
 
 import com.ibm.fhir.model.parser.FHIRParser;
 import com.ibm.fhir.model.parser.FHIRAbstractParser;
@@ -48,7 +51,8 @@ import net.jcip.annotations.NotThreadSafe;
 @Generated("com.ibm.fhir.tools.CodeGenerator")
 public class FHIRJsonParser extends FHIRAbstractParser {
     public static boolean DEBUG = false;
-    private static final JsonReaderFactory JSON_READER_FACTORY = Json.createReaderFactory(null);
+    private static final JsonParserFactory JSON_PARSER_FACTORY = Json.createParserFactory(null);
+    private static final JsonBuilderFactory JSON_BUILDER_FACTORY = Json.createBuilderFactory(null);
 
     private final Stack<java.lang.String> stack = new Stack<>();
 
@@ -62,9 +66,8 @@ public class FHIRJsonParser extends FHIRAbstractParser {
     }
 
     public <T extends Resource> T parseAndFilter(InputStream in, Collection<java.lang.String> elementsToInclude) throws FHIRParserException {
-        try (JsonReader jsonReader = JSON_READER_FACTORY.createReader(nonClosingInputStream(in), StandardCharsets.UTF_8)) {
-            JsonObject jsonObject = jsonReader.readObject();
-            return parseAndFilter(jsonObject, elementsToInclude);
+        try (JsonParser jsonParser = JSON_PARSER_FACTORY.createParser(nonClosingInputStream(in), StandardCharsets.UTF_8)) {
+            return parseAndFilter(jsonParser, elementsToInclude);
         } catch (FHIRParserException e) {
             throw e;
         } catch (Exception e) {
@@ -78,9 +81,8 @@ public class FHIRJsonParser extends FHIRAbstractParser {
     }
 
     public <T extends Resource> T parseAndFilter(Reader reader, Collection<java.lang.String> elementsToInclude) throws FHIRParserException {
-        try (JsonReader jsonReader = JSON_READER_FACTORY.createReader(nonClosingReader(reader))) {
-            JsonObject jsonObject = jsonReader.readObject();
-            return parseAndFilter(jsonObject, elementsToInclude);
+        try (JsonParser jsonParser = JSON_PARSER_FACTORY.createParser(nonClosingReader(reader))) {
+            return parseAndFilter(jsonParser, elementsToInclude);
         } catch (FHIRParserException e) {
             throw e;
         } catch (Exception e) {
@@ -107,6 +109,18 @@ public class FHIRJsonParser extends FHIRAbstractParser {
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private <T extends Resource> T parseAndFilter(JsonParser jsonParser, Collection<java.lang.String> elementsToInclude) throws FHIRParserException {
+        reset();
+        if (!jsonParser.hasNext() || jsonParser.next() != JsonParser.Event.START_OBJECT) {
+            throw new IllegalArgumentException("Expected: OBJECT");
+        }
+        if (elementsToInclude != null) {
+            return parseAndFilter(jsonParser.getObject(), elementsToInclude);
+        }
+        return (T) parseResource(jsonParser);
+    }
+
     private void reset() {
         stack.clear();
     }
@@ -119,6 +133,44 @@ public class FHIRJsonParser extends FHIRAbstractParser {
         return false;
     }
 
+    private Resource parseResource(JsonParser jsonParser) {
+        // the entries of a Bundle are parsed one at a time so that only a single entry is held as a JsonObject at once
+        JsonObjectBuilder objectBuilder = JSON_BUILDER_FACTORY.createObjectBuilder();
+        java.lang.String resourceTypeName = null;
+        java.util.List<Bundle.Entry> entries = null;
+        while (jsonParser.next() == JsonParser.Event.KEY_NAME) {
+            java.lang.String key = jsonParser.getString();
+            JsonParser.Event event = jsonParser.next();
+            if ("entry".equals(key) && "Bundle".equals(resourceTypeName) && event == JsonParser.Event.START_ARRAY) {
+                entries = parseBundleEntries(jsonParser);
+            } else {
+                JsonValue jsonValue = jsonParser.getValue();
+                if ("resourceType".equals(key) && jsonValue.getValueType() == JsonValue.ValueType.STRING) {
+                    resourceTypeName = ((JsonString) jsonValue).getString();
+                }
+                objectBuilder.add(key, jsonValue);
+            }
+        }
+        JsonObject jsonObject = objectBuilder.build();
+        Class<?> resourceType = getResourceType(jsonObject);
+        if (entries == null) {
+            return parseResource(resourceType.getSimpleName(), jsonObject, -1);
+        }
+        Bundle bundle = parseBundle(resourceType.getSimpleName(), jsonObject, -1);
+        return bundle.toBuilder().entry(entries).build();
+    }
+
+    private java.util.List<Bundle.Entry> parseBundleEntries(JsonParser jsonParser) {
+        stackPush("Bundle", -1);
+        java.util.List<Bundle.Entry> entries = new ArrayList<>();
+        while (jsonParser.next() != JsonParser.Event.END_ARRAY) {
+            JsonValue jsonValue = jsonParser.getValue();
+            entries.add(parseBundleEntry("entry", (JsonObject) jsonValue, entries.size()));
+        }
+        stackPop();
+        return entries;
+    }
+
     private Resource parseResource(java.lang.String elementName, JsonObject jsonObject, int elementIndex) {
         if (jsonObject == null) {
             return null;
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019
+ * (C) Copyright IBM Corp. 2019, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -26,21 +26,35 @@ import com.ibm.fhir.model.util.JsonSupport;
 public class FHIRJsonPatch implements FHIRPatch {
     private static final JsonProvider PROVIDER = JsonProvider.provider();
     private final JsonPatch patch;
+    private final JsonArray operations;
     
     FHIRJsonPatch(JsonArray array) {
-        this(PROVIDER.createPatch(array));
+        this.patch = PROVIDER.createPatch(array);
+        this.operations = array;
     }
     
     FHIRJsonPatch(JsonPatch patch) {
         this.patch = Objects.requireNonNull(patch);
+        this.operations = patch.toJsonArray();
     }
     
     public JsonPatch getJsonPatch() {
         return patch;
     }
 
+    /**
+     * Apply this patch to a resource
+     * 
+     * <p>The operations are applied directly to the model whenever possible, so that the resource and the elements
+     * which aren't changed by the patch don't need to be serialized and parsed again. Otherwise, the patch is applied
+     * to the JSON representation of the resource.
+     */
     @Override
     public <T extends Resource> T apply(T resource) throws FHIRPatchException {
+        T result = JsonPatchApplier.apply(resource, operations);
+        if (result != null) {
+            return result;
+        }
         try {
             JsonObject object = JsonSupport.toJsonObject(resource);
             return FHIRParser.parser(Format.JSON)
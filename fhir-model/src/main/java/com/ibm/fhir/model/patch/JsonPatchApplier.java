@@ -0,0 +1,551 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.model.patch;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.spi.JsonProvider;
+
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRJsonParser;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.parser.exception.FHIRParserException;
+import com.ibm.fhir.model.resource.Parameters;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.Element;
+import com.ibm.fhir.model.type.Extension;
+import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.model.util.ModelSupport.ElementInfo;
+
+/**
+ * Applies the operations of a JSON Patch directly to the immutable model, without serializing the resource.
+ * <br>
+ * Each JSON pointer is translated to a path of elements in the model and each change rebuilds only the resource
+ * and elements along that path, so untouched subtrees are shared with the original resource. Values are converted
+ * from JSON by parsing them as the value of a Parameters parameter.
+ * <br>
+ * Operations whose JSON semantics don't map one-to-one onto the model (e.g. pointers to the id or extensions of a
+ * primitive, lists of primitives with extensions, or type conversions between elements) aren't applied; for those,
+ * and for any patch that fails, {@link #apply(Resource, JsonArray)} returns null and the caller must apply the
+ * patch to the JSON representation of the resource instead, which also produces the canonical error messages.
+ */
+final class JsonPatchApplier {
+    private static final JsonProvider PROVIDER = JsonProvider.provider();
+
+    private static final int NO_INDEX = -1;
+    private static final int APPEND = -2;
+
+    private static final Map<Class<?>, Map<String, Method>> GETTERS = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Map<String, Method>> SETTERS = new ConcurrentHashMap<>();
+
+    private JsonPatchApplier() { }
+
+    /**
+     * @param resource
+     *     the resource to patch
+     * @param operations
+     *     the operations of the JSON Patch
+     * @return the patched resource, or null if the patch can't be applied directly to the model
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Resource> T apply(T resource, JsonArray operations) {
+        try {
+            Resource result = resource;
+            for (JsonValue operation : operations) {
+                if (!(operation instanceof JsonObject)) {
+                    return null;
+                }
+                result = apply(result, (JsonObject) operation);
+            }
+            return (T) result;
+        } catch (UnsupportedPatchException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Resource apply(Resource resource, JsonObject operation) throws UnsupportedPatchException {
+        String path = getString(operation, "path");
+        switch (getString(operation, "op")) {
+        case "add": {
+            List<Step> steps = resolve(resource, path);
+            return add(steps, convert(steps, getValue(operation)));
+        }
+        case "remove":
+            return remove(resolve(resource, path));
+        case "replace": {
+            List<Step> steps = resolve(resource, path);
+            return replace(steps, convert(steps, getValue(operation)));
+        }
+        case "move": {
+            String from = getString(operation, "from");
+            if (path.equals(from) || path.startsWith(from + "/")) {
+                throw new UnsupportedPatchException();
+            }
+            List<Step> steps = resolve(resource, from);
+            Object value = read(steps);
+            return add(resolve(remove(steps), path), value);
+        }
+        case "copy":
+            return add(resolve(resource, path), read(resolve(resource, getString(operation, "from"))));
+        case "test": {
+            List<Step> steps = resolve(resource, path);
+            // a failed test is left to the JSON Patch, which reports it
+            if (!read(steps).equals(convert(steps, getValue(operation)))) {
+                throw new UnsupportedPatchException();
+            }
+            return resource;
+        }
+        default:
+            throw new UnsupportedPatchException();
+        }
+    }
+
+    private static Resource add(List<Step> steps, Object value) throws UnsupportedPatchException {
+        Step last = steps.get(steps.size() - 1);
+        Object current = get(last.owner, last.info);
+        Object content;
+        if (last.info.isRepeating()) {
+            List<Object> list = copyOf(current);
+            if (last.index == NO_INDEX) {
+                content = checkList(last.type, value);
+            } else if (last.index == APPEND) {
+                list.add(checkItem(last.type, value));
+                content = list;
+            } else if (last.index <= list.size()) {
+                list.add(last.index, checkItem(last.type, value));
+                content = list;
+            } else {
+                throw new UnsupportedPatchException();
+            }
+        } else {
+            if (current != null && current.getClass() != last.type && last.info.isChoice()) {
+                // JSON would hold two values for the choice element
+                throw new UnsupportedPatchException();
+            }
+            content = withExtras(checkItem(last.type, value), current);
+        }
+        return rebuild(steps, content);
+    }
+
+    private static Resource replace(List<Step> steps, Object value) throws UnsupportedPatchException {
+        Step last = steps.get(steps.size() - 1);
+        checkExists(steps);
+        Object content;
+        if (last.info.isRepeating() && last.index != NO_INDEX) {
+            List<Object> list = copyOf(get(last.owner, last.info));
+            list.set(last.index, checkItem(last.type, value));
+            content = list;
+        } else if (last.info.isRepeating()) {
+            copyOf(get(last.owner, last.info));
+            content = checkList(last.type, value);
+        } else {
+            content = withExtras(checkItem(last.type, value), get(last.owner, last.info));
+        }
+        return rebuild(steps, content);
+    }
+
+    private static Resource remove(List<Step> steps) throws UnsupportedPatchException {
+        Step last = steps.get(steps.size() - 1);
+        checkExists(steps);
+        Object content;
+        if (last.info.isRepeating() && last.index != NO_INDEX) {
+            List<Object> list = copyOf(get(last.owner, last.info));
+            list.remove(last.index);
+            content = list;
+        } else if (last.info.isRepeating()) {
+            copyOf(get(last.owner, last.info));
+            content = new ArrayList<>();
+        } else {
+            if (hasExtras(get(last.owner, last.info))) {
+                // JSON would keep the id and extensions of the primitive
+                throw new UnsupportedPatchException();
+            }
+            content = null;
+        }
+        return rebuild(steps, content);
+    }
+
+    /**
+     * @return the value at the end of the path, as it is represented in JSON
+     * @throws UnsupportedPatchException
+     *     if the value doesn't exist in JSON or can't be represented by a model object alone
+     */
+    private static Object read(List<Step> steps) throws UnsupportedPatchException {
+        Object value = checkExists(steps);
+        if (value instanceof List) {
+            for (Object item : (List<?>) value) {
+                if (hasExtras(item)) {
+                    throw new UnsupportedPatchException();
+                }
+            }
+        } else if (hasExtras(value)) {
+            throw new UnsupportedPatchException();
+        }
+        return value;
+    }
+
+    /**
+     * @return the value at the end of the path
+     * @throws UnsupportedPatchException
+     *     if the JSON representation of the resource has no value at the end of the path
+     */
+    private static Object checkExists(List<Step> steps) throws UnsupportedPatchException {
+        Step last = steps.get(steps.size() - 1);
+        Object value = get(last.owner, last.info);
+        if (last.info.isRepeating()) {
+            List<?> list = (List<?>) value;
+            if (last.index == NO_INDEX) {
+                if (list.isEmpty()) {
+                    throw new UnsupportedPatchException();
+                }
+                return list;
+            }
+            if (last.index == APPEND || last.index >= list.size()) {
+                throw new UnsupportedPatchException();
+            }
+            value = list.get(last.index);
+        } else if (value == null || (value.getClass() != last.type && last.info.isChoice())) {
+            throw new UnsupportedPatchException();
+        }
+        if (value instanceof Element && ModelSupport.isPrimitiveType(value.getClass()) && !((Element) value).hasValue()) {
+            throw new UnsupportedPatchException();
+        }
+        return value;
+    }
+
+    /**
+     * Translates a JSON pointer into the path of elements it selects, starting at the resource
+     */
+    private static List<Step> resolve(Resource resource, String pointer) throws UnsupportedPatchException {
+        if (!pointer.startsWith("/")) {
+            throw new UnsupportedPatchException();
+        }
+        String[] tokens = pointer.substring(1).split("/", -1);
+        List<Step> steps = new ArrayList<>();
+        Object owner = resource;
+        int i = 0;
+        while (true) {
+            if (!(owner instanceof Resource || owner instanceof Element) || ModelSupport.isPrimitiveType(owner.getClass())) {
+                throw new UnsupportedPatchException();
+            }
+            String token = unescape(tokens[i]);
+            ElementInfo info = ModelSupport.getElementInfo(owner.getClass(), token);
+            Class<?> type;
+            if (info != null) {
+                if (info.isChoice()) {
+                    throw new UnsupportedPatchException();
+                }
+                type = info.getType();
+            } else {
+                info = ModelSupport.getChoiceElementInfo(owner.getClass(), token);
+                if (info == null) {
+                    throw new UnsupportedPatchException();
+                }
+                type = getChoiceType(info, token);
+            }
+            if (java.lang.String.class.equals(type)) {
+                // the id of an element or resource, or the url of an extension
+                throw new UnsupportedPatchException();
+            }
+            int index = NO_INDEX;
+            if (info.isRepeating() && i + 1 < tokens.length) {
+                index = toIndex(tokens[++i]);
+            }
+            Step step = new Step(owner, info, type, index);
+            steps.add(step);
+            if (++i == tokens.length) {
+                return steps;
+            }
+            Object child = get(owner, info);
+            if (index == NO_INDEX) {
+                owner = child;
+            } else if (index >= 0 && index < ((List<?>) child).size()) {
+                owner = ((List<?>) child).get(index);
+            } else {
+                throw new UnsupportedPatchException();
+            }
+            if (owner == null || (owner.getClass() != type && info.isChoice())) {
+                throw new UnsupportedPatchException();
+            }
+        }
+    }
+
+    /**
+     * Replaces the content of the last element in the path and rebuilds each of its ancestors
+     */
+    private static Resource rebuild(List<Step> steps, Object content) throws UnsupportedPatchException {
+        Step last = steps.get(steps.size() - 1);
+        Object value = set(last.owner, last.info, content);
+        for (int i = steps.size() - 2; i >= 0; i--) {
+            Step step = steps.get(i);
+            if (step.index == NO_INDEX) {
+                value = set(step.owner, step.info, value);
+            } else {
+                List<Object> list = copyOf(get(step.owner, step.info));
+                list.set(step.index, value);
+                value = set(step.owner, step.info, list);
+            }
+        }
+        return (Resource) value;
+    }
+
+    private static Object get(Object owner, ElementInfo info) throws UnsupportedPatchException {
+        Method getter = GETTERS.computeIfAbsent(owner.getClass(), k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(info.getName(), name -> findGetter(owner.getClass(), name));
+        if (getter == null) {
+            throw new UnsupportedPatchException();
+        }
+        try {
+            return getter.invoke(owner);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedPatchException();
+        }
+    }
+
+    private static Object set(Object owner, ElementInfo info, Object content) throws UnsupportedPatchException {
+        com.ibm.fhir.model.builder.Builder<?> builder = (owner instanceof Resource) ?
+                ((Resource) owner).toBuilder() : ((Element) owner).toBuilder();
+        Method setter = SETTERS.computeIfAbsent(builder.getClass(), k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(info.getName(), name -> findSetter(builder.getClass(), info));
+        if (setter == null) {
+            throw new UnsupportedPatchException();
+        }
+        try {
+            setter.invoke(builder, content);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedPatchException();
+        }
+        return builder.build();
+    }
+
+    private static Method findGetter(Class<?> modelClass, String elementName) {
+        try {
+            return modelClass.getMethod("get" + capitalize(javaName(elementName)));
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static Method findSetter(Class<?> builderClass, ElementInfo info) {
+        Class<?> parameterType = info.isRepeating() ? Collection.class : info.isChoice() ? Element.class : info.getType();
+        String name = javaName(info.getName());
+        try {
+            return builderClass.getMethod(ModelSupport.isKeyword(name) ? "_" + name : name, parameterType);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Converts a JSON value to the model object(s) of the element at the end of the path
+     */
+    private static Object convert(List<Step> steps, JsonValue value) throws UnsupportedPatchException {
+        Step last = steps.get(steps.size() - 1);
+        if (last.info.isRepeating() && last.index == NO_INDEX) {
+            if (!(value instanceof JsonArray)) {
+                throw new UnsupportedPatchException();
+            }
+            List<Object> list = new ArrayList<>();
+            for (JsonValue item : (JsonArray) value) {
+                list.add(convert(last.type, item));
+            }
+            return list;
+        }
+        return convert(last.type, value);
+    }
+
+    private static Object convert(Class<?> type, JsonValue value) throws UnsupportedPatchException {
+        if (value == null || value == JsonValue.NULL || value instanceof JsonArray) {
+            throw new UnsupportedPatchException();
+        }
+        if (Resource.class.isAssignableFrom(type)) {
+            if (!(value instanceof JsonObject)) {
+                throw new UnsupportedPatchException();
+            }
+            Resource resource = parse((JsonObject) value);
+            if (!type.isInstance(resource)) {
+                throw new UnsupportedPatchException();
+            }
+            return resource;
+        }
+        if (Extension.class.equals(type)) {
+            return parseParameter("extension", PROVIDER.createArrayBuilder().add(value).build()).getExtension().get(0);
+        }
+        if (ModelSupport.isCodeSubtype(type)) {
+            Code code = (Code) parseParameter("valueCode", value).getValue();
+            try {
+                return type.getMethod("of", java.lang.String.class).invoke(null, code.getValue());
+            } catch (ReflectiveOperationException e) {
+                throw new UnsupportedPatchException();
+            }
+        }
+        if (!ModelSupport.getChoiceElementTypes(Parameters.Parameter.class, "value").contains(type)) {
+            // e.g. backbone elements, which can't be parsed on their own
+            throw new UnsupportedPatchException();
+        }
+        return parseParameter(ModelSupport.getChoiceElementName("value", type), value).getValue();
+    }
+
+    private static Parameters.Parameter parseParameter(String key, JsonValue value) throws UnsupportedPatchException {
+        JsonObject parameters = PROVIDER.createObjectBuilder()
+                .add("resourceType", "Parameters")
+                .add("parameter", PROVIDER.createArrayBuilder()
+                    .add(PROVIDER.createObjectBuilder()
+                        .add("name", "value")
+                        .add(key, value)))
+                .build();
+        return ((Parameters) parse(parameters)).getParameter().get(0);
+    }
+
+    private static Resource parse(JsonObject jsonObject) throws UnsupportedPatchException {
+        try {
+            return FHIRParser.parser(Format.JSON).as(FHIRJsonParser.class).parse(jsonObject);
+        } catch (FHIRParserException e) {
+            throw new UnsupportedPatchException();
+        }
+    }
+
+    private static Object checkItem(Class<?> type, Object value) throws UnsupportedPatchException {
+        if (value instanceof List || !(value instanceof Resource ? type.isInstance(value) : value.getClass() == type)) {
+            // JSON would convert the value to the type of the target element
+            throw new UnsupportedPatchException();
+        }
+        return value;
+    }
+
+    private static List<Object> checkList(Class<?> type, Object value) throws UnsupportedPatchException {
+        if (!(value instanceof List)) {
+            throw new UnsupportedPatchException();
+        }
+        List<Object> list = new ArrayList<>();
+        for (Object item : (List<?>) value) {
+            list.add(checkItem(type, item));
+        }
+        return list;
+    }
+
+    /**
+     * @return a modifiable copy of the list, which may not contain primitives with an id or extensions
+     */
+    private static List<Object> copyOf(Object list) throws UnsupportedPatchException {
+        List<Object> copy = new ArrayList<>((List<?>) list);
+        for (Object item : copy) {
+            // JSON would keep them at their original position
+            if (hasExtras(item)) {
+                throw new UnsupportedPatchException();
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * @return the value with the id and extensions of the current primitive, which JSON keeps separately
+     */
+    private static Object withExtras(Object value, Object current) {
+        if (hasExtras(current) && value instanceof Element && ModelSupport.isPrimitiveType(value.getClass())) {
+            return ((Element) value).toBuilder()
+                    .id(((Element) current).getId())
+                    .extension(((Element) current).getExtension())
+                    .build();
+        }
+        return value;
+    }
+
+    private static boolean hasExtras(Object value) {
+        if (value instanceof Element && ModelSupport.isPrimitiveType(value.getClass())) {
+            Element element = (Element) value;
+            return element.getId() != null || !element.getExtension().isEmpty();
+        }
+        return false;
+    }
+
+    private static Class<?> getChoiceType(ElementInfo info, String elementName) throws UnsupportedPatchException {
+        for (Class<?> choiceType : info.getChoiceTypes()) {
+            if (ModelSupport.getChoiceElementName(info.getName(), choiceType).equals(elementName)) {
+                return choiceType;
+            }
+        }
+        throw new UnsupportedPatchException();
+    }
+
+    private static int toIndex(String token) throws UnsupportedPatchException {
+        if ("-".equals(token)) {
+            return APPEND;
+        }
+        if (token.isEmpty() || token.length() > 9 || (token.length() > 1 && token.charAt(0) == '0')) {
+            throw new UnsupportedPatchException();
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (token.charAt(i) < '0' || token.charAt(i) > '9') {
+                throw new UnsupportedPatchException();
+            }
+        }
+        return Integer.parseInt(token);
+    }
+
+    private static String getString(JsonObject operation, String key) throws UnsupportedPatchException {
+        JsonValue value = operation.get(key);
+        if (!(value instanceof JsonString)) {
+            throw new UnsupportedPatchException();
+        }
+        return ((JsonString) value).getString();
+    }
+
+    private static JsonValue getValue(JsonObject operation) throws UnsupportedPatchException {
+        if (!operation.containsKey("value")) {
+            throw new UnsupportedPatchException();
+        }
+        return operation.get("value");
+    }
+
+    private static String unescape(String token) {
+        return token.replace("~1", "/").replace("~0", "~");
+    }
+
+    private static String javaName(String elementName) {
+        return "class".equals(elementName) ? "clazz" : elementName;
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static class Step {
+        private final Object owner;
+        private final ElementInfo info;
+        private final Class<?> type;
+        private final int index;
+
+        private Step(Object owner, ElementInfo info, Class<?> type, int index) {
+            this.owner = owner;
+            this.info = info;
+            this.type = type;
+            this.index = index;
+        }
+    }
+
+    /**
+     * Signals that a patch can't be applied directly to the model
+     */
+    private static class UnsupportedPatchException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private UnsupportedPatchException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019
+ * (C) Copyright IBM Corp. 2019, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -13,11 +13,13 @@ import java.io.FilterOutputStream;
 import java.io.OutputStream;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
 import javax.json.Json;
+import javax.json.JsonArray;
 import javax.json.JsonObject;
 
 import org.testng.Assert;
@@ -36,12 +38,15 @@ import com.ibm.fhir.model.resource.Patient;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.type.Boolean;
 import com.ibm.fhir.model.type.Date;
+import com.ibm.fhir.model.type.Extension;
 import com.ibm.fhir.model.type.HumanName;
 import com.ibm.fhir.model.type.Id;
 import com.ibm.fhir.model.type.Instant;
 import com.ibm.fhir.model.type.Meta;
 import com.ibm.fhir.model.type.Narrative;
+import com.ibm.fhir.model.type.code.AdministrativeGender;
 import com.ibm.fhir.model.type.code.NarrativeStatus;
+import com.ibm.fhir.model.util.JsonSupport;
 
 public class FHIRJsonPatchTest {        
     @BeforeClass
@@ -151,6 +156,110 @@ public class FHIRJsonPatchTest {
         Assert.assertEquals(patient, updatedPatient);
     }
     
+    @Test
+    public void testTestOperation() throws FHIRPatchException {
+        Patient patient = buildPatient();
+        
+        FHIRPatch patch = FHIRPatch.patch(Json.createPatchBuilder()
+            .test("/name/0/family", "Doe")
+            .replace("/name/0/family", "Smith")
+            .build());
+        Assert.assertEquals(patch.apply(patient).getName().get(0).getFamily(), string("Smith"));
+        
+        try {
+            FHIRPatch.patch(Json.createPatchBuilder()
+                .test("/name/0/family", "Smith")
+                .build()).apply(patient);
+            Assert.fail("expected the test operation to fail");
+        } catch (FHIRPatchException e) {
+            // expected
+        }
+    }
+    
+    @Test
+    public void testStructuralSharing() throws FHIRPatchException {
+        Patient patient = buildPatient();
+        
+        FHIRPatch patch = FHIRPatch.patch(Json.createPatchBuilder()
+            .add("/name/0/given/-", "Jack")
+            .build());
+        Patient patched = patch.apply(patient);
+        
+        Assert.assertEquals(patched.getName().get(0).getGiven(), Arrays.asList(string("John"), string("Jack")));
+        // the elements which aren't on the patched path are shared with the original resource
+        Assert.assertSame(patched.getMeta(), patient.getMeta());
+        Assert.assertSame(patched.getText(), patient.getText());
+        Assert.assertSame(patched.getName().get(0).getFamily(), patient.getName().get(0).getFamily());
+    }
+    
+    @Test
+    public void testPrimitiveExtensionsKept() throws FHIRPatchException {
+        Extension extension = Extension.builder()
+                .url("http://example.com/extension")
+                .value(string("value"))
+                .build();
+        Patient patient = buildPatient().toBuilder()
+                .active(Boolean.builder().value(true).extension(extension).build())
+                .build();
+        
+        FHIRPatch patch = FHIRPatch.patch(Json.createPatchBuilder()
+            .replace("/active", false)
+            .build());
+        Patient patched = patch.apply(patient);
+        
+        Assert.assertEquals(patched.getActive(), Boolean.builder().value(false).extension(extension).build());
+    }
+    
+    @Test
+    public void testSameResultAsJsonPatch() throws Exception {
+        Patient patient = buildPatient().toBuilder()
+                .contained(buildPatient())
+                .build();
+        
+        List<JsonArray> patches = Arrays.asList(
+            Json.createPatchBuilder()
+                .add("/extension", Json.createArrayBuilder().build())
+                .add("/extension/-", Json.createObjectBuilder()
+                    .add("url", "http://example.com/extension")
+                    .add("valueDateTime", "2020-01-01T00:00:00Z")
+                    .build())
+                .build().toJsonArray(),
+            Json.createPatchBuilder()
+                .add("/gender", "female")
+                .add("/deceasedBoolean", false)
+                .replace("/birthDate", "1981-02-02")
+                .build().toJsonArray(),
+            Json.createPatchBuilder()
+                .add("/name/0", Json.createObjectBuilder()
+                    .add("family", "Smith")
+                    .add("given", Json.createArrayBuilder().add("Jane"))
+                    .build())
+                .move("/name/1/given/0", "/name/0/given/0")
+                .copy("/contained/0/name", "/name")
+                .remove("/name/1/family")
+                .build().toJsonArray(),
+            // not applied to the model directly
+            Json.createPatchBuilder()
+                .replace("/id", "patched")
+                .add("/_active", Json.createObjectBuilder().add("id", "active").build())
+                .build().toJsonArray());
+        
+        for (JsonArray array : patches) {
+            Patient expected = toResource(Json.createPatch(array).apply(JsonSupport.toJsonObject(patient)));
+            Assert.assertEquals(FHIRPatch.patch(array).apply(patient), expected, array.toString());
+        }
+        
+        Patient patched = FHIRPatch.patch(patches.get(1)).apply(patient);
+        Assert.assertEquals(patched.getGender(), AdministrativeGender.FEMALE);
+    }
+    
+    @Test(expectedExceptions = FHIRPatchException.class)
+    public void testInvalidOperation() throws FHIRPatchException {
+        FHIRPatch.patch(Json.createPatchBuilder()
+            .remove("/gender")
+            .build()).apply(buildPatient());
+    }
+    
     public void print(Resource resource) throws FHIRGeneratorException {
         FHIRGenerator.generator(Format.JSON, true).generate(resource, nonClosingOutputStream(System.out));
     }
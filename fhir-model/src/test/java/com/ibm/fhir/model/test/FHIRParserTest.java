@@ -6,17 +6,28 @@
 
 package com.ibm.fhir.model.test;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
 
 import org.testng.annotations.Test;
 
+import com.ibm.fhir.examples.ExamplesUtil;
 import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRJsonParser;
 import com.ibm.fhir.model.parser.FHIRParser;
 import com.ibm.fhir.model.parser.exception.FHIRParserException;
+import com.ibm.fhir.model.resource.Bundle;
+import com.ibm.fhir.model.resource.Patient;
 
 public class FHIRParserTest {
     @Test
@@ -47,4 +58,47 @@ public class FHIRParserTest {
             fail();
         }
     }
-}
\ No newline at end of file
+    
+    @Test
+    public void testBundleStreamingMatchesJsonObject() throws Exception {
+        JsonObject jsonObject;
+        try (JsonReader jsonReader = Json.createReader(ExamplesUtil.resourceReader("json/spec/bundle-transaction.json"))) {
+            jsonObject = jsonReader.readObject();
+        }
+        Bundle expected = FHIRParser.parser(Format.JSON).as(FHIRJsonParser.class).parse(jsonObject);
+        
+        Bundle actual;
+        try (Reader reader = ExamplesUtil.resourceReader("json/spec/bundle-transaction.json")) {
+            actual = FHIRParser.parser(Format.JSON).parse(reader);
+        }
+        assertEquals(actual, expected);
+        assertEquals(actual.getEntry().size(), jsonObject.getJsonArray("entry").size());
+    }
+    
+    @Test
+    public void testBundleEntryBeforeResourceType() throws Exception {
+        String json = "{\"entry\":[{\"resource\":{\"resourceType\":\"Patient\",\"id\":\"1\"}}],\"type\":\"collection\",\"resourceType\":\"Bundle\"}";
+        Bundle bundle = FHIRParser.parser(Format.JSON).parse(new StringReader(json));
+        assertEquals(bundle.getEntry().size(), 1);
+        assertEquals(bundle.getEntry().get(0).getResource().as(Patient.class).getId(), "1");
+    }
+    
+    @Test
+    public void testUnrecognizedElementInBundleEntry() throws Exception {
+        String json = "{\"resourceType\":\"Bundle\",\"type\":\"collection\",\"entry\":["
+                + "{\"resource\":{\"resourceType\":\"Patient\",\"id\":\"1\"}},"
+                + "{\"resource\":{\"resourceType\":\"Patient\",\"id\":\"2\",\"bogus\":true}}]}";
+        try {
+            FHIRParser.parser(Format.JSON).parse(new StringReader(json));
+            fail();
+        } catch (FHIRParserException e) {
+            assertTrue(e.getMessage().startsWith("Unrecognized element"));
+            assertEquals(e.getPath(), "Bundle.entry[1].resource");
+        }
+        
+        FHIRParser parser = FHIRParser.parser(Format.JSON);
+        parser.setProperty(FHIRParser.PROPERTY_IGNORE_UNRECOGNIZED_ELEMENTS, true);
+        Bundle bundle = parser.parse(new StringReader(json));
+        assertEquals(bundle.getEntry().size(), 2);
+    }
+}
@@ -21,7 +21,6 @@ import com.ibm.fhir.notification.FHIRNotificationEvent;
 import com.ibm.fhir.notification.FHIRNotificationService;
 import com.ibm.fhir.notification.FHIRNotificationSubscriber;
 import com.ibm.fhir.notification.exception.FHIRNotificationException;
-import com.ibm.fhir.notification.util.FHIRNotificationUtil;
 
 /**
  * This class implements the FHIR server notification service via a Kafka topic.
@@ -113,7 +112,8 @@ public class FHIRNotificationKafkaPublisher implements FHIRNotificationSubscribe
         String topicId = "[" + this.kafkaProps.getProperty(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG) + "]/" + topicName;
         String jsonString = null;
         try {
-            jsonString = FHIRNotificationUtil.toJsonString(event, true);
+            // The serialized event is shared with the other subscribers.
+            jsonString = event.getJsonString(true);
 
             if (log.isLoggable(Level.FINE)) {
                 log.fine("Publishing kafka notification event to topic '" + topicId + "',\nmessage: " + jsonString);
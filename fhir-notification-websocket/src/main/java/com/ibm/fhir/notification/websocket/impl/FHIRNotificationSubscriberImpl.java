@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016,2019
+ * (C) Copyright IBM Corp. 2016, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -13,7 +13,6 @@ import javax.websocket.Session;
 import com.ibm.fhir.notification.FHIRNotificationEvent;
 import com.ibm.fhir.notification.FHIRNotificationSubscriber;
 import com.ibm.fhir.notification.exception.FHIRNotificationException;
-import com.ibm.fhir.notification.util.FHIRNotificationUtil;
 
 public class FHIRNotificationSubscriberImpl implements FHIRNotificationSubscriber {
     private static final Logger log = java.util.logging.Logger.getLogger(FHIRNotificationSubscriberImpl.class.getName());
@@ -26,7 +25,8 @@ public class FHIRNotificationSubscriberImpl implements FHIRNotificationSubscribe
     public void notify(FHIRNotificationEvent event) throws FHIRNotificationException {
         log.entering(this.getClass().getName(), "notify");
         try {
-            String message = FHIRNotificationUtil.toJsonString(event, false);
+            // The serialized event is shared by all websocket sessions.
+            String message = event.getJsonString(false);
             if (log.isLoggable(Level.FINE)) { 
                 log.fine("Publishing websocket notification event on session [id=" + session.getId() + "],\nmessage:" + message);
             }
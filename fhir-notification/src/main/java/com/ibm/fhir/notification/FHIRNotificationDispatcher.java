@@ -0,0 +1,299 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.notification;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers notification events on a dedicated background thread so that publishing an event
+ * never waits for the subscribers.
+ *
+ * <p>Events are held in a bounded, lock-free queue and delivered in the order they were offered.
+ * When the queue is full, the {@link OverflowPolicy} decides what happens to the new event.
+ * The delivery thread is created by the given {@link ThreadFactory}, which in the server is the managed thread
+ * factory of the application server, when the first event is offered.
+ */
+public class FHIRNotificationDispatcher {
+    private static final Logger log = Logger.getLogger(FHIRNotificationDispatcher.class.getName());
+
+    // how long the delivery thread sleeps when it finds the queue empty, unless woken up earlier
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    // how long a publisher waits between attempts to find room in the queue under the BLOCK policy
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * What to do with an event offered to a full queue
+     */
+    public enum OverflowPolicy {
+        /** The new event is dropped */
+        DROP_NEWEST,
+        /** The oldest queued event is dropped to make room for the new one */
+        DROP_OLDEST,
+        /** The publisher waits for room, and drops the new event if none frees up in time */
+        BLOCK;
+
+        /**
+         * Get the policy for a configuration value such as "dropNewest", "dropOldest" or "block"
+         * @param value
+         * @return
+         */
+        public static OverflowPolicy from(String value) {
+            for (OverflowPolicy policy : values()) {
+                if (policy.name().replace("_", "").equalsIgnoreCase(value)) {
+                    return policy;
+                }
+            }
+            throw new IllegalArgumentException("Invalid notification overflow policy: " + value);
+        }
+    }
+
+    private final ConcurrentLinkedQueue<FHIRNotificationEvent> queue = new ConcurrentLinkedQueue<>();
+
+    // The number of queued events, plus any for which room has been reserved but which are not queued yet.
+    // The bound is enforced on this counter so that the queue itself can stay lock-free
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final long maxBlockNanos;
+    private final Consumer<FHIRNotificationEvent> delivery;
+    private final ThreadFactory threadFactory;
+
+    private final AtomicLong offeredCount = new AtomicLong();
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private volatile Thread worker;
+    private volatile boolean idle;
+    private volatile boolean running = true;
+
+    /**
+     * Public constructor for use outside of an application server; the delivery thread is a daemon thread
+     * @param capacity the maximum number of events waiting to be delivered
+     * @param overflowPolicy what to do with events offered when the queue is full
+     * @param maxBlockMillis how long a publisher waits for room under {@link OverflowPolicy#BLOCK}
+     * @param delivery called on the delivery thread for each event, in order
+     */
+    public FHIRNotificationDispatcher(int capacity, OverflowPolicy overflowPolicy, long maxBlockMillis, Consumer<FHIRNotificationEvent> delivery) {
+        this(capacity, overflowPolicy, maxBlockMillis, delivery, r -> {
+            Thread t = new Thread(r, "fhir-notification-dispatcher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Public constructor
+     * @param capacity the maximum number of events waiting to be delivered
+     * @param overflowPolicy what to do with events offered when the queue is full
+     * @param maxBlockMillis how long a publisher waits for room under {@link OverflowPolicy#BLOCK}
+     * @param delivery called on the delivery thread for each event, in order
+     * @param threadFactory creates the delivery thread
+     */
+    public FHIRNotificationDispatcher(int capacity, OverflowPolicy overflowPolicy, long maxBlockMillis, Consumer<FHIRNotificationEvent> delivery,
+            ThreadFactory threadFactory) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.overflowPolicy = Objects.requireNonNull(overflowPolicy, "overflowPolicy");
+        this.maxBlockNanos = TimeUnit.MILLISECONDS.toNanos(maxBlockMillis);
+        this.delivery = Objects.requireNonNull(delivery, "delivery");
+        this.threadFactory = Objects.requireNonNull(threadFactory, "threadFactory");
+    }
+
+    /**
+     * Queue the event for delivery, applying the overflow policy if the queue is full
+     * @param event
+     * @return true if the event was queued, false if it was dropped
+     */
+    public boolean offer(FHIRNotificationEvent event) {
+        Objects.requireNonNull(event, "event");
+        offeredCount.incrementAndGet();
+        if (!running) {
+            drop(event, "the dispatcher is shut down");
+            return false;
+        }
+
+        long deadline = 0;
+        while (true) {
+            int current = size.get();
+            if (current < capacity) {
+                if (size.compareAndSet(current, current + 1)) {
+                    queue.offer(event);
+                    wakeWorker();
+                    return true;
+                }
+                // lost the race for the last free slot, so look again
+                continue;
+            }
+
+            switch (overflowPolicy) {
+            case DROP_OLDEST:
+                FHIRNotificationEvent oldest = queue.poll();
+                if (oldest != null) {
+                    size.decrementAndGet();
+                    drop(oldest, "the queue is full");
+                }
+                break;
+            case BLOCK:
+                long now = System.nanoTime();
+                if (deadline == 0) {
+                    deadline = now + maxBlockNanos;
+                    wakeWorker();
+                } else if (now - deadline >= 0) {
+                    drop(event, "no room became free in the queue");
+                    return false;
+                }
+                LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+                break;
+            case DROP_NEWEST:
+            default:
+                drop(event, "the queue is full");
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Stop the delivery thread, giving it up to timeoutMillis to deliver the events already queued.
+     * Events offered after this call are dropped
+     * @param timeoutMillis
+     */
+    public void shutdown(long timeoutMillis) {
+        running = false;
+        Thread t = worker;
+        if (t != null) {
+            LockSupport.unpark(t);
+            try {
+                t.join(timeoutMillis);
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        int remaining = size.get();
+        if (remaining > 0) {
+            log.warning("Notification dispatcher shut down with " + remaining + " undelivered events");
+        }
+    }
+
+    /**
+     * @return the number of events waiting to be delivered
+     */
+    public int getQueuedCount() {
+        return size.get();
+    }
+
+    /**
+     * @return the number of events offered to this dispatcher
+     */
+    public long getOfferedCount() {
+        return offeredCount.get();
+    }
+
+    /**
+     * @return the number of events handed to the delivery consumer
+     */
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    /**
+     * @return the number of events dropped because of the overflow policy or a shutdown
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Make sure the delivery thread is running and not parked
+     */
+    private void wakeWorker() {
+        Thread t = worker;
+        if (t == null) {
+            startWorker();
+        } else if (idle) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    private synchronized void startWorker() {
+        if (worker == null && running) {
+            Thread t = threadFactory.newThread(this::deliverEvents);
+            if (t == null) {
+                log.warning("Unable to create the notification delivery thread; events stay queued");
+                return;
+            }
+            worker = t;
+            t.start();
+        }
+    }
+
+    /**
+     * The delivery loop. Keeps going until the dispatcher is shut down and the queue is empty, or until the
+     * thread is interrupted, for example because the application is stopping
+     */
+    private void deliverEvents() {
+        try {
+            deliverQueuedEvents();
+        } finally {
+            synchronized (this) {
+                // let the next offer start a new thread if this one stopped early
+                worker = null;
+            }
+        }
+    }
+
+    private void deliverQueuedEvents() {
+        while (true) {
+            FHIRNotificationEvent event = queue.poll();
+            if (event != null) {
+                size.decrementAndGet();
+                try {
+                    delivery.accept(event);
+                    deliveredCount.incrementAndGet();
+                } catch (Throwable t) {
+                    log.log(Level.SEVERE, "Unable to deliver notification event: " + event, t);
+                }
+            } else if (!running) {
+                break;
+            } else if (Thread.currentThread().isInterrupted()) {
+                log.fine("Notification delivery thread was interrupted; " + size.get() + " events left queued");
+                break;
+            } else {
+                // announce that we're going to sleep, then look again so that an event offered in
+                // between can't be left waiting for the full idle period
+                idle = true;
+                if (queue.isEmpty() && running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                idle = false;
+            }
+        }
+    }
+
+    private void drop(FHIRNotificationEvent event, String reason) {
+        long dropped = droppedCount.incrementAndGet();
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Dropped notification event " + event + " because " + reason);
+        } else if (dropped == 1 || dropped % 1000 == 0) {
+            log.warning("Dropped notification event " + event + " because " + reason
+                + "; " + dropped + " events dropped in total");
+        }
+    }
+}
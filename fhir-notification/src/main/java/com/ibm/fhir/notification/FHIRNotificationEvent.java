@@ -6,7 +6,9 @@
 
 package com.ibm.fhir.notification;
 
+import com.ibm.fhir.exception.FHIRException;
 import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.notification.util.FHIRNotificationUtil;
 
 public class FHIRNotificationEvent {
     private String lastUpdated = null;
@@ -15,6 +17,10 @@ public class FHIRNotificationEvent {
     private String resourceId = null;
     private Resource resource = null;
 
+    // The serialized forms of this event, generated once and shared by all subscribers
+    private volatile String jsonString = null;
+    private volatile String jsonStringWithResource = null;
+
     public FHIRNotificationEvent() {
     }
 
@@ -24,6 +30,7 @@ public class FHIRNotificationEvent {
 
     public void setResourceId(String resourceId) {
         this.resourceId = resourceId;
+        clearJsonStrings();
     }
 
     public String getLastUpdated() {
@@ -32,6 +39,7 @@ public class FHIRNotificationEvent {
 
     public void setLastUpdated(String lastUpdated) {
         this.lastUpdated = lastUpdated;
+        clearJsonStrings();
     }
 
     public String getLocation() {
@@ -40,6 +48,7 @@ public class FHIRNotificationEvent {
 
     public void setLocation(String location) {
         this.location = location;
+        clearJsonStrings();
     }
 
     public String getOperationType() {
@@ -48,6 +57,7 @@ public class FHIRNotificationEvent {
 
     public void setOperationType(String operationType) {
         this.operationType = operationType;
+        clearJsonStrings();
     }
 
     @Override
@@ -68,5 +78,32 @@ public class FHIRNotificationEvent {
 
     public void setResource(Resource resource) {
         this.resource = resource;
+        clearJsonStrings();
+    }
+
+    /**
+     * Returns this event serialized as a JSON string. The string is generated the first time it is
+     * requested and then reused, so that subscribers publishing the same event don't each serialize it again.
+     * @param includeResource whether the resource should be included in the serialized event
+     * @return the serialized event
+     * @throws FHIRException
+     */
+    public String getJsonString(boolean includeResource) throws FHIRException {
+        String result = includeResource ? jsonStringWithResource : jsonString;
+        if (result == null) {
+            // concurrent callers may both generate the string, but they produce the same value
+            result = FHIRNotificationUtil.generateJsonString(this, includeResource);
+            if (includeResource) {
+                jsonStringWithResource = result;
+            } else {
+                jsonString = result;
+            }
+        }
+        return result;
+    }
+
+    private void clearJsonStrings() {
+        jsonString = null;
+        jsonStringWithResource = null;
     }
 }
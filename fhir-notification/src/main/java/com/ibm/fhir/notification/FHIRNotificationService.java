@@ -6,16 +6,26 @@
 
 package com.ibm.fhir.notification;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
 import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.config.PropertyGroup;
 import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.notification.FHIRNotificationDispatcher.OverflowPolicy;
 import com.ibm.fhir.notification.exception.FHIRNotificationException;
 import com.ibm.fhir.persistence.interceptor.FHIRPersistenceEvent;
 import com.ibm.fhir.persistence.interceptor.FHIRPersistenceInterceptor;
@@ -24,13 +34,34 @@ import com.ibm.fhir.persistence.interceptor.impl.FHIRPersistenceInterceptorMgr;
 
 /**
  * This class coordinates the activities of the FHIR Server notification service.
+ *
+ * <p>Events raised within a transaction are held back until the transaction commits, and are discarded
+ * if it rolls back. By default, events are then handed to a {@link FHIRNotificationDispatcher} which
+ * delivers them to the subscribers on a background thread.
  */
 public class FHIRNotificationService implements FHIRPersistenceInterceptor {
     private static final Logger log = java.util.logging.Logger.getLogger(FHIRNotificationService.class.getName());
+    private static final String TRX_SYNCH_REG_JNDI_NAME = "java:comp/TransactionSynchronizationRegistry";
+    private static final String THREAD_FACTORY_JNDI_NAME = "java:comp/DefaultManagedThreadFactory";
+    private static final int DEFAULT_QUEUE_SIZE = 10000;
+    private static final String DEFAULT_OVERFLOW_POLICY = "dropNewest";
+    private static final int DEFAULT_MAX_BLOCK_MILLIS = 1000;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+    // The key under which the pending events of a transaction are stored in the TransactionSynchronizationRegistry
+    private static final Object PENDING_EVENTS_KEY = new Object();
+
     private List<FHIRNotificationSubscriber> subscribers = new CopyOnWriteArrayList<FHIRNotificationSubscriber>();
     private static final FHIRNotificationService INSTANCE = new FHIRNotificationService();
     private Set<String> includedResourceTypes = Collections.synchronizedSortedSet(new TreeSet<String>());
 
+    // null when events are delivered on the thread which commits the transaction
+    private FHIRNotificationDispatcher dispatcher;
+
+    // Looked up on first use; stays null outside of an application server
+    private volatile TransactionSynchronizationRegistry trxSynchRegistry;
+    private volatile boolean trxSynchRegistryLookedUp;
+
     private FHIRNotificationService() {
         log.entering(this.getClass().getName(), "FHIRNotificationService");
         try {
@@ -38,6 +69,7 @@ public class FHIRNotificationService implements FHIRPersistenceInterceptor {
         // interceptor methods to trigger the 'publish' of the notification events.
         FHIRPersistenceInterceptorMgr.getInstance().addPrioritizedInterceptor(this);
         initNotificationResourceTypes();
+        initDispatcher();
         } catch (Throwable t) {
             throw new RuntimeException("Unexpected error during initialization.", t);
         }
@@ -57,6 +89,38 @@ public class FHIRNotificationService implements FHIRPersistenceInterceptor {
                 + (includedResourceTypes.isEmpty() ? "ALL" : "\n" + includedResourceTypes.toString()));
     }
 
+    private void initDispatcher() throws Exception {
+        PropertyGroup fhirConfig = FHIRConfiguration.getInstance().loadConfiguration();
+        if (fhirConfig.getBooleanProperty(FHIRConfiguration.PROPERTY_NOTIFICATION_ASYNC, Boolean.TRUE)) {
+            int queueSize = fhirConfig.getIntProperty(FHIRConfiguration.PROPERTY_NOTIFICATION_QUEUE_SIZE, DEFAULT_QUEUE_SIZE);
+            OverflowPolicy overflowPolicy = OverflowPolicy.from(
+                fhirConfig.getStringProperty(FHIRConfiguration.PROPERTY_NOTIFICATION_OVERFLOW_POLICY, DEFAULT_OVERFLOW_POLICY));
+            int maxBlockMillis = fhirConfig.getIntProperty(FHIRConfiguration.PROPERTY_NOTIFICATION_MAX_BLOCK_MILLIS, DEFAULT_MAX_BLOCK_MILLIS);
+            ThreadFactory threadFactory = getManagedThreadFactory();
+            if (threadFactory != null) {
+                dispatcher = new FHIRNotificationDispatcher(queueSize, overflowPolicy, maxBlockMillis, this::publish, threadFactory);
+            } else {
+                dispatcher = new FHIRNotificationDispatcher(queueSize, overflowPolicy, maxBlockMillis, this::publish);
+            }
+            log.finer("Notification events will be delivered asynchronously; queueSize=" + queueSize
+                + ", overflowPolicy=" + overflowPolicy + ", maxBlockMillis=" + maxBlockMillis);
+        } else {
+            log.finer("Notification events will be delivered synchronously.");
+        }
+    }
+
+    /**
+     * @return the managed thread factory of the application server, or null outside of an application server
+     */
+    private ThreadFactory getManagedThreadFactory() {
+        try {
+            return (ThreadFactory) new InitialContext().lookup(THREAD_FACTORY_JNDI_NAME);
+        } catch (NamingException e) {
+            log.log(Level.FINE, "No managed thread factory available; notification events are delivered on a daemon thread", e);
+            return null;
+        }
+    }
+
     public static FHIRNotificationService getInstance() {
         return INSTANCE;
     }
@@ -79,6 +143,88 @@ public class FHIRNotificationService implements FHIRPersistenceInterceptor {
         log.exiting(this.getClass().getName(), "publish");
     }
 
+    /**
+     * Hands the event to the dispatcher, or publishes it right away if events are delivered synchronously.
+     *
+     * @param event
+     */
+    private void dispatch(FHIRNotificationEvent event) {
+        if (dispatcher != null) {
+            dispatcher.offer(event);
+        } else {
+            publish(event);
+        }
+    }
+
+    /**
+     * Dispatches the event once the current transaction commits, or immediately if there is no transaction.
+     * Events of a transaction which rolls back are discarded.
+     *
+     * @param event
+     */
+    private void dispatchAfterCommit(FHIRNotificationEvent event) {
+        TransactionSynchronizationRegistry registry = getTrxSynchRegistry();
+        if (registry == null || registry.getTransactionKey() == null) {
+            dispatch(event);
+            return;
+        }
+
+        int status = registry.getTransactionStatus();
+        if (status == Status.STATUS_ACTIVE) {
+            PendingEvents pending = (PendingEvents) registry.getResource(PENDING_EVENTS_KEY);
+            if (pending == null) {
+                pending = new PendingEvents();
+                registry.putResource(PENDING_EVENTS_KEY, pending);
+                registry.registerInterposedSynchronization(pending);
+            }
+            pending.events.add(event);
+        } else if (log.isLoggable(Level.FINE)) {
+            log.fine("Discarding notification event " + event + "; transaction status is " + status);
+        }
+    }
+
+    private TransactionSynchronizationRegistry getTrxSynchRegistry() {
+        if (!trxSynchRegistryLookedUp) {
+            try {
+                trxSynchRegistry = (TransactionSynchronizationRegistry) new InitialContext().lookup(TRX_SYNCH_REG_JNDI_NAME);
+            } catch (NamingException e) {
+                log.log(Level.FINE, "No TransactionSynchronizationRegistry available; notification events are dispatched immediately", e);
+            }
+            trxSynchRegistryLookedUp = true;
+        }
+        return trxSynchRegistry;
+    }
+
+    /**
+     * Use the given registry instead of the one of the application server
+     * @param trxSynchRegistry
+     */
+    void setTrxSynchRegistry(TransactionSynchronizationRegistry trxSynchRegistry) {
+        this.trxSynchRegistry = trxSynchRegistry;
+        this.trxSynchRegistryLookedUp = true;
+    }
+
+    /**
+     * Stops the dispatcher, giving it a few seconds to deliver the events already queued.
+     */
+    public void shutdown() {
+        log.entering(this.getClass().getName(), "shutdown");
+        try {
+            if (dispatcher != null) {
+                dispatcher.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+            }
+        } finally {
+            log.exiting(this.getClass().getName(), "shutdown");
+        }
+    }
+
+    /**
+     * @return the dispatcher delivering events asynchronously, or null if events are delivered synchronously
+     */
+    public FHIRNotificationDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
     /**
      * Method to subscribe the target notification implementation
      *
@@ -135,14 +281,14 @@ public class FHIRNotificationService implements FHIRPersistenceInterceptor {
     @Override
     public void afterCreate(FHIRPersistenceEvent pEvent) throws FHIRPersistenceInterceptorException {
         if (shouldPublish(pEvent)) {
-            this.publish(buildNotificationEvent("create", pEvent));
+            dispatchAfterCommit(buildNotificationEvent("create", pEvent));
         }
     }
 
     @Override
     public void afterUpdate(FHIRPersistenceEvent pEvent) throws FHIRPersistenceInterceptorException {
         if (shouldPublish(pEvent)) {
-            this.publish(buildNotificationEvent("update", pEvent));
+            dispatchAfterCommit(buildNotificationEvent("update", pEvent));
         }
     }
 
@@ -213,4 +359,28 @@ public class FHIRNotificationService implements FHIRPersistenceInterceptor {
             throw e;
         }
     }
+
+    /**
+     * Holds the events raised within a transaction until it completes.
+     */
+    private class PendingEvents implements Synchronization {
+        private final List<FHIRNotificationEvent> events = new ArrayList<>();
+
+        @Override
+        public void beforeCompletion() {
+            // Nothing to do until we know the outcome.
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (status == Status.STATUS_COMMITTED) {
+                for (FHIRNotificationEvent event : events) {
+                    dispatch(event);
+                }
+            } else if (log.isLoggable(Level.FINE)) {
+                log.fine("Discarding " + events.size() + " notification events; transaction status is " + status);
+            }
+            events.clear();
+        }
+    }
 }
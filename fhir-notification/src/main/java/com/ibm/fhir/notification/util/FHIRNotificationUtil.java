@@ -7,22 +7,24 @@
 package com.ibm.fhir.notification.util;
 
 import java.io.StringReader;
+import java.io.StringWriter;
 
 import javax.json.Json;
-import javax.json.JsonBuilderFactory;
 import javax.json.JsonException;
 import javax.json.JsonObject;
-import javax.json.JsonObjectBuilder;
 import javax.json.JsonReader;
 import javax.json.JsonReaderFactory;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
 
 import com.ibm.fhir.exception.FHIRException;
-import com.ibm.fhir.model.util.JsonSupport;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.generator.FHIRGenerator;
 import com.ibm.fhir.notification.FHIRNotificationEvent;
 
 public class FHIRNotificationUtil {
     private static final JsonReaderFactory JSON_READER_FACTORY = Json.createReaderFactory(null);
-    private static final JsonBuilderFactory JSON_BUILDER_FACTORY = Json.createBuilderFactory(null);
+    private static final JsonGeneratorFactory JSON_GENERATOR_FACTORY = Json.createGeneratorFactory(null);
     public static FHIRNotificationEvent toNotificationEvent(String jsonString) {
         try (JsonReader reader = JSON_READER_FACTORY.createReader(new StringReader(jsonString))) {
             JsonObject jsonObject = reader.readObject();
@@ -40,6 +42,7 @@ public class FHIRNotificationUtil {
     
     /**
      * Serializes the notification event into a JSON string.
+     * The string is generated once per event and shared by subsequent calls (see {@link FHIRNotificationEvent#getJsonString(boolean)}).
      * @param event the FHIRNotificationEvent structure to be serialized
      * @param includeResource a flag that controls whether or not the resource object within
      * the event structure should be included in the serialized message.
@@ -47,16 +50,34 @@ public class FHIRNotificationUtil {
      * @throws FHIRException 
      */
     public static String toJsonString(FHIRNotificationEvent event, boolean includeResource) throws FHIRException {
-        JsonObjectBuilder builder = JSON_BUILDER_FACTORY.createObjectBuilder();
-        builder.add("lastUpdated", event.getLastUpdated());
-        builder.add("location", event.getLocation());
-        builder.add("operationType", event.getOperationType());
-        builder.add("resourceId", event.getResourceId());
-        if (includeResource && event.getResource() != null) {
-            builder.add("resource", JsonSupport.toJsonObject(event.getResource()));
+        return event.getJsonString(includeResource);
+    }
+
+    /**
+     * Serializes the notification event into a new JSON string. The resource is written by the
+     * streaming FHIRGenerator directly into the output, without building an intermediate JsonObject.
+     * @param event the FHIRNotificationEvent structure to be serialized
+     * @param includeResource a flag that controls whether or not the resource object within
+     * the event structure should be included in the serialized message.
+     * @return the serialized message as a String
+     * @throws FHIRException
+     */
+    public static String generateJsonString(FHIRNotificationEvent event, boolean includeResource) throws FHIRException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = JSON_GENERATOR_FACTORY.createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.write("lastUpdated", event.getLastUpdated());
+            generator.write("location", event.getLocation());
+            generator.write("operationType", event.getOperationType());
+            generator.write("resourceId", event.getResourceId());
+            if (includeResource && event.getResource() != null) {
+                // write the members so far, then stream the resource into the same writer as the last member
+                generator.flush();
+                writer.write(",\"resource\":");
+                FHIRGenerator.generator(Format.JSON).generate(event.getResource(), writer);
+            }
+            generator.writeEnd();
         }
-        JsonObject jsonObject = builder.build();
-        String jsonString = jsonObject.toString();
-        return jsonString;
+        return writer.toString();
     }
 }
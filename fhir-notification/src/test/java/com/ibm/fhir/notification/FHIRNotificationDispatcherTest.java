@@ -0,0 +1,223 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.notification;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.notification.FHIRNotificationDispatcher.OverflowPolicy;
+
+public class FHIRNotificationDispatcherTest {
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Test
+    public void testDeliveryInOrder() throws Exception {
+        List<FHIRNotificationEvent> delivered = new CopyOnWriteArrayList<>();
+        RecordingThreadFactory threadFactory = new RecordingThreadFactory();
+        FHIRNotificationDispatcher dispatcher = new FHIRNotificationDispatcher(1000, OverflowPolicy.DROP_NEWEST, 0, delivered::add, threadFactory);
+
+        List<FHIRNotificationEvent> events = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            FHIRNotificationEvent event = event(i);
+            events.add(event);
+            assertTrue(dispatcher.offer(event));
+        }
+        awaitDelivered(dispatcher, 100);
+
+        assertEquals(delivered, events);
+        assertEquals(dispatcher.getOfferedCount(), 100);
+        assertEquals(dispatcher.getDroppedCount(), 0);
+        // the events are delivered on a thread from the given factory
+        assertEquals(threadFactory.threads.size(), 1);
+        dispatcher.shutdown(TIMEOUT_MILLIS);
+    }
+
+    @Test
+    public void testDropNewest() throws Exception {
+        BlockingDelivery delivery = new BlockingDelivery();
+        FHIRNotificationDispatcher dispatcher = new FHIRNotificationDispatcher(2, OverflowPolicy.DROP_NEWEST, 0, delivery);
+
+        FHIRNotificationEvent first = event(0);
+        assertTrue(dispatcher.offer(first));
+        delivery.awaitStarted();
+        assertTrue(dispatcher.offer(event(1)));
+        assertTrue(dispatcher.offer(event(2)));
+        assertFalse(dispatcher.offer(event(3)));
+        assertEquals(dispatcher.getDroppedCount(), 1);
+
+        delivery.release();
+        awaitDelivered(dispatcher, 3);
+        assertEquals(ids(delivery.delivered), "0,1,2");
+        dispatcher.shutdown(TIMEOUT_MILLIS);
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        BlockingDelivery delivery = new BlockingDelivery();
+        FHIRNotificationDispatcher dispatcher = new FHIRNotificationDispatcher(2, OverflowPolicy.DROP_OLDEST, 0, delivery);
+
+        assertTrue(dispatcher.offer(event(0)));
+        delivery.awaitStarted();
+        assertTrue(dispatcher.offer(event(1)));
+        assertTrue(dispatcher.offer(event(2)));
+        assertTrue(dispatcher.offer(event(3)));
+        assertEquals(dispatcher.getDroppedCount(), 1);
+
+        delivery.release();
+        awaitDelivered(dispatcher, 3);
+        assertEquals(ids(delivery.delivered), "0,2,3");
+        dispatcher.shutdown(TIMEOUT_MILLIS);
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        BlockingDelivery delivery = new BlockingDelivery();
+        FHIRNotificationDispatcher dispatcher = new FHIRNotificationDispatcher(1, OverflowPolicy.BLOCK, 50, delivery);
+
+        assertTrue(dispatcher.offer(event(0)));
+        delivery.awaitStarted();
+        assertTrue(dispatcher.offer(event(1)));
+
+        // no room frees up while the delivery is blocked, so the publisher gives up after maxBlockMillis
+        long start = System.nanoTime();
+        assertFalse(dispatcher.offer(event(2)));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(dispatcher.getDroppedCount(), 1);
+
+        delivery.release();
+        awaitDelivered(dispatcher, 2);
+        assertEquals(ids(delivery.delivered), "0,1");
+        dispatcher.shutdown(TIMEOUT_MILLIS);
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        BlockingDelivery delivery = new BlockingDelivery();
+        RecordingThreadFactory threadFactory = new RecordingThreadFactory();
+        FHIRNotificationDispatcher dispatcher = new FHIRNotificationDispatcher(10, OverflowPolicy.DROP_NEWEST, 0, delivery, threadFactory);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(dispatcher.offer(event(i)));
+        }
+        delivery.awaitStarted();
+        delivery.release();
+
+        // the events already queued are delivered before the thread stops
+        dispatcher.shutdown(TIMEOUT_MILLIS);
+        assertEquals(dispatcher.getDeliveredCount(), 5);
+        assertEquals(dispatcher.getQueuedCount(), 0);
+        assertFalse(threadFactory.threads.get(0).isAlive());
+
+        // events offered after the shutdown are dropped
+        assertFalse(dispatcher.offer(event(5)));
+        assertEquals(dispatcher.getDroppedCount(), 1);
+        assertEquals(threadFactory.threads.size(), 1);
+    }
+
+    @Test
+    public void testInterruptedThread() throws Exception {
+        List<FHIRNotificationEvent> delivered = new CopyOnWriteArrayList<>();
+        RecordingThreadFactory threadFactory = new RecordingThreadFactory();
+        FHIRNotificationDispatcher dispatcher = new FHIRNotificationDispatcher(10, OverflowPolicy.DROP_NEWEST, 0, delivered::add, threadFactory);
+
+        assertTrue(dispatcher.offer(event(0)));
+        awaitDelivered(dispatcher, 1);
+
+        // an application server interrupts its managed threads when the application stops
+        Thread first = threadFactory.threads.get(0);
+        first.interrupt();
+        first.join(TIMEOUT_MILLIS);
+        assertFalse(first.isAlive());
+
+        // the next event starts a new thread
+        assertTrue(dispatcher.offer(event(1)));
+        awaitDelivered(dispatcher, 2);
+        assertEquals(threadFactory.threads.size(), 2);
+        dispatcher.shutdown(TIMEOUT_MILLIS);
+    }
+
+    private static FHIRNotificationEvent event(int id) {
+        FHIRNotificationEvent event = new FHIRNotificationEvent();
+        event.setOperationType("create");
+        event.setLocation("Patient/" + id + "/_history/1");
+        event.setResourceId(Integer.toString(id));
+        return event;
+    }
+
+    private static String ids(List<FHIRNotificationEvent> events) {
+        StringBuilder ids = new StringBuilder();
+        for (FHIRNotificationEvent event : events) {
+            if (ids.length() > 0) {
+                ids.append(',');
+            }
+            ids.append(event.getResourceId());
+        }
+        return ids.toString();
+    }
+
+    private static void awaitDelivered(FHIRNotificationDispatcher dispatcher, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (dispatcher.getDeliveredCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(dispatcher.getDeliveredCount(), count);
+    }
+
+    /**
+     * Records the threads it creates
+     */
+    private static class RecordingThreadFactory implements ThreadFactory {
+        final List<Thread> threads = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "test-notification-dispatcher-" + threads.size());
+            t.setDaemon(true);
+            threads.add(t);
+            return t;
+        }
+    }
+
+    /**
+     * Holds the delivery of the first event until released
+     */
+    private static class BlockingDelivery implements Consumer<FHIRNotificationEvent> {
+        final List<FHIRNotificationEvent> delivered = new CopyOnWriteArrayList<>();
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        @Override
+        public void accept(FHIRNotificationEvent event) {
+            started.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delivered.add(event);
+        }
+
+        void awaitStarted() throws InterruptedException {
+            assertTrue(started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        }
+
+        void release() {
+            released.countDown();
+        }
+    }
+}
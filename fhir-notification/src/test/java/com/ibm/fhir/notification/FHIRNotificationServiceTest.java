@@ -0,0 +1,174 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.notification;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.type.Id;
+import com.ibm.fhir.model.type.Instant;
+import com.ibm.fhir.model.type.Meta;
+import com.ibm.fhir.persistence.interceptor.FHIRPersistenceEvent;
+
+/**
+ * Tests that notification events raised within a transaction are only delivered once it commits.
+ */
+public class FHIRNotificationServiceTest {
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private FHIRNotificationService service;
+    private final BlockingQueue<FHIRNotificationEvent> received = new LinkedBlockingQueue<>();
+    private final FHIRNotificationSubscriber subscriber = received::add;
+    private TestTransactionRegistry registry;
+
+    @BeforeClass
+    public void setUpClass() {
+        FHIRConfiguration.setConfigHome("target/test-classes");
+        service = FHIRNotificationService.getInstance();
+        assertNotNull(service.getDispatcher());
+        service.subscribe(subscriber);
+    }
+
+    @AfterClass
+    public void tearDownClass() {
+        service.unsubscribe(subscriber);
+        service.setTrxSynchRegistry(null);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        received.clear();
+    }
+
+    @Test
+    public void testDeliveryAfterCommit() throws Exception {
+        registry = new TestTransactionRegistry();
+        service.setTrxSynchRegistry(registry);
+        long offered = service.getDispatcher().getOfferedCount();
+
+        service.afterCreate(persistenceEvent("1"));
+        service.afterUpdate(persistenceEvent("2"));
+
+        // held back until the transaction completes
+        assertEquals(service.getDispatcher().getOfferedCount(), offered);
+
+        registry.complete(Status.STATUS_COMMITTED);
+        FHIRNotificationEvent event = received.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertNotNull(event);
+        assertEquals(event.getOperationType(), "create");
+        assertEquals(event.getResourceId(), "1");
+        event = received.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertNotNull(event);
+        assertEquals(event.getOperationType(), "update");
+        assertEquals(event.getResourceId(), "2");
+    }
+
+    @Test
+    public void testNoDeliveryOnRollback() throws Exception {
+        registry = new TestTransactionRegistry();
+        service.setTrxSynchRegistry(registry);
+        long offered = service.getDispatcher().getOfferedCount();
+
+        service.afterCreate(persistenceEvent("3"));
+        registry.complete(Status.STATUS_ROLLEDBACK);
+
+        assertEquals(service.getDispatcher().getOfferedCount(), offered);
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void testDeliveryWithoutTransaction() throws Exception {
+        service.setTrxSynchRegistry(null);
+
+        service.afterCreate(persistenceEvent("4"));
+
+        FHIRNotificationEvent event = received.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        assertNotNull(event);
+        assertEquals(event.getResourceId(), "4");
+    }
+
+    private static FHIRPersistenceEvent persistenceEvent(String id) {
+        Patient patient = Patient.builder()
+                .id(id)
+                .meta(Meta.builder().versionId(Id.of("1")).lastUpdated(Instant.now()).build())
+                .build();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(FHIRPersistenceEvent.PROPNAME_RESOURCE_LOCATION_URI, "Patient/" + id + "/_history/1");
+        return new FHIRPersistenceEvent(patient, properties);
+    }
+
+    /**
+     * A registry for a single active transaction, which is completed by the test
+     */
+    private static class TestTransactionRegistry implements TransactionSynchronizationRegistry {
+        private final Object key = new Object();
+        private final Map<Object, Object> resources = new HashMap<>();
+        private final List<Synchronization> synchronizations = new ArrayList<>();
+        private int status = Status.STATUS_ACTIVE;
+
+        void complete(int completionStatus) {
+            status = completionStatus;
+            for (Synchronization synchronization : synchronizations) {
+                synchronization.afterCompletion(completionStatus);
+            }
+        }
+
+        @Override
+        public Object getTransactionKey() {
+            return key;
+        }
+
+        @Override
+        public void putResource(Object key, Object value) {
+            resources.put(key, value);
+        }
+
+        @Override
+        public Object getResource(Object key) {
+            return resources.get(key);
+        }
+
+        @Override
+        public void registerInterposedSynchronization(Synchronization sync) {
+            synchronizations.add(sync);
+        }
+
+        @Override
+        public int getTransactionStatus() {
+            return status;
+        }
+
+        @Override
+        public void setRollbackOnly() {
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return false;
+        }
+    }
+}
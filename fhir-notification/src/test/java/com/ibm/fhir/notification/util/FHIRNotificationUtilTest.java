@@ -0,0 +1,50 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.notification.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+import java.io.StringReader;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.notification.FHIRNotificationEvent;
+
+public class FHIRNotificationUtilTest {
+
+    @Test
+    public void testGenerateJsonString() throws Exception {
+        FHIRNotificationEvent event = new FHIRNotificationEvent();
+        event.setOperationType("create");
+        event.setLocation("Patient/1/_history/1");
+        event.setLastUpdated("2020-01-01T00:00:00Z");
+        event.setResourceId("1");
+        event.setResource(Patient.builder().id("1").build());
+
+        JsonObject withResource = parse(FHIRNotificationUtil.generateJsonString(event, true));
+        assertEquals(withResource.getString("operationType"), "create");
+        assertEquals(withResource.getString("resourceId"), "1");
+        assertEquals(withResource.getJsonObject("resource").getString("resourceType"), "Patient");
+        assertEquals(withResource.getJsonObject("resource").getString("id"), "1");
+
+        JsonObject withoutResource = parse(FHIRNotificationUtil.generateJsonString(event, false));
+        assertEquals(withoutResource.getString("location"), "Patient/1/_history/1");
+        assertFalse(withoutResource.containsKey("resource"));
+    }
+
+    private static JsonObject parse(String json) {
+        try (JsonReader reader = Json.createReader(new StringReader(json))) {
+            return reader.readObject();
+        }
+    }
+}
@@ -11,9 +11,10 @@ import static com.ibm.fhir.model.type.String.string;
 import java.io.InputStream;
 import java.net.URI;
 import java.time.ZoneOffset;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import com.ibm.fhir.exception.FHIROperationException;
@@ -32,9 +33,11 @@ import com.ibm.fhir.model.type.Meta;
 import com.ibm.fhir.model.type.Reference;
 import com.ibm.fhir.model.type.Uri;
 import com.ibm.fhir.model.type.code.BundleType;
+import com.ibm.fhir.model.util.ModelSupport;
 import com.ibm.fhir.operation.AbstractOperation;
 import com.ibm.fhir.operation.context.FHIROperationContext;
 import com.ibm.fhir.operation.util.FHIROperationUtil;
+import com.ibm.fhir.persistence.ResourceKey;
 import com.ibm.fhir.rest.FHIRResourceHelpers;
 import com.ibm.fhir.rest.FHIRRestOperationResponse;
 
@@ -116,37 +119,39 @@ public class DocumentOperation extends AbstractOperation {
         //document.getEntry().add(bundleEntry);
         documentBuilder.entry(entryBuilder.build());
         
-        Map<String, Resource> resources = new HashMap<String, Resource>();
+        // collect the references first, so that all of the referenced resources can be read together
+        Set<String> referenceValues = new LinkedHashSet<>();
         
         // Composition.subject
-        addBundleEntry(operationContext, documentBuilder, composition.getSubject(), resourceHelper, resources);
+        collectReference(composition.getSubject(), referenceValues);
         
         // Composition.author
         for (Reference author : composition.getAuthor()) {
-            addBundleEntry(operationContext, documentBuilder, author, resourceHelper, resources);
+            collectReference(author, referenceValues);
         }
         
         // Composition.attester.party
         for (Composition.Attester attester : composition.getAttester()) {
-            addBundleEntry(operationContext, documentBuilder, attester.getParty(), resourceHelper, resources);
+            collectReference(attester.getParty(), referenceValues);
         }
         
         // Composition.custodian
-        addBundleEntry(operationContext, documentBuilder, composition.getCustodian(), resourceHelper, resources);
+        collectReference(composition.getCustodian(), referenceValues);
         
         // Composition.event.detail
         for (Composition.Event event : composition.getEvent()) {
             for (Reference detail : event.getDetail()) {
-                addBundleEntry(operationContext, documentBuilder, detail, resourceHelper, resources);
+                collectReference(detail, referenceValues);
             }
         }
         
         // Composition.encounter
-        addBundleEntry(operationContext, documentBuilder, composition.getEncounter(), resourceHelper, resources);
+        collectReference(composition.getEncounter(), referenceValues);
         
         // Composition.section.entry
-        addBundleEntries(operationContext, documentBuilder, composition.getSection(), resourceHelper, resources);
+        collectReferences(composition.getSection(), referenceValues);
         
+        addBundleEntries(operationContext, documentBuilder, new ArrayList<>(referenceValues), resourceHelper);
         
         return documentBuilder.timestamp(Instant.now(ZoneOffset.UTC))
                 .identifier(Identifier.builder()
@@ -156,7 +161,7 @@ public class DocumentOperation extends AbstractOperation {
                 .build();
     }
 
-    private void addBundleEntry(FHIROperationContext operationContext, Bundle.Builder documentBuilder, Reference reference, FHIRResourceHelpers resourceHelper, Map<String, Resource> resources) throws Exception {;
+    private void collectReference(Reference reference, Set<String> referenceValues) throws FHIROperationException {
         if (reference == null) {
             return;
         }
@@ -170,9 +175,24 @@ public class DocumentOperation extends AbstractOperation {
             throw new FHIROperationException("Empty reference value is not allowed");
         }
         
-        Resource resource = resources.get(referenceValue);
-        
-        if (resource == null) {
+        referenceValues.add(referenceValue);
+    }
+
+    private void collectReferences(List<Composition.Section> sections, Set<String> referenceValues) throws FHIROperationException {
+        for (Composition.Section section : sections) {                
+            // process entries for this section
+            for (Reference entry : section.getEntry()) {
+                collectReference(entry, referenceValues);
+            }
+            
+            // process subsections
+            collectReferences(section.getSection(), referenceValues);
+        }
+    }
+
+    private void addBundleEntries(FHIROperationContext operationContext, Bundle.Builder documentBuilder, List<String> referenceValues, FHIRResourceHelpers resourceHelper) throws Exception {
+        List<ResourceKey> keys = new ArrayList<>(referenceValues.size());
+        for (String referenceValue : referenceValues) {
             String[] referenceTokens = referenceValue.split("/");
             
             // assumption: references will be relative {resourceTypeName}/{logicalId}
@@ -180,44 +200,32 @@ public class DocumentOperation extends AbstractOperation {
                 throw new FHIROperationException("Could not parse reference value: " + referenceValue);
             }
             
-            String resourceTypeName = referenceTokens[0];
-            String logicalId = referenceTokens[1];
-            
-            resource = resourceHelper.doRead(resourceTypeName, logicalId, false, false, null, null);
+            Class<? extends Resource> resourceType = ModelSupport.getResourceType(referenceTokens[0]);
+            if (resourceType == null) {
+                throw new FHIROperationException("Unsupported resource type in reference value: " + referenceValue);
+            }
             
+            keys.add(new ResourceKey(resourceType, referenceTokens[1]));
+        }
+        
+        // read the resources of the same type together rather than one at a time
+        List<Resource> resources = resourceHelper.doReadMany(keys, false, null);
+        
+        for (int i = 0; i < referenceValues.size(); i++) {
+            Resource resource = resources.get(i);
             if (resource == null) {
-                throw new FHIROperationException("Could not find resource for reference value: " + referenceValue);
+                throw new FHIROperationException("Could not find resource for reference value: " + referenceValues.get(i));
             }
             
-            resources.put(referenceValue, resource);
-            
             // create a bundle entry for the resource
-            //BundleEntry bundleEntry = factory.createBundleEntry();
-            
-            //ResourceContainer container = factory.createResourceContainer();
-            //FHIRUtil.setResourceContainerResource(container, resource);
-            
-            Bundle.Entry.Builder entryBuilder = Entry.builder(); //createBundleEntry();
+            Bundle.Entry.Builder entryBuilder = Entry.builder();
             entryBuilder.resource(resource);
             
-            setFullUrl(operationContext, entryBuilder, referenceValue);
+            setFullUrl(operationContext, entryBuilder, referenceValues.get(i));
             
-            //document.getEntry().add(bundleEntry);
             documentBuilder.entry(entryBuilder.build());
         }
     }
-
-    private void addBundleEntries(FHIROperationContext operationContext, Bundle.Builder documentBuilder, List<Composition.Section> sections, FHIRResourceHelpers resourceHelper, Map<String, Resource> resources) throws Exception {
-        for (Composition.Section section : sections) {                
-            // process entries for this section
-            for (Reference entry : section.getEntry()) {
-                addBundleEntry(operationContext, documentBuilder, entry, resourceHelper, resources);
-            }
-            
-            // process subsections
-            addBundleEntries(operationContext, documentBuilder, section.getSection(), resourceHelper, resources);
-        }
-    }
     
     private void setFullUrl(FHIROperationContext operationContext, Bundle.Entry.Builder entryBuilder, String referenceValue) {
         String requestBaseURI = (String) operationContext.getProperty(FHIROperationContext.PROPNAME_REQUEST_BASE_URI);
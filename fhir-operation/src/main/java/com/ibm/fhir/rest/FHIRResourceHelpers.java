@@ -6,6 +6,8 @@
 
 package com.ibm.fhir.rest;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import javax.ws.rs.core.MultivaluedMap;
@@ -15,6 +17,8 @@ import com.ibm.fhir.model.resource.Bundle;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.operation.context.FHIROperationContext;
 import com.ibm.fhir.persistence.FHIRPersistenceTransaction;
+import com.ibm.fhir.persistence.ResourceKey;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceResourceNotFoundException;
 
 /**
  * This interface describes the set of helper methods from the FHIR REST layer that are used by custom operation
@@ -128,6 +132,34 @@ public interface FHIRResourceHelpers {
      */
     public Resource doVRead(String type, String id, String versionId, Map<String, String> requestProperties) throws Exception;
 
+    /**
+     * Performs a 'read' or 'vread' operation for each of the specified keys, reading the resources of the same
+     * resource type together where the persistence layer supports it.
+     *
+     * @param keys
+     *            the resource type, id and optional version id of each Resource to be retrieved
+     * @param includeDeleted
+     *            whether deleted resources should be returned
+     * @return the Resource of each key, in the same order as the keys; null for a resource which could not be found
+     * @throws Exception
+     */
+    default List<Resource> doReadMany(List<ResourceKey> keys, boolean includeDeleted, Map<String, String> requestProperties) throws Exception {
+        List<Resource> resources = new ArrayList<>(keys.size());
+        for (ResourceKey key : keys) {
+            String type = key.getResourceType().getSimpleName();
+            if (key.getVersionId() == null) {
+                resources.add(doRead(type, key.getLogicalId(), false, includeDeleted, requestProperties, null));
+            } else {
+                try {
+                    resources.add(doVRead(type, key.getLogicalId(), key.getVersionId(), requestProperties));
+                } catch (FHIRPersistenceResourceNotFoundException e) {
+                    resources.add(null);
+                }
+            }
+        }
+        return resources;
+    }
+
     /**
      * Performs the work of retrieving versions of a Resource.
      *
@@ -10,6 +10,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Objects;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -18,14 +19,18 @@ public abstract class FHIRPathAbstractNode implements FHIRPathNode {
     protected final String path;
     protected final FHIRPathType type;
     protected final FHIRPathSystemValue value;
-    protected final Collection<FHIRPathNode> children;
+    private final Supplier<Collection<FHIRPathNode>> childrenSupplier;
+    private volatile Collection<FHIRPathNode> children;
     
     protected FHIRPathAbstractNode(Builder builder) {
         name = builder.name;
         path = builder.path;
         type = Objects.requireNonNull(builder.type);
         value = builder.value;
-        children = Collections.unmodifiableCollection(builder.children);
+        childrenSupplier = builder.childrenSupplier;
+        if (childrenSupplier == null) {
+            children = Collections.unmodifiableCollection(builder.children);
+        }
     }
     
     @Override
@@ -55,7 +60,17 @@ public abstract class FHIRPathAbstractNode implements FHIRPathNode {
     
     @Override
     public Collection<FHIRPathNode> children() {
-        return children;
+        Collection<FHIRPathNode> result = children;
+        if (result == null) {
+            synchronized (this) {
+                result = children;
+                if (result == null) {
+                    result = Collections.unmodifiableCollection(childrenSupplier.get());
+                    children = result;
+                }
+            }
+        }
+        return result;
     }
     
     @Override
@@ -95,6 +110,7 @@ public abstract class FHIRPathAbstractNode implements FHIRPathNode {
         protected String path;
         protected FHIRPathSystemValue value;
         protected Collection<FHIRPathNode> children = new ArrayList<>();
+        Supplier<Collection<FHIRPathNode>> childrenSupplier;
         
         protected Builder(FHIRPathType type) {
             super();
@@ -135,6 +151,19 @@ public abstract class FHIRPathAbstractNode implements FHIRPathNode {
             return this;
         }
         
+        /**
+         * Defer the creation of the children of the node being built until they are first requested
+         * 
+         * @param childrenSupplier
+         *     a supplier that creates the complete collection of children (including the value, if any) on demand
+         * @return
+         *     a reference to this builder
+         */
+        Builder childrenSupplier(Supplier<Collection<FHIRPathNode>> childrenSupplier) {
+            this.childrenSupplier = childrenSupplier;
+            return this;
+        }
+        
         @Override
         public abstract FHIRPathNode build();
     }
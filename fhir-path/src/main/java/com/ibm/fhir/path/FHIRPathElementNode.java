@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019
+ * (C) Copyright IBM Corp. 2019, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -91,7 +91,7 @@ public class FHIRPathElementNode extends FHIRPathAbstractNode {
         Builder builder = new Builder(type, element);
         builder.name = name;
         builder.value = value;
-        builder.children = children;
+        builder.children = children();
         return builder;
     }
     
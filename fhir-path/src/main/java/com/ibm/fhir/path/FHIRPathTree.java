@@ -13,27 +13,40 @@ import java.time.Year;
 import java.time.YearMonth;
 import java.time.ZonedDateTime;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.type.Element;
 import com.ibm.fhir.model.type.Quantity;
 import com.ibm.fhir.model.visitor.PathAwareVisitor;
+import com.ibm.fhir.model.visitor.Visitable;
 
 /**
  * A tree of {@link FHIRPathNode} nodes created from a {@link Resource} or an {@link Element}
+ * 
+ * <p>A tree is either built in full when it is created or, for trees created with one of the lazyTree factory methods,
+ * one level at a time: the children of a node are created the first time they are navigated to and the path index
+ * is populated as nodes are created.
  */
 public class FHIRPathTree {
     private final FHIRPathNode root;
     private final Map<String, FHIRPathNode> pathNodeMap;
+    private final boolean lazy;
     
     private FHIRPathTree(FHIRPathNode root, Map<String, FHIRPathNode> pathNodeMap) {
+        this(root, Collections.unmodifiableMap(pathNodeMap), false);
+    }
+    
+    private FHIRPathTree(FHIRPathNode root, Map<String, FHIRPathNode> pathNodeMap, boolean lazy) {
         this.root = root;
-        this.pathNodeMap = Collections.unmodifiableMap(pathNodeMap);
+        this.pathNodeMap = pathNodeMap;
+        this.lazy = lazy;
     }
     
     /**
@@ -55,7 +68,40 @@ public class FHIRPathTree {
      *     the node at the location given by the path parameter if exists, otherwise null
      */
     public FHIRPathNode getNode(String path) {
-        return pathNodeMap.get(path);
+        FHIRPathNode node = pathNodeMap.get(path);
+        if (node == null && lazy && path != null) {
+            node = findNode(path);
+        }
+        return node;
+    }
+    
+    /**
+     * Navigate from the root to the node at the given path, creating the nodes along the way
+     */
+    private FHIRPathNode findNode(String path) {
+        String rootPath = root.path();
+        if (rootPath == null || !path.startsWith(rootPath + ".")) {
+            return null;
+        }
+        FHIRPathNode node = root;
+        int index = rootPath.length();
+        while (node != null && index < path.length()) {
+            int next = path.indexOf('.', index + 1);
+            if (next == -1) {
+                next = path.length();
+            }
+            String childPath = path.substring(0, next);
+            FHIRPathNode parent = node;
+            node = null;
+            for (FHIRPathNode child : parent.children()) {
+                if (childPath.equals(child.path())) {
+                    node = child;
+                    break;
+                }
+            }
+            index = next;
+        }
+        return node;
     }
     
     /**
@@ -73,7 +119,7 @@ public class FHIRPathTree {
         
         int index = node.path().lastIndexOf(".");
         if (index != -1) {
-            return pathNodeMap.get(node.path().substring(0, index));
+            return getNode(node.path().substring(0, index));
         }
         
         return null;
@@ -113,18 +159,102 @@ public class FHIRPathTree {
         return new FHIRPathTree(visitor.getRoot(), visitor.getPathNodeMap());
     }
     
+    /**
+     * Static factory method for creating lazily built FHIRPathTree instances from a {@link Resource}
+     * 
+     * <p>Only the root node and its children are created up front; the children of every other node
+     * are created the first time that node is navigated.
+     * 
+     * @param resource
+     *     the resource
+     * @return
+     *     a new FHIRPathTree instance
+     */
+    public static FHIRPathTree lazyTree(Resource resource) {
+        Objects.requireNonNull(resource);
+        return lazyTree((Visitable) resource);
+    }
+    
+    /**
+     * Static factory method for creating lazily built FHIRPathTree instances from an {@link Element}
+     * 
+     * <p>Only the root node and its children are created up front; the children of every other node
+     * are created the first time that node is navigated.
+     * 
+     * @param element
+     *     the element
+     * @return
+     *     a new FHIRPathTree instance
+     */
+    public static FHIRPathTree lazyTree(Element element) {
+        Objects.requireNonNull(element);
+        return lazyTree((Visitable) element);
+    }
+    
+    private static FHIRPathTree lazyTree(Visitable visitable) {
+        Map<String, FHIRPathNode> pathNodeMap = new ConcurrentHashMap<>();
+        
+        BuildingVisitor visitor = new BuildingVisitor(pathNodeMap, null);
+        visitable.accept(visitor);
+        
+        FHIRPathNode root = visitor.getRoot();
+        pathNodeMap.put(root.path(), root);
+        
+        return new FHIRPathTree(root, pathNodeMap, true);
+    }
+    
+    /**
+     * Create the children of the node at the given path that wraps the given resource or element
+     */
+    private static Collection<FHIRPathNode> children(Visitable visitable, String path, Map<String, FHIRPathNode> pathNodeMap) {
+        BuildingVisitor visitor = new BuildingVisitor(pathNodeMap, path);
+        visitable.accept(visitor);
+        return visitor.getRoot().children();
+    }
+    
     private static class BuildingVisitor extends PathAwareVisitor {
         private Stack<FHIRPathNode.Builder> builderStack = new Stack<>();
         private FHIRPathNode root;
-        private Map<String, FHIRPathNode> pathNodeMap = new HashMap<>();
+        private Map<String, FHIRPathNode> pathNodeMap;
         
-        private void build() {
+        // lazy mode: only the root and its children are visited and the children are created with a supplier for their own children
+        private final boolean lazy;
+        // lazy mode: the path of the root node within the tree (or null if the root is the root of the tree)
+        private final String basePath;
+        
+        private BuildingVisitor() {
+            this.pathNodeMap = new HashMap<>();
+            this.lazy = false;
+            this.basePath = null;
+        }
+        
+        private BuildingVisitor(Map<String, FHIRPathNode> pathNodeMap, String basePath) {
+            this.pathNodeMap = pathNodeMap;
+            this.lazy = true;
+            this.basePath = basePath;
+        }
+        
+        private String getTreePath() {
             String path = getPath();
+            if (basePath == null) {
+                return path;
+            }
+            int index = path.indexOf('.');
+            return (index == -1) ? basePath : basePath + path.substring(index);
+        }
+        
+        private void build() {
+            String path = getTreePath();
             
             FHIRPathNode.Builder builder = builderStack.pop();
             FHIRPathNode node = builder.path(path).build();
             
-            pathNodeMap.put(path, node);
+            if (!lazy) {
+                pathNodeMap.put(path, node);
+            } else if (!builderStack.isEmpty()) {
+                // the root of a lazy visit is either the tree root (registered by the caller) or a node that already exists in the tree
+                pathNodeMap.putIfAbsent(path, node);
+            }
             
             if (!builderStack.isEmpty()) {
                 builderStack.peek().children(node);
@@ -141,6 +271,24 @@ public class FHIRPathTree {
             return root;
         }
         
+        private void deferChildren(Visitable visitable) {
+            if (lazy && builderStack.size() == 2) {
+                String path = getTreePath();
+                Map<String, FHIRPathNode> pathNodeMap = this.pathNodeMap;
+                ((FHIRPathAbstractNode.Builder) builderStack.peek()).childrenSupplier(() -> children(visitable, path, pathNodeMap));
+            }
+        }
+        
+        @Override
+        public boolean preVisit(Element element) {
+            return !lazy || builderStack.size() < 2;
+        }
+        
+        @Override
+        public boolean preVisit(Resource resource) {
+            return !lazy || builderStack.size() < 2;
+        }
+        
         @Override
         protected void doVisitEnd(String elementName, int elementIndex, Element element) {
             build();
@@ -163,11 +311,13 @@ public class FHIRPathTree {
             } else {
                 builderStack.push(FHIRPathElementNode.builder(element).name(elementName));
             }
+            deferChildren(element);
         }
         
         @Override
         protected void doVisitStart(String elementName, int elementIndex, Resource resource) {
             builderStack.push(FHIRPathResourceNode.builder(resource).name(elementName));
+            deferChildren(resource);
         }
         
         @Override
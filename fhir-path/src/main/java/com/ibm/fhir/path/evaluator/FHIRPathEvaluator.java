@@ -6,7 +6,7 @@
 
 package com.ibm.fhir.path.evaluator;
 
-import static com.ibm.fhir.core.util.LRUCache.createLRUCache;
+import static com.ibm.fhir.core.util.ConcurrentBoundedCache.createCache;
 import static com.ibm.fhir.path.FHIRPathDecimalValue.decimalValue;
 import static com.ibm.fhir.path.FHIRPathIntegerValue.integerValue;
 import static com.ibm.fhir.path.FHIRPathStringValue.EMPTY_STRING;
@@ -60,6 +60,7 @@ import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.tree.ParseTree;
 
+import com.ibm.fhir.core.util.ConcurrentBoundedCache;
 import com.ibm.fhir.model.annotation.Constraint;
 import com.ibm.fhir.model.resource.OperationOutcome.Issue;
 import com.ibm.fhir.model.resource.Resource;
@@ -95,7 +96,7 @@ public class FHIRPathEvaluator {
     public static final Collection<FHIRPathNode> SINGLETON_FALSE = singleton(FHIRPathBooleanValue.FALSE);
 
     private static final int EXPRESSION_CONTEXT_CACHE_MAX_ENTRIES = 512;
-    private static final Map<String, ExpressionContext> EXPRESSION_CONTEXT_CACHE = createLRUCache(EXPRESSION_CONTEXT_CACHE_MAX_ENTRIES);
+    private static final ConcurrentBoundedCache<String, ExpressionContext> EXPRESSION_CONTEXT_CACHE = createCache(EXPRESSION_CONTEXT_CACHE_MAX_ENTRIES);
 
     private final EvaluatingVisitor visitor = new EvaluatingVisitor();
 
@@ -280,10 +281,10 @@ public class FHIRPathEvaluator {
         private static final String SYSTEM_NAMESPACE = "System";
 
         private static final int IDENTIFIER_CACHE_MAX_ENTRIES = 2048;
-        private static final Map<String, Collection<FHIRPathNode>> IDENTIFIER_CACHE = createLRUCache(IDENTIFIER_CACHE_MAX_ENTRIES);
+        private static final ConcurrentBoundedCache<String, Collection<FHIRPathNode>> IDENTIFIER_CACHE = createCache(IDENTIFIER_CACHE_MAX_ENTRIES);
 
         private static final int LITERAL_CACHE_MAX_ENTRIES = 128;
-        private static final Map<String, Collection<FHIRPathNode>> LITERAL_CACHE = createLRUCache(LITERAL_CACHE_MAX_ENTRIES);
+        private static final ConcurrentBoundedCache<String, Collection<FHIRPathNode>> LITERAL_CACHE = createCache(LITERAL_CACHE_MAX_ENTRIES);
 
         private EvaluationContext evaluationContext;
         private final Stack<Collection<FHIRPathNode>> contextStack = new Stack<>();
@@ -1341,7 +1342,20 @@ public class FHIRPathEvaluator {
          *     the resource
          */
         public EvaluationContext(Resource resource) {
-            this(FHIRPathTree.tree(resource));
+            this(resource, false);
+        }
+
+        /**
+         * Create an evaluation context where the passed resource is the context root.
+         * Sets %resource and %rootResource external constants to the passed resource, but these can be overridden.
+         *
+         * @param resource
+         *     the resource
+         * @param lazy
+         *     whether the FHIRPath tree for the resource should create nodes on first navigation (see {@link FHIRPathTree#lazyTree(Resource)})
+         */
+        public EvaluationContext(Resource resource, boolean lazy) {
+            this(lazy ? FHIRPathTree.lazyTree(resource) : FHIRPathTree.tree(resource));
             externalConstantMap.put("rootResource", singleton(tree.getRoot()));
             externalConstantMap.put("resource", singleton(tree.getRoot()));
         }
@@ -1353,7 +1367,19 @@ public class FHIRPathEvaluator {
          *     the element
          */
         public EvaluationContext(Element element) {
-            this(FHIRPathTree.tree(element));
+            this(element, false);
+        }
+
+        /**
+         * Create an evaluation context where the passed element is the context root.
+         *
+         * @param element
+         *     the element
+         * @param lazy
+         *     whether the FHIRPath tree for the element should create nodes on first navigation (see {@link FHIRPathTree#lazyTree(Element)})
+         */
+        public EvaluationContext(Element element, boolean lazy) {
+            this(lazy ? FHIRPathTree.lazyTree(element) : FHIRPathTree.tree(element));
         }
 
         private EvaluationContext(FHIRPathTree tree) {
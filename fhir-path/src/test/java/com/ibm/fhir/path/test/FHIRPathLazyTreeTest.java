@@ -0,0 +1,104 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.path.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.path.FHIRPathNode;
+import com.ibm.fhir.path.FHIRPathTree;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
+
+public class FHIRPathLazyTreeTest {
+    @DataProvider(name = "examples")
+    public static Object[][] examples() {
+        return new Object[][] {
+            { "json/spec/patient-example.json" },
+            { "json/spec/observation-example-bloodpressure.json" },
+            { "json/spec/bundle-transaction.json" }
+        };
+    }
+
+    @Test(dataProvider = "examples")
+    public void testLazyTreeMatchesTree(String fileName) throws Exception {
+        Resource resource = TestUtil.readExampleResource(fileName);
+
+        FHIRPathTree tree = FHIRPathTree.tree(resource);
+        FHIRPathTree lazyTree = FHIRPathTree.lazyTree(resource);
+
+        assertEquals(describe(lazyTree.getRoot()), describe(tree.getRoot()));
+        for (FHIRPathNode node : tree.getRoot().stream().filter(n -> n.path() != null).collect(Collectors.toList())) {
+            assertEquals(lazyTree.getNode(node.path()), node, node.path());
+        }
+    }
+
+    @Test
+    public void testGetNodeBeforeNavigation() throws Exception {
+        Resource resource = TestUtil.readExampleResource("json/spec/observation-example-bloodpressure.json");
+
+        FHIRPathTree lazyTree = FHIRPathTree.lazyTree(resource);
+
+        FHIRPathNode node = lazyTree.getNode("Observation.component[1].value.value");
+        assertNotNull(node);
+        assertEquals(node, FHIRPathTree.tree(resource).getNode("Observation.component[1].value.value"));
+        assertSame(lazyTree.getNode("Observation.component[1].value.value"), node);
+
+        FHIRPathNode parent = lazyTree.getParent(node);
+        assertEquals(parent.path(), "Observation.component[1].value");
+        assertSame(parent.children().stream().filter(n -> "value".equals(n.name()) && n.path() != null).findFirst().get(), node);
+
+        assertNull(lazyTree.getNode("Observation.component[5]"));
+        assertNull(lazyTree.getNode("Patient.id"));
+    }
+
+    @Test(dataProvider = "examples")
+    public void testEvaluateWithLazyTree(String fileName) throws Exception {
+        Resource resource = TestUtil.readExampleResource(fileName);
+
+        String[] expressions = {
+            "Resource.id",
+            "Resource.meta.lastUpdated",
+            "Patient.name.given",
+            "Patient.telecom.where(system='phone')",
+            "Observation.code",
+            "Observation.value as Quantity",
+            "Observation.component.value.ofType(Quantity)",
+            "Observation.subject.where(resolve() is Patient)",
+            "Bundle.entry.resource.ofType(Patient).name.family",
+            "descendants().count()"
+        };
+
+        FHIRPathEvaluator evaluator = FHIRPathEvaluator.evaluator();
+        EvaluationContext evaluationContext = new EvaluationContext(resource);
+        EvaluationContext lazyEvaluationContext = new EvaluationContext(resource, true);
+
+        for (String expression : expressions) {
+            Collection<FHIRPathNode> expected = evaluator.evaluate(evaluationContext, expression);
+            Collection<FHIRPathNode> actual = evaluator.evaluate(lazyEvaluationContext, expression);
+            assertEquals(new ArrayList<>(actual), new ArrayList<>(expected), expression);
+        }
+    }
+
+    private static List<String> describe(FHIRPathNode root) {
+        return root.stream()
+                .map(node -> node.path() + " " + node.name() + " " + node.type() + " " + node.getValue())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Writes standard GZIP payloads, like the ones written before payload codecs existed, but reuses pooled
+ * {@link Deflater} and {@link Inflater} instances instead of allocating new native zlib buffers for each
+ * resource. Whole payloads are (de)compressed in one step, because they are held in memory anyway.
+ */
+public class GzipPayloadCodec implements PayloadCodec {
+    public static final String NAME = "gzip";
+    public static final byte MARKER = 0x1f;
+
+    // The header written by GZIPOutputStream: magic number, CM=deflate, no flags, no mtime, XFL=0, OS=0
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+    private static final int HEADER_LENGTH = HEADER.length;
+    private static final int TRAILER_LENGTH = 8;
+    private static final int MAX_POOLED = 64;
+
+    private final Pool<Deflater> deflaters = new Pool<>(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true), Deflater::reset, Deflater::end);
+    private final Pool<Inflater> inflaters = new Pool<>(() -> new Inflater(true), Inflater::reset, Inflater::end);
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte getMarker() {
+        return MARKER;
+    }
+
+    @Override
+    public byte[] encode(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + HEADER_LENGTH + TRAILER_LENGTH);
+        out.write(HEADER, 0, HEADER_LENGTH);
+
+        Deflater deflater = deflaters.borrow();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            deflaters.release(deflater);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        writeInt(out, (int) crc.getValue());
+        writeInt(out, data.length);
+        return out.toByteArray();
+    }
+
+    @Override
+    public byte[] decode(byte[] payload) throws IOException {
+        if (!hasDefaultHeader(payload)) {
+            // Written by some other GZIP implementation, so leave the parsing of the header to the JDK
+            return decodeWithStream(payload);
+        }
+
+        int length = readInt(payload, payload.length - 4);
+        if (length < 0) {
+            return decodeWithStream(payload);
+        }
+        byte[] data = new byte[length];
+
+        Inflater inflater = inflaters.borrow();
+        try {
+            inflater.setInput(payload, HEADER_LENGTH, payload.length - HEADER_LENGTH);
+            int offset = 0;
+            while (offset < length && !inflater.finished()) {
+                int n = inflater.inflate(data, offset, length - offset);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += n;
+            }
+            if (!inflater.finished() && (inflater.inflate(new byte[1]) > 0 || !inflater.finished())) {
+                // the deflate stream holds more data than the length in the trailer says
+                return decodeWithStream(payload);
+            }
+            if (offset != length || inflater.getRemaining() != TRAILER_LENGTH) {
+                // e.g. a payload with more than one GZIP member
+                return decodeWithStream(payload);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt GZIP payload", e);
+        } finally {
+            inflaters.release(inflater);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        if ((int) crc.getValue() != readInt(payload, payload.length - TRAILER_LENGTH)) {
+            throw new IOException("Corrupt GZIP payload: CRC mismatch");
+        }
+        return data;
+    }
+
+    private static boolean hasDefaultHeader(byte[] payload) {
+        return payload.length >= HEADER_LENGTH + TRAILER_LENGTH
+                && payload[0] == HEADER[0]
+                && payload[1] == HEADER[1]
+                && payload[2] == HEADER[2]
+                // no optional header fields
+                && payload[3] == 0;
+    }
+
+    private static byte[] decodeWithStream(byte[] payload) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(payload))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length * 4);
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        // GZIP uses little-endian
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | ((bytes[offset + 1] & 0xff) << 8) | ((bytes[offset + 2] & 0xff) << 16) | ((bytes[offset + 3] & 0xff) << 24);
+    }
+
+    /**
+     * A bounded pool of reusable objects; objects released when the pool is full are disposed of.
+     */
+    private static class Pool<T> {
+        private final Queue<T> pooled = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final Supplier<T> factory;
+        private final Consumer<T> reset;
+        private final Consumer<T> dispose;
+
+        private Pool(Supplier<T> factory, Consumer<T> reset, Consumer<T> dispose) {
+            this.factory = factory;
+            this.reset = reset;
+            this.dispose = dispose;
+        }
+
+        private T borrow() {
+            T t = pooled.poll();
+            if (t == null) {
+                return factory.get();
+            }
+            size.decrementAndGet();
+            return t;
+        }
+
+        private void release(T t) {
+            reset.accept(t);
+            if (size.incrementAndGet() <= MAX_POOLED) {
+                pooled.offer(t);
+            } else {
+                size.decrementAndGet();
+                dispose.accept(t);
+            }
+        }
+    }
+}
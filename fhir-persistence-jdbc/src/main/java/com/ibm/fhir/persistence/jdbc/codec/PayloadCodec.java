@@ -0,0 +1,46 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.codec;
+
+import java.io.IOException;
+
+/**
+ * Encodes the serialized JSON of a resource into the payload which is stored in the DATA column, and decodes
+ * it again. Implementations must be thread-safe.
+ * <br>
+ * The first byte of every payload is the marker of the codec that encoded it, so payloads written with
+ * different codecs can be read from the same table. The GZIP codec needs no extra byte, because every GZIP
+ * stream starts with 0x1f; this also makes the payloads written before codecs existed readable.
+ *
+ * @see PayloadCodecs
+ */
+public interface PayloadCodec {
+
+    /**
+     * @return the name which selects this codec in the datasource configuration
+     */
+    String getName();
+
+    /**
+     * @return the first byte of each payload encoded by this codec
+     */
+    byte getMarker();
+
+    /**
+     * @param data the serialized JSON of a resource
+     * @return the payload to store, starting with the marker of this codec
+     * @throws IOException
+     */
+    byte[] encode(byte[] data) throws IOException;
+
+    /**
+     * @param payload a payload encoded by this codec, starting with its marker
+     * @return the serialized JSON of the resource
+     * @throws IOException
+     */
+    byte[] decode(byte[] payload) throws IOException;
+}
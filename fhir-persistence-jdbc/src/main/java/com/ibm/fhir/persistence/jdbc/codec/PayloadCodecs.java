@@ -0,0 +1,112 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.codec;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+/**
+ * Selects the {@link PayloadCodec} which encodes the payloads of a datastore, and decodes payloads with the codec
+ * identified by their first byte.
+ * <br>
+ * The built-in codecs are "gzip" (the default), "lz4" and "none". A custom codec is selected by the name of a
+ * class which implements {@link PayloadCodec} and has a public no-argument constructor; it is registered when it
+ * is first selected, so it must be selected before any of its payloads can be read.
+ */
+public final class PayloadCodecs {
+    private static final Logger log = Logger.getLogger(PayloadCodecs.class.getName());
+
+    public static final String DEFAULT_CODEC = GzipPayloadCodec.NAME;
+
+    private static final Map<String, PayloadCodec> codecsByName = new ConcurrentHashMap<>();
+    private static final AtomicReferenceArray<PayloadCodec> codecsByMarker = new AtomicReferenceArray<>(256);
+    private static final Object lock = new Object();
+
+    static {
+        register(new GzipPayloadCodec());
+        register(new Lz4PayloadCodec());
+        register(new UncompressedPayloadCodec());
+    }
+
+    private PayloadCodecs() {
+    }
+
+    /**
+     * @param name the name of a built-in codec, or the class name of a custom codec; null selects the default codec
+     * @return the codec
+     * @throws IllegalArgumentException if there is no such codec
+     */
+    public static PayloadCodec getCodec(String name) {
+        if (name == null) {
+            name = DEFAULT_CODEC;
+        }
+        PayloadCodec codec = codecsByName.get(name);
+        if (codec == null) {
+            synchronized (lock) {
+                codec = codecsByName.get(name);
+                if (codec == null) {
+                    codec = register(newCodec(name));
+                    // custom codecs are also found by their class name
+                    codecsByName.put(name, codec);
+                }
+            }
+        }
+        return codec;
+    }
+
+    /**
+     * @param payload a payload encoded by any of the registered codecs, or a GZIP payload written before codecs existed
+     * @return the serialized JSON of the resource
+     * @throws IOException if the payload is corrupt or its codec is unknown
+     */
+    public static byte[] decode(byte[] payload) throws IOException {
+        if (payload == null || payload.length == 0) {
+            throw new IOException("Empty resource payload");
+        }
+        PayloadCodec codec = codecsByMarker.get(payload[0] & 0xff);
+        if (codec == null) {
+            throw new IOException("Unknown resource payload codec marker: " + (payload[0] & 0xff));
+        }
+        return codec.decode(payload);
+    }
+
+    private static PayloadCodec newCodec(String className) {
+        try {
+            Class<?> codecClass = Class.forName(className);
+            if (!PayloadCodec.class.isAssignableFrom(codecClass)) {
+                throw new IllegalArgumentException("'" + className + "' is not a PayloadCodec");
+            }
+            return (PayloadCodec) codecClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Unknown resource payload codec: '" + className + "'", e);
+        }
+    }
+
+    /**
+     * @return the codec registered for the marker of the passed codec
+     */
+    private static PayloadCodec register(PayloadCodec codec) {
+        synchronized (lock) {
+            int marker = codec.getMarker() & 0xff;
+            PayloadCodec existing = codecsByMarker.get(marker);
+            if (existing == null) {
+                codecsByMarker.set(marker, codec);
+                codecsByName.put(codec.getName(), codec);
+                log.fine("Registered resource payload codec '" + codec.getName() + "'");
+                return codec;
+            }
+            if (!existing.getClass().equals(codec.getClass())) {
+                throw new IllegalArgumentException("The marker of payload codec '" + codec.getName()
+                        + "' is already used by payload codec '" + existing.getName() + "'");
+            }
+            return existing;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.codec;
+
+import java.util.Arrays;
+
+/**
+ * Stores the JSON as-is, after the marker byte. This trades storage for the least CPU on both reads and writes.
+ */
+public class UncompressedPayloadCodec implements PayloadCodec {
+    public static final String NAME = "none";
+    public static final byte MARKER = 0x01;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte getMarker() {
+        return MARKER;
+    }
+
+    @Override
+    public byte[] encode(byte[] data) {
+        byte[] payload = new byte[data.length + 1];
+        payload[0] = MARKER;
+        System.arraycopy(data, 0, payload, 1, data.length);
+        return payload;
+    }
+
+    @Override
+    public byte[] decode(byte[] payload) {
+        return Arrays.copyOfRange(payload, 1, payload.length);
+    }
+}
@@ -7,6 +7,7 @@
 package com.ibm.fhir.persistence.jdbc.dao.api;
 
 import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -63,6 +64,22 @@ public interface ResourceDAO extends FHIRDbDAO {
     List<Resource> history(String resourceType, String logicalId, Timestamp fromDateTime, int offset, int maxResults)
             throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
 
+    /**
+     * Reads and returns the versions of the Resource with the passed logicalId which are older than the passed
+     * beforeVersionId, ordered by descending version id. This supports keyset pagination of the version history,
+     * where the position of the next page is given by the last version of the previous page rather than an offset.
+     * @param resourceType - The name of a FHIR Resource type
+     * @param logicalId - The logical id of a FHIR Resource
+     * @param fromDateTime - The starting date/time of the version history.
+     * @param beforeVersionId - Only versions with a lower version id are returned.
+     * @param maxResults - The maximum number of versions to return.
+     * @return List<Resource> - An ordered list of Resource versions.
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    List<Resource> historyBeforeVersion(String resourceType, String logicalId, Timestamp fromDateTime, int beforeVersionId, int maxResults)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
     /**
      * Reads and returns the COUNT of all versions of the Resource with the passed logicalId.
      * If non-null, the passed fromDateTime is used to limit the count of Resource versions to those that were updated after the fromDateTime.
@@ -139,6 +156,17 @@ public interface ResourceDAO extends FHIRDbDAO {
      */
     int searchCount(SqlQueryData queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
 
+    /**
+     * Returns an estimate of the count that would be returned by the passed count query, based on the
+     * statistics maintained by the database query planner. Implementations for databases which cannot
+     * provide such an estimate cheaply fall back to executing the count query.
+     * @param queryData - Contains a count query string and (optionally) bind variables.
+     * @return int An estimated count of FHIR Resources satisfying the passed search.
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    int searchCountEstimate(SqlQueryData queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
     /**
      * Executes the passed fully-formed SQL Select COUNT statement and returns the integer count.
      *
@@ -197,4 +225,55 @@ public interface ResourceDAO extends FHIRDbDAO {
     Resource insert(Resource resource, List<ExtractedParameterValue> parameters, ParameterDAO parameterDao)
             throws FHIRPersistenceException;
 
+    /**
+     * Inserts the passed Resource DTOs and their associated search parameters to the appropriate FHIR resource tables,
+     * reusing the same statements for all of them and sharing the batches of search parameter rows across resources.
+     * After insert, the generated primary key is acquired and set in each Resource object.
+     * @param resources A list of Resource Data Transfer Objects
+     * @param parameters The search parameters of each resource, at the same index as the resource; entries may be null
+     * @param parameterDao The Parameter DAO
+     * @return List<Resource> The Resource DTOs
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     * @throws FHIRPersistenceVersionIdMismatchException
+     * @throws FHIRPersistenceException
+     */
+    List<Resource> insertAll(List<Resource> resources, List<List<ExtractedParameterValue>> parameters, ParameterDAO parameterDao)
+            throws FHIRPersistenceException;
+
+    /**
+     * Reads the current version ids of the passed logical ids of the passed resource type with a single query.
+     * @param resourceType A valid FHIR resource type
+     * @param logicalIds The logical ids of the resources
+     * @return Map<String, Integer> The current version id of each logical id that exists
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    Map<String, Integer> readCurrentVersions(String resourceType, Collection<String> logicalIds)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
+    /**
+     * Reads the current version of each of the passed logical ids of the passed resource type, using one query for
+     * every few hundred logical ids.
+     * @param resourceType A valid FHIR resource type
+     * @param logicalIds The logical ids of the resources
+     * @return List<Resource> The Resource DTOs of the logical ids that exist, in no particular order
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    List<Resource> readMany(String resourceType, Collection<String> logicalIds)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
+    /**
+     * Reads specific versions of resources of the passed resource type, using one query for every few hundred versions.
+     * @param resourceType A valid FHIR resource type
+     * @param logicalIds The logical ids of the resources
+     * @param versionIds The version id to read for the logical id at the same index
+     * @return List<Resource> The Resource DTOs of the versions that exist, in no particular order
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    List<Resource> versionReadMany(String resourceType, List<String> logicalIds, List<Integer> versionIds)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
 }
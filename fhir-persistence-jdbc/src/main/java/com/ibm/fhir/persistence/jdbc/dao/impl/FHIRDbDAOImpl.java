@@ -6,6 +6,7 @@
 
 package com.ibm.fhir.persistence.jdbc.dao.impl;
 
+import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -22,6 +23,7 @@ import java.util.logging.Logger;
 import javax.naming.InitialContext;
 import javax.sql.DataSource;
 
+import com.ibm.fhir.config.FHIRConfigHelper;
 import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.config.FHIRRequestContext;
 import com.ibm.fhir.database.utils.api.IConnectionProvider;
@@ -39,6 +41,8 @@ import com.ibm.fhir.persistence.jdbc.dto.Resource;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBCleanupException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBConnectException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
+import com.ibm.fhir.persistence.jdbc.util.StatementCache;
+import com.ibm.fhir.persistence.jdbc.util.TenantBindingCache;
 
 /**
  * This class is a root Data Access Object for managing JDBC access to the FHIR database. It contains common functions for managing connections, closing used
@@ -56,6 +60,10 @@ public class FHIRDbDAOImpl implements FHIRDbDAO {
 
     private Properties dbProps = null;
     private Connection externalConnection = null;
+    // Statements prepared on the external connection, reused until the external connection changes
+    private StatementCache statementCache = null;
+    // The data schema name, resolved on first use
+    private String schemaName = null;
     private static boolean dbDriverLoaded = false;
 
     // Abstract source of configured connections
@@ -197,13 +205,25 @@ public class FHIRDbDAOImpl implements FHIRDbDAO {
             String tenantKey = FHIRRequestContext.get().getTenantKey();
 
             if (tenantName != null && tenantKey != null) {
-                if (log.isLoggable(Level.FINE)) {
-                    log.fine("Setting tenant access on connection for: " + tenantName);
+                // The tenant stays bound to the session of the physical connection, so only bind it
+                // when this connection hasn't been bound to the same tenant and datastore before
+                String dsId = FHIRRequestContext.get().getDataStoreId();
+                if (TenantBindingCache.isBound(connection, tenantName, dsId, tenantKey)) {
+                    if (log.isLoggable(Level.FINE)) {
+                        log.fine("Tenant access already set on connection for: " + tenantName);
+                    }
+                } else {
+                    if (log.isLoggable(Level.FINE)) {
+                        log.fine("Setting tenant access on connection for: " + tenantName);
+                    }
+                    // the session state is unknown until the call succeeds
+                    TenantBindingCache.unbind(connection);
+                    Db2SetTenantVariable cmd = new Db2SetTenantVariable("FHIR_ADMIN", tenantName, tenantKey);
+                    JdbcTarget target = new JdbcTarget(connection);
+                    Db2Adapter adapter = new Db2Adapter(target);
+                    adapter.runStatement(cmd);
+                    TenantBindingCache.bind(connection, tenantName, dsId, tenantKey);
                 }
-                Db2SetTenantVariable cmd = new Db2SetTenantVariable("FHIR_ADMIN", tenantName, tenantKey);
-                JdbcTarget target = new JdbcTarget(connection);
-                Db2Adapter adapter = new Db2Adapter(target);
-                adapter.runStatement(cmd);
             }
 
             return connection;
@@ -293,7 +313,7 @@ public class FHIRDbDAOImpl implements FHIRDbDAO {
 
         FHIRPersistenceDBCleanupException ce;
 
-        if (stmt != null) {
+        if (stmt != null && (statementCache == null || !statementCache.release(stmt))) {
             try {
                 stmt.close();
             }
@@ -520,9 +540,74 @@ public class FHIRDbDAOImpl implements FHIRDbDAO {
 
     @Override
     public void setExternalConnection(Connection externalConnection) {
+        if (externalConnection != this.externalConnection) {
+            if (statementCache != null) {
+                statementCache.close();
+            }
+            statementCache = externalConnection != null ? new StatementCache(externalConnection, StatementCache.DEFAULT_MAX_STATEMENTS) : null;
+        }
         this.externalConnection = externalConnection;
     }
 
+    /**
+     * Get the cache of statements for the passed connection. Only the statements of the external connection are
+     * cached, because it is the only connection that outlives a single DAO call.
+     * @param connection
+     * @return the statement cache, or null if statements prepared on the connection must be closed after use
+     */
+    protected StatementCache getStatementCache(Connection connection) {
+        return statementCache != null && statementCache.getConnection() == connection ? statementCache : null;
+    }
+
+    /**
+     * Prepares the passed SQL on the passed connection, reusing a cached statement when there is one.
+     * Statements obtained here must be given back with one of the cleanup methods.
+     * @param connection
+     * @param sql
+     * @return
+     * @throws SQLException
+     */
+    protected PreparedStatement prepareStatement(Connection connection, String sql) throws SQLException {
+        StatementCache cache = getStatementCache(connection);
+        return cache != null ? cache.prepareStatement(sql) : connection.prepareStatement(sql);
+    }
+
+    /**
+     * Prepares the passed stored procedure call on the passed connection, reusing a cached statement when there is one.
+     * Statements obtained here must be given back with one of the cleanup methods.
+     * @param connection
+     * @param sql
+     * @return
+     * @throws SQLException
+     */
+    protected CallableStatement prepareCall(Connection connection, String sql) throws SQLException {
+        StatementCache cache = getStatementCache(connection);
+        return cache != null ? cache.prepareCall(sql) : connection.prepareCall(sql);
+    }
+
+    /**
+     * Returns the name of the FHIR data schema. The name is taken from the "schemaName" property when running
+     * standalone, or from the currentSchema connection property of the datasource configuration otherwise.
+     * The current schema of the connection is only queried if neither is configured.
+     * @param connection
+     * @return
+     * @throws SQLException
+     */
+    protected String getSchemaName(Connection connection) throws SQLException {
+        if (schemaName == null) {
+            String configured;
+            if (this.getDbProps() != null) {
+                configured = this.getDbProps().getProperty("schemaName", "FHIRDATA");
+            } else {
+                String dsId = FHIRRequestContext.get().getDataStoreId();
+                configured = FHIRConfigHelper.getStringProperty(
+                    FHIRConfiguration.PROPERTY_DATASOURCES + "/" + dsId + "/connectionProperties/currentSchema", null);
+            }
+            schemaName = configured != null ? configured.trim() : connection.getSchema().trim();
+        }
+        return schemaName;
+    }
+
     @Override
     public boolean isDb2Database() throws FHIRPersistenceDBConnectException, SQLException {
 
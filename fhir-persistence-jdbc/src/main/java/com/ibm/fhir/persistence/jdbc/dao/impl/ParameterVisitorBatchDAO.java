@@ -34,6 +34,7 @@ import com.ibm.fhir.persistence.jdbc.dto.QuantityParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.StringParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.TokenParmVal;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
+import com.ibm.fhir.persistence.jdbc.util.StatementCache;
 import com.ibm.fhir.schema.control.FhirSchemaConstants;
 
 /**
@@ -48,11 +49,14 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
     // the connection to use for the inserts
     private final Connection connection;
 
+    // the cache the batched statements are checked out from, or null if they are prepared just for this instance
+    private final StatementCache statementCache;
+
     // the max number of rows we accumulate for a given statement before we submit the batch
     private final int batchSize;
 
     // FK to the logical resource for the parameters being added
-    private final long logicalResourceId;
+    private long logicalResourceId;
 
     // Maintainers: remember to close all statements in AutoCloseable#close()
     private final String insertString;
@@ -108,11 +112,25 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
      */
     public ParameterVisitorBatchDAO(Connection c, String adminSchemaName, String tablePrefix, boolean multitenant, long logicalResourceId, int batchSize,
             IParameterNameCache pnc, ICodeSystemCache csc) throws SQLException {
+        this(c, null, adminSchemaName, tablePrefix, multitenant, logicalResourceId, batchSize, pnc, csc);
+    }
+
+    /**
+     * Public constructor which checks the batched statements out of the given cache, so that they are only
+     * prepared once for all the visitors using the connection. The statements are given back to the cache
+     * when this instance is closed.
+     * @param c
+     * @param statementCache the cache of statements for the connection, or null
+     * @param resourceId
+     */
+    public ParameterVisitorBatchDAO(Connection c, StatementCache statementCache, String adminSchemaName, String tablePrefix, boolean multitenant,
+            long logicalResourceId, int batchSize, IParameterNameCache pnc, ICodeSystemCache csc) throws SQLException {
         if (batchSize < 1) {
             throw new IllegalArgumentException("batchSize must be >= 1");
         }
 
         this.connection = c;
+        this.statementCache = statementCache;
         this.logicalResourceId = logicalResourceId;
         this.batchSize = batchSize;
         this.parameterNameCache = pnc;
@@ -122,32 +140,32 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                 "INSERT INTO " + tablePrefix + "_str_values (mt_id, parameter_name_id, str_value, str_value_lcase, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?)"
                 :
                 "INSERT INTO " + tablePrefix + "_str_values (parameter_name_id, str_value, str_value_lcase, logical_resource_id) VALUES (?,?,?,?)";
-        strings = c.prepareStatement(insertString);
+        strings = prepare(insertString, Statement.NO_GENERATED_KEYS);
 
         insertNumber = multitenant ?
                 "INSERT INTO " + tablePrefix + "_number_values (mt_id, parameter_name_id, number_value, number_value_low, number_value_high, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?,?)"
                 :
                 "INSERT INTO " + tablePrefix + "_number_values (parameter_name_id, number_value, number_value_low, number_value_high, logical_resource_id) VALUES (?,?,?,?,?)";
-        numbers = c.prepareStatement(insertNumber);
+        numbers = prepare(insertNumber, Statement.NO_GENERATED_KEYS);
 
         insertDate = multitenant ?
                 "INSERT INTO " + tablePrefix + "_date_values (mt_id, parameter_name_id, date_start, date_end, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?)"
                 :
                 "INSERT INTO " + tablePrefix + "_date_values (parameter_name_id, date_start, date_end, logical_resource_id) VALUES (?,?,?,?)";
-        dates = c.prepareStatement(insertDate);
+        dates = prepare(insertDate, Statement.NO_GENERATED_KEYS);
 
         String insertToken = multitenant ?
                 "INSERT INTO " + tablePrefix + "_token_values (mt_id, parameter_name_id, code_system_id, token_value, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?)"
                 :
                 "INSERT INTO " + tablePrefix + "_token_values (parameter_name_id, code_system_id, token_value, logical_resource_id) VALUES (?,?,?,?)";
-        tokens = c.prepareStatement(insertToken);
-        tokenComp = c.prepareStatement(insertToken, Statement.RETURN_GENERATED_KEYS);
+        tokens = prepare(insertToken, Statement.NO_GENERATED_KEYS);
+        tokenComp = prepare(insertToken, Statement.RETURN_GENERATED_KEYS);
 
         insertQuantity = multitenant ?
                 "INSERT INTO " + tablePrefix + "_quantity_values (mt_id, parameter_name_id, code_system_id, code, quantity_value, quantity_value_low, quantity_value_high, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?,?,?,?)"
                 :
                 "INSERT INTO " + tablePrefix + "_quantity_values (parameter_name_id, code_system_id, code, quantity_value, quantity_value_low, quantity_value_high, logical_resource_id) VALUES (?,?,?,?,?,?,?)";
-        quantities = c.prepareStatement(insertQuantity);
+        quantities = prepare(insertQuantity, Statement.NO_GENERATED_KEYS);
 
         insertLocation = multitenant ? "INSERT INTO " + tablePrefix + "_latlng_values (mt_id, parameter_name_id, latitude_value, longitude_value, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?)"
                 : "INSERT INTO " + tablePrefix + "_latlng_values (parameter_name_id, latitude_value, longitude_value, logical_resource_id) VALUES (?,?,?,?)";
@@ -164,28 +182,37 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                 + "comp2_str, comp2_number, comp2_date, comp2_token, comp2_quantity, comp2_latlng, "
                 + "comp3_str, comp3_number, comp3_date, comp3_token, comp3_quantity, comp3_latlng"
                 + ") VALUES (?,?,  ?,?,?,?,?,?,  ?,?,?,?,?,?,  ?,?,?,?,?,?)";
-        composites = c.prepareStatement(insertComposite);
+        composites = prepare(insertComposite, Statement.NO_GENERATED_KEYS);
 
         // Resource level string attributes
         String insertResourceString = multitenant ?
                 "INSERT INTO resource_str_values (mt_id, parameter_name_id, str_value, str_value_lcase, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?)"
                 :
                 "INSERT INTO resource_str_values (parameter_name_id, str_value, str_value_lcase, logical_resource_id) VALUES (?,?,?,?)";
-        resourceStrings = c.prepareStatement(insertResourceString);
+        resourceStrings = prepare(insertResourceString, Statement.NO_GENERATED_KEYS);
 
         // Resource level date attributes
         String insertResourceDate = multitenant ?
                 "INSERT INTO resource_date_values (mt_id, parameter_name_id, date_start, date_end, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?)"
                 :
                 "INSERT INTO resource_date_values (parameter_name_id, date_start, date_end, logical_resource_id) VALUES (?,?,?,?)";
-        resourceDates = c.prepareStatement(insertResourceDate);
+        resourceDates = prepare(insertResourceDate, Statement.NO_GENERATED_KEYS);
 
         // Resource level token attributes
         String insertResourceToken = multitenant ?
                 "INSERT INTO resource_token_values (mt_id, parameter_name_id, code_system_id, token_value, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?)"
                 :
                 "INSERT INTO resource_token_values (parameter_name_id, code_system_id, token_value, logical_resource_id) VALUES (?,?,?,?)";
-        resourceTokens = c.prepareStatement(insertResourceToken);
+        resourceTokens = prepare(insertResourceToken, Statement.NO_GENERATED_KEYS);
+    }
+
+    /**
+     * Set the logical resource for the parameters visited next. This allows a single instance to accumulate
+     * the parameter rows of many resources of the same type, so that they are inserted in shared batches.
+     * @param logicalResourceId
+     */
+    public void setLogicalResourceId(long logicalResourceId) {
+        this.logicalResourceId = logicalResourceId;
     }
 
     /**
@@ -620,10 +647,12 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
         }
     }
 
-    @Override
-    public void close() throws Exception {
-        // flush any stragglers, remembering to reset each count because
-        // close() should be idempotent.
+    /**
+     * Execute the batches of all parameter rows that have not been submitted yet
+     * @throws SQLException
+     */
+    public void flush() throws SQLException {
+        // reset each count because flush() may be called any number of times
         try {
             if (stringCount > 0) {
                 strings.executeBatch();
@@ -680,7 +709,49 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                 throw x;
             }
         }
+    }
+
+    @Override
+    public void close() throws Exception {
+        // flush any stragglers
+        boolean flushed = false;
+        try {
+            flush();
+            flushed = true;
+        } finally {
+            if (flushed && statementCache != null) {
+                // give the statements back for reuse
+                for (PreparedStatement ps : new PreparedStatement[] { strings, numbers, dates, tokens, tokenComp, quantities,
+                        resourceStrings, resourceDates, resourceTokens, composites }) {
+                    statementCache.release(ps);
+                }
+            } else {
+                closeStatements();
+            }
+        }
+    }
 
+    /**
+     * Prepare the statement, or check it out of the statement cache if there is one
+     * @param sql
+     * @param autoGeneratedKeys
+     * @return
+     * @throws SQLException
+     */
+    private PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        if (statementCache != null) {
+            return statementCache.prepareStatement(sql, autoGeneratedKeys);
+        } else if (autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS) {
+            return connection.prepareStatement(sql, autoGeneratedKeys);
+        }
+        return connection.prepareStatement(sql);
+    }
+
+    /**
+     * Quietly close all statements without submitting pending batches. Used to clean up after a failure.
+     * Cached statements are evicted too, because they may still hold part of a batch.
+     */
+    public void closeStatements() {
         closeStatement(strings);
         closeStatement(numbers);
         closeStatement(dates);
@@ -690,6 +761,7 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
         closeStatement(resourceStrings);
         closeStatement(resourceDates);
         closeStatement(resourceTokens);
+        closeStatement(composites);
     }
 
     /**
@@ -697,6 +769,10 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
      * @param ps
      */
     private void closeStatement(PreparedStatement ps) {
+        if (statementCache != null) {
+            statementCache.evict(ps);
+            return;
+        }
         try {
             ps.close();
         }
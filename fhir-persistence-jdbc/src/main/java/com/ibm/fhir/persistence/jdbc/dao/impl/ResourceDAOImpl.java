@@ -21,11 +21,16 @@ import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -69,6 +74,27 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
     // Don't forget that we must account for IN and OUT parameters.
     private static final String SQL_INSERT_WITH_PARAMETERS = "CALL %s.add_any_resource(?,?,?,?,?,?,?,?)";
 
+    // Read the current version ids of a set of logical ids; the IN list is appended
+    private static final String SQL_READ_CURRENT_VERSIONS = "SELECT LR.LOGICAL_ID, R.VERSION_ID " +
+                                            "FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE " +
+                                            "R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID AND LR.LOGICAL_ID IN ";
+
+    // Read the current version of a set of resources; the IN list is appended
+    private static final String SQL_READ_MANY = "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID " +
+                                            "FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE " +
+                                            "R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID AND LR.LOGICAL_ID IN ";
+
+    // Read specific versions of a set of resources; the (logical id, version) conditions are appended
+    private static final String SQL_VERSION_READ_MANY = "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID " +
+                                            "FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE " +
+                                            "R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID AND ";
+
+    // The max number of logical ids bound to a single SQL_READ_CURRENT_VERSIONS, SQL_READ_MANY or SQL_VERSION_READ_MANY query
+    private static final int READ_CURRENT_VERSIONS_MAX_IDS = 500;
+
+    // The max number of rows per search parameter table submitted in a single JDBC batch
+    protected static final int PARAMETER_BATCH_SIZE = 100;
+
     // Read version history of the resource identified by its logical-id
     private static final String SQL_HISTORY = "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID " +
                                                  "FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE " +
@@ -84,6 +110,17 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
                                                               "LR.LOGICAL_ID = ? AND R.LAST_UPDATED >= ? AND R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID " +
                                                               "ORDER BY R.VERSION_ID DESC ";
 
+    // Read the page of version history which precedes the given version (keyset pagination)
+    private static final String SQL_HISTORY_BEFORE_VERSION = "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID " +
+                                                 "FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE " +
+                                                 "LR.LOGICAL_ID = ? AND R.VERSION_ID < ? AND R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID " +
+                                              "ORDER BY R.VERSION_ID DESC ";
+
+    private static final String SQL_HISTORY_BEFORE_VERSION_FROM_DATETIME = "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID " +
+                                                              "FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE " +
+                                                              "LR.LOGICAL_ID = ? AND R.VERSION_ID < ? AND R.LAST_UPDATED >= ? AND R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID " +
+                                                              "ORDER BY R.VERSION_ID DESC ";
+
     private static final String SQL_HISTORY_FROM_DATETIME_COUNT = "SELECT COUNT(R.VERSION_ID) FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE LR.LOGICAL_ID = ? AND " +
                                                                   "R.LAST_UPDATED >= ? AND R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID";
 
@@ -241,6 +278,45 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
         return resources;
     }
 
+    @Override
+    public List<Resource> historyBeforeVersion(String resourceType, String logicalId, Timestamp fromDateTime, int beforeVersionId, int maxResults)
+                                    throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "historyBeforeVersion";
+        log.entering(CLASSNAME, METHODNAME);
+
+        List<Resource> resources = null;
+        String stmtString = null;
+
+        try {
+            if (fromDateTime != null) {
+                stmtString = String.format(SQL_HISTORY_BEFORE_VERSION_FROM_DATETIME, resourceType, resourceType);
+                if (this.isDb2Database()) {
+                    stmtString = stmtString + DB2_PAGINATION_PARMS;
+                    resources = this.runQuery(stmtString, logicalId, beforeVersionId, fromDateTime, maxResults, 0);
+                } else {
+                    stmtString = stmtString + DERBY_PAGINATION_PARMS;
+                    resources = this.runQuery(stmtString, logicalId, beforeVersionId, fromDateTime, 0, maxResults);
+                }
+            } else {
+                stmtString = String.format(SQL_HISTORY_BEFORE_VERSION, resourceType, resourceType);
+                if (this.isDb2Database()) {
+                    stmtString = stmtString + DB2_PAGINATION_PARMS;
+                    resources = this.runQuery(stmtString, logicalId, beforeVersionId, maxResults, 0);
+                } else {
+                    stmtString = stmtString + DERBY_PAGINATION_PARMS;
+                    resources = this.runQuery(stmtString, logicalId, beforeVersionId, 0, maxResults);
+                }
+            }
+        } catch (SQLException e) {
+            FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("Failure running history query");
+            String errMsg = "Failure running history query: " + stmtString;
+            throw severe(log, fx, errMsg, e);
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME, Arrays.toString(new Object[] {resources}));
+        }
+        return resources;
+    }
+
     @Override
     public int historyCount(String resourceType, String logicalId, Timestamp fromDateTime) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
         final String METHODNAME = "historyCount";
@@ -359,9 +435,9 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
 
         try {
             connection = this.getConnection();
-            currentSchema = connection.getSchema().trim();
+            currentSchema = getSchemaName(connection);
             stmtString = String.format(SQL_READ_RESOURCE_TYPE, currentSchema);
-            stmt = connection.prepareCall(stmtString);
+            stmt = prepareCall(connection, stmtString);
             stmt.setString(1, resourceType);
             stmt.registerOutParameter(2, Types.INTEGER);
             dbCallStartTime = System.nanoTime();
@@ -493,10 +569,9 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
                          "  acquiredFromCache=" + acquiredFromCache + "  tenantDatastoreCacheName=" + ResourceTypesCache.getCacheNameForTenantDatastore());
             }
 
-            // TODO avoid the round-trip and use the configured data schema name
-            currentSchema = connection.getSchema().trim();
+            currentSchema = getSchemaName(connection);
             stmtString = String.format(SQL_INSERT_WITH_PARAMETERS, currentSchema);
-            stmt = connection.prepareCall(stmtString);
+            stmt = prepareCall(connection, stmtString);
             stmt.setString(1, resource.getResourceType());
             stmt.setString(2, resource.getLogicalId());
             stmt.setBytes(3, resource.getData());
@@ -517,7 +592,7 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
             // Parameter time
             // TODO FHIR_ADMIN schema name needs to come from the configuration/context
             if (parameters != null) {
-                try (ParameterVisitorBatchDAO pvd = new ParameterVisitorBatchDAO(connection, "FHIR_ADMIN", resource.getResourceType(), true,
+                try (ParameterVisitorBatchDAO pvd = new ParameterVisitorBatchDAO(connection, getStatementCache(connection), "FHIR_ADMIN", resource.getResourceType(), true,
                         resource.getId(), 100, new ParameterNameCacheAdapter(parameterDao), new CodeSystemCacheAdapter(parameterDao))) {
                     for (ExtractedParameterValue p: parameters) {
                         p.accept(pvd);
@@ -553,6 +628,336 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
     }
 
 
+    @Override
+    public List<Resource> insertAll(List<Resource> resources, List<List<ExtractedParameterValue>> parameters, ParameterDAO parameterDao)
+            throws FHIRPersistenceException {
+        final String METHODNAME = "insertAll";
+        log.entering(CLASSNAME, METHODNAME);
+
+        Connection connection = null;
+        CallableStatement stmt = null;
+        // One visitor per resource type, so that the parameter rows of the whole list are inserted in shared batches
+        Map<String, ParameterVisitorBatchDAO> visitors = new HashMap<>();
+        // The logical resources with parameter rows in the pending batches
+        Set<String> pending = new HashSet<>();
+        long dbCallStartTime = System.nanoTime();
+
+        try {
+            connection = this.getConnection();
+
+            String currentSchema = getSchemaName(connection);
+            stmt = prepareCall(connection, String.format(SQL_INSERT_WITH_PARAMETERS, currentSchema));
+
+            for (int i = 0; i < resources.size(); i++) {
+                Resource resource = resources.get(i);
+                List<ExtractedParameterValue> resourceParameters = parameters.get(i);
+
+                if (ResourceTypesCache.getResourceTypeId(resource.getResourceType()) == null) {
+                    Integer resourceTypeId = this.readResourceTypeId(resource.getResourceType());
+                    this.addResourceTypeCacheCandidate(resource.getResourceType(), resourceTypeId);
+                }
+
+                // add_any_resource deletes the parameters of the previous version, so the parameter rows
+                // of an earlier occurrence of the same logical resource must be inserted first
+                if (!pending.add(resource.getResourceType() + "/" + resource.getLogicalId())) {
+                    for (ParameterVisitorBatchDAO pvd : visitors.values()) {
+                        pvd.flush();
+                    }
+                    pending.clear();
+                    pending.add(resource.getResourceType() + "/" + resource.getLogicalId());
+                }
+
+                stmt.setString(1, resource.getResourceType());
+                stmt.setString(2, resource.getLogicalId());
+                stmt.setBytes(3, resource.getData());
+                stmt.setTimestamp(4, resource.getLastUpdated(), UTC);
+                stmt.setString(5, resource.isDeleted() ? "Y": "N");
+                stmt.setString(6, UUID.randomUUID().toString());
+                stmt.setInt(7, resource.getVersionId());
+                stmt.registerOutParameter(8, Types.BIGINT);
+                stmt.execute();
+
+                resource.setId(stmt.getLong(8));
+
+                if (resourceParameters != null) {
+                    ParameterVisitorBatchDAO pvd = visitors.get(resource.getResourceType());
+                    if (pvd == null) {
+                        pvd = new ParameterVisitorBatchDAO(connection, getStatementCache(connection), "FHIR_ADMIN", resource.getResourceType(), true,
+                                resource.getId(), PARAMETER_BATCH_SIZE, new ParameterNameCacheAdapter(parameterDao), new CodeSystemCacheAdapter(parameterDao));
+                        visitors.put(resource.getResourceType(), pvd);
+                    }
+                    pvd.setLogicalResourceId(resource.getId());
+                    for (ExtractedParameterValue p: resourceParameters) {
+                        p.accept(pvd);
+                    }
+                }
+            }
+
+            // flush the remaining rows and give the statements back to the cache
+            for (ParameterVisitorBatchDAO pvd : visitors.values()) {
+                pvd.close();
+            }
+            visitors.clear();
+
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Successfully inserted " + resources.size() + " Resources. executionTime=" + (System.nanoTime()-dbCallStartTime)/1e6 + "ms");
+            }
+        } catch(FHIRPersistenceDBConnectException | FHIRPersistenceDataAccessException e) {
+            throw e;
+        } catch(SQLIntegrityConstraintViolationException e) {
+            FHIRPersistenceFKVException fx = new FHIRPersistenceFKVException("Encountered FK violation while inserting Resources.");
+            throw severe(log, fx, e);
+        } catch(SQLException e) {
+            if ("99001".equals(e.getSQLState())) {
+                // this is just a concurrency update, so there's no need to log the SQLException here
+                throw new FHIRPersistenceVersionIdMismatchException("Encountered version id mismatch while inserting Resources");
+            } else {
+                FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("SQLException encountered while inserting Resources.");
+                throw severe(log, fx, e);
+            }
+        } catch(Throwable e) {
+            FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("Failure inserting Resources.");
+            throw severe(log, fx, e);
+        } finally {
+            for (ParameterVisitorBatchDAO pvd : visitors.values()) {
+                pvd.closeStatements();
+            }
+            this.cleanup(stmt, connection);
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+
+        return resources;
+    }
+
+    /**
+     * The database specific steps of {@link #insertAllWithoutProcedure(List, List, Function)}, bound to the
+     * connection used for the whole list of resources.
+     */
+    protected interface ResourceWriter {
+        /**
+         * @param resourceType
+         * @return the id of the resource type, which is created if it doesn't exist yet
+         * @throws SQLException
+         */
+        int getOrCreateResourceType(String resourceType) throws SQLException;
+
+        /**
+         * @param resourceType
+         * @return a visitor which adds the parameter rows of the resources of the given type to shared batches
+         * @throws SQLException
+         */
+        ParameterVisitorBatchDAO createParameterVisitor(String resourceType) throws SQLException;
+
+        /**
+         * Stores the resource, adding its parameter rows to the passed visitor.
+         * @param resource
+         * @param parameters
+         * @param pvd
+         * @return the resource id of the new resource version
+         * @throws Exception
+         */
+        long storeResource(Resource resource, List<ExtractedParameterValue> parameters, ParameterVisitorBatchDAO pvd) throws Exception;
+    }
+
+    /**
+     * Inserts the passed FHIR Resources and their search parameters on a database which doesn't use the
+     * add_any_resource stored procedure, sharing the batches of parameter rows across all of the resources.
+     * @param resources
+     * @param parameters the search parameters of each resource, in the same order as the resources
+     * @param writerFactory creates the database specific writer for the connection
+     * @return the resources, with their resource ids set
+     * @throws FHIRPersistenceException
+     */
+    protected List<Resource> insertAllWithoutProcedure(List<Resource> resources, List<List<ExtractedParameterValue>> parameters,
+            Function<Connection, ResourceWriter> writerFactory) throws FHIRPersistenceException {
+        final String METHODNAME = "insertAllWithoutProcedure";
+        log.entering(CLASSNAME, METHODNAME);
+
+        Connection connection = null;
+        // One visitor per resource type, so that the parameter rows of the whole list are inserted in shared batches
+        Map<String, ParameterVisitorBatchDAO> visitors = new HashMap<>();
+        // The logical resources with parameter rows in the pending batches
+        Set<String> pending = new HashSet<>();
+        long dbCallStartTime = System.nanoTime();
+
+        try {
+            connection = this.getConnection();
+            ResourceWriter writer = writerFactory.apply(connection);
+
+            for (int i = 0; i < resources.size(); i++) {
+                Resource resource = resources.get(i);
+                String resourceType = resource.getResourceType();
+
+                if (ResourceTypesCache.getResourceTypeId(resourceType) == null) {
+                    Integer resourceTypeId = writer.getOrCreateResourceType(resourceType);
+                    this.addResourceTypeCacheCandidate(resourceType, resourceTypeId);
+                }
+
+                // storing a resource deletes the parameters of the previous version, so the parameter rows
+                // of an earlier occurrence of the same logical resource must be inserted first
+                if (!pending.add(resourceType + "/" + resource.getLogicalId())) {
+                    for (ParameterVisitorBatchDAO pvd : visitors.values()) {
+                        pvd.flush();
+                    }
+                    pending.clear();
+                    pending.add(resourceType + "/" + resource.getLogicalId());
+                }
+
+                ParameterVisitorBatchDAO pvd = visitors.get(resourceType);
+                if (pvd == null) {
+                    pvd = writer.createParameterVisitor(resourceType);
+                    visitors.put(resourceType, pvd);
+                }
+
+                resource.setId(writer.storeResource(resource, parameters.get(i), pvd));
+            }
+
+            // flush the remaining rows and give the statements back to the cache
+            for (ParameterVisitorBatchDAO pvd : visitors.values()) {
+                pvd.close();
+            }
+            visitors.clear();
+
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Successfully inserted " + resources.size() + " Resources. executionTime=" + (System.nanoTime() - dbCallStartTime)/1e6 + "ms");
+            }
+        } catch(FHIRPersistenceDBConnectException | FHIRPersistenceDataAccessException e) {
+            throw e;
+        } catch(SQLIntegrityConstraintViolationException e) {
+            FHIRPersistenceFKVException fx = new FHIRPersistenceFKVException("Encountered FK violation while inserting Resources.");
+            throw severe(log, fx, e);
+        } catch(SQLException e) {
+            if ("99001".equals(e.getSQLState())) {
+                // this is just a concurrency update, so there's no need to log the SQLException here
+                throw new FHIRPersistenceVersionIdMismatchException("Encountered version id mismatch while inserting Resources");
+            } else {
+                FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("SQLException encountered while inserting Resources.");
+                throw severe(log, fx, e);
+            }
+        } catch(Throwable e) {
+            FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("Failure inserting Resources.");
+            throw severe(log, fx, e);
+        } finally {
+            for (ParameterVisitorBatchDAO pvd : visitors.values()) {
+                pvd.closeStatements();
+            }
+            this.cleanup(null, connection);
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+
+        return resources;
+    }
+
+    @Override
+    public Map<String, Integer> readCurrentVersions(String resourceType, Collection<String> logicalIds)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "readCurrentVersions";
+        log.entering(CLASSNAME, METHODNAME);
+
+        Map<String, Integer> result = new HashMap<>();
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(logicalIds));
+        Connection connection = null;
+        PreparedStatement stmt = null;
+        long dbCallStartTime = System.nanoTime();
+
+        try {
+            connection = this.getConnection();
+            for (int from = 0; from < ids.size(); from += READ_CURRENT_VERSIONS_MAX_IDS) {
+                List<String> chunk = ids.subList(from, Math.min(from + READ_CURRENT_VERSIONS_MAX_IDS, ids.size()));
+                StringBuilder stmtString = new StringBuilder(String.format(SQL_READ_CURRENT_VERSIONS, resourceType, resourceType));
+                stmtString.append("(");
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmtString.append(i > 0 ? ",?" : "?");
+                }
+                stmtString.append(")");
+
+                stmt = connection.prepareStatement(stmtString.toString());
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setString(i + 1, chunk.get(i));
+                }
+                try (ResultSet resultSet = stmt.executeQuery()) {
+                    while (resultSet.next()) {
+                        result.put(resultSet.getString(1), resultSet.getInt(2));
+                    }
+                }
+                stmt.close();
+                stmt = null;
+            }
+
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("DB read current versions complete. ids=" + ids.size() + " executionTime=" + (System.nanoTime()-dbCallStartTime)/1e6 + "ms");
+            }
+        } catch (Throwable e) {
+            FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("Failure retrieving current Resource versions.");
+            throw severe(log, fx, e);
+        } finally {
+            this.cleanup(stmt, connection);
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+
+        return result;
+    }
+
+    @Override
+    public List<Resource> readMany(String resourceType, Collection<String> logicalIds)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "readMany";
+        log.entering(CLASSNAME, METHODNAME);
+
+        List<Resource> resources = new ArrayList<>();
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(logicalIds));
+
+        try {
+            for (int from = 0; from < ids.size(); from += READ_CURRENT_VERSIONS_MAX_IDS) {
+                List<String> chunk = ids.subList(from, Math.min(from + READ_CURRENT_VERSIONS_MAX_IDS, ids.size()));
+                StringBuilder stmtString = new StringBuilder(String.format(SQL_READ_MANY, resourceType, resourceType));
+                stmtString.append("(");
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmtString.append(i > 0 ? ",?" : "?");
+                }
+                stmtString.append(")");
+                resources.addAll(this.runQuery(stmtString.toString(), chunk.toArray()));
+            }
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+        return resources;
+    }
+
+    @Override
+    public List<Resource> versionReadMany(String resourceType, List<String> logicalIds, List<Integer> versionIds)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "versionReadMany";
+        log.entering(CLASSNAME, METHODNAME);
+
+        if (logicalIds.size() != versionIds.size()) {
+            throw new IllegalArgumentException("logicalIds and versionIds must have the same size");
+        }
+
+        List<Resource> resources = new ArrayList<>();
+        // each version binds two parameters
+        final int maxVersions = READ_CURRENT_VERSIONS_MAX_IDS / 2;
+
+        try {
+            for (int from = 0; from < logicalIds.size(); from += maxVersions) {
+                int to = Math.min(from + maxVersions, logicalIds.size());
+                StringBuilder stmtString = new StringBuilder(String.format(SQL_VERSION_READ_MANY, resourceType, resourceType));
+                Object[] args = new Object[(to - from) * 2];
+                stmtString.append("(");
+                for (int i = from; i < to; i++) {
+                    stmtString.append(i > from ? " OR " : "").append("(LR.LOGICAL_ID = ? AND R.VERSION_ID = ?)");
+                    args[(i - from) * 2] = logicalIds.get(i);
+                    args[(i - from) * 2 + 1] = versionIds.get(i);
+                }
+                stmtString.append(")");
+                resources.addAll(this.runQuery(stmtString.toString(), args));
+            }
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+        return resources;
+    }
+
     @Override
     public List<Resource> search(String sqlSelect) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
         final String METHODNAME = "search";
@@ -627,6 +1032,13 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
         return resources;
     }
 
+    @Override
+    public int searchCountEstimate(SqlQueryData queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        // Db2 only exposes optimizer estimates through the explain tables, which aren't guaranteed
+        // to exist in the FHIR data schema, so the accurate count is the best estimate available
+        return searchCount(queryData);
+    }
+
     protected String getSearchByIdsSql(String resourceType) {
         return String.format(SQL_SEARCH_BY_IDS, resourceType, resourceType);
     }
@@ -15,6 +15,7 @@ import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
 import java.sql.Timestamp;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -169,6 +170,49 @@ public class DerbyResourceDAO extends ResourceDAOImpl {
 
     }
 
+    /**
+     * Inserts the passed FHIR Resources and their search parameters, sharing the batches of parameter rows
+     * across all of the resources.
+     */
+    @Override
+    public List<Resource> insertAll(List<Resource> resources, List<List<ExtractedParameterValue>> parameters, ParameterDAO parameterDao)
+            throws FHIRPersistenceException {
+        return insertAllWithoutProcedure(resources, parameters, connection -> {
+            this.fhirRefSequenceDAO = new FhirRefSequenceDAOImpl(connection);
+            this.parameterNameDAO = new DerbyParameterNamesDAO(connection, fhirRefSequenceDAO);
+            this.codeSystemDAO = new DerbyCodeSystemDAO(connection, fhirRefSequenceDAO);
+
+            return new ResourceWriter() {
+                @Override
+                public int getOrCreateResourceType(String resourceType) throws SQLException {
+                    return DerbyResourceDAO.this.getOrCreateResourceType(resourceType, connection);
+                }
+
+                @Override
+                public ParameterVisitorBatchDAO createParameterVisitor(String resourceType) throws SQLException {
+                    // Derby doesn't support partitioned multi-tenancy, so we disable it on the DAO:
+                    return new ParameterVisitorBatchDAO(connection, getStatementCache(connection), null, resourceType, false, -1L, PARAMETER_BATCH_SIZE,
+                        new ParameterNameCacheAdapter(parameterNameDAO), new CodeSystemCacheAdapter(codeSystemDAO));
+                }
+
+                @Override
+                public long storeResource(Resource resource, List<ExtractedParameterValue> resourceParameters, ParameterVisitorBatchDAO pvd) throws Exception {
+                    return DerbyResourceDAO.this.storeResource(resource.getResourceType(),
+                        resourceParameters,
+                        resource.getLogicalId(),
+                        resource.getData(),
+                        resource.getLastUpdated(),
+                        resource.isDeleted(),
+                        UUID.randomUUID().toString(),
+                        resource.getVersionId(),
+                        connection,
+                        pvd
+                        );
+                }
+            };
+        });
+    }
+
     /**
      * Store the resource in the database, creating a new logical_resource entry if this is
      * the first version of this resource, or creating a new resource entry if this a new
@@ -205,6 +249,16 @@ public class DerbyResourceDAO extends ResourceDAOImpl {
      */
     public long storeResource(String tablePrefix, List<ExtractedParameterValue> parameters, String p_logical_id, byte[] p_payload, Timestamp p_last_updated, boolean p_is_deleted,
         String p_source_key, Integer p_version, Connection conn) throws Exception {
+        return storeResource(tablePrefix, parameters, p_logical_id, p_payload, p_last_updated, p_is_deleted, p_source_key, p_version, conn, null);
+    }
+
+    /**
+     * Store the resource in the database, adding its parameters to the passed visitor if it is not null.
+     * In this case, the parameter rows are inserted when the caller flushes or closes the visitor.
+     * @see #storeResource(String, List, String, byte[], Timestamp, boolean, String, Integer, Connection)
+     */
+    private long storeResource(String tablePrefix, List<ExtractedParameterValue> parameters, String p_logical_id, byte[] p_payload, Timestamp p_last_updated, boolean p_is_deleted,
+        String p_source_key, Integer p_version, Connection conn, ParameterVisitorBatchDAO sharedVisitor) throws Exception {
 
         final String METHODNAME = "storeResource() for " + tablePrefix + " resource";
         logger.entering(CLASSNAME, METHODNAME);
@@ -434,9 +488,15 @@ public class DerbyResourceDAO extends ResourceDAOImpl {
             // To keep things simple for the Derby use-case, we just use a visitor to
             // handle inserts of parameters directly in the resource parameter tables.
             // Note we don't get any parameters for the resource soft-delete operation
-            if (parameters != null) {
+            if (parameters != null && sharedVisitor != null) {
+                sharedVisitor.setLogicalResourceId(v_logical_resource_id);
+                for (ExtractedParameterValue p: parameters) {
+                    p.accept(sharedVisitor);
+                }
+            }
+            else if (parameters != null) {
                 // Derby doesn't support partitioned multi-tenancy, so we disable it on the DAO:
-                try (ParameterVisitorBatchDAO pvd = new ParameterVisitorBatchDAO(conn, null, tablePrefix, false, v_logical_resource_id, 100,
+                try (ParameterVisitorBatchDAO pvd = new ParameterVisitorBatchDAO(conn, getStatementCache(conn), null, tablePrefix, false, v_logical_resource_id, 100,
                     new ParameterNameCacheAdapter(parameterNameDAO), new CodeSystemCacheAdapter(codeSystemDAO))) {
                     for (ExtractedParameterValue p: parameters) {
                         p.accept(pvd);
@@ -6,9 +6,14 @@
 
 package com.ibm.fhir.persistence.jdbc.impl;
 
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_DATASOURCES;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_ENABLE_CODE_SYSTEMS_CACHE;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_ENABLE_PARAMETER_NAMES_CACHE;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_ENABLE_RESOURCE_TYPES_CACHE;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_RESOURCE_CACHE_ENABLED;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_RESOURCE_CACHE_MAX_ENTRIES;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_RESOURCE_CACHE_TTL_SECONDS;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_RESOURCE_CACHE_VERSION_CHECK;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_UPDATE_CREATE_ENABLED;
 import static com.ibm.fhir.model.type.String.string;
 import static com.ibm.fhir.persistence.jdbc.JDBCConstants.MAX_NUM_OF_COMPOSITE_COMPONENTS;
@@ -26,25 +31,29 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 import javax.naming.InitialContext;
 import javax.transaction.Status;
 import javax.transaction.TransactionSynchronizationRegistry;
 import javax.transaction.UserTransaction;
 
+import com.ibm.fhir.config.FHIRConfigHelper;
 import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.config.FHIRRequestContext;
 import com.ibm.fhir.config.PropertyGroup;
 import com.ibm.fhir.core.FHIRUtilities;
 import com.ibm.fhir.core.context.FHIRPagingContext;
@@ -52,6 +61,7 @@ import com.ibm.fhir.database.utils.api.IConnectionProvider;
 import com.ibm.fhir.exception.FHIRException;
 import com.ibm.fhir.model.format.Format;
 import com.ibm.fhir.model.generator.FHIRGenerator;
+import com.ibm.fhir.model.generator.exception.FHIRGeneratorException;
 import com.ibm.fhir.model.parser.FHIRJsonParser;
 import com.ibm.fhir.model.parser.FHIRParser;
 import com.ibm.fhir.model.resource.OperationOutcome;
@@ -76,6 +86,8 @@ import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
 import com.ibm.fhir.persistence.FHIRPersistence;
 import com.ibm.fhir.persistence.FHIRPersistenceTransaction;
 import com.ibm.fhir.persistence.MultiResourceResult;
+import com.ibm.fhir.persistence.ResourceKey;
+import com.ibm.fhir.persistence.ResourcePayloadConsumer;
 import com.ibm.fhir.persistence.SingleResourceResult;
 import com.ibm.fhir.persistence.context.FHIRHistoryContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
@@ -84,6 +96,8 @@ import com.ibm.fhir.persistence.exception.FHIRPersistenceResourceDeletedExceptio
 import com.ibm.fhir.persistence.exception.FHIRPersistenceResourceNotFoundException;
 import com.ibm.fhir.persistence.jdbc.FHIRResourceDAOFactory;
 import com.ibm.fhir.persistence.jdbc.JDBCConstants;
+import com.ibm.fhir.persistence.jdbc.codec.PayloadCodec;
+import com.ibm.fhir.persistence.jdbc.codec.PayloadCodecs;
 import com.ibm.fhir.persistence.jdbc.dao.api.FHIRDbDAO;
 import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
 import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDAO;
@@ -102,12 +116,17 @@ import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceFKVException;
 import com.ibm.fhir.persistence.jdbc.util.CodeSystemsCache;
 import com.ibm.fhir.persistence.jdbc.util.JDBCParameterBuildingVisitor;
 import com.ibm.fhir.persistence.jdbc.util.JDBCQueryBuilder;
+import com.ibm.fhir.persistence.jdbc.util.KeysetPageToken;
 import com.ibm.fhir.persistence.jdbc.util.ParameterNamesCache;
+import com.ibm.fhir.persistence.jdbc.util.ResourceCache;
+import com.ibm.fhir.persistence.jdbc.util.ResourceCache.CachedResource;
 import com.ibm.fhir.persistence.jdbc.util.ResourceTypesCache;
 import com.ibm.fhir.persistence.jdbc.util.SqlQueryData;
 import com.ibm.fhir.persistence.util.FHIRPersistenceUtil;
 import com.ibm.fhir.search.SearchConstants;
 import com.ibm.fhir.search.SummaryValueSet;
+import com.ibm.fhir.search.TotalValueSet;
+import com.ibm.fhir.search.compartment.CompartmentUtil;
 import com.ibm.fhir.search.context.FHIRSearchContext;
 import com.ibm.fhir.search.date.DateTimeHandler;
 import com.ibm.fhir.search.parameters.QueryParameter;
@@ -126,16 +145,25 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
 
     protected static final String TXN_JNDI_NAME = "java:comp/UserTransaction";
     public static final String TRX_SYNCH_REG_JNDI_NAME = "java:comp/TransactionSynchronizationRegistry";
+    // The transaction-scoped set of the resources written by the active global transaction
+    private static final String WRITTEN_RESOURCES_KEY = FHIRPersistenceJDBCImpl.class.getName() + ".writtenResources";
 
     private FHIRDbDAO baseDao;
     private ResourceDAO resourceDao;
     private ParameterDAO parameterDao;
-    private TransactionSynchronizationRegistry trxSynchRegistry;
     private List<OperationOutcome.Issue> supplementalIssues = new ArrayList<>();
 
     protected Connection sharedConnection = null;
     protected UserTransaction userTransaction = null;
     protected Boolean updateCreateEnabled = null;
+    // Encodes the payloads of new resource versions; payloads are always decoded with the codec they were encoded with
+    protected PayloadCodec payloadCodec = null;
+    // Caches parsed resources for read and vread; null if the resource cache is disabled
+    protected ResourceCache resourceCache = null;
+    // If true, a cached current version is only used after confirming with the database that it is still current
+    protected boolean resourceCacheVersionCheck = false;
+    // Used to find out whether a global transaction is active; null outside a web container
+    protected TransactionSynchronizationRegistry trxSynchRegistry = null;
 
     // only used outside a web container
     private Connection managedConnection;
@@ -153,6 +181,9 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
             throw new IllegalStateException("Unable to load the default fhir-server-config.json");
         }
         this.updateCreateEnabled = fhirConfig.getBooleanProperty(PROPERTY_UPDATE_CREATE_ENABLED, Boolean.TRUE);
+        String datastoreId = FHIRRequestContext.get().getDataStoreId();
+        this.payloadCodec = PayloadCodecs.getCodec(FHIRConfigHelper.getStringProperty(
+            PROPERTY_DATASOURCES + "/" + datastoreId + "/payloadCodec", PayloadCodecs.DEFAULT_CODEC));
         this.userTransaction = retrieveUserTransaction(TXN_JNDI_NAME);
 
         ParameterNamesCache.setEnabled(fhirConfig.getBooleanProperty(PROPERTY_JDBC_ENABLE_PARAMETER_NAMES_CACHE,
@@ -161,6 +192,10 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
                                     Boolean.TRUE));
         ResourceTypesCache.setEnabled(fhirConfig.getBooleanProperty(PROPERTY_JDBC_ENABLE_RESOURCE_TYPES_CACHE,
                                       Boolean.TRUE));
+        this.configureResourceCache(FHIRConfigHelper.getBooleanProperty(PROPERTY_JDBC_RESOURCE_CACHE_ENABLED, Boolean.FALSE),
+                                    FHIRConfigHelper.getIntProperty(PROPERTY_JDBC_RESOURCE_CACHE_MAX_ENTRIES, 1000),
+                                    FHIRConfigHelper.getIntProperty(PROPERTY_JDBC_RESOURCE_CACHE_TTL_SECONDS, 0),
+                                    FHIRConfigHelper.getBooleanProperty(PROPERTY_JDBC_RESOURCE_CACHE_VERSION_CHECK, Boolean.FALSE));
 
         sharedConnection = this.createConnection();
         this.resourceDao = FHIRResourceDAOFactory.getResourceDAO(sharedConnection, this.getTrxSynchRegistry());
@@ -178,6 +213,11 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
         log.entering(CLASSNAME, METHODNAME);
 
         this.updateCreateEnabled = Boolean.parseBoolean(configProps.getProperty("updateCreateEnabled"));
+        this.payloadCodec = PayloadCodecs.getCodec(configProps.getProperty("payloadCodec"));
+        this.configureResourceCache(Boolean.parseBoolean(configProps.getProperty("resourceCacheEnabled")),
+                                    Integer.parseInt(configProps.getProperty("resourceCacheMaxEntries", "1000")),
+                                    Integer.parseInt(configProps.getProperty("resourceCacheTtlSeconds", "0")),
+                                    Boolean.parseBoolean(configProps.getProperty("resourceCacheVersionCheck")));
 
         FHIRDbDAO dao = new FHIRDbDAOImpl(configProps);
 
@@ -198,6 +238,11 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
         log.entering(CLASSNAME, METHODNAME);
 
         this.updateCreateEnabled = Boolean.parseBoolean(configProps.getProperty("updateCreateEnabled"));
+        this.payloadCodec = PayloadCodecs.getCodec(configProps.getProperty("payloadCodec"));
+        this.configureResourceCache(Boolean.parseBoolean(configProps.getProperty("resourceCacheEnabled")),
+                                    Integer.parseInt(configProps.getProperty("resourceCacheMaxEntries", "1000")),
+                                    Integer.parseInt(configProps.getProperty("resourceCacheTtlSeconds", "0")),
+                                    Boolean.parseBoolean(configProps.getProperty("resourceCacheVersionCheck")));
 
         FHIRDbDAO dao = new FHIRDbDAOImpl(cp.getConnection());
 
@@ -214,7 +259,6 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
         final String METHODNAME = "create";
         log.entering(CLASSNAME, METHODNAME);
 
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
         String logicalId;
 
         // We need to update the meta in the resource, so we need a modifiable version
@@ -253,11 +297,7 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
             resourceDTO.setResourceType(updatedResource.getClass().getSimpleName());
 
             // Serialize and compress the Resource
-            GZIPOutputStream zipStream = new GZIPOutputStream(stream);
-            FHIRGenerator.generator( Format.JSON, false).generate(updatedResource, zipStream);
-            zipStream.finish();
-            resourceDTO.setData(stream.toByteArray());
-            zipStream.close();
+            resourceDTO.setData(this.encodePayload(updatedResource));
 
             // Persist the Resource DTO.
             this.getResourceDao().setPersistenceContext(context);
@@ -306,7 +346,6 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
 
         Class<? extends Resource> resourceType = resource.getClass();
         com.ibm.fhir.persistence.jdbc.dto.Resource existingResourceDTO;
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
 
         // Resources are immutable, so we need a new builder to update it (since R4)
         Resource.Builder resultResourceBuilder = resource.toBuilder();
@@ -378,15 +417,12 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
             resourceDTO.setResourceType(updatedResource.getClass().getSimpleName());
 
             // Serialize and compress the Resource
-            GZIPOutputStream zipStream = new GZIPOutputStream(stream);
-            FHIRGenerator.generator(Format.JSON, false).generate(updatedResource, zipStream);
-            zipStream.finish();
-            resourceDTO.setData(stream.toByteArray());
-            zipStream.close();
+            resourceDTO.setData(this.encodePayload(updatedResource));
 
             // Persist the Resource DTO.
             this.getResourceDao().setPersistenceContext(context);
             this.getResourceDao().insert(resourceDTO, this.extractSearchParameters(updatedResource, resourceDTO), this.parameterDao);
+            this.invalidateCachedResource(resourceDTO.getResourceType(), logicalId);
             if (log.isLoggable(Level.FINE)) {
                 log.fine("Persisted FHIR Resource '" + resourceDTO.getResourceType() + "/" + resourceDTO.getLogicalId() + "' id=" + resourceDTO.getId()
                             + ", version=" + resourceDTO.getVersionId());
@@ -423,9 +459,170 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
         }
     }
 
+    /**
+     * Updates (or creates) many resources at once. The existing versions are looked up with one query per
+     * resource type, and the resources are inserted using shared statements and search parameter batches.
+     * Resources that cannot be stored (no id, or not found while updateCreate is disabled) get an unsuccessful
+     * result; any other failure aborts the whole list.
+     */
+    @Override
+    public <T extends Resource> List<SingleResourceResult<T>> updateAll(FHIRPersistenceContext context, List<T> resources)
+            throws FHIRPersistenceException {
+        final String METHODNAME = "updateAll";
+        log.entering(CLASSNAME, METHODNAME);
+
+        List<SingleResourceResult<T>> results = new ArrayList<>(resources.size());
+        List<T> updatedResources = new ArrayList<>(resources.size());
+        List<com.ibm.fhir.persistence.jdbc.dto.Resource> resourceDTOs = new ArrayList<>(resources.size());
+        List<List<ExtractedParameterValue>> parameters = new ArrayList<>(resources.size());
+
+        try {
+            // Fetch the existing version # of all the resources with a single query per resource type
+            Map<String, List<String>> logicalIds = new HashMap<>();
+            for (T resource : resources) {
+                if (resource.getId() != null) {
+                    logicalIds.computeIfAbsent(resource.getClass().getSimpleName(), k -> new ArrayList<>()).add(resource.getId());
+                }
+            }
+            Map<String, Map<String, Integer>> existingVersions = new HashMap<>();
+            for (Entry<String, List<String>> entry : logicalIds.entrySet()) {
+                existingVersions.put(entry.getKey(), this.getResourceDao().readCurrentVersions(entry.getKey(), entry.getValue()));
+            }
+
+            for (T resource : resources) {
+                String resourceType = resource.getClass().getSimpleName();
+                String logicalId = resource.getId();
+
+                if (logicalId == null) {
+                    results.add(failure("Resource '" + resourceType + "' has no id.", IssueType.INVALID));
+                    continue;
+                }
+
+                Map<String, Integer> versions = existingVersions.get(resourceType);
+                int existingVersion = versions.getOrDefault(logicalId, 0);
+
+                // If this logical resource didn't exist and the "updateCreate" feature is not enabled,
+                // then this is an error.
+                if (existingVersion == 0 && !updateCreateEnabled) {
+                    results.add(failure("Resource '" + resourceType + "/" + logicalId + "' not found.", IssueType.NOT_FOUND));
+                    continue;
+                }
+
+                // Bump up the existing version # to get the new version.
+                // The same logical resource may occur again later in the list.
+                int newVersionNumber = existingVersion + 1;
+                versions.put(logicalId, newVersionNumber);
+
+                Instant lastUpdated = Instant.now(ZoneOffset.UTC);
+
+                // Set the meta fields.
+                Meta meta = resource.getMeta();
+                Meta.Builder metaBuilder = meta == null ? Meta.builder() : meta.toBuilder();
+                metaBuilder.versionId(Id.of(Integer.toString(newVersionNumber)));
+                metaBuilder.lastUpdated(lastUpdated);
+
+                @SuppressWarnings("unchecked")
+                T updatedResource = (T) resource.toBuilder().meta(metaBuilder.build()).build();
+
+                // Create the new Resource DTO instance.
+                com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO = new com.ibm.fhir.persistence.jdbc.dto.Resource();
+                resourceDTO.setLogicalId(logicalId);
+                resourceDTO.setVersionId(newVersionNumber);
+                resourceDTO.setLastUpdated(FHIRUtilities.convertToTimestamp(lastUpdated.getValue()));
+                resourceDTO.setResourceType(resourceType);
+
+                // Serialize and compress the Resource
+                resourceDTO.setData(this.encodePayload(updatedResource));
+
+                updatedResources.add(updatedResource);
+                resourceDTOs.add(resourceDTO);
+                parameters.add(this.extractSearchParameters(updatedResource, resourceDTO));
+                // placeholder for the result, set once the resources are persisted
+                results.add(null);
+            }
+
+            // Persist the Resource DTOs.
+            if (!resourceDTOs.isEmpty()) {
+                this.getResourceDao().setPersistenceContext(context);
+                this.getResourceDao().insertAll(resourceDTOs, parameters, this.parameterDao);
+                for (com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO : resourceDTOs) {
+                    this.invalidateCachedResource(resourceDTO.getResourceType(), resourceDTO.getLogicalId());
+                }
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("Persisted " + resourceDTOs.size() + " FHIR Resources");
+                }
+            }
+
+            Iterator<T> updatedResourceIterator = updatedResources.iterator();
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i) == null) {
+                    SingleResourceResult.Builder<T> resultBuilder = new SingleResourceResult.Builder<T>()
+                            .success(true)
+                            .resource(updatedResourceIterator.next());
+
+                    // Add supplemental issues to an OperationOutcome
+                    if (!supplementalIssues.isEmpty()) {
+                        resultBuilder.outcome(OperationOutcome.builder()
+                            .issue(supplementalIssues)
+                            .build());
+                    }
+                    results.set(i, resultBuilder.build());
+                }
+            }
+
+            return results;
+        }
+        catch(FHIRPersistenceFKVException e) {
+            log.log(Level.SEVERE, this.performCacheDiagnostics());
+            throw e;
+        }
+        catch(FHIRPersistenceException e) {
+            throw e;
+        }
+        catch(Throwable e) {
+            // don't chain the exception to avoid leaking secrets
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while performing an updateAll operation.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        }
+        finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
+    /**
+     * Build an unsuccessful result with a single issue
+     */
+    private <T extends Resource> SingleResourceResult<T> failure(String msg, IssueType issueType) {
+        return new SingleResourceResult.Builder<T>()
+                .success(false)
+                .outcome(OperationOutcome.builder()
+                    .issue(FHIRUtil.buildOperationOutcomeIssue(IssueSeverity.ERROR, issueType, msg))
+                    .build())
+                .build();
+    }
+
     @Override
     public MultiResourceResult<Resource> search(FHIRPersistenceContext context, Class<? extends Resource> resourceType)
             throws FHIRPersistenceException {
+        return doSearch(context, resourceType, null);
+    }
+
+    /**
+     * Passes the stored JSON of each matching resource straight to the consumer, without parsing it, unless the
+     * elements of the resources must be filtered (_elements or _summary).
+     */
+    @Override
+    public MultiResourceResult<Resource> searchPayloads(FHIRPersistenceContext context, Class<? extends Resource> resourceType,
+            ResourcePayloadConsumer consumer) throws FHIRPersistenceException {
+        return doSearch(context, resourceType, consumer);
+    }
+
+    /**
+     * Performs the search; if a consumer is passed, the matching resources are written to it instead of being returned.
+     */
+    private MultiResourceResult<Resource> doSearch(FHIRPersistenceContext context, Class<? extends Resource> resourceType,
+            ResourcePayloadConsumer consumer) throws FHIRPersistenceException {
         final String METHODNAME = "search";
         log.entering(CLASSNAME, METHODNAME);
 
@@ -444,15 +641,25 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
             queryBuilder = new JDBCQueryBuilder(this.getParameterDao(),
                                                 this.getResourceDao());
 
+            TotalValueSet totalType = getEffectiveTotalType(searchContext);
+            // Unless an accurate total is needed, the existence of a next page is determined by
+            // fetching one row more than the page size, rather than from the total count
+            boolean lookAhead = !TotalValueSet.ACCURATE.equals(totalType);
+
             countQuery = queryBuilder.buildCountQuery(resourceType, searchContext);
             if (countQuery != null) {
-                searchResultCount = this.getResourceDao().searchCount(countQuery);
+                if (TotalValueSet.ACCURATE.equals(totalType)) {
+                    searchResultCount = this.getResourceDao().searchCount(countQuery);
+                } else if (TotalValueSet.ESTIMATE.equals(totalType)) {
+                    searchResultCount = this.getResourceDao().searchCountEstimate(countQuery);
+                }
                 if (log.isLoggable(Level.FINE)) {
-                    log.fine("searchResultCount = " + searchResultCount);
+                    log.fine("totalType = " + totalType + ", searchResultCount = " + searchResultCount);
                 }
                 searchContext.setTotalCount(searchResultCount);
 
-                List<OperationOutcome.Issue> issues = validatePagingContext(searchContext);
+                List<OperationOutcome.Issue> issues = validatePagingContext(searchContext, !lookAhead);
+                Long keysetResourceId = getSearchKeysetPosition(searchContext, issues);
                 if (!issues.isEmpty()) {
                     resultBuilder.outcome(OperationOutcome.builder()
                         .issue(issues)
@@ -463,10 +670,16 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
                 }
 
                 // For _summary=count or pageSize == 0, we return only the count
-                if (searchResultCount > 0
+                if ((lookAhead || searchResultCount > 0)
                         && !SummaryValueSet.COUNT.equals(searchContext.getSummaryParameter())
                         && searchContext.getPageSize() > 0) {
-                    query = queryBuilder.buildQuery(resourceType, searchContext);
+                    if (keysetResourceId != null) {
+                        query = queryBuilder.buildKeysetQuery(resourceType, searchContext, keysetResourceId, lookAhead);
+                    } else if (lookAhead) {
+                        query = queryBuilder.buildLookAheadQuery(resourceType, searchContext);
+                    } else {
+                        query = queryBuilder.buildQuery(resourceType, searchContext);
+                    }
 
                     List<String> elements = searchContext.getElementsParameters();
 
@@ -495,24 +708,62 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
                         }
                     }
 
+                    // The stored payloads can be passed through as-is only if they don't need to be filtered
+                    boolean passThrough = consumer != null && elements == null;
+
                     if (searchContext.hasSortParameters()) {
                         // Sorting results of a system-level search is limited, and has a different logic path
                         // than other sorted searches.
                         if (resourceType.equals(Resource.class)) {
-                           resources = this.convertResourceDTOList(this.resourceDao.search(query), resourceType, elements);
+                            unsortedResultsList = this.resourceDao.search(query);
+                            if (lookAhead) {
+                                unsortedResultsList = applyLookAhead(searchContext, unsortedResultsList);
+                            }
+                            if (passThrough) {
+                                this.writePayloads(unsortedResultsList, consumer);
+                            } else {
+                                resources = this.convertResourceDTOList(unsortedResultsList, resourceType, elements);
+                            }
                         }
                         else {
                             sortedIdList = this.resourceDao.searchForIds(query);
-                            resources = this.buildSortedFhirResources(context, resourceType, sortedIdList, elements);
+                            if (lookAhead) {
+                                sortedIdList = applyLookAhead(searchContext, sortedIdList);
+                            }
+                            if (passThrough) {
+                                this.writePayloads(this.getSortedResourceDTOs(resourceType, sortedIdList), consumer);
+                            } else {
+                                resources = this.buildSortedFhirResources(context, resourceType, sortedIdList, elements);
+                            }
                         }
                     }
                     else {
                         unsortedResultsList = this.getResourceDao().search(query);
-                        resources = this.convertResourceDTOList(unsortedResultsList, resourceType, elements);
+                        if (lookAhead) {
+                            unsortedResultsList = applyLookAhead(searchContext, unsortedResultsList);
+                        }
+                        if (isKeysetPagingSupported(searchContext) && !unsortedResultsList.isEmpty()
+                                && searchContext.getPageNumber() < searchContext.getLastPageNumber()) {
+                            long lastResourceId = unsortedResultsList.get(unsortedResultsList.size() - 1).getId();
+                            searchContext.setNextPageToken(KeysetPageToken.forSearch(lastResourceId));
+                        }
+                        if (passThrough) {
+                            this.writePayloads(unsortedResultsList, consumer);
+                        } else {
+                            resources = this.convertResourceDTOList(unsortedResultsList, resourceType, elements);
+                        }
                     }
+                } else if (lookAhead) {
+                    searchContext.setLastPageNumber(searchContext.getPageNumber());
                 }
             }
 
+            if (consumer != null) {
+                // The filtered resources must be generated again
+                this.writeResources(resources, consumer);
+                resources = Collections.emptyList();
+            }
+
             return resultBuilder
                     .success(true)
                     .resource(resources)
@@ -531,6 +782,89 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
         }
     }
 
+    /**
+     * Determine how the total number of matching resources must be computed for the passed search context.
+     * Searches without a _total parameter keep the historical behavior of an accurate count.
+     * Searches with _include or _revinclude always use an accurate count, because the included resources
+     * are returned by the same query and therefore can't be used to look ahead to the next page.
+     *
+     * @param searchContext
+     * @return the type of total to compute
+     */
+    private TotalValueSet getEffectiveTotalType(FHIRSearchContext searchContext) {
+        TotalValueSet totalType = searchContext.getTotalParameter();
+        if (totalType == null
+                || SummaryValueSet.COUNT.equals(searchContext.getSummaryParameter())
+                || searchContext.hasIncludeParameters()
+                || searchContext.hasRevIncludeParameters()) {
+            totalType = TotalValueSet.ACCURATE;
+        }
+        return totalType;
+    }
+
+    /**
+     * Keyset pagination relies on the default ordering by RESOURCE_ID, so it can only be used for
+     * searches without _sort, and without _include or _revinclude which merge other resources into the page.
+     */
+    private boolean isKeysetPagingSupported(FHIRSearchContext searchContext) {
+        return !searchContext.hasSortParameters()
+                && !searchContext.hasIncludeParameters()
+                && !searchContext.hasRevIncludeParameters();
+    }
+
+    /**
+     * Decode the page token of the passed search context, if any.
+     *
+     * @param searchContext
+     * @param issues a list to which an issue is added if the page token can't be used
+     * @return the RESOURCE_ID after which the requested page starts, or null to use offset pagination
+     */
+    private Long getSearchKeysetPosition(FHIRSearchContext searchContext, List<OperationOutcome.Issue> issues) {
+        String pageToken = searchContext.getPageToken();
+        if (pageToken == null) {
+            return null;
+        }
+        if (!isKeysetPagingSupported(searchContext)) {
+            issues.add(buildPageTokenIssue(searchContext, "Page token is not supported for searches with _sort, _include or _revinclude"));
+            return null;
+        }
+        try {
+            return KeysetPageToken.parseSearch(pageToken);
+        } catch (IllegalArgumentException e) {
+            issues.add(buildPageTokenIssue(searchContext, "Invalid page token: " + pageToken));
+            return null;
+        }
+    }
+
+    private OperationOutcome.Issue buildPageTokenIssue(FHIRPagingContext pagingContext, String message) {
+        return OperationOutcome.Issue.builder()
+                .severity(pagingContext.isLenient() ? IssueSeverity.WARNING : IssueSeverity.ERROR)
+                .code(IssueType.INVALID)
+                .details(CodeableConcept.builder()
+                    .text(string(message))
+                    .build())
+                .build();
+    }
+
+    /**
+     * Trim the results of a look-ahead query to the requested page size and set the
+     * last page number of the passed paging context based on whether or not the
+     * look-ahead row was found.
+     *
+     * @param pagingContext
+     * @param results the results of a query which fetched up to pageSize + 1 rows
+     * @return the results for the requested page
+     */
+    private <T> List<T> applyLookAhead(FHIRPagingContext pagingContext, List<T> results) {
+        int pageSize = pagingContext.getPageSize();
+        if (results.size() > pageSize) {
+            pagingContext.setLastPageNumber(pagingContext.getPageNumber() + 1);
+            return results.subList(0, pageSize);
+        }
+        pagingContext.setLastPageNumber(pagingContext.getPageNumber());
+        return results;
+    }
+
     /**
      * @throws FHIRPersistenceException if the search context contains one or more unsupported modifiers
      */
@@ -563,7 +897,6 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
 
         com.ibm.fhir.persistence.jdbc.dto.Resource existingResourceDTO = null;
         T existingResource = null;
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
 
         Resource.Builder resourceBuilder;
 
@@ -615,11 +948,7 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
             resourceDTO.setVersionId(newVersionNumber);
 
             // Serialize and compress the Resource
-            GZIPOutputStream zipStream = new GZIPOutputStream(stream);
-            FHIRGenerator.generator(Format.JSON, false).generate(updatedResource, zipStream);
-            zipStream.finish();
-            resourceDTO.setData(stream.toByteArray());
-            zipStream.close();
+            resourceDTO.setData(this.encodePayload(updatedResource));
 
             Timestamp timestamp = FHIRUtilities.convertToTimestamp(lastUpdated.getValue());
             resourceDTO.setLastUpdated(timestamp);
@@ -629,6 +958,7 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
             // Persist the logically deleted Resource DTO.
             this.getResourceDao().setPersistenceContext(context);
             this.getResourceDao().insert(resourceDTO, null, null);
+            this.invalidateCachedResource(resourceDTO.getResourceType(), logicalId);
 
             if (log.isLoggable(Level.FINE)) {
                 log.fine("Persisted FHIR Resource '" + resourceDTO.getResourceType() + "/" + resourceDTO.getLogicalId() + "' id=" + resourceDTO.getId()
@@ -700,12 +1030,30 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
         }
 
         try {
+            // Resources read with _summary are parsed partially, so they are neither taken from nor added to the cache
+            boolean useCache = this.resourceCache != null && elements == null
+                    && !isWrittenInTransaction(resourceType.getSimpleName(), logicalId);
+            long cacheStamp = 0;
+            if (useCache) {
+                CachedResource cached = this.resourceCache.getCurrent(resourceType.getSimpleName(), logicalId);
+                if (cached != null && isCurrentVersion(resourceType.getSimpleName(), logicalId, cached.getVersionId())) {
+                    return new SingleResourceResult.Builder<T>()
+                            .success(true)
+                            .resource(resourceType.cast(cached.getResource()))
+                            .build();
+                }
+                cacheStamp = this.resourceCache.getInvalidationStamp();
+            }
+
             resourceDTO = this.getResourceDao().read(logicalId, resourceType.getSimpleName());
             if (resourceDTO != null && resourceDTO.isDeleted() && !context.includeDeleted()) {
                 throw new FHIRPersistenceResourceDeletedException("Resource '" +
                         resourceType.getSimpleName() + "/" + logicalId + "' is deleted.");
             }
             resource = this.convertResourceDTO(resourceDTO, resourceType, elements);
+            if (useCache && resource != null && !resourceDTO.isDeleted()) {
+                this.resourceCache.putCurrent(resourceType.getSimpleName(), logicalId, resourceDTO.getVersionId(), resource, cacheStamp);
+            }
 
             SingleResourceResult<T> result = new SingleResourceResult.Builder<T>()
                     .success(true)
@@ -756,6 +1104,15 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
 
             List<OperationOutcome.Issue> issues = validatePagingContext(historyContext);
 
+            Integer keysetVersionId = null;
+            if (historyContext.getPageToken() != null) {
+                try {
+                    keysetVersionId = KeysetPageToken.parseHistory(historyContext.getPageToken());
+                } catch (IllegalArgumentException e) {
+                    issues.add(buildPageTokenIssue(historyContext, "Invalid page token: " + historyContext.getPageToken()));
+                }
+            }
+
             if (!issues.isEmpty()) {
                 resultBuilder.outcome(OperationOutcome.builder()
                     .issue(issues)
@@ -766,8 +1123,17 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
             }
 
             if (resourceCount > 0) {
-                offset = (historyContext.getPageNumber() - 1) * historyContext.getPageSize();
-                resourceDTOList = this.getResourceDao().history(resourceType.getSimpleName(), logicalId, fromDateTime, offset, historyContext.getPageSize());
+                if (keysetVersionId != null) {
+                    resourceDTOList = this.getResourceDao().historyBeforeVersion(resourceType.getSimpleName(), logicalId, fromDateTime,
+                            keysetVersionId, historyContext.getPageSize());
+                } else {
+                    offset = (historyContext.getPageNumber() - 1) * historyContext.getPageSize();
+                    resourceDTOList = this.getResourceDao().history(resourceType.getSimpleName(), logicalId, fromDateTime, offset, historyContext.getPageSize());
+                }
+                if (!resourceDTOList.isEmpty() && historyContext.getPageNumber() < historyContext.getLastPageNumber()) {
+                    int lastVersionId = resourceDTOList.get(resourceDTOList.size() - 1).getVersionId();
+                    historyContext.setNextPageToken(KeysetPageToken.forHistory(lastVersionId));
+                }
                 for (com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO : resourceDTOList) {
                     if (resourceDTO.isDeleted()) {
                         deletedResourceVersions.putIfAbsent(logicalId, new ArrayList<Integer>());
@@ -806,6 +1172,22 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
      *     a list of operation outcome issues if the paging context has invalid parameters
      */
     private List<OperationOutcome.Issue> validatePagingContext(FHIRPagingContext pagingContext) {
+        return validatePagingContext(pagingContext, true);
+    }
+
+    /**
+     * Validate pageSize and pageNumber in the FHIRPagingContext instance and update
+     * paging context parameters accordingly.
+     *
+     * @param pagingContext
+     *     the FHIRPagingContext instance (FHIRSearchContext or FHIRHistoryContext)
+     * @param totalKnown
+     *     true if the total count of the paging context is accurate; if false, the last page
+     *     number is left to be determined when the page is fetched
+     * @return
+     *     a list of operation outcome issues if the paging context has invalid parameters
+     */
+    private List<OperationOutcome.Issue> validatePagingContext(FHIRPagingContext pagingContext, boolean totalKnown) {
         List<OperationOutcome.Issue> issues = new ArrayList<>();
 
         int pageSize = pagingContext.getPageSize();
@@ -820,8 +1202,11 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
             pagingContext.setPageSize(10);
         }
 
-        int lastPageNumber = Math.max(((pagingContext.getTotalCount() + pageSize - 1) / pageSize), 1);
-        pagingContext.setLastPageNumber(lastPageNumber);
+        int lastPageNumber = Integer.MAX_VALUE;
+        if (totalKnown) {
+            lastPageNumber = Math.max(((pagingContext.getTotalCount() + pageSize - 1) / pageSize), 1);
+            pagingContext.setLastPageNumber(lastPageNumber);
+        }
 
         int pageNumber = pagingContext.getPageNumber();
         if (pageNumber < 1) {
@@ -863,12 +1248,27 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
 
         try {
             version = Integer.parseInt(versionId);
+            // A version written by the active transaction may still be rolled back, so it isn't cached
+            boolean useCache = this.resourceCache != null && !isWrittenInTransaction(resourceType.getSimpleName(), logicalId);
+            if (useCache) {
+                Resource cached = this.resourceCache.getVersion(resourceType.getSimpleName(), logicalId, version);
+                if (cached != null) {
+                    return new SingleResourceResult.Builder<T>()
+                            .success(true)
+                            .resource(resourceType.cast(cached))
+                            .build();
+                }
+            }
+
             resourceDTO = this.getResourceDao().versionRead(logicalId, resourceType.getSimpleName(), version);
             if (resourceDTO != null && resourceDTO.isDeleted() && !context.includeDeleted()) {
                 throw new FHIRPersistenceResourceDeletedException("Resource '" +
                         resourceType.getSimpleName() + "/" + logicalId + "' version " + versionId + " is deleted.");
             }
             resource = this.convertResourceDTO(resourceDTO, resourceType, null);
+            if (useCache && resource != null && !resourceDTO.isDeleted()) {
+                this.resourceCache.putVersion(resourceType.getSimpleName(), logicalId, version, resource);
+            }
 
             SingleResourceResult<T> result = new SingleResourceResult.Builder<T>()
                     .success(true)
@@ -893,6 +1293,94 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
         }
     }
 
+    @Override
+    public List<SingleResourceResult<Resource>> readMany(FHIRPersistenceContext context, List<ResourceKey> keys)
+                        throws FHIRPersistenceException {
+        final String METHODNAME = "readMany";
+        log.entering(CLASSNAME, METHODNAME);
+
+        // The indexes of the keys of each resource type, so that each type is read with as few queries as possible
+        Map<Class<? extends Resource>, List<Integer>> currentKeys = new HashMap<>();
+        Map<Class<? extends Resource>, List<Integer>> versionKeys = new HashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            ResourceKey key = keys.get(i);
+            Map<Class<? extends Resource>, List<Integer>> byType = key.getVersionId() == null ? currentKeys : versionKeys;
+            byType.computeIfAbsent(key.getResourceType(), k -> new ArrayList<>()).add(i);
+        }
+
+        Resource[] resources = new Resource[keys.size()];
+        try {
+            for (Entry<Class<? extends Resource>, List<Integer>> entry : currentKeys.entrySet()) {
+                Class<? extends Resource> resourceType = entry.getKey();
+                List<String> logicalIds = new ArrayList<>(entry.getValue().size());
+                for (int index : entry.getValue()) {
+                    logicalIds.add(keys.get(index).getLogicalId());
+                }
+                Map<String, com.ibm.fhir.persistence.jdbc.dto.Resource> dtos = new HashMap<>();
+                for (com.ibm.fhir.persistence.jdbc.dto.Resource dto : this.getResourceDao().readMany(resourceType.getSimpleName(), logicalIds)) {
+                    dtos.put(dto.getLogicalId(), dto);
+                }
+                for (int index : entry.getValue()) {
+                    resources[index] = convertReadManyDTO(context, dtos.get(keys.get(index).getLogicalId()), resourceType);
+                }
+            }
+
+            for (Entry<Class<? extends Resource>, List<Integer>> entry : versionKeys.entrySet()) {
+                Class<? extends Resource> resourceType = entry.getKey();
+                List<String> logicalIds = new ArrayList<>(entry.getValue().size());
+                List<Integer> versionIds = new ArrayList<>(entry.getValue().size());
+                for (int index : entry.getValue()) {
+                    ResourceKey key = keys.get(index);
+                    try {
+                        versionIds.add(Integer.parseInt(key.getVersionId()));
+                    } catch (NumberFormatException e) {
+                        throw new FHIRPersistenceException("Invalid version id specified for vread operation: " + key.getVersionId());
+                    }
+                    logicalIds.add(key.getLogicalId());
+                }
+                Map<String, com.ibm.fhir.persistence.jdbc.dto.Resource> dtos = new HashMap<>();
+                for (com.ibm.fhir.persistence.jdbc.dto.Resource dto : this.getResourceDao().versionReadMany(resourceType.getSimpleName(), logicalIds, versionIds)) {
+                    dtos.put(dto.getLogicalId() + "/" + dto.getVersionId(), dto);
+                }
+                for (int i = 0; i < logicalIds.size(); i++) {
+                    resources[entry.getValue().get(i)] = convertReadManyDTO(context, dtos.get(logicalIds.get(i) + "/" + versionIds.get(i)), resourceType);
+                }
+            }
+
+            List<SingleResourceResult<Resource>> results = new ArrayList<>(keys.size());
+            for (Resource resource : resources) {
+                results.add(new SingleResourceResult.Builder<Resource>()
+                        .success(true)
+                        .resource(resource)
+                        .build());
+            }
+            return results;
+        }
+        catch(FHIRPersistenceException e) {
+            throw e;
+        }
+        catch(Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while performing a read many operation.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        }
+        finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
+    /**
+     * Converts a DTO read by {@link #readMany(FHIRPersistenceContext, List)}, hiding deleted resources
+     * unless the context includes them.
+     */
+    private Resource convertReadManyDTO(FHIRPersistenceContext context, com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO,
+            Class<? extends Resource> resourceType) throws FHIRException, IOException {
+        if (resourceDTO == null || (resourceDTO.isDeleted() && !context.includeDeleted())) {
+            return null;
+        }
+        return this.convertResourceDTO(resourceDTO, resourceType, null);
+    }
+
     /**
      * This method takes the passed list of sorted Resource ids, acquires the Resource corresponding to each id, and returns those Resources in a List,
      * sorted according to the input sorted ids.
@@ -959,6 +1447,60 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
         return this.getResourceDao().searchByIds(resourceType.getSimpleName(), sortedIdList);
     }
 
+    /**
+     * Returns a List of Resource DTOs corresponding to the passed list of Resource IDs, in the same order as the IDs.
+     * @param resourceType The type of resource being queried.
+     * @param sortedIdList A sorted list of Resource IDs.
+     * @return List - A list of ResourceDTOs
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    private List<com.ibm.fhir.persistence.jdbc.dto.Resource> getSortedResourceDTOs(
+            Class<? extends Resource> resourceType, List<Long> sortedIdList) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+
+        Map<Long,Integer> idPositionMap = new HashMap<>();
+        for (int i = 0; i < sortedIdList.size(); i++) {
+            idPositionMap.put(sortedIdList.get(i), i);
+        }
+        List<com.ibm.fhir.persistence.jdbc.dto.Resource> resourceDTOList = new ArrayList<>(this.getResourceDTOs(resourceType, sortedIdList));
+        resourceDTOList.sort(Comparator.comparing(resourceDTO -> idPositionMap.get(resourceDTO.getId())));
+        return resourceDTOList;
+    }
+
+    /**
+     * Decompresses the stored JSON of each of the passed Resource DTOs into the consumer.
+     * @param resourceDTOList
+     * @param consumer
+     * @throws IOException
+     */
+    private void writePayloads(List<com.ibm.fhir.persistence.jdbc.dto.Resource> resourceDTOList, ResourcePayloadConsumer consumer)
+            throws IOException {
+        for (com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO : resourceDTOList) {
+            if (resourceDTO != null) {
+                try (InputStream in = new ByteArrayInputStream(PayloadCodecs.decode(resourceDTO.getData()))) {
+                    consumer.accept(resourceDTO.getLogicalId(), in);
+                }
+            }
+        }
+    }
+
+    /**
+     * Generates the JSON of each of the passed Resources into the consumer.
+     * @param resources
+     * @param consumer
+     * @throws FHIRGeneratorException
+     * @throws IOException
+     */
+    private void writeResources(List<Resource> resources, ResourcePayloadConsumer consumer) throws FHIRGeneratorException, IOException {
+        for (Resource resource : resources) {
+            if (resource != null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                FHIRGenerator.generator(Format.JSON).generate(resource, out);
+                consumer.accept(resource.getId(), new ByteArrayInputStream(out.toByteArray()));
+            }
+        }
+    }
+
     /**
      * Converts the passed Resource Data Transfer Object collection to a collection of FHIR Resource objects.
      * @param resourceDTOList
@@ -990,6 +1532,85 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
         return resources;
     }
 
+    /**
+     * Sets up the resource cache of the current tenant/datastore for this instance.
+     * @param enabled
+     * @param maxEntries the maximum number of resources cached for the tenant/datastore
+     * @param ttlSeconds how long a cached current version is used, or 0 to use it until the resource is changed on this node
+     * @param versionCheck if true, confirm with the database that a cached current version is still current before using it
+     */
+    private void configureResourceCache(boolean enabled, int maxEntries, int ttlSeconds, boolean versionCheck) {
+        if (enabled) {
+            this.resourceCache = ResourceCache.getCache(ResourceTypesCache.getCacheNameForTenantDatastore(),
+                    maxEntries, TimeUnit.SECONDS.toMillis(ttlSeconds));
+            this.resourceCacheVersionCheck = versionCheck;
+        }
+    }
+
+    /**
+     * Determines whether a cached version of a resource can be returned as its current version.
+     * @param resourceType
+     * @param logicalId
+     * @param versionId the version id of the cached resource
+     * @return
+     * @throws FHIRPersistenceException
+     */
+    private boolean isCurrentVersion(String resourceType, String logicalId, int versionId) throws FHIRPersistenceException {
+        if (!this.resourceCacheVersionCheck) {
+            return true;
+        }
+        Integer currentVersionId = this.getResourceDao().readCurrentVersions(resourceType, Collections.singleton(logicalId)).get(logicalId);
+        return currentVersionId != null && currentVersionId == versionId;
+    }
+
+    /**
+     * Removes the current version of a resource that has just been written from the resource cache of the
+     * current tenant/datastore. If a global transaction is active, the resource is not cached again until
+     * the transaction completes, and it is removed again when the transaction commits or rolls back.
+     * @param resourceType
+     * @param logicalId
+     * @throws FHIRPersistenceException
+     */
+    private void invalidateCachedResource(String resourceType, String logicalId) throws FHIRPersistenceException {
+        // Use the tenant's cache even if this instance doesn't read from it, so that it never holds a stale version
+        ResourceCache cache = (this.resourceCache != null) ? this.resourceCache
+                : ResourceCache.getExistingCache(ResourceTypesCache.getCacheNameForTenantDatastore());
+        if (cache == null) {
+            return;
+        }
+        cache.invalidate(resourceType, logicalId);
+        if (this.trxSynchRegistry != null && this.trxSynchRegistry.getTransactionStatus() == Status.STATUS_ACTIVE) {
+            try {
+                @SuppressWarnings("unchecked")
+                Set<String> written = (Set<String>) this.trxSynchRegistry.getResource(WRITTEN_RESOURCES_KEY);
+                if (written == null) {
+                    written = new HashSet<>();
+                    this.trxSynchRegistry.putResource(WRITTEN_RESOURCES_KEY, written);
+                }
+                if (written.add(resourceType + "/" + logicalId)) {
+                    this.trxSynchRegistry.registerInterposedSynchronization(new ResourceCache.Invalidator(cache, resourceType, logicalId));
+                }
+            } catch (Throwable e) {
+                throw new FHIRPersistenceException("Failure registering ResourceCache.Invalidator", e);
+            }
+        }
+    }
+
+    /**
+     * Determines whether the resource has been written by the active global transaction. Versions read after
+     * such a write are not committed yet, so they must not be cached.
+     * @param resourceType
+     * @param logicalId
+     * @return
+     */
+    private boolean isWrittenInTransaction(String resourceType, String logicalId) {
+        if (this.trxSynchRegistry == null || this.trxSynchRegistry.getTransactionStatus() != Status.STATUS_ACTIVE) {
+            return false;
+        }
+        Set<?> written = (Set<?>) this.trxSynchRegistry.getResource(WRITTEN_RESOURCES_KEY);
+        return written != null && written.contains(resourceType + "/" + logicalId);
+    }
+
    /**
      * Calls some cache analysis methods and aggregates the output into a single String.
      * @return
@@ -1076,10 +1697,10 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
                         EvaluationContext context;
                         if (value.isResourceNode()) {
                             fhirNode = value.asResourceNode().resource();
-                            context = new EvaluationContext((Resource) fhirNode);
+                            context = new EvaluationContext((Resource) fhirNode, true);
                         } else if (value.isElementNode()) {
                             fhirNode = value.asElementNode().element();
-                            context = new EvaluationContext((Element) fhirNode);
+                            context = new EvaluationContext((Element) fhirNode, true);
                         } else {
                             throw new IllegalStateException("Composite parameter expression must select one or more FHIR elements");
                         }
@@ -1238,6 +1859,8 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
                     }
                 }
             }
+
+            addCompartmentParams(fhirResource.getClass().getSimpleName(), allParameters);
         }
         finally {
             log.exiting(CLASSNAME, METHODNAME);
@@ -1245,6 +1868,45 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
         return allParameters;
     }
 
+    /**
+     * Adds an internal parameter for each compartment the resource is a member of, named after the compartment
+     * type and valued with the logical id of the compartment owner. Compartment searches can then match this single
+     * parameter instead of OR-ing together every inclusion criterion of the compartment.
+     * @param resourceType the type of the resource the parameters were extracted from
+     * @param allParameters the parameters extracted from the resource, to which the compartment parameters are added
+     */
+    private void addCompartmentParams(String resourceType, List<ExtractedParameterValue> allParameters) {
+        Map<String, Set<String>> compartmentParams = CompartmentUtil.getCompartmentParamsForResourceType(resourceType);
+        if (compartmentParams.isEmpty()) {
+            return;
+        }
+
+        // A resource can refer to the same compartment owner through several parameters, but is only a member once
+        Set<String> memberships = new HashSet<>();
+        List<ExtractedParameterValue> compartmentValues = new ArrayList<>();
+        for (ExtractedParameterValue p : allParameters) {
+            Set<String> compartments = compartmentParams.get(p.getName());
+            if (compartments == null || !(p instanceof StringParmVal)) {
+                continue;
+            }
+
+            // Only local references of the form "<compartment type>/<id>" match a compartment search
+            String reference = ((StringParmVal) p).getValueString();
+            int slash = reference != null ? reference.indexOf('/') : -1;
+            if (slash > 0 && slash < reference.length() - 1 && reference.indexOf('/', slash + 1) < 0) {
+                String compartment = reference.substring(0, slash);
+                if (compartments.contains(compartment) && memberships.add(reference)) {
+                    StringParmVal compartmentValue = new StringParmVal();
+                    compartmentValue.setName(CompartmentUtil.makeCompartmentParamName(compartment));
+                    compartmentValue.setValueString(reference.substring(slash + 1));
+                    compartmentValue.setResourceType(resourceType);
+                    compartmentValues.add(compartmentValue);
+                }
+            }
+        }
+        allParameters.addAll(compartmentValues);
+    }
+
     /**
      * Create a Parameter DTO from the primitive value.
      * Note: this method only sets the value;
@@ -1528,7 +2190,7 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
         T resource = null;
         try {
             if (resourceDTO != null) {
-                InputStream in = new GZIPInputStream(new ByteArrayInputStream(resourceDTO.getData()));
+                InputStream in = new ByteArrayInputStream(PayloadCodecs.decode(resourceDTO.getData()));
                 if (elements != null) {
                     // parse/filter the resource using elements
                     resource = FHIRParser.parser(Format.JSON).as(FHIRJsonParser.class).parseAndFilter(in, elements);
@@ -1547,6 +2209,19 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, FHIRPersistence
         return resource;
     }
 
+    /**
+     * Serializes the passed Resource and encodes it with the payload codec of this datastore.
+     * @param resource
+     * @return byte[] - the payload to store in the DATA column
+     * @throws FHIRGeneratorException
+     * @throws IOException
+     */
+    private byte[] encodePayload(Resource resource) throws FHIRGeneratorException, IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        FHIRGenerator.generator(Format.JSON, false).generate(resource, stream);
+        return payloadCodec.encode(stream.toByteArray());
+    }
+
     @Override
     public boolean isTransactional() {
         return true;
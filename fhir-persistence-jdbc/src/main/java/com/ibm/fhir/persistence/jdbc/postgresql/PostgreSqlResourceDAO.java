@@ -15,9 +15,12 @@ import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
 import java.sql.Timestamp;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.transaction.TransactionSynchronizationRegistry;
 
@@ -36,6 +39,7 @@ import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBConnectException
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceFKVException;
 import com.ibm.fhir.persistence.jdbc.util.ResourceTypesCache;
+import com.ibm.fhir.persistence.jdbc.util.SqlQueryData;
 
 /**
  * Data access object for writing FHIR resources to an postgresql database.
@@ -49,6 +53,9 @@ public class PostgreSqlResourceDAO extends ResourceDAOImpl {
 
     private static final PostgreSqlTranslator translator = new PostgreSqlTranslator();
 
+    // Extracts the estimated row count from a line of EXPLAIN output
+    private static final Pattern PLAN_ROWS_PATTERN = Pattern.compile("rows=(\\d+)");
+
     // DAO used to obtain sequence values from FHIR_REF_SEQUENCE
     private FhirRefSequenceDAO fhirRefSequenceDAO;
 
@@ -157,6 +164,49 @@ public class PostgreSqlResourceDAO extends ResourceDAOImpl {
         return resource;
     }
 
+    /**
+     * Inserts the passed FHIR Resources and their search parameters, sharing the batches of parameter rows
+     * across all of the resources.
+     */
+    @Override
+    public List<Resource> insertAll(List<Resource> resources, List<List<ExtractedParameterValue>> parameters, ParameterDAO parameterDao)
+            throws FHIRPersistenceException {
+        return insertAllWithoutProcedure(resources, parameters, connection -> {
+            this.fhirRefSequenceDAO = new FhirRefSequenceDAOImpl(connection);
+            this.parameterNameDAO = new PostgreSqlParameterNamesDAO(connection, fhirRefSequenceDAO);
+            this.codeSystemDAO = new PostgreSqlCodeSystemDAO(connection, fhirRefSequenceDAO);
+
+            return new ResourceWriter() {
+                @Override
+                public int getOrCreateResourceType(String resourceType) throws SQLException {
+                    return PostgreSqlResourceDAO.this.getOrCreateResourceType(resourceType, connection);
+                }
+
+                @Override
+                public ParameterVisitorBatchDAO createParameterVisitor(String resourceType) throws SQLException {
+                    // postgresql doesn't support partitioned multi-tenancy, so we disable it on the DAO:
+                    return new ParameterVisitorBatchDAO(connection, getStatementCache(connection), null, resourceType, false, -1L, PARAMETER_BATCH_SIZE,
+                        new ParameterNameCacheAdapter(parameterNameDAO), new CodeSystemCacheAdapter(codeSystemDAO));
+                }
+
+                @Override
+                public long storeResource(Resource resource, List<ExtractedParameterValue> resourceParameters, ParameterVisitorBatchDAO pvd) throws Exception {
+                    return PostgreSqlResourceDAO.this.storeResource(resource.getResourceType(),
+                        resourceParameters,
+                        resource.getLogicalId(),
+                        resource.getData(),
+                        resource.getLastUpdated(),
+                        resource.isDeleted(),
+                        UUID.randomUUID().toString(),
+                        resource.getVersionId(),
+                        connection,
+                        pvd
+                        );
+                }
+            };
+        });
+    }
+
     /**
      * Store the resource in the database, creating a new logical_resource entry if this is
      * the first version of this resource, or creating a new resource entry if this a new
@@ -193,6 +243,16 @@ public class PostgreSqlResourceDAO extends ResourceDAOImpl {
      */
     public long storeResource(String tablePrefix, List<ExtractedParameterValue> parameters, String p_logical_id, byte[] p_payload, Timestamp p_last_updated, boolean p_is_deleted,
         String p_source_key, Integer p_version, Connection conn) throws Exception {
+        return storeResource(tablePrefix, parameters, p_logical_id, p_payload, p_last_updated, p_is_deleted, p_source_key, p_version, conn, null);
+    }
+
+    /**
+     * Store the resource in the database, adding its parameters to the passed visitor if it is not null.
+     * In this case, the parameter rows are inserted when the caller flushes or closes the visitor.
+     * @see #storeResource(String, List, String, byte[], Timestamp, boolean, String, Integer, Connection)
+     */
+    private long storeResource(String tablePrefix, List<ExtractedParameterValue> parameters, String p_logical_id, byte[] p_payload, Timestamp p_last_updated, boolean p_is_deleted,
+        String p_source_key, Integer p_version, Connection conn, ParameterVisitorBatchDAO sharedVisitor) throws Exception {
 
         final String METHODNAME = "storeResource() for " + tablePrefix + " resource";
         logger.entering(CLASSNAME, METHODNAME);
@@ -413,9 +473,15 @@ public class PostgreSqlResourceDAO extends ResourceDAOImpl {
             // To keep things simple for the postgresql use-case, we just use a visitor to
             // handle inserts of parameters directly in the resource parameter tables.
             // Note we don't get any parameters for the resource soft-delete operation
-            if (parameters != null) {
+            if (parameters != null && sharedVisitor != null) {
+                sharedVisitor.setLogicalResourceId(v_logical_resource_id);
+                for (ExtractedParameterValue p: parameters) {
+                    p.accept(sharedVisitor);
+                }
+            }
+            else if (parameters != null) {
                 // postgresql doesn't support partitioned multi-tenancy, so we disable it on the DAO:
-                try (ParameterVisitorBatchDAO pvd = new ParameterVisitorBatchDAO(conn, null, tablePrefix, false, v_logical_resource_id, 100,
+                try (ParameterVisitorBatchDAO pvd = new ParameterVisitorBatchDAO(conn, getStatementCache(conn), null, tablePrefix, false, v_logical_resource_id, 100,
                     new ParameterNameCacheAdapter(parameterNameDAO), new CodeSystemCacheAdapter(codeSystemDAO))) {
                     for (ExtractedParameterValue p: parameters) {
                         p.accept(pvd);
@@ -501,4 +567,51 @@ public class PostgreSqlResourceDAO extends ResourceDAOImpl {
 
         return result;
     }
+
+    /**
+     * Obtain the row estimate from the PostgreSQL query planner by running EXPLAIN over
+     * the count query. The plan for a count query is an aggregate node over the actual
+     * search, so the estimate is taken from the first child node of the plan.
+     * Falls back to the accurate count if the plan cannot be interpreted.
+     */
+    @Override
+    public int searchCountEstimate(SqlQueryData queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "searchCountEstimate";
+        logger.entering(CLASSNAME, METHODNAME);
+
+        Integer estimate = null;
+        Connection connection = this.getConnection();
+        final String explain = "EXPLAIN " + queryData.getQueryString();
+        try (PreparedStatement stmt = connection.prepareStatement(explain)) {
+            List<?> bindVariables = queryData.getBindVariables();
+            for (int i = 0; i < bindVariables.size(); i++) {
+                Object arg = bindVariables.get(i);
+                if (arg instanceof Timestamp) {
+                    stmt.setTimestamp(i+1, (Timestamp) arg, UTC);
+                } else {
+                    stmt.setObject(i+1, arg);
+                }
+            }
+
+            ResultSet rs = stmt.executeQuery();
+            int planLine = 0;
+            while (estimate == null && rs.next()) {
+                Matcher m = PLAN_ROWS_PATTERN.matcher(rs.getString(1));
+                // skip the outer aggregate node, which always estimates a single row
+                if (m.find() && planLine++ > 0) {
+                    estimate = (int) Math.min(Long.parseLong(m.group(1)), Integer.MAX_VALUE);
+                }
+            }
+        } catch (SQLException | NumberFormatException x) {
+            logger.log(Level.WARNING, "Unable to obtain a count estimate from the query planner; using an accurate count", x);
+        } finally {
+            this.cleanup(null, connection);
+            logger.exiting(CLASSNAME, METHODNAME);
+        }
+
+        if (estimate == null) {
+            return searchCount(queryData);
+        }
+        return estimate;
+    }
 }
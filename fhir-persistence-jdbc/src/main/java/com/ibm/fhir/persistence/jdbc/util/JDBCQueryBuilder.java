@@ -43,6 +43,8 @@ import java.util.Map;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import com.ibm.fhir.config.FHIRConfigHelper;
+import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.model.resource.Location;
 import com.ibm.fhir.model.resource.SearchParameter;
 import com.ibm.fhir.model.type.Code;
@@ -61,6 +63,7 @@ import com.ibm.fhir.persistence.jdbc.util.type.QuantityParmBehaviorUtil;
 import com.ibm.fhir.persistence.util.AbstractQueryBuilder;
 import com.ibm.fhir.search.SearchConstants.Modifier;
 import com.ibm.fhir.search.SearchConstants.Type;
+import com.ibm.fhir.search.compartment.CompartmentUtil;
 import com.ibm.fhir.search.context.FHIRSearchContext;
 import com.ibm.fhir.search.location.bounding.Bounding;
 import com.ibm.fhir.search.location.util.LocationUtil;
@@ -127,7 +130,7 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         QuerySegmentAggregator helper;
         SqlQueryData query = null;
 
-        helper = this.buildQueryCommon(resourceType, searchContext);
+        helper = this.buildQueryCommon(resourceType, searchContext, 0);
         if (helper != null) {
             query = helper.buildCountQuery();
         }
@@ -145,7 +148,7 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         SqlQueryData query = null;
         QuerySegmentAggregator helper;
 
-        helper = this.buildQueryCommon(resourceType, searchContext);
+        helper = this.buildQueryCommon(resourceType, searchContext, 0);
         if (helper != null) {
             query = helper.buildQuery();
         }
@@ -154,6 +157,70 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         return query;
     }
 
+    /**
+     * Builds a query that returns the requested page of search results plus one
+     * additional "look-ahead" row. The presence of the extra row tells the caller
+     * whether there is a next page, without having to run a count query first.
+     *
+     * @param resourceType
+     *                      - The type of resource being searched for.
+     * @param searchContext
+     *                      - The search context containing the search parameters.
+     * @return SqlQueryData - A query which fetches at most pageSize + 1 rows
+     * @throws Exception
+     */
+    public SqlQueryData buildLookAheadQuery(Class<?> resourceType, FHIRSearchContext searchContext) throws Exception {
+        final String METHODNAME = "buildLookAheadQuery";
+        log.entering(CLASSNAME, METHODNAME,
+                new Object[] { resourceType.getSimpleName(), searchContext.getSearchParameters() });
+
+        SqlQueryData query = null;
+        QuerySegmentAggregator helper;
+
+        helper = this.buildQueryCommon(resourceType, searchContext, 1);
+        if (helper != null) {
+            query = helper.buildQuery();
+        }
+
+        log.exiting(CLASSNAME, METHODNAME);
+        return query;
+    }
+
+    /**
+     * Builds a query which uses keyset pagination to fetch the page of search results that
+     * follows the passed RESOURCE_ID. Only supported for searches without sort or inclusion
+     * parameters, which are ordered by RESOURCE_ID.
+     *
+     * @param resourceType
+     *                      - The type of resource being searched for.
+     * @param searchContext
+     *                      - The search context containing the search parameters.
+     * @param afterResourceId
+     *                      - The RESOURCE_ID of the last resource on the previous page.
+     * @param lookAhead
+     *                      - Whether to fetch one additional row beyond the page size.
+     * @return SqlQueryData - A query which fetches the next page of results
+     * @throws Exception
+     */
+    public SqlQueryData buildKeysetQuery(Class<?> resourceType, FHIRSearchContext searchContext, long afterResourceId,
+            boolean lookAhead) throws Exception {
+        final String METHODNAME = "buildKeysetQuery";
+        log.entering(CLASSNAME, METHODNAME,
+                new Object[] { resourceType.getSimpleName(), searchContext.getSearchParameters(), afterResourceId });
+
+        SqlQueryData query = null;
+        QuerySegmentAggregator helper;
+
+        helper = this.buildQueryCommon(resourceType, searchContext, lookAhead ? 1 : 0);
+        if (helper != null) {
+            helper.setKeysetResourceId(afterResourceId);
+            query = helper.buildQuery();
+        }
+
+        log.exiting(CLASSNAME, METHODNAME);
+        return query;
+    }
+
     /**
      * Contains logic common to the building of both 'count' resource queries and
      * 'regular' resource queries.
@@ -162,11 +229,13 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
      *                      The type of FHIR resource being searched for.
      * @param searchContext
      *                      The search context containing search parameters.
+     * @param lookAheadRows
+     *                      The number of rows to fetch beyond the requested page size.
      * @return QuerySegmentAggregator - A query builder helper containing processed
      *         query segments.
      * @throws Exception
      */
-    private QuerySegmentAggregator buildQueryCommon(Class<?> resourceType, FHIRSearchContext searchContext)
+    private QuerySegmentAggregator buildQueryCommon(Class<?> resourceType, FHIRSearchContext searchContext, int lookAheadRows)
             throws Exception {
         final String METHODNAME = "buildQueryCommon";
         log.entering(CLASSNAME, METHODNAME,
@@ -198,7 +267,7 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         boolean isValidQuery = true;
 
         helper =
-                QuerySegmentAggregatorFactory.buildQuerySegmentAggregator(resourceType, offset, pageSize,
+                QuerySegmentAggregatorFactory.buildQuerySegmentAggregator(resourceType, offset, pageSize + lookAheadRows,
                         this.parameterDao, this.resourceDao, searchContext);
 
         // Special logic for handling LocationPosition queries. These queries have interdependencies between
@@ -848,6 +917,15 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         final String METHODNAME = "processInclusionCriteria";
         log.entering(CLASSNAME, METHODNAME, queryParm.toString());
 
+        if (FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_SEARCH_USE_STORED_COMPARTMENT_PARAM, false)) {
+            // Opt-in, because resources stored before compartment membership was recorded would not be matched
+            SqlQueryData storedCompartmentQueryData = processStoredCompartmentCriteria(queryParm);
+            if (storedCompartmentQueryData != null) {
+                log.exiting(CLASSNAME, METHODNAME, storedCompartmentQueryData.getQueryString());
+                return storedCompartmentQueryData;
+            }
+        }
+
         StringBuilder whereClauseSegment = new StringBuilder();
         String operator = EQ;
         QueryParameter currentParm;
@@ -894,6 +972,54 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         return queryData;
     }
 
+    /**
+     * Builds the where clause segment for a compartment search from the compartment membership parameter stored
+     * with each resource (see {@link CompartmentUtil#makeCompartmentParamName(String)}), which replaces the OR of
+     * all the inclusion criteria with a single predicate:
+     *
+     * <pre>
+     * ((P1.PARAMETER_NAME_ID=x AND P1.STR_VALUE = ?))
+     * </pre>
+     *
+     * @param queryParm the inclusion criteria, all with the value "compartment-type/compartment-id"
+     * @return the where clause segment, or null if the inclusion criteria can't be expressed this way
+     * @throws FHIRPersistenceException
+     */
+    private SqlQueryData processStoredCompartmentCriteria(QueryParameter queryParm) throws FHIRPersistenceException {
+        String compartmentReference = null;
+        for (QueryParameter currentParm = queryParm; currentParm != null; currentParm = currentParm.getNextParameter()) {
+            // Chained inclusion criteria aren't covered by the stored membership
+            if (currentParm.getCode().contains(DOT) || currentParm.getValues() == null || currentParm.getValues().size() != 1) {
+                return null;
+            }
+            String value = currentParm.getValues().get(0).getValueString();
+            if (compartmentReference == null) {
+                compartmentReference = value;
+            } else if (!compartmentReference.equals(value)) {
+                return null;
+            }
+        }
+
+        int slash = compartmentReference != null ? compartmentReference.indexOf('/') : -1;
+        if (slash < 1) {
+            return null;
+        }
+        String compartment = compartmentReference.substring(0, slash);
+        String compartmentLogicalId = compartmentReference.substring(slash + 1);
+
+        StringBuilder whereClauseSegment = new StringBuilder();
+        List<Object> bindVariables = new ArrayList<>();
+        whereClauseSegment.append(LEFT_PAREN);
+        // Build this piece: (pX.PARAMETER_NAME_ID = x AND pX.str_value = ?)
+        this.populateNameIdSubSegment(whereClauseSegment, CompartmentUtil.makeCompartmentParamName(compartment), PARAMETER_TABLE_ALIAS);
+        whereClauseSegment.append(AND);
+        whereClauseSegment.append(PARAMETER_TABLE_ALIAS + DOT).append(STR_VALUE).append(EQ).append(BIND_VAR);
+        whereClauseSegment.append(RIGHT_PAREN);
+        whereClauseSegment.append(RIGHT_PAREN);
+        bindVariables.add(compartmentLogicalId);
+        return new SqlQueryData(whereClauseSegment.toString(), bindVariables);
+    }
+
     @Override
     protected SqlQueryData processDateParm(Class<?> resourceType, QueryParameter queryParm) throws Exception {
         return processDateParm(resourceType, queryParm, PARAMETER_TABLE_ALIAS);
@@ -0,0 +1,90 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodes and decodes the opaque page tokens used for keyset (seek) pagination.
+ * <br>
+ * A token records the position of the last row on the previous page: the RESOURCE_ID
+ * for searches (which are ordered by RESOURCE_ID) or the VERSION_ID for history
+ * (which is ordered by descending VERSION_ID). The next page is then fetched with a
+ * range predicate on that column instead of an OFFSET, so each page costs the same
+ * regardless of how deep into the result set it is.
+ */
+public class KeysetPageToken {
+    private static final String SEARCH_PREFIX = "r";
+    private static final String HISTORY_PREFIX = "v";
+    private static final char SEPARATOR = ':';
+
+    private KeysetPageToken() {
+        // No operation
+    }
+
+    /**
+     * @param lastResourceId the RESOURCE_ID of the last resource on the current search page
+     * @return an opaque token for the next search page
+     */
+    public static String forSearch(long lastResourceId) {
+        return encode(SEARCH_PREFIX, lastResourceId);
+    }
+
+    /**
+     * @param token an opaque token previously returned by {@link #forSearch(long)}
+     * @return the RESOURCE_ID after which the next search page starts
+     * @throws IllegalArgumentException if the token is not a valid search page token
+     */
+    public static long parseSearch(String token) {
+        return decode(SEARCH_PREFIX, token);
+    }
+
+    /**
+     * @param lastVersionId the VERSION_ID of the last resource version on the current history page
+     * @return an opaque token for the next history page
+     */
+    public static String forHistory(int lastVersionId) {
+        return encode(HISTORY_PREFIX, lastVersionId);
+    }
+
+    /**
+     * @param token an opaque token previously returned by {@link #forHistory(int)}
+     * @return the VERSION_ID before which the next history page starts
+     * @throws IllegalArgumentException if the token is not a valid history page token
+     */
+    public static int parseHistory(String token) {
+        long value = decode(HISTORY_PREFIX, token);
+        if (value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid page token: " + token);
+        }
+        return (int) value;
+    }
+
+    private static String encode(String prefix, long value) {
+        String raw = prefix + SEPARATOR + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long decode(String prefix, String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int idx = raw.indexOf(SEPARATOR);
+            if (idx < 0 || !prefix.equals(raw.substring(0, idx))) {
+                throw new IllegalArgumentException("Invalid page token: " + token);
+            }
+            long value = Long.parseLong(raw.substring(idx + 1));
+            if (value < 0) {
+                throw new IllegalArgumentException("Invalid page token: " + token);
+            }
+            return value;
+        } catch (IllegalArgumentException x) {
+            // includes NumberFormatException and base64 decoding errors
+            throw new IllegalArgumentException("Invalid page token: " + token, x);
+        }
+    }
+}
@@ -81,6 +81,10 @@ public class QuerySegmentAggregator {
 
     private int offset;
     private int pageSize;
+
+    // RESOURCE_ID of the last row of the previous page when using keyset pagination
+    private Long keysetResourceId = null;
+
     protected ParameterDAO parameterDao;
     protected ResourceDAO resourceDao;
 
@@ -107,6 +111,20 @@ public class QuerySegmentAggregator {
         this.resourceTypes = resourceTypes;
     }
 
+    /**
+     * Switch this aggregator to keyset pagination. Instead of skipping {@code offset} rows,
+     * the query will seek directly to the rows which follow the passed RESOURCE_ID in the
+     * default (RESOURCE_ID ASC) ordering.
+     * <br>
+     * Only applies to queries built by {@link #buildQuery()} with the default ordering; it
+     * must not be set on aggregators used for count queries.
+     *
+     * @param afterResourceId the RESOURCE_ID of the last row of the previous page
+     */
+    public void setKeysetResourceId(Long afterResourceId) {
+        this.keysetResourceId = afterResourceId;
+    }
+
     /**
      * Adds a query segment, which is a where clause segment corresponding to the
      * passed query Parameter and its encapsulated search values.
@@ -158,6 +176,9 @@ public class QuerySegmentAggregator {
             List<Object> allBindVariables = new ArrayList<>();
             allBindVariables.addAll(idsObjects);
             allBindVariables.addAll(lastUpdatedObjects);
+            if (this.keysetResourceId != null) {
+                allBindVariables.add(this.keysetResourceId);
+            }
             for (SqlQueryData querySegment : this.querySegments) {
                 allBindVariables.addAll(querySegment.getBindVariables());
             }
@@ -266,6 +287,9 @@ public class QuerySegmentAggregator {
                 // An important step here is to add _id and _lastUpdated
                 allBindVariables.addAll(idsObjects);
                 allBindVariables.addAll(lastUpdatedObjects);
+                if (this.keysetResourceId != null) {
+                    allBindVariables.add(this.keysetResourceId);
+                }
 
                 buildWhereClause(queryString, resourceTypeName);
 
@@ -309,6 +333,10 @@ public class QuerySegmentAggregator {
         processFromClauseForLastUpdated(fromClause, simpleName);
         fromClause.append(
                 " R ON R.LOGICAL_RESOURCE_ID=LR.LOGICAL_RESOURCE_ID AND R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID AND R.IS_DELETED <> 'Y' ");
+        if (this.keysetResourceId != null) {
+            // Seek past the previous page when using keyset pagination
+            fromClause.append("AND R.RESOURCE_ID > ? ");
+        }
         log.exiting(CLASSNAME, METHODNAME);
     }
 
@@ -527,11 +555,13 @@ public class QuerySegmentAggregator {
      * @throws Exception
      */
     protected void addPaginationClauses(StringBuilder queryString) throws Exception {
+        // With keyset pagination, the seek predicate already positions us at the start of the page
+        int offset = this.keysetResourceId != null ? 0 : this.offset;
 
         if (this.parameterDao.isDb2Database()) {
-            queryString.append(" LIMIT ").append(this.pageSize).append(" OFFSET ").append(this.offset);
+            queryString.append(" LIMIT ").append(this.pageSize).append(" OFFSET ").append(offset);
         } else {
-            queryString.append(" OFFSET ").append(this.offset).append(" ROWS")
+            queryString.append(" OFFSET ").append(offset).append(" ROWS")
                     .append(" FETCH NEXT ").append(this.pageSize).append(" ROWS ONLY");
         }
     }
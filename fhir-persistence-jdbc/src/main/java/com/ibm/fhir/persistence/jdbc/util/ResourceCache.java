@@ -0,0 +1,306 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.transaction.Synchronization;
+
+import com.ibm.fhir.core.util.ConcurrentBoundedCache;
+import com.ibm.fhir.model.resource.Resource;
+
+/**
+ * A bounded in-memory cache of parsed resources, used by the read and vread interactions to skip the
+ * database query and the payload parsing for frequently read resources.
+ * <br>
+ * Each tenant/datastore combination has its own cache. Two kinds of entries are held:
+ * <ul>
+ * <li>specific versions, keyed by resource type, logical id and version id. A version never changes once
+ * written, so these entries stay valid until they are evicted.</li>
+ * <li>current versions, keyed by resource type and logical id. These are invalidated when the resource is
+ * updated or deleted on this node, and optionally expire after a time-to-live so that writes made by other
+ * nodes are eventually seen.</li>
+ * </ul>
+ * Deleted resources are never cached. Resources are immutable, so cached instances are shared by all readers.
+ */
+public class ResourceCache {
+    private static final String CLASSNAME = ResourceCache.class.getName();
+    private static final Logger log = Logger.getLogger(CLASSNAME);
+
+    /**
+     * The cache of each tenant/datastore combination, keyed by the name from
+     * {@link ResourceTypesCache#getCacheNameForTenantDatastore()}
+     */
+    private static final ConcurrentHashMap<String, ResourceCache> caches = new ConcurrentHashMap<>();
+
+    private final ConcurrentBoundedCache<String, CachedResource> cache;
+    private final long ttlMillis;
+
+    // Incremented by every invalidation. A reader notes the stamp before going to the database and
+    // only caches what it read if no invalidation happened in between, so a version read before a
+    // concurrent write can't be cached after that write has invalidated it.
+    private final AtomicLong invalidationStamp = new AtomicLong();
+
+    /**
+     * @param maxEntries
+     *     the maximum number of cached resources (current and specific versions combined)
+     * @param ttlMillis
+     *     how long a current version stays valid after it was cached, or 0 if it stays valid until the
+     *     resource is updated or deleted on this node
+     */
+    public ResourceCache(int maxEntries, long ttlMillis) {
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("ttlMillis must not be negative");
+        }
+        this.cache = ConcurrentBoundedCache.createCache(maxEntries);
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Returns the cache for the given tenant/datastore, creating it if needed. If the existing cache was
+     * created with different settings, it is replaced by an empty cache with the new settings.
+     * @param tenantDatastoreCacheName
+     * @param maxEntries
+     * @param ttlMillis
+     * @return ResourceCache
+     */
+    public static ResourceCache getCache(String tenantDatastoreCacheName, int maxEntries, long ttlMillis) {
+        return caches.compute(tenantDatastoreCacheName, (k, existing) -> {
+            if (existing != null && existing.getMaxEntries() == maxEntries && existing.ttlMillis == ttlMillis) {
+                return existing;
+            }
+            log.fine("Created resource cache for tenantDatastore=" + k + " maxEntries=" + maxEntries + " ttlMillis=" + ttlMillis);
+            return new ResourceCache(maxEntries, ttlMillis);
+        });
+    }
+
+    /**
+     * @param tenantDatastoreCacheName
+     * @return the cache for the given tenant/datastore, or null if none was created
+     */
+    public static ResourceCache getExistingCache(String tenantDatastoreCacheName) {
+        return caches.get(tenantDatastoreCacheName);
+    }
+
+    /**
+     * Empties the cache of the given tenant/datastore, if it has one.
+     * @param tenantDatastoreCacheName
+     */
+    public static void clear(String tenantDatastoreCacheName) {
+        ResourceCache rc = caches.get(tenantDatastoreCacheName);
+        if (rc != null) {
+            rc.clear();
+        }
+    }
+
+    /**
+     * Empties the caches of all tenants/datastores.
+     */
+    public static void clearAll() {
+        for (ResourceCache rc : caches.values()) {
+            rc.clear();
+        }
+    }
+
+    /**
+     *
+     * @return A formatted representation of the size and hit rate of each tenant/datastore cache.
+     */
+    public static String dumpCacheStatistics() {
+        StringBuilder stats = new StringBuilder();
+        stats.append(CacheUtil.NEWLINE).append("Statistics of ResourceCache").append(CacheUtil.NEWLINE);
+        for (Map.Entry<String, ResourceCache> entry : caches.entrySet()) {
+            stats.append("ResourceCache for datastoreid: ").append(entry.getKey())
+                 .append(" ").append(entry.getValue()).append(CacheUtil.NEWLINE);
+        }
+        return stats.toString();
+    }
+
+    /**
+     * @return the current invalidation stamp, to be passed to {@link #putCurrent} after reading from the database
+     */
+    public long getInvalidationStamp() {
+        return invalidationStamp.get();
+    }
+
+    /**
+     * @param resourceType
+     * @param logicalId
+     * @return the cached current version of the resource, or null if it is not cached or has expired
+     */
+    public CachedResource getCurrent(String resourceType, String logicalId) {
+        String key = currentKey(resourceType, logicalId);
+        CachedResource cached = cache.get(key);
+        if (cached != null && ttlMillis > 0 && System.currentTimeMillis() - cached.cachedAt > ttlMillis) {
+            cache.remove(key);
+            return null;
+        }
+        return cached;
+    }
+
+    /**
+     * @param resourceType
+     * @param logicalId
+     * @param versionId
+     * @return the cached resource version, or null if it is not cached
+     */
+    public Resource getVersion(String resourceType, String logicalId, int versionId) {
+        CachedResource cached = cache.get(versionKey(resourceType, logicalId, versionId));
+        return (cached != null) ? cached.resource : null;
+    }
+
+    /**
+     * Caches the current version of a resource, unless the resource was invalidated since the given stamp
+     * was obtained. The version is also cached as a specific version.
+     * @param resourceType
+     * @param logicalId
+     * @param versionId
+     * @param resource
+     * @param stamp the value returned by {@link #getInvalidationStamp()} before the resource was read
+     */
+    public void putCurrent(String resourceType, String logicalId, int versionId, Resource resource, long stamp) {
+        CachedResource cached = new CachedResource(versionId, resource);
+        cache.put(versionKey(resourceType, logicalId, versionId), cached);
+        if (invalidationStamp.get() == stamp) {
+            cache.put(currentKey(resourceType, logicalId), cached);
+            if (invalidationStamp.get() != stamp) {
+                // invalidated while we were adding it
+                cache.remove(currentKey(resourceType, logicalId));
+            }
+        }
+    }
+
+    /**
+     * Caches a specific version of a resource.
+     * @param resourceType
+     * @param logicalId
+     * @param versionId
+     * @param resource
+     */
+    public void putVersion(String resourceType, String logicalId, int versionId, Resource resource) {
+        cache.put(versionKey(resourceType, logicalId, versionId), new CachedResource(versionId, resource));
+    }
+
+    /**
+     * Removes the current version of the resource from the cache. Called when the resource is updated or deleted.
+     * @param resourceType
+     * @param logicalId
+     */
+    public void invalidate(String resourceType, String logicalId) {
+        invalidationStamp.incrementAndGet();
+        cache.remove(currentKey(resourceType, logicalId));
+    }
+
+    /**
+     * Empties this cache. The statistics are not reset.
+     */
+    public void clear() {
+        invalidationStamp.incrementAndGet();
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public int getMaxEntries() {
+        return cache.getMaxEntries();
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+
+    /**
+     * @return the fraction of lookups that found a cached resource, or 0 if there were no lookups
+     */
+    public double getHitRate() {
+        long hits = getHitCount();
+        long lookups = hits + getMissCount();
+        return (lookups == 0) ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "ResourceCache [size=" + size() + ", maxEntries=" + getMaxEntries() + ", ttlMillis=" + ttlMillis
+                + ", hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount()
+                + ", hitRate=" + String.format("%.3f", getHitRate()) + "]";
+    }
+
+    private static String currentKey(String resourceType, String logicalId) {
+        return resourceType + "/" + logicalId;
+    }
+
+    private static String versionKey(String resourceType, String logicalId, int versionId) {
+        return resourceType + "/" + logicalId + "/_history/" + versionId;
+    }
+
+    /**
+     * A cached resource and its version id
+     */
+    public static final class CachedResource {
+        private final int versionId;
+        private final Resource resource;
+        private final long cachedAt;
+
+        private CachedResource(int versionId, Resource resource) {
+            this.versionId = versionId;
+            this.resource = Objects.requireNonNull(resource);
+            this.cachedAt = System.currentTimeMillis();
+        }
+
+        public int getVersionId() {
+            return versionId;
+        }
+
+        public Resource getResource() {
+            return resource;
+        }
+    }
+
+    /**
+     * Invalidates a resource again once the transaction that wrote it completes, whether it was committed or
+     * rolled back, so that a reader which read the resource between the write and the completion can't
+     * leave a version cached that is no longer current.
+     */
+    public static class Invalidator implements Synchronization {
+        private final ResourceCache resourceCache;
+        private final String resourceType;
+        private final String logicalId;
+
+        public Invalidator(ResourceCache resourceCache, String resourceType, String logicalId) {
+            this.resourceCache = resourceCache;
+            this.resourceType = resourceType;
+            this.logicalId = logicalId;
+        }
+
+        @Override
+        public void beforeCompletion() {
+        }
+
+        @Override
+        public void afterCompletion(int completionStatus) {
+            resourceCache.invalidate(resourceType, logicalId);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded cache of the prepared statements of a single connection, keyed by SQL text.
+ * <br>
+ * Statements are checked out with one of the prepare methods and given back with {@link #release(Statement)}
+ * instead of being closed, so that a statement is prepared once and then reused by every write made on the
+ * connection. When the cache grows beyond its maximum size, the least recently used statement that is not
+ * checked out is closed and evicted. Checked out statements are never evicted, because they may hold pending
+ * batches.
+ * <br>
+ * Instances are not thread-safe; like the connection itself, a cache must only be used by one thread at a time.
+ * The hit, miss and eviction counts are kept across all caches for monitoring.
+ */
+public class StatementCache implements AutoCloseable {
+    private static final Logger log = Logger.getLogger(StatementCache.class.getName());
+
+    public static final int DEFAULT_MAX_STATEMENTS = 128;
+
+    private static final LongAdder hitCount = new LongAdder();
+    private static final LongAdder missCount = new LongAdder();
+    private static final LongAdder evictionCount = new LongAdder();
+
+    private final Connection connection;
+    private final int maxStatements;
+
+    // in access order, so the eldest entry is the least recently used one
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Statement, Entry> checkedOut = new IdentityHashMap<>();
+
+    /**
+     * Public constructor
+     * @param connection the connection used to prepare the statements
+     * @param maxStatements the maximum number of statements kept open when none are checked out
+     */
+    public StatementCache(Connection connection, int maxStatements) {
+        if (maxStatements < 1) {
+            throw new IllegalArgumentException("maxStatements must be >= 1");
+        }
+        this.connection = connection;
+        this.maxStatements = maxStatements;
+    }
+
+    /**
+     * @return the connection used to prepare the statements
+     */
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Check out the prepared statement for the given SQL, preparing it if it is not cached.
+     * @param sql
+     * @return
+     * @throws SQLException
+     */
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return checkOut("S" + sql, sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    /**
+     * Check out the prepared statement for the given SQL and generated keys flag, preparing it if it is not cached.
+     * @param sql
+     * @param autoGeneratedKeys
+     * @return
+     * @throws SQLException
+     */
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        return checkOut((autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K" : "S") + sql, sql, autoGeneratedKeys);
+    }
+
+    /**
+     * Check out the callable statement for the given SQL, preparing it if it is not cached.
+     * @param sql
+     * @return
+     * @throws SQLException
+     */
+    public CallableStatement prepareCall(String sql) throws SQLException {
+        return (CallableStatement) checkOut("C" + sql, sql, -1);
+    }
+
+    /**
+     * Give back a statement checked out from this cache, keeping it open for reuse.
+     * @param stmt
+     * @return true if the statement belongs to this cache, false if the caller remains responsible for closing it
+     */
+    public boolean release(Statement stmt) {
+        Entry entry = checkedOut.get(stmt);
+        if (entry == null) {
+            return false;
+        }
+        if (--entry.useCount == 0) {
+            checkedOut.remove(stmt);
+            evictIfNeeded();
+        }
+        return true;
+    }
+
+    /**
+     * Quietly close a statement and remove it from the cache. Used to discard a statement whose state is
+     * unknown after a failure, for example because it may still hold part of a batch.
+     * @param stmt
+     */
+    public void evict(Statement stmt) {
+        checkedOut.remove(stmt);
+        entries.values().removeIf(entry -> entry.statement == stmt);
+        closeQuietly(stmt);
+    }
+
+    /**
+     * @return the number of statements currently open in this cache
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Close all the statements of this cache. The connection is not closed.
+     */
+    @Override
+    public void close() {
+        for (Entry entry : entries.values()) {
+            closeQuietly(entry.statement);
+        }
+        entries.clear();
+        checkedOut.clear();
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Closed statement cache. hits=" + getHitCount() + " misses=" + getMissCount() + " evictions=" + getEvictionCount());
+        }
+    }
+
+    /**
+     * @return the number of times a cached statement was reused, across all caches
+     */
+    public static long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * @return the number of times a statement had to be prepared, across all caches
+     */
+    public static long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return the number of statements closed to keep a cache within its maximum size, across all caches
+     */
+    public static long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    private PreparedStatement checkOut(String key, String sql, int autoGeneratedKeys) throws SQLException {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.statement.isClosed()) {
+            // closed behind our back, for example by a connection reset
+            entries.remove(key);
+            checkedOut.remove(entry.statement);
+            entry = null;
+        }
+
+        if (entry != null) {
+            hitCount.increment();
+        } else {
+            missCount.increment();
+            PreparedStatement statement;
+            if (autoGeneratedKeys < 0) {
+                statement = connection.prepareCall(sql);
+            } else if (autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS) {
+                statement = connection.prepareStatement(sql, autoGeneratedKeys);
+            } else {
+                statement = connection.prepareStatement(sql);
+            }
+            entry = new Entry(key, statement);
+            entries.put(key, entry);
+        }
+
+        if (entry.useCount++ == 0) {
+            checkedOut.put(entry.statement, entry);
+        }
+        evictIfNeeded();
+        return entry.statement;
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Entry> iter = entries.values().iterator();
+        while (entries.size() > maxStatements && iter.hasNext()) {
+            Entry entry = iter.next();
+            if (entry.useCount == 0) {
+                iter.remove();
+                closeQuietly(entry.statement);
+                evictionCount.increment();
+            }
+        }
+    }
+
+    private static void closeQuietly(Statement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException x) {
+            log.log(Level.WARNING, "failed to close statement", x);
+        }
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final PreparedStatement statement;
+        private int useCount;
+
+        private Entry(String key, PreparedStatement statement) {
+            this.key = key;
+            this.statement = statement;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tracks which tenant is bound to each physical database connection.
+ * <br>
+ * In multitenant Db2 mode the tenant is bound to the database session by calling the FHIR_ADMIN.SET_TENANT
+ * procedure, and the binding lasts as long as the session. Connection pools hand out a new logical handle
+ * each time a connection is acquired, but the handles of a request usually share the same physical connection,
+ * so the binding is recorded against the physical connection and the procedure only needs to be called again
+ * when the tenant, the datastore or the tenant key changes.
+ * <br>
+ * Per the {@link java.sql.Wrapper} contract, unwrapping a handle to {@link Connection} returns the handle itself,
+ * so the physical connection is obtained by unwrapping to the connection interface of the JDBC driver instead.
+ * If the driver isn't known or the handle doesn't expose it, the binding is recorded against the handle.
+ * <br>
+ * Entries are weakly keyed, so a physical connection which is closed and discarded by the pool drops out of
+ * the cache on its own. The bind and reuse counts are kept for monitoring.
+ */
+public class TenantBindingCache {
+    private static final Logger log = Logger.getLogger(TenantBindingCache.class.getName());
+
+    // The connection interfaces of the supported JDBC drivers, implemented by their physical connections
+    private static final List<String> VENDOR_CONNECTION_INTERFACES = Arrays.asList(
+        "com.ibm.db2.jcc.DB2Connection",
+        "org.postgresql.PGConnection",
+        "org.apache.derby.iapi.jdbc.EngineConnection");
+
+    private static final Map<Object, Binding> bindings = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final Map<String, Optional<Class<?>>> vendorInterfaces = new ConcurrentHashMap<>();
+
+    private static final LongAdder bindCount = new LongAdder();
+    private static final LongAdder reuseCount = new LongAdder();
+
+    private TenantBindingCache() {
+        // static utility
+    }
+
+    /**
+     * Check if the physical connection behind the given connection is already bound to the given tenant.
+     * A successful check is counted as a reuse.
+     * @param connection
+     * @param tenantName
+     * @param dataStoreId
+     * @param tenantKey
+     * @return true if the tenant doesn't need to be bound again
+     */
+    public static boolean isBound(Connection connection, String tenantName, String dataStoreId, String tenantKey) {
+        Binding binding = bindings.get(getPhysicalConnection(connection));
+        if (binding != null && binding.matches(tenantName, dataStoreId, tenantKey)) {
+            reuseCount.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record that the physical connection behind the given connection has been bound to the given tenant.
+     * @param connection
+     * @param tenantName
+     * @param dataStoreId
+     * @param tenantKey
+     */
+    public static void bind(Connection connection, String tenantName, String dataStoreId, String tenantKey) {
+        bindings.put(getPhysicalConnection(connection), new Binding(tenantName, dataStoreId, tenantKey));
+        bindCount.increment();
+    }
+
+    /**
+     * Forget the binding of the physical connection behind the given connection, for example because the
+     * state of its session is no longer known after a failure.
+     * @param connection
+     */
+    public static void unbind(Connection connection) {
+        bindings.remove(getPhysicalConnection(connection));
+    }
+
+    /**
+     * @param connection
+     * @return the binding of the physical connection behind the given connection, or null if it isn't bound
+     */
+    public static Binding getBinding(Connection connection) {
+        return bindings.get(getPhysicalConnection(connection));
+    }
+
+    /**
+     * @return the number of physical connections currently known to be bound to a tenant
+     */
+    public static int size() {
+        return bindings.size();
+    }
+
+    /**
+     * @return the number of times a tenant was bound to a connection
+     */
+    public static long getBindCount() {
+        return bindCount.sum();
+    }
+
+    /**
+     * @return the number of times an existing binding was reused instead of binding the tenant again
+     */
+    public static long getReuseCount() {
+        return reuseCount.sum();
+    }
+
+    /**
+     * Get the vendor connection behind a (possibly pooled) connection handle, falling back to the
+     * handle itself if the pool doesn't expose it.
+     */
+    private static Object getPhysicalConnection(Connection connection) {
+        for (String interfaceName : VENDOR_CONNECTION_INTERFACES) {
+            Class<?> vendorInterface = getVendorInterface(interfaceName);
+            if (vendorInterface == null) {
+                continue;
+            }
+            if (vendorInterface.isInstance(connection)) {
+                // already the physical connection
+                return connection;
+            }
+            try {
+                if (connection.isWrapperFor(vendorInterface)) {
+                    Object physical = connection.unwrap(vendorInterface);
+                    if (physical != null) {
+                        return physical;
+                    }
+                }
+            } catch (SQLException x) {
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("Unable to unwrap connection to " + interfaceName + ": " + x.getMessage());
+                }
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * @return the given driver interface, or null if the driver isn't on the class path
+     */
+    private static Class<?> getVendorInterface(String interfaceName) {
+        return vendorInterfaces.computeIfAbsent(interfaceName, name -> {
+            try {
+                return Optional.of(Class.forName(name, false, TenantBindingCache.class.getClassLoader()));
+            } catch (ClassNotFoundException | LinkageError e) {
+                return Optional.empty();
+            }
+        }).orElse(null);
+    }
+
+    /**
+     * The tenant and datastore bound to a physical connection
+     */
+    public static final class Binding {
+        private final String tenantName;
+        private final String dataStoreId;
+        // only compared, never exposed
+        private final String tenantKey;
+
+        private Binding(String tenantName, String dataStoreId, String tenantKey) {
+            this.tenantName = tenantName;
+            this.dataStoreId = dataStoreId;
+            this.tenantKey = tenantKey;
+        }
+
+        /**
+         * @return the name of the tenant bound to the connection
+         */
+        public String getTenantName() {
+            return tenantName;
+        }
+
+        /**
+         * @return the datastore the connection was acquired for
+         */
+        public String getDataStoreId() {
+            return dataStoreId;
+        }
+
+        private boolean matches(String tenantName, String dataStoreId, String tenantKey) {
+            return Objects.equals(this.tenantName, tenantName)
+                    && Objects.equals(this.dataStoreId, dataStoreId)
+                    && Objects.equals(this.tenantKey, tenantKey);
+        }
+
+        @Override
+        public String toString() {
+            return tenantName + "/" + dataStoreId;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceResourceDeletedException;
+import com.ibm.fhir.persistence.jdbc.impl.FHIRPersistenceJDBCImpl;
+import com.ibm.fhir.persistence.jdbc.test.util.DerbyInitializer;
+import com.ibm.fhir.persistence.jdbc.util.ResourceCache;
+import com.ibm.fhir.persistence.jdbc.util.ResourceTypesCache;
+import com.ibm.fhir.persistence.test.common.AbstractPersistenceTest;
+
+/**
+ * Tests the read and vread interactions of the JDBC persistence layer with the resource cache enabled.
+ */
+public class JDBCResourceCacheTest extends AbstractPersistenceTest {
+
+    private Properties testProps;
+
+    public JDBCResourceCacheTest() throws Exception {
+        this.testProps = TestUtil.readTestProperties("test.jdbc.properties");
+        this.testProps.setProperty("resourceCacheEnabled", "true");
+        this.testProps.setProperty("resourceCacheMaxEntries", "100");
+    }
+
+    @Override
+    public void bootstrapDatabase() throws Exception {
+        DerbyInitializer derbyInit;
+        String dbDriverName = this.testProps.getProperty("dbDriverName");
+        if (dbDriverName != null && dbDriverName.contains("derby")) {
+            derbyInit = new DerbyInitializer(this.testProps);
+            derbyInit.bootstrapDb(false);
+        }
+    }
+
+    @Override
+    public FHIRPersistence getPersistenceImpl() throws Exception {
+        return new FHIRPersistenceJDBCImpl(this.testProps);
+    }
+
+    private ResourceCache getResourceCache() {
+        return ResourceCache.getExistingCache(ResourceTypesCache.getCacheNameForTenantDatastore());
+    }
+
+    @Test
+    public void testReadFromCache() throws Exception {
+        Patient patient = TestUtil.readExampleResource("json/ibm/minimal/Patient-1.json");
+        Patient created = persistence.create(getDefaultPersistenceContext(), patient).getResource();
+
+        long hits = getResourceCache().getHitCount();
+        Patient first = persistence.read(getDefaultPersistenceContext(), Patient.class, created.getId()).getResource();
+        Patient second = persistence.read(getDefaultPersistenceContext(), Patient.class, created.getId()).getResource();
+        assertSame(second, first);
+        assertTrue(getResourceCache().getHitCount() > hits);
+
+        // the current version is also cached as a specific version
+        assertSame(persistence.vread(getDefaultPersistenceContext(), Patient.class, created.getId(), "1").getResource(), first);
+    }
+
+    @Test
+    public void testUpdateInvalidates() throws Exception {
+        Patient patient = TestUtil.readExampleResource("json/ibm/minimal/Patient-1.json");
+        Patient created = persistence.create(getDefaultPersistenceContext(), patient).getResource();
+        Patient version1 = persistence.read(getDefaultPersistenceContext(), Patient.class, created.getId()).getResource();
+
+        persistence.update(getDefaultPersistenceContext(), created.getId(), version1);
+        Patient version2 = persistence.read(getDefaultPersistenceContext(), Patient.class, created.getId()).getResource();
+        assertNotSame(version2, version1);
+        assertEquals(version2.getMeta().getVersionId().getValue(), "2");
+        assertSame(persistence.read(getDefaultPersistenceContext(), Patient.class, created.getId()).getResource(), version2);
+
+        // older versions never change
+        assertSame(persistence.vread(getDefaultPersistenceContext(), Patient.class, created.getId(), "1").getResource(), version1);
+    }
+
+    @Test(expectedExceptions = FHIRPersistenceResourceDeletedException.class)
+    public void testDeleteInvalidates() throws Exception {
+        Patient patient = TestUtil.readExampleResource("json/ibm/minimal/Patient-1.json");
+        Patient created = persistence.create(getDefaultPersistenceContext(), patient).getResource();
+        persistence.read(getDefaultPersistenceContext(), Patient.class, created.getId());
+
+        persistence.delete(getDefaultPersistenceContext(), Patient.class, created.getId());
+        persistence.read(getDefaultPersistenceContext(), Patient.class, created.getId());
+    }
+
+    @Test
+    public void testRollbackNotCached() throws Exception {
+        Patient patient = TestUtil.readExampleResource("json/ibm/minimal/Patient-1.json");
+        Patient created = persistence.create(getDefaultPersistenceContext(), patient).getResource();
+        Patient version1 = persistence.read(getDefaultPersistenceContext(), Patient.class, created.getId()).getResource();
+        // release the locks held by the transaction of this test
+        persistence.getTransaction().commit();
+
+        TestTransactionRegistry registry = new TestTransactionRegistry();
+        FHIRPersistence txnPersistence = new FHIRPersistenceJDBCImpl(this.testProps) {
+            {
+                this.trxSynchRegistry = registry;
+            }
+        };
+        try {
+            // update and read within one global transaction
+            txnPersistence.getTransaction().begin();
+            txnPersistence.update(getDefaultPersistenceContext(), created.getId(), version1);
+            Patient version2 = txnPersistence.read(getDefaultPersistenceContext(), Patient.class, created.getId()).getResource();
+            assertEquals(version2.getMeta().getVersionId().getValue(), "2");
+            assertNotSame(txnPersistence.vread(getDefaultPersistenceContext(), Patient.class, created.getId(), "2").getResource(), version2);
+
+            // the uncommitted version must not be cached, so it can't outlive the rollback
+            assertNull(getResourceCache().getCurrent("Patient", created.getId()));
+            assertNull(getResourceCache().getVersion("Patient", created.getId(), 2));
+        } finally {
+            txnPersistence.getTransaction().rollback();
+            registry.complete(Status.STATUS_ROLLEDBACK);
+        }
+
+        persistence.getTransaction().begin();
+        Patient current = persistence.read(getDefaultPersistenceContext(), Patient.class, created.getId()).getResource();
+        assertEquals(current.getMeta().getVersionId().getValue(), "1");
+        assertNull(getResourceCache().getVersion("Patient", created.getId(), 2));
+    }
+
+    /**
+     * A transaction synchronization registry for a single active transaction
+     */
+    private static class TestTransactionRegistry implements TransactionSynchronizationRegistry {
+        private final Map<Object, Object> resources = new HashMap<>();
+        private final List<Synchronization> synchronizations = new ArrayList<>();
+        private int status = Status.STATUS_ACTIVE;
+
+        private void complete(int completionStatus) {
+            status = completionStatus;
+            for (Synchronization synchronization : synchronizations) {
+                synchronization.afterCompletion(completionStatus);
+            }
+        }
+
+        @Override
+        public Object getTransactionKey() {
+            return this;
+        }
+
+        @Override
+        public void putResource(Object key, Object value) {
+            resources.put(key, value);
+        }
+
+        @Override
+        public Object getResource(Object key) {
+            return resources.get(key);
+        }
+
+        @Override
+        public void registerInterposedSynchronization(Synchronization sync) {
+            synchronizations.add(sync);
+        }
+
+        @Override
+        public int getTransactionStatus() {
+            return status;
+        }
+
+        @Override
+        public void setRollbackOnly() {
+            status = Status.STATUS_MARKED_ROLLBACK;
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return status == Status.STATUS_MARKED_ROLLBACK;
+        }
+    }
+}
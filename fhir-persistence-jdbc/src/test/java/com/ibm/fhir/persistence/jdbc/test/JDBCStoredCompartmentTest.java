@@ -0,0 +1,43 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test;
+
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRConfigHelper;
+import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.config.FHIRRequestContext;
+
+/**
+ * Runs the compartment tests against the compartment membership parameters stored with each resource,
+ * using a tenant which has fhirServer/search/useStoredCompartmentParam enabled
+ */
+public class JDBCStoredCompartmentTest extends JDBCCompartmentTest {
+
+    public JDBCStoredCompartmentTest() throws Exception {
+        super();
+    }
+
+    @BeforeClass
+    public void setTenant() throws Exception {
+        FHIRRequestContext.get().setTenantId("stored-compartment");
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void resetTenant() throws Exception {
+        FHIRRequestContext.get().setTenantId("default");
+    }
+
+    @Test
+    public void testStoredCompartmentParamEnabled() throws Exception {
+        assertTrue(FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_SEARCH_USE_STORED_COMPARTMENT_PARAM, false));
+    }
+}
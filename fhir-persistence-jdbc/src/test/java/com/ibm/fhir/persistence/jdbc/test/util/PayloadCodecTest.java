@@ -0,0 +1,106 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.persistence.jdbc.codec.GzipPayloadCodec;
+import com.ibm.fhir.persistence.jdbc.codec.Lz4PayloadCodec;
+import com.ibm.fhir.persistence.jdbc.codec.PayloadCodec;
+import com.ibm.fhir.persistence.jdbc.codec.PayloadCodecs;
+import com.ibm.fhir.persistence.jdbc.codec.UncompressedPayloadCodec;
+
+public class PayloadCodecTest {
+    private static final byte[] EMPTY = new byte[0];
+    private static final byte[] SMALL = "{\"resourceType\":\"Patient\",\"id\":\"1\"}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LARGE;
+    static {
+        StringBuilder sb = new StringBuilder("{\"resourceType\":\"Bundle\",\"entry\":[");
+        for (int i = 0; i < 5000; i++) {
+            sb.append("{\"fullUrl\":\"Patient/").append(i).append("\"},");
+        }
+        sb.append("{}]}");
+        LARGE = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        for (String name : new String[] { "gzip", "lz4", "none" }) {
+            PayloadCodec codec = PayloadCodecs.getCodec(name);
+            assertEquals(codec.getName(), name);
+            for (byte[] data : new byte[][] { EMPTY, SMALL, LARGE }) {
+                byte[] payload = codec.encode(data);
+                assertEquals(payload[0], codec.getMarker());
+                assertEquals(codec.decode(payload), data, name);
+                assertEquals(PayloadCodecs.decode(payload), data, name);
+            }
+        }
+    }
+
+    @Test
+    public void testDefaultCodec() {
+        assertSame(PayloadCodecs.getCodec(null), PayloadCodecs.getCodec(GzipPayloadCodec.NAME));
+        assertSame(PayloadCodecs.getCodec(Lz4PayloadCodec.class.getName()), PayloadCodecs.getCodec(Lz4PayloadCodec.NAME));
+    }
+
+    @Test
+    public void testGzipCompatibility() throws Exception {
+        // payloads written before codecs existed
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream zipStream = new GZIPOutputStream(out)) {
+            zipStream.write(LARGE);
+        }
+        assertEquals(PayloadCodecs.decode(out.toByteArray()), LARGE);
+
+        // payloads written by the codec can be read by any GZIP reader
+        byte[] payload = PayloadCodecs.getCodec(GzipPayloadCodec.NAME).encode(LARGE);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(payload))) {
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                data.write(buffer, 0, n);
+            }
+            assertEquals(data.toByteArray(), LARGE);
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testUnknownMarker() throws Exception {
+        PayloadCodecs.decode(new byte[] { 0x7f, 0x00 });
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testCorruptGzip() throws Exception {
+        byte[] payload = PayloadCodecs.getCodec(GzipPayloadCodec.NAME).encode(SMALL);
+        // flip a bit of the CRC
+        payload[payload.length - 8] ^= 1;
+        PayloadCodecs.decode(payload);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownCodec() {
+        PayloadCodecs.getCodec("unknown");
+    }
+
+    @Test
+    public void testUncompressed() throws Exception {
+        byte[] payload = PayloadCodecs.getCodec(UncompressedPayloadCodec.NAME).encode(SMALL);
+        assertEquals(new String(payload, 1, payload.length - 1, StandardCharsets.UTF_8), new String(SMALL, StandardCharsets.UTF_8));
+    }
+}
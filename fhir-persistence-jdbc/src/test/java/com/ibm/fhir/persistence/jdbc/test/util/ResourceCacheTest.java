@@ -0,0 +1,91 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.type.Id;
+import com.ibm.fhir.model.type.Meta;
+import com.ibm.fhir.persistence.jdbc.util.ResourceCache;
+
+public class ResourceCacheTest {
+
+    private static Patient patient(String id, int versionId) {
+        return Patient.builder()
+                .id(id)
+                .meta(Meta.builder().versionId(Id.of(Integer.toString(versionId))).build())
+                .build();
+    }
+
+    @Test
+    public void testCurrentAndVersion() {
+        ResourceCache cache = new ResourceCache(10, 0);
+        Patient v1 = patient("1", 1);
+        cache.putCurrent("Patient", "1", 1, v1, cache.getInvalidationStamp());
+
+        assertSame(cache.getCurrent("Patient", "1").getResource(), v1);
+        assertEquals(cache.getCurrent("Patient", "1").getVersionId(), 1);
+        assertSame(cache.getVersion("Patient", "1", 1), v1);
+        assertNull(cache.getVersion("Patient", "1", 2));
+        assertNull(cache.getCurrent("Observation", "1"));
+
+        // an update removes the current version, but the old version stays valid
+        cache.invalidate("Patient", "1");
+        assertNull(cache.getCurrent("Patient", "1"));
+        assertSame(cache.getVersion("Patient", "1", 1), v1);
+        assertEquals(cache.getHitCount(), 4);
+        assertEquals(cache.getMissCount(), 3);
+    }
+
+    @Test
+    public void testStaleReadNotCached() {
+        ResourceCache cache = new ResourceCache(10, 0);
+        Patient v1 = patient("1", 1);
+
+        // the resource is updated between the database read and the put
+        long stamp = cache.getInvalidationStamp();
+        cache.invalidate("Patient", "1");
+        cache.putCurrent("Patient", "1", 1, v1, stamp);
+
+        assertNull(cache.getCurrent("Patient", "1"));
+        assertSame(cache.getVersion("Patient", "1", 1), v1);
+    }
+
+    @Test
+    public void testTimeToLive() throws Exception {
+        ResourceCache cache = new ResourceCache(10, 1);
+        Patient v1 = patient("1", 1);
+        cache.putCurrent("Patient", "1", 1, v1, cache.getInvalidationStamp());
+        Thread.sleep(5);
+
+        assertNull(cache.getCurrent("Patient", "1"));
+        // specific versions never expire
+        assertSame(cache.getVersion("Patient", "1", 1), v1);
+    }
+
+    @Test
+    public void testTenantCaches() {
+        ResourceCache cache = ResourceCache.getCache("tenant1~default", 10, 0);
+        assertSame(ResourceCache.getCache("tenant1~default", 10, 0), cache);
+        assertSame(ResourceCache.getExistingCache("tenant1~default"), cache);
+        assertNull(ResourceCache.getExistingCache("tenant2~default"));
+
+        cache.putVersion("Patient", "1", 1, patient("1", 1));
+        ResourceCache.clear("tenant1~default");
+        assertEquals(cache.size(), 0);
+
+        // new settings replace the cache
+        assertNotSame(ResourceCache.getCache("tenant1~default", 20, 0), cache);
+        assertEquals(ResourceCache.getExistingCache("tenant1~default").getMaxEntries(), 20);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.persistence.jdbc.util.StatementCache;
+
+public class StatementCacheTest {
+    private Connection connection;
+
+    @BeforeClass
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:derby:memory:statementCacheTest;create=true");
+    }
+
+    @AfterClass
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void testReuse() throws SQLException {
+        long hits = StatementCache.getHitCount();
+        long misses = StatementCache.getMissCount();
+        try (StatementCache cache = new StatementCache(connection, 4)) {
+            PreparedStatement ps = cache.prepareStatement("VALUES 1");
+            assertTrue(cache.release(ps));
+            assertSame(cache.prepareStatement("VALUES 1"), ps);
+            assertTrue(cache.release(ps));
+
+            // the generated keys flag is part of the key
+            PreparedStatement keys = cache.prepareStatement("VALUES 1", Statement.RETURN_GENERATED_KEYS);
+            assertNotSame(keys, ps);
+            cache.release(keys);
+            assertEquals(cache.size(), 2);
+
+            assertEquals(StatementCache.getHitCount() - hits, 1);
+            assertEquals(StatementCache.getMissCount() - misses, 2);
+
+            // a statement which doesn't belong to the cache is left to the caller
+            try (PreparedStatement other = connection.prepareStatement("VALUES 1")) {
+                assertFalse(cache.release(other));
+            }
+        }
+    }
+
+    @Test
+    public void testEviction() throws SQLException {
+        try (StatementCache cache = new StatementCache(connection, 2)) {
+            PreparedStatement first = cache.prepareStatement("VALUES 1");
+            PreparedStatement second = cache.prepareStatement("VALUES 2");
+            PreparedStatement third = cache.prepareStatement("VALUES 3");
+
+            // checked out statements are never evicted
+            assertEquals(cache.size(), 3);
+
+            cache.release(second);
+            cache.release(first);
+            assertEquals(cache.size(), 2);
+            assertTrue(second.isClosed());
+            assertFalse(first.isClosed());
+
+            cache.release(third);
+            assertSame(cache.prepareStatement("VALUES 1"), first);
+            assertNotSame(cache.prepareStatement("VALUES 2"), second);
+        }
+    }
+
+    @Test
+    public void testEvictAndClose() throws SQLException {
+        PreparedStatement ps;
+        PreparedStatement released;
+        try (StatementCache cache = new StatementCache(connection, 4)) {
+            ps = cache.prepareStatement("VALUES 1");
+            cache.evict(ps);
+            assertTrue(ps.isClosed());
+            assertEquals(cache.size(), 0);
+            assertNotSame(cache.prepareStatement("VALUES 1"), ps);
+
+            released = cache.prepareCall("VALUES 2");
+            cache.release(released);
+        }
+        assertTrue(released.isClosed());
+    }
+}
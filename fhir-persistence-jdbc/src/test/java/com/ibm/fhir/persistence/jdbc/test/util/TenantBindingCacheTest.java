@@ -0,0 +1,126 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.persistence.jdbc.util.TenantBindingCache;
+import com.ibm.fhir.persistence.jdbc.util.TenantBindingCache.Binding;
+
+public class TenantBindingCacheTest {
+    private Connection connection;
+
+    @BeforeClass
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:derby:memory:tenantBindingCacheTest;create=true");
+    }
+
+    @AfterClass
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @AfterMethod
+    public void unbind() {
+        TenantBindingCache.unbind(connection);
+    }
+
+    @Test
+    public void testBind() {
+        long binds = TenantBindingCache.getBindCount();
+        long reuses = TenantBindingCache.getReuseCount();
+        assertFalse(TenantBindingCache.isBound(connection, "tenant1", "default", "key1"));
+        assertNull(TenantBindingCache.getBinding(connection));
+
+        TenantBindingCache.bind(connection, "tenant1", "default", "key1");
+        assertTrue(TenantBindingCache.isBound(connection, "tenant1", "default", "key1"));
+        Binding binding = TenantBindingCache.getBinding(connection);
+        assertEquals(binding.getTenantName(), "tenant1");
+        assertEquals(binding.getDataStoreId(), "default");
+        assertEquals(binding.toString(), "tenant1/default");
+
+        assertEquals(TenantBindingCache.getBindCount() - binds, 1);
+        assertEquals(TenantBindingCache.getReuseCount() - reuses, 1);
+    }
+
+    @Test
+    public void testChangedBinding() {
+        TenantBindingCache.bind(connection, "tenant1", "default", "key1");
+        // a change of tenant, datastore or tenant key requires the tenant to be bound again
+        assertFalse(TenantBindingCache.isBound(connection, "tenant2", "default", "key1"));
+        assertFalse(TenantBindingCache.isBound(connection, "tenant1", "study1", "key1"));
+        assertFalse(TenantBindingCache.isBound(connection, "tenant1", "default", "key2"));
+
+        TenantBindingCache.bind(connection, "tenant2", "default", "key1");
+        assertFalse(TenantBindingCache.isBound(connection, "tenant1", "default", "key1"));
+        assertTrue(TenantBindingCache.isBound(connection, "tenant2", "default", "key1"));
+
+        TenantBindingCache.unbind(connection);
+        assertFalse(TenantBindingCache.isBound(connection, "tenant2", "default", "key1"));
+    }
+
+    @Test
+    public void testPooledHandles() throws SQLException {
+        // each acquisition from a pool returns a new handle for the same physical connection
+        Connection handle1 = createHandle(connection);
+        Connection handle2 = createHandle(connection);
+        // per the Wrapper contract, a handle unwrapped to Connection is the handle itself
+        assertSame(handle1.unwrap(Connection.class), handle1);
+
+        TenantBindingCache.bind(handle1, "tenant1", "default", "key1");
+        assertTrue(TenantBindingCache.isBound(handle2, "tenant1", "default", "key1"));
+        assertTrue(TenantBindingCache.isBound(connection, "tenant1", "default", "key1"));
+        assertEquals(TenantBindingCache.getBinding(handle2).getTenantName(), "tenant1");
+    }
+
+    /**
+     * Create a connection handle like those of a connection pool. It follows the {@link java.sql.Wrapper}
+     * contract, so it only unwraps to the physical connection for interfaces it doesn't implement itself.
+     */
+    private Connection createHandle(Connection physical) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "isWrapperFor":
+                    return ((Class<?>) args[0]).isInstance(proxy) || ((Class<?>) args[0]).isInstance(physical);
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(proxy)) {
+                        return proxy;
+                    }
+                    if (((Class<?>) args[0]).isInstance(physical)) {
+                        return physical;
+                    }
+                    throw new SQLException("not a wrapper for " + args[0]);
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException x) {
+                        throw x.getCause();
+                    }
+                }
+            });
+    }
+}
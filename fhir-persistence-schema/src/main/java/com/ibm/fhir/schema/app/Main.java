@@ -746,42 +746,47 @@ public class Main {
         long start = System.nanoTime();
         configureConnectionPool();
 
-        if (this.checkCompatibility) {
-            checkCompatibility();
-        }
-
-        if (addKeyForTenant != null) {
-            addTenantKey();
-        } else if (this.dropSchema) {
-            // only proceed with the drop if the user has provided additional confirmation
-            if (this.confirmDrop) {
-                dropSchema();
-            } else {
-                throw new IllegalArgumentException("[ERROR] Drop not confirmed with --confirm-drop");
+        try {
+            if (this.checkCompatibility) {
+                checkCompatibility();
             }
-        } else if (this.dropAdmin) {
-            // only try to drop the admin schema
-            if (this.confirmDrop) {
-                dropSchema();
-            } else {
-                throw new IllegalArgumentException("[ERROR] Drop not confirmed with --confirm-drop");
+
+            if (addKeyForTenant != null) {
+                addTenantKey();
+            } else if (this.dropSchema) {
+                // only proceed with the drop if the user has provided additional confirmation
+                if (this.confirmDrop) {
+                    dropSchema();
+                } else {
+                    throw new IllegalArgumentException("[ERROR] Drop not confirmed with --confirm-drop");
+                }
+            } else if (this.dropAdmin) {
+                // only try to drop the admin schema
+                if (this.confirmDrop) {
+                    dropSchema();
+                } else {
+                    throw new IllegalArgumentException("[ERROR] Drop not confirmed with --confirm-drop");
+                }
+            } else if (updateFhirSchema) {
+                updateSchema();
+            } else if (createFhirSchema) {
+                createFhirSchemas();
+            } else if (updateProc) {
+                updateProcedures();
+            } else if (this.allocateTenant) {
+                allocateTenant();
+            } else if (this.testTenant) {
+                testTenant();
+            } else if (this.dropTenant) {
+                dropTenant();
             }
-        } else if (updateFhirSchema) {
-            updateSchema();
-        } else if (createFhirSchema) {
-            createFhirSchemas();
-        } else if (updateProc) {
-            updateProcedures();
-        } else if (this.allocateTenant) {
-            allocateTenant();
-        } else if (this.testTenant) {
-            testTenant();
-        } else if (this.dropTenant) {
-            dropTenant();
-        }
 
-        if (this.grantTo != null) {
-            grantPrivileges(FhirSchemaConstants.FHIR_USER_GRANT_GROUP);
+            if (this.grantTo != null) {
+                grantPrivileges(FhirSchemaConstants.FHIR_USER_GRANT_GROUP);
+            }
+        } finally {
+            // stop the housekeeping of the pool and close its connections
+            connectionPool.close();
         }
 
         long elapsed = System.nanoTime() - start;
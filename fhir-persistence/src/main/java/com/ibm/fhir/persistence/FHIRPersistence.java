@@ -6,11 +6,21 @@
 
 package com.ibm.fhir.persistence;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.generator.FHIRGenerator;
+import com.ibm.fhir.model.generator.exception.FHIRGeneratorException;
 import com.ibm.fhir.model.resource.OperationOutcome;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceNotSupportedException;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceResourceDeletedException;
 
 /**
  * This interface defines the contract between the FHIR Server's REST API layer and the underlying
@@ -57,6 +67,41 @@ public interface FHIRPersistence {
     <T extends Resource> SingleResourceResult<T> vread(FHIRPersistenceContext context, Class<T> resourceType, String logicalId, String versionId)
             throws FHIRPersistenceException;
 
+    /**
+     * Retrieves many FHIR Resources from the datastore, each one identified by its resource type, its logical id and
+     * optionally a version id. Implementations may use this to read all of the resources of the same type with a single
+     * query, instead of one query per resource.
+     * <br>
+     * The default implementation calls {@link #read(FHIRPersistenceContext, Class, String)} or
+     * {@link #vread(FHIRPersistenceContext, Class, String, String)} for each key.
+     *
+     * @param context the FHIRPersistenceContext instance associated with the current request
+     * @param keys the keys of the Resource instances to be retrieved
+     * @return a list with a SingleResourceResult for each key, in the same order as the passed keys; the resource of a
+     *         result is null if the resource doesn't exist, or if it is deleted and the context doesn't include deleted resources
+     * @throws FHIRPersistenceException
+     */
+    default List<SingleResourceResult<Resource>> readMany(FHIRPersistenceContext context, List<ResourceKey> keys) throws FHIRPersistenceException {
+        List<SingleResourceResult<Resource>> results = new ArrayList<>(keys.size());
+        for (ResourceKey key : keys) {
+            Resource resource;
+            try {
+                if (key.getVersionId() == null) {
+                    resource = read(context, key.getResourceType(), key.getLogicalId()).getResource();
+                } else {
+                    resource = vread(context, key.getResourceType(), key.getLogicalId(), key.getVersionId()).getResource();
+                }
+            } catch (FHIRPersistenceResourceDeletedException e) {
+                resource = null;
+            }
+            results.add(new SingleResourceResult.Builder<Resource>()
+                    .success(true)
+                    .resource(resource)
+                    .build());
+        }
+        return results;
+    }
+
     /**
      * Updates an existing FHIR Resource by storing a new version in the datastore.
      *
@@ -69,6 +114,27 @@ public interface FHIRPersistence {
      */
     <T extends Resource> SingleResourceResult<T> update(FHIRPersistenceContext context, String logicalId, T resource) throws FHIRPersistenceException;
 
+    /**
+     * Updates (or creates) many FHIR Resources, each identified by its own logical id, by storing a new version of
+     * each one in the datastore. Implementations may use this to amortize the cost of the interaction over the list,
+     * for example to look up the existing versions with a single query and to insert the search parameters of all
+     * of the resources in shared batches.
+     * <br>
+     * The default implementation calls {@link #update(FHIRPersistenceContext, String, Resource)} for each resource.
+     *
+     * @param context the FHIRPersistenceContext instance associated with the current request
+     * @param resources the new contents of the FHIR Resources to be stored
+     * @return a list with a SingleResourceResult for each resource, in the same order as the passed resources
+     * @throws FHIRPersistenceException
+     */
+    default <T extends Resource> List<SingleResourceResult<T>> updateAll(FHIRPersistenceContext context, List<T> resources) throws FHIRPersistenceException {
+        List<SingleResourceResult<T>> results = new ArrayList<>(resources.size());
+        for (T resource : resources) {
+            results.add(update(context, resource.getId(), resource));
+        }
+        return results;
+    }
+
     /**
      * Deletes the specified FHIR Resource from the datastore.
      *
@@ -106,6 +172,44 @@ public interface FHIRPersistence {
      */
     MultiResourceResult<Resource> search(FHIRPersistenceContext context, Class<? extends Resource> resourceType) throws FHIRPersistenceException;
 
+    /**
+     * Performs a search like {@link #search(FHIRPersistenceContext, Class)}, but passes the JSON representation of
+     * each resource in the search result set to the consumer instead of returning the resources. Implementations
+     * may use this to copy the stored form of the resources straight to the consumer, without parsing them and
+     * generating them again, when the search doesn't filter the elements of the resources.
+     * <br>
+     * The default implementation generates the JSON of each resource returned by {@link #search(FHIRPersistenceContext, Class)}.
+     *
+     * @param context the FHIRPersistenceContext instance associated with the current request
+     * @param resourceType the resource type which is the target of the search
+     * @param consumer receives the logical id and the JSON of each resource, in the order of the search result set
+     * @return a MultiResourceResult without resources and/or an OperationOutcome with hints, warnings, or errors
+     *         related to the interaction
+     * @throws FHIRPersistenceException
+     */
+    default MultiResourceResult<Resource> searchPayloads(FHIRPersistenceContext context, Class<? extends Resource> resourceType,
+            ResourcePayloadConsumer consumer) throws FHIRPersistenceException {
+        MultiResourceResult<Resource> result = search(context, resourceType);
+        if (result.getResource() != null) {
+            for (Resource resource : result.getResource()) {
+                if (resource == null) {
+                    continue;
+                }
+                try {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    FHIRGenerator.generator(Format.JSON).generate(resource, out);
+                    consumer.accept(resource.getId(), new ByteArrayInputStream(out.toByteArray()));
+                } catch (FHIRGeneratorException | IOException e) {
+                    throw new FHIRPersistenceException("Error while writing resource '" + resource.getId() + "'", e);
+                }
+            }
+        }
+        return new MultiResourceResult.Builder<>()
+                .success(result.isSuccess())
+                .outcome(result.getOutcome())
+                .build();
+    }
+
     /**
      * Returns true iff the persistence layer implementation supports transactions.
      */
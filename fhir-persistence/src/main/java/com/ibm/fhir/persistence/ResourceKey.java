@@ -0,0 +1,81 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence;
+
+import java.util.Objects;
+
+import com.ibm.fhir.model.resource.Resource;
+
+/**
+ * Identifies a resource to be read by {@link FHIRPersistence#readMany(com.ibm.fhir.persistence.context.FHIRPersistenceContext, java.util.List)}:
+ * its resource type, its logical id and optionally a version id. Without a version id the key refers to the current
+ * version of the resource.
+ * Instances are immutable.
+ */
+public final class ResourceKey {
+    private final Class<? extends Resource> resourceType;
+    private final String logicalId;
+    private final String versionId;
+
+    /**
+     * Creates a key for the current version of a resource
+     * @param resourceType
+     * @param logicalId
+     */
+    public ResourceKey(Class<? extends Resource> resourceType, String logicalId) {
+        this(resourceType, logicalId, null);
+    }
+
+    /**
+     * Creates a key for a specific version of a resource
+     * @param resourceType
+     * @param logicalId
+     * @param versionId the version id, or null for the current version
+     */
+    public ResourceKey(Class<? extends Resource> resourceType, String logicalId, String versionId) {
+        this.resourceType = Objects.requireNonNull(resourceType, "resourceType");
+        this.logicalId = Objects.requireNonNull(logicalId, "logicalId");
+        this.versionId = versionId;
+    }
+
+    public Class<? extends Resource> getResourceType() {
+        return resourceType;
+    }
+
+    public String getLogicalId() {
+        return logicalId;
+    }
+
+    /**
+     * @return the version id, or null if the key refers to the current version
+     */
+    public String getVersionId() {
+        return versionId;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ResourceKey)) {
+            return false;
+        }
+        ResourceKey other = (ResourceKey) obj;
+        return resourceType == other.resourceType && logicalId.equals(other.logicalId) && Objects.equals(versionId, other.versionId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(resourceType, logicalId, versionId);
+    }
+
+    @Override
+    public String toString() {
+        return resourceType.getSimpleName() + "/" + logicalId + (versionId != null ? "/_history/" + versionId : "");
+    }
+}
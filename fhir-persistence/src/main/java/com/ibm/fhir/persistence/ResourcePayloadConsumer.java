@@ -0,0 +1,26 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Receives the serialized form of each resource found by
+ * {@link FHIRPersistence#searchPayloads(com.ibm.fhir.persistence.context.FHIRPersistenceContext, Class, ResourcePayloadConsumer)}.
+ */
+@FunctionalInterface
+public interface ResourcePayloadConsumer {
+    /**
+     * Accept the payload of a single resource.
+     *
+     * @param logicalId the logical id of the resource
+     * @param payload the JSON representation of the resource, on a single line; it is only valid during this call
+     * @throws IOException
+     */
+    void accept(String logicalId, InputStream payload) throws IOException;
+}
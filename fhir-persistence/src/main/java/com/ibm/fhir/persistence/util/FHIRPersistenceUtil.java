@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016,2019
+ * (C) Copyright IBM Corp. 2016,2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -38,6 +38,8 @@ public class FHIRPersistenceUtil {
                 if ("_page".equals(name)) {
                     int pageNumber = Integer.parseInt(first);
                     context.setPageNumber(pageNumber);
+                } else if ("_cursor".equals(name)) {
+                    context.setPageToken(first);
                 } else if ("_count".equals(name)) {
                     int pageSize = Integer.parseInt(first);
                     context.setPageSize(pageSize);
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016,2019
+ * (C) Copyright IBM Corp. 2016, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -7,7 +7,6 @@
 package com.ibm.fhir.persistence.test.common;
 
 import static com.ibm.fhir.model.type.String.string;
-import static org.testng.Assert.assertTrue;
 import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertNotNull;
 
@@ -97,9 +96,15 @@ public abstract class AbstractCompartmentTest extends AbstractPersistenceTest {
     public void testPatientCompartment() throws Exception {
         List<Resource> results = runQueryTest("Patient", savedPatient.getId(), 
                                     Observation.class, "_id", savedObservation.getId());
-        // This currently returns 2 due to https://github.com/IBM/FHIR/issues/265
-//        assertEquals(1, results.size());
-        assertTrue(results.size() > 0);
+        // The Observation refers to the Patient as both subject and performer, but is a member of its compartment once
+        assertEquals(1, results.size());
+    }
+
+    @Test
+    public void testOtherPatientCompartment() throws Exception {
+        List<Resource> results = runQueryTest("Patient", "not-" + savedPatient.getId(),
+                                    Observation.class, "_id", savedObservation.getId());
+        assertEquals(0, results.size());
     }
     
     @Test
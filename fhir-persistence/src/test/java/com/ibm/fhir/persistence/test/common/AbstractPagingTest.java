@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016,2019
+ * (C) Copyright IBM Corp. 2016,2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -12,6 +12,9 @@ import static org.testng.Assert.assertTrue;
 import static org.testng.AssertJUnit.assertNotNull;
 import static com.ibm.fhir.model.test.TestUtil.isResourceInResponse;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -22,6 +25,9 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.parser.exception.FHIRParserException;
 import com.ibm.fhir.model.resource.Basic;
 import com.ibm.fhir.model.resource.OperationOutcome;
 import com.ibm.fhir.model.resource.Resource;
@@ -120,6 +126,118 @@ public abstract class AbstractPagingTest extends AbstractPersistenceTest {
         assertTrue(isResourceInResponse(resource3, results));
     }
     
+    // with _total=none the next page is detected by fetching one extra row instead of counting
+    @Test
+    public void testSearchPagingWithoutTotal() throws Exception {
+        Map<String, List<String>> queryParameters;
+        FHIRSearchContext searchContext;
+        MultiResourceResult<Resource> result;
+
+        queryParameters = new HashMap<>();
+        queryParameters.put("_sort", Collections.singletonList("integer"));
+        queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+        queryParameters.put("_total", Collections.singletonList("none"));
+        queryParameters.put("_page", Collections.singletonList("2"));
+        searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        result = runQueryTest(searchContext, Basic.class, queryParameters, 1);
+        assertTrue(result.isSuccess());
+        assertEquals(result.getResource().size(), 1, "expected number of results");
+        assertTrue(isResourceInResponse(resource2, result.getResource()));
+        assertEquals(searchContext.getLastPageNumber(), 3, "expected a next page");
+
+        queryParameters = new HashMap<>();
+        queryParameters.put("_sort", Collections.singletonList("integer"));
+        queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+        queryParameters.put("_total", Collections.singletonList("none"));
+        queryParameters.put("_page", Collections.singletonList("3"));
+        searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        result = runQueryTest(searchContext, Basic.class, queryParameters, 1);
+        assertTrue(result.isSuccess());
+        assertEquals(result.getResource().size(), 1, "expected number of results");
+        assertTrue(isResourceInResponse(resource3, result.getResource()));
+        assertEquals(searchContext.getLastPageNumber(), 3, "expected no next page");
+    }
+
+    @Test
+    public void testSearchPagingWithPageToken() throws Exception {
+        Map<String, List<String>> queryParameters;
+        FHIRSearchContext searchContext;
+        MultiResourceResult<Resource> result;
+        
+        queryParameters = new HashMap<>();
+        queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+        searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        result = runQueryTest(searchContext, Basic.class, queryParameters, 1);
+        assertTrue(result.isSuccess());
+        assertEquals(result.getResource().size(), 1, "expected number of results");
+        assertTrue(isResourceInResponse(resource1, result.getResource()));
+        String pageToken = searchContext.getNextPageToken();
+        assertNotNull(pageToken);
+        
+        queryParameters = new HashMap<>();
+        queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+        queryParameters.put("_cursor", Collections.singletonList(pageToken));
+        queryParameters.put("_page", Collections.singletonList("2"));
+        searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        result = runQueryTest(searchContext, Basic.class, queryParameters, 1);
+        assertTrue(result.isSuccess());
+        assertEquals(result.getResource().size(), 1, "expected number of results");
+        assertTrue(isResourceInResponse(resource2, result.getResource()));
+        assertEquals(searchContext.getLastPageNumber(), 3);
+        pageToken = searchContext.getNextPageToken();
+        assertNotNull(pageToken);
+        
+        queryParameters = new HashMap<>();
+        queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+        queryParameters.put("_cursor", Collections.singletonList(pageToken));
+        queryParameters.put("_page", Collections.singletonList("3"));
+        searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        result = runQueryTest(searchContext, Basic.class, queryParameters, 1);
+        assertTrue(result.isSuccess());
+        assertEquals(result.getResource().size(), 1, "expected number of results");
+        assertTrue(isResourceInResponse(resource3, result.getResource()));
+        assertEquals(searchContext.getNextPageToken(), null, "expected no next page");
+    }
+
+    // the payloads are passed in the same order as the resources of a search, with the same content
+    @Test
+    public void testSearchPayloads() throws Exception {
+        Map<String, List<String>> queryParameters;
+        FHIRSearchContext searchContext;
+        List<String> ids = new ArrayList<>();
+        List<Resource> resources = new ArrayList<>();
+
+        queryParameters = new HashMap<>();
+        queryParameters.put("_sort", Collections.singletonList("-integer"));
+        queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+        searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        searchContext.setPageSize(2);
+        MultiResourceResult<Resource> result = persistence.searchPayloads(
+            FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext), Basic.class, (logicalId, payload) -> {
+                ids.add(logicalId);
+                try {
+                    resources.add(FHIRParser.parser(Format.JSON).parse(payload));
+                } catch (FHIRParserException e) {
+                    throw new IOException(e);
+                }
+            });
+        assertTrue(result.isSuccess());
+        assertTrue(result.getResource().isEmpty());
+        assertEquals(ids, Arrays.asList(resource3.getId(), resource2.getId()));
+        assertEquals(resources, Arrays.asList(resource3, resource2));
+        assertEquals(searchContext.getLastPageNumber(), 2);
+
+        ids.clear();
+        queryParameters = new HashMap<>();
+        queryParameters.put("_tag", Collections.singletonList("pagingTest"));
+        searchContext = SearchUtil.parseQueryParameters(Basic.class, queryParameters);
+        searchContext.setPageSize(3);
+        result = persistence.searchPayloads(FHIRPersistenceContextFactory.createPersistenceContext(null, searchContext),
+            Basic.class, (logicalId, payload) -> ids.add(logicalId));
+        assertTrue(result.isSuccess());
+        assertEquals(ids, Arrays.asList(resource1.getId(), resource2.getId(), resource3.getId()));
+    }
+
     // history results should be sorted with oldest versions last
     @Test
     public void testHistoryPaging() throws Exception {
@@ -162,6 +280,28 @@ public abstract class AbstractPagingTest extends AbstractPersistenceTest {
         assertEquals(results.size(), 1, "expected number of results");
         assertEquals(results.get(0).getMeta().getVersionId().getValue(), "1", "expected version");
         
+        historyContext = FHIRPersistenceContextFactory.createHistoryContext();
+        historyContext.setPageSize(1);
+        historyContext.setPageNumber(1);
+        context = this.getPersistenceContextForHistory(historyContext);
+        
+        result = persistence.history(context, resource3.getClass(), resource3.getId());
+        assertTrue(result.isSuccess());
+        assertNotNull(historyContext.getNextPageToken());
+        
+        String pageToken = historyContext.getNextPageToken();
+        historyContext = FHIRPersistenceContextFactory.createHistoryContext();
+        historyContext.setPageSize(1);
+        historyContext.setPageNumber(2);
+        historyContext.setPageToken(pageToken);
+        context = this.getPersistenceContextForHistory(historyContext);
+        
+        result = persistence.history(context, resource3.getClass(), resource3.getId());
+        assertTrue(result.isSuccess());
+        results = result.getResource();
+        assertEquals(results.size(), 1, "expected number of results");
+        assertEquals(results.get(0).getMeta().getVersionId().getValue(), "2", "expected version");
+        
         historyContext = FHIRPersistenceContextFactory.createHistoryContext();
         historyContext.setLenient(true);
         historyContext.setPageSize(1);
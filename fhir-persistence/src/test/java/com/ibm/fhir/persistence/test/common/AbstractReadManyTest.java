@@ -0,0 +1,92 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.test.common;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.persistence.ResourceKey;
+import com.ibm.fhir.persistence.SingleResourceResult;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
+
+/**
+ * This class contains tests for reading many resources with a single readMany call.
+ */
+public abstract class AbstractReadManyTest extends AbstractPersistenceTest {
+
+    @Test
+    public void testReadMany() throws Exception {
+        Patient patient = TestUtil.readExampleResource("json/ibm/minimal/Patient-1.json");
+        Observation observation = TestUtil.readExampleResource("json/ibm/minimal/Observation-1.json");
+
+        Patient patient1 = persistence.create(getDefaultPersistenceContext(), patient).getResource();
+        Patient patient2 = persistence.create(getDefaultPersistenceContext(), patient).getResource();
+        Observation observation1 = persistence.create(getDefaultPersistenceContext(), observation).getResource();
+        persistence.update(getDefaultPersistenceContext(), patient1.getId(), patient1);
+
+        List<ResourceKey> keys = Arrays.asList(
+            new ResourceKey(Patient.class, patient1.getId()),
+            new ResourceKey(Observation.class, observation1.getId()),
+            new ResourceKey(Patient.class, UUID.randomUUID().toString()),
+            new ResourceKey(Patient.class, patient1.getId(), "1"),
+            new ResourceKey(Patient.class, patient2.getId()),
+            new ResourceKey(Patient.class, patient1.getId(), "3"),
+            new ResourceKey(Patient.class, patient1.getId()));
+
+        List<SingleResourceResult<Resource>> results = persistence.readMany(getDefaultPersistenceContext(), keys);
+        assertEquals(results.size(), keys.size());
+        for (SingleResourceResult<Resource> result : results) {
+            assertTrue(result.isSuccess());
+        }
+        assertEquals(results.get(0).getResource().getId(), patient1.getId());
+        assertEquals(results.get(0).getResource().getMeta().getVersionId().getValue(), "2");
+        assertTrue(results.get(1).getResource() instanceof Observation);
+        assertEquals(results.get(1).getResource().getId(), observation1.getId());
+        assertNull(results.get(2).getResource());
+        assertEquals(results.get(3).getResource().getMeta().getVersionId().getValue(), "1");
+        assertEquals(results.get(4).getResource().getId(), patient2.getId());
+        assertNull(results.get(5).getResource());
+        assertEquals(results.get(6).getResource().getId(), patient1.getId());
+    }
+
+    @Test
+    public void testReadManyDeleted() throws Exception {
+        if (!persistence.isDeleteSupported()) {
+            return;
+        }
+        Patient patient = TestUtil.readExampleResource("json/ibm/minimal/Patient-1.json");
+        Patient patient1 = persistence.create(getDefaultPersistenceContext(), patient).getResource();
+        persistence.delete(getDefaultPersistenceContext(), Patient.class, patient1.getId());
+
+        List<ResourceKey> keys = new ArrayList<>();
+        keys.add(new ResourceKey(Patient.class, patient1.getId()));
+        keys.add(new ResourceKey(Patient.class, patient1.getId(), "2"));
+        keys.add(new ResourceKey(Patient.class, patient1.getId(), "1"));
+
+        // deleted resources are only returned when the context includes them
+        List<SingleResourceResult<Resource>> results = persistence.readMany(getDefaultPersistenceContext(), keys);
+        assertNull(results.get(0).getResource());
+        assertNull(results.get(1).getResource());
+        assertEquals(results.get(2).getResource().getId(), patient1.getId());
+
+        results = persistence.readMany(FHIRPersistenceContextFactory.createPersistenceContext(null, true), keys);
+        assertEquals(results.get(0).getResource().getMeta().getVersionId().getValue(), "2");
+        assertEquals(results.get(1).getResource().getMeta().getVersionId().getValue(), "2");
+    }
+}
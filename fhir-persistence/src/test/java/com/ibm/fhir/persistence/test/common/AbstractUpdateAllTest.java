@@ -0,0 +1,80 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.test.common;
+
+import static com.ibm.fhir.model.type.String.string;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.test.TestUtil;
+import com.ibm.fhir.model.type.HumanName;
+import com.ibm.fhir.persistence.SingleResourceResult;
+
+/**
+ * This class contains tests for storing many resources with a single updateAll call.
+ */
+public abstract class AbstractUpdateAllTest extends AbstractPersistenceTest {
+
+    @Test
+    public void testUpdateAll() throws Exception {
+        Patient patient = TestUtil.readExampleResource("json/ibm/minimal/Patient-1.json");
+
+        String existingId = persistence.create(getDefaultPersistenceContext(), patient).getResource().getId();
+        String family = "UpdateAll" + UUID.randomUUID().toString().substring(0, 8);
+
+        List<Patient> patients = new ArrayList<>();
+        // an existing resource, two new ones, and the first new one again
+        String newId1 = UUID.randomUUID().toString();
+        String newId2 = UUID.randomUUID().toString();
+        for (String id : new String[] { existingId, newId1, newId2, newId1 }) {
+            patients.add(patient.toBuilder()
+                    .id(id)
+                    .name(HumanName.builder().family(string(family)).build())
+                    .build());
+        }
+
+        List<SingleResourceResult<Patient>> results = persistence.updateAll(getDefaultPersistenceContext(), patients);
+        assertEquals(results.size(), 4);
+        for (SingleResourceResult<Patient> result : results) {
+            assertTrue(result.isSuccess());
+        }
+        assertEquals(results.get(0).getResource().getMeta().getVersionId().getValue(), "2");
+        assertEquals(results.get(1).getResource().getMeta().getVersionId().getValue(), "1");
+        assertEquals(results.get(2).getResource().getMeta().getVersionId().getValue(), "1");
+        assertEquals(results.get(3).getResource().getMeta().getVersionId().getValue(), "2");
+
+        assertEquals(persistence.read(getDefaultPersistenceContext(), Patient.class, newId1)
+                .getResource().getMeta().getVersionId().getValue(), "2");
+
+        // the search parameters of all of the resources were stored, including those of the repeated resource
+        List<Resource> found = runQueryTest(Patient.class, "family", family);
+        assertEquals(found.size(), 3);
+    }
+
+    @Test
+    public void testUpdateAllWithoutId() throws Exception {
+        Patient patient = TestUtil.readExampleResource("json/ibm/minimal/Patient-1.json");
+
+        List<Patient> patients = new ArrayList<>();
+        patients.add(patient.toBuilder().id(null).build());
+        patients.add(patient.toBuilder().id(UUID.randomUUID().toString()).build());
+
+        List<SingleResourceResult<Patient>> results = persistence.updateAll(getDefaultPersistenceContext(), patients);
+        assertEquals(results.size(), 2);
+        assertFalse(results.get(0).isSuccess());
+        assertTrue(results.get(1).isSuccess());
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.profile;
+
+import static com.ibm.fhir.profile.ValueSetSupport.expand;
+import static com.ibm.fhir.profile.ValueSetSupport.getContains;
+import static com.ibm.fhir.profile.ValueSetSupport.getValueSet;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.model.resource.ValueSet;
+import com.ibm.fhir.model.resource.ValueSet.Expansion.Contains;
+import com.ibm.fhir.registry.FHIRRegistry;
+
+/**
+ * A singleton index of the expansions of the value sets in the FHIR registry
+ *
+ * <p>Each value set is expanded once, the first time it is requested, into a set of codes per code system and
+ * version. The expansions are shared by all callers (e.g. the 'memberOf' FHIRPath function, which is also used
+ * for the binding checks of the FHIR validator) and are discarded when the FHIR registry changes.
+ */
+public final class ValueSetIndex {
+    private static final Logger log = Logger.getLogger(ValueSetIndex.class.getName());
+
+    private static final ValueSetIndex INSTANCE = new ValueSetIndex();
+
+    private volatile Snapshot snapshot;
+
+    private ValueSetIndex() {
+        snapshot = new Snapshot(FHIRRegistry.getInstance().getModificationCount());
+    }
+
+    /**
+     * Get the singleton instance of this class
+     *
+     * @return
+     *     the singleton instance of this class
+     */
+    public static ValueSetIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the expanded codes of the value set with the given url from the FHIR registry
+     *
+     * @param url
+     *     the canonical url of the value set, optionally followed by "|" and a version
+     * @return
+     *     the expanded codes of the value set, which are empty if the value set does not exist or could not be expanded
+     */
+    public CodeSets getCodeSets(String url) {
+        long modificationCount = FHIRRegistry.getInstance().getModificationCount();
+        Snapshot current = snapshot;
+        if (current.registryModificationCount != modificationCount) {
+            // Value sets or code systems may have been added, so any expansion may now be different
+            current = new Snapshot(modificationCount);
+            snapshot = current;
+        }
+        return current.codeSets.computeIfAbsent(url, k -> computeCodeSets(url));
+    }
+
+    /**
+     * Discard all of the expansions held by this index
+     */
+    public void clear() {
+        snapshot = new Snapshot(FHIRRegistry.getInstance().getModificationCount());
+    }
+
+    private CodeSets computeCodeSets(String url) {
+        ValueSet valueSet = getValueSet(url);
+        if (valueSet == null) {
+            return CodeSets.EMPTY;
+        }
+        try {
+            ValueSet expanded = expand(valueSet);
+            if (expanded == null || expanded.getExpansion() == null) {
+                return CodeSets.EMPTY;
+            }
+            Map<String, Map<String, Set<String>>> codeSets = new HashMap<>();
+            for (Contains contains : getContains(expanded.getExpansion())) {
+                String system = (contains.getSystem() != null) ? contains.getSystem().getValue() : null;
+                String version = (contains.getVersion() != null) ? contains.getVersion().getValue() : null;
+                String code = (contains.getCode() != null) ? contains.getCode().getValue() : null;
+                if (system != null && code != null) {
+                    codeSets.computeIfAbsent(system, k -> new HashMap<>())
+                        .computeIfAbsent(version != null ? version : CodeSets.VERSION_UNKNOWN, k -> new HashSet<>())
+                        .add(code);
+                }
+            }
+            return codeSets.isEmpty() ? CodeSets.EMPTY : new CodeSets(codeSets);
+        } catch (Exception e) {
+            String version = (valueSet.getVersion() != null) ? valueSet.getVersion().getValue() : "<no version>";
+            log.log(Level.WARNING, String.format("Unable to expand value set with url: %s and version: %s", url, version), e);
+        }
+        return CodeSets.EMPTY;
+    }
+
+    /**
+     * The expansions computed from one state of the FHIR registry
+     */
+    private static class Snapshot {
+        private final long registryModificationCount;
+        private final Map<String, CodeSets> codeSets = new ConcurrentHashMap<>();
+
+        private Snapshot(long registryModificationCount) {
+            this.registryModificationCount = registryModificationCount;
+        }
+    }
+
+    /**
+     * The codes of an expanded value set, keyed by code system and code system version
+     *
+     * <p>Instances are immutable.
+     */
+    public static final class CodeSets {
+        private static final CodeSets EMPTY = new CodeSets(Collections.emptyMap());
+
+        // the key of the codes which were expanded without a code system version
+        private static final String VERSION_UNKNOWN = "<version unknown>";
+
+        // system -> version -> codes
+        private final Map<String, Map<String, Set<String>>> codeSets;
+
+        // the codes of all systems and versions, for lookups without a system
+        private final Set<String> allCodes;
+
+        private CodeSets(Map<String, Map<String, Set<String>>> codeSets) {
+            Map<String, Map<String, Set<String>>> bySystem = new HashMap<>();
+            Set<String> allCodes = new HashSet<>();
+            for (Map.Entry<String, Map<String, Set<String>>> systemEntry : codeSets.entrySet()) {
+                Map<String, Set<String>> byVersion = new HashMap<>();
+                Set<String> systemCodes = new HashSet<>();
+                for (Map.Entry<String, Set<String>> versionEntry : systemEntry.getValue().entrySet()) {
+                    byVersion.put(versionEntry.getKey(), Collections.unmodifiableSet(versionEntry.getValue()));
+                    systemCodes.addAll(versionEntry.getValue());
+                }
+                // the codes of any version, for lookups without a version
+                byVersion.put(null, Collections.unmodifiableSet(systemCodes));
+                bySystem.put(systemEntry.getKey(), Collections.unmodifiableMap(byVersion));
+                allCodes.addAll(systemCodes);
+            }
+            this.codeSets = Collections.unmodifiableMap(bySystem);
+            this.allCodes = Collections.unmodifiableSet(allCodes);
+        }
+
+        /**
+         * @return
+         *     true if the value set has no codes, e.g. because it could not be expanded
+         */
+        public boolean isEmpty() {
+            return allCodes.isEmpty();
+        }
+
+        /**
+         * Determine whether the value set contains the given code
+         *
+         * <p>If the system and version are non-null, then the code must be among those expanded from that version of
+         * the system, or from the system without a known version. If only the system is non-null, then the code
+         * may be from any version of the system. If the system is null, then the code may be from any system.
+         *
+         * @param system
+         *     the code system (can be null)
+         * @param version
+         *     the code system version (can be null)
+         * @param code
+         *     the code
+         * @return
+         *     true if the value set contains the code, false otherwise
+         */
+        public boolean contains(String system, String version, String code) {
+            if (code == null) {
+                return false;
+            }
+            if (system == null) {
+                return allCodes.contains(code);
+            }
+            Map<String, Set<String>> byVersion = codeSets.get(system);
+            if (byVersion == null) {
+                return false;
+            }
+            if (version == null) {
+                return byVersion.get(null).contains(code);
+            }
+            Set<String> codes = byVersion.get(version);
+            if (codes != null && codes.contains(code)) {
+                return true;
+            }
+            codes = byVersion.get(VERSION_UNKNOWN);
+            return codes != null && codes.contains(code);
+        }
+
+        /**
+         * @return
+         *     the code systems of the value set
+         */
+        public Set<String> getSystems() {
+            return codeSets.keySet();
+        }
+
+        /**
+         * Get the codes of the value set for the given system and version
+         *
+         * @param system
+         *     the code system
+         * @param version
+         *     the code system version, or null for the codes of all versions
+         * @return
+         *     the codes, or an empty set if the value set has none for this system and version
+         */
+        public Set<String> getCodes(String system, String version) {
+            Map<String, Set<String>> byVersion = codeSets.get(system);
+            if (byVersion == null) {
+                return Collections.emptySet();
+            }
+            Set<String> codes = byVersion.get(version);
+            return (codes != null) ? codes : Collections.emptySet();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.profile.test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.profile.ValueSetIndex;
+import com.ibm.fhir.profile.ValueSetIndex.CodeSets;
+import com.ibm.fhir.registry.FHIRRegistry;
+import com.ibm.fhir.registry.resource.FHIRRegistryResource;
+import com.ibm.fhir.registry.spi.FHIRRegistryResourceProvider;
+
+public class ValueSetIndexTest {
+    private static final String CS1 = "http://ibm.com/fhir/CodeSystem/cs1";
+
+    @Test
+    public void testContains() throws Exception {
+        CodeSets codeSets = ValueSetIndex.getInstance().getCodeSets("http://ibm.com/fhir/ValueSet/vs1|1.0.0");
+
+        Assert.assertFalse(codeSets.isEmpty());
+        Assert.assertEquals(codeSets.getSystems(), Collections.singleton(CS1));
+        Assert.assertEquals(codeSets.getCodes(CS1, null), new HashSet<>(Arrays.asList("a", "b", "c")));
+
+        Assert.assertTrue(codeSets.contains(CS1, null, "a"));
+        Assert.assertTrue(codeSets.contains(CS1, "1.0.0", "b"));
+        Assert.assertTrue(codeSets.contains(null, null, "c"));
+        Assert.assertFalse(codeSets.contains(CS1, null, "d"));
+        Assert.assertFalse(codeSets.contains("http://ibm.com/fhir/CodeSystem/cs2", null, "a"));
+        Assert.assertFalse(codeSets.contains(CS1, null, null));
+    }
+
+    @Test
+    public void testSharedExpansion() throws Exception {
+        String url = "http://ibm.com/fhir/ValueSet/vs2|1.0.0";
+        CodeSets codeSets = ValueSetIndex.getInstance().getCodeSets(url);
+        Assert.assertSame(ValueSetIndex.getInstance().getCodeSets(url), codeSets);
+    }
+
+    @Test
+    public void testUnknownValueSet() throws Exception {
+        CodeSets codeSets = ValueSetIndex.getInstance().getCodeSets("http://ibm.com/fhir/ValueSet/unknown");
+        Assert.assertTrue(codeSets.isEmpty());
+        Assert.assertFalse(codeSets.contains(null, null, "a"));
+    }
+
+    @Test
+    public void testRegistryChangeDiscardsExpansions() throws Exception {
+        String url = "http://ibm.com/fhir/ValueSet/vs3|1.0.0";
+        CodeSets codeSets = ValueSetIndex.getInstance().getCodeSets(url);
+
+        FHIRRegistry.getInstance().register(new EmptyProvider());
+
+        CodeSets recomputed = ValueSetIndex.getInstance().getCodeSets(url);
+        Assert.assertNotSame(recomputed, codeSets);
+        Assert.assertEquals(recomputed.getSystems(), codeSets.getSystems());
+    }
+
+    private static class EmptyProvider implements FHIRRegistryResourceProvider {
+        @Override
+        public FHIRRegistryResource getRegistryResource(Class<? extends Resource> resourceType, String url, String version) {
+            return null;
+        }
+
+        @Override
+        public Collection<FHIRRegistryResource> getRegistryResources(Class<? extends Resource> resourceType) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Collection<FHIRRegistryResource> getRegistryResources() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Collection<FHIRRegistryResource> getProfileResources(String type) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Collection<FHIRRegistryResource> getSearchParameterResources(String type) {
+            return Collections.emptyList();
+        }
+    }
+}
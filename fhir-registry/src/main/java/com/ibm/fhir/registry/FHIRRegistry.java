@@ -12,17 +12,29 @@ import static com.ibm.fhir.registry.util.FHIRRegistryUtil.requireDefinitionalRes
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import com.ibm.fhir.model.resource.DomainResource;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.resource.SearchParameter;
+import com.ibm.fhir.model.resource.StructureDefinition;
+import com.ibm.fhir.model.resource.ValueSet;
 import com.ibm.fhir.model.type.Canonical;
+import com.ibm.fhir.model.type.ElementDefinition;
 import com.ibm.fhir.model.type.code.SearchParamType;
 import com.ibm.fhir.model.util.ModelSupport;
 import com.ibm.fhir.registry.resource.FHIRRegistryResource;
@@ -38,6 +50,9 @@ public final class FHIRRegistry {
 
     private final List<FHIRRegistryResourceProvider> providers;
 
+    // incremented whenever the set of registry resource providers changes
+    private final AtomicLong modificationCount = new AtomicLong();
+
     private FHIRRegistry() {
         providers = new CopyOnWriteArrayList<>(loadProviders());
     }
@@ -67,6 +82,18 @@ public final class FHIRRegistry {
     public void register(FHIRRegistryResourceProvider provider) {
         Objects.requireNonNull(provider);
         providers.add(provider);
+        modificationCount.incrementAndGet();
+    }
+
+    /**
+     * Get a count of the changes made to the registry, so that consumers which derive data from registry resources
+     * can tell whether that data is stale
+     *
+     * @return
+     *     a number which changes whenever a registry resource provider is added
+     */
+    public long getModificationCount() {
+        return modificationCount.get();
     }
 
     /**
@@ -222,6 +249,151 @@ public final class FHIRRegistry {
                 .collect(Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList));
     }
 
+    /**
+     * Load the StructureDefinitions and ValueSets for the given canonical urls in the background, along with the
+     * ValueSets bound to the elements of those StructureDefinitions, so that the first requests which use them don't
+     * have to wait for them to be parsed
+     *
+     * <p>Only the registry resource providers registered at the time of the call are used
+     *
+     * @param urls
+     *     the canonical urls, with or without a version; all versions of each resource are loaded
+     * @param parallelism
+     *     the number of threads used to load the resources
+     * @return
+     *     a future that completes with the number of registry resources that were loaded
+     */
+    public CompletableFuture<Integer> warmUp(Collection<String> urls, int parallelism) {
+        Objects.requireNonNull(urls);
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be a positive integer");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "fhir-registry-warm-up");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            return warmUp(urls, executor, parallelism).whenComplete((count, t) -> executor.shutdown());
+        } catch (RuntimeException e) {
+            executor.shutdown();
+            throw e;
+        }
+    }
+
+    /**
+     * Load the StructureDefinitions and ValueSets for the given canonical urls in the background on the given
+     * executor, for example a managed executor of the application server, along with the ValueSets bound to the
+     * elements of those StructureDefinitions
+     *
+     * <p>Only the registry resource providers registered at the time of the call are used
+     *
+     * @param urls
+     *     the canonical urls, with or without a version; all versions of each resource are loaded
+     * @param executor
+     *     the executor which loads the resources; it is not shut down afterwards
+     * @param parallelism
+     *     the maximum number of tasks submitted to the executor at once
+     * @return
+     *     a future that completes with the number of registry resources that were loaded
+     */
+    public CompletableFuture<Integer> warmUp(Collection<String> urls, Executor executor, int parallelism) {
+        Objects.requireNonNull(urls);
+        Objects.requireNonNull(executor);
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be a positive integer");
+        }
+
+        List<FHIRRegistryResourceProvider> providers = new ArrayList<>(this.providers);
+        Set<String> canonicalUrls = urls.stream().map(FHIRRegistry::stripVersion).collect(Collectors.toSet());
+        List<FHIRRegistryResource> registryResources = new ArrayList<>();
+        registryResources.addAll(findRegistryResources(providers, StructureDefinition.class, canonicalUrls));
+        registryResources.addAll(findRegistryResources(providers, ValueSet.class, canonicalUrls));
+
+        long start = System.nanoTime();
+        return loadAll(registryResources, executor, parallelism)
+                .thenCompose(resources -> {
+                    Set<String> valueSetUrls = getBoundValueSetUrls(resources);
+                    valueSetUrls.removeAll(canonicalUrls);
+                    return loadAll(findRegistryResources(providers, ValueSet.class, valueSetUrls), executor, parallelism)
+                            .thenApply(valueSets -> resources.size() + valueSets.size());
+                })
+                .whenComplete((count, t) -> {
+                    if (t == null) {
+                        log.info("Warmed up " + count + " registry resources in "
+                                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+                    } else {
+                        log.log(Level.WARNING, "Unable to warm up the registry", t);
+                    }
+                });
+    }
+
+    /**
+     * Load the registry resources with at most parallelism tasks, each of which loads its share of the resources one
+     * after the other, so that a shared executor isn't flooded with one task per resource
+     */
+    private static CompletableFuture<List<Resource>> loadAll(List<FHIRRegistryResource> registryResources, Executor executor,
+            int parallelism) {
+        int taskCount = Math.min(parallelism, registryResources.size());
+        List<CompletableFuture<List<Resource>>> futures = new ArrayList<>(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            int first = i;
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                List<Resource> resources = new ArrayList<>();
+                for (int j = first; j < registryResources.size(); j += taskCount) {
+                    Resource resource = registryResources.get(j).getResource();
+                    if (resource != null) {
+                        resources.add(resource);
+                    }
+                }
+                return resources;
+            }, executor));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+                .thenApply(v -> futures.stream()
+                    .map(CompletableFuture::join)
+                    .flatMap(Collection::stream)
+                    .collect(Collectors.toList()));
+    }
+
+    private static List<FHIRRegistryResource> findRegistryResources(List<FHIRRegistryResourceProvider> providers,
+            Class<? extends Resource> resourceType, Set<String> urls) {
+        return providers.stream()
+                .map(provider -> provider.getRegistryResources(resourceType))
+                .flatMap(Collection::stream)
+                .filter(registryResource -> urls.contains(registryResource.getUrl()))
+                .collect(Collectors.toList());
+    }
+
+    private static Set<String> getBoundValueSetUrls(List<Resource> resources) {
+        Set<String> urls = new HashSet<>();
+        for (Resource resource : resources) {
+            if (!(resource instanceof StructureDefinition)) {
+                continue;
+            }
+            StructureDefinition structureDefinition = (StructureDefinition) resource;
+            List<ElementDefinition> elements = new ArrayList<>();
+            if (structureDefinition.getSnapshot() != null) {
+                elements.addAll(structureDefinition.getSnapshot().getElement());
+            }
+            if (structureDefinition.getDifferential() != null) {
+                elements.addAll(structureDefinition.getDifferential().getElement());
+            }
+            for (ElementDefinition element : elements) {
+                if (element.getBinding() != null && element.getBinding().getValueSet() != null
+                        && element.getBinding().getValueSet().getValue() != null) {
+                    urls.add(stripVersion(element.getBinding().getValueSet().getValue()));
+                }
+            }
+        }
+        return urls;
+    }
+
+    private static String stripVersion(String url) {
+        int index = url.indexOf("|");
+        return (index != -1) ? url.substring(0, index) : url;
+    }
+
     private FHIRRegistryResource findRegistryResource(Class<? extends Resource> resourceType, String url, String version) {
         return providers.stream()
                 .map(provider -> provider.getRegistryResource(resourceType, url, version))
@@ -143,9 +143,36 @@ public final class FHIRRegistryUtil {
         return null;
     }
 
+    /**
+     * Get the registry resources of a package, from the {@link RegistrySnapshot} of the package if it has one and from
+     * its index otherwise
+     *
+     * @param packageId
+     *     the package id (e.g. hl7.fhir.us.core)
+     * @return
+     *     the registry resources of the package
+     */
     public static Collection<FHIRRegistryResource> getRegistryResources(String packageId) {
         List<FHIRRegistryResource> resources = new ArrayList<>();
         String packageDirectory = packageId.replace(".", "/") + "/package";
+        RegistrySnapshot snapshot = RegistrySnapshot.load(packageDirectory + "/" + RegistrySnapshot.FILE_NAME);
+        if (snapshot != null) {
+            List<Entry> entries = snapshot.getEntries();
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                resources.add(new SnapshotRegistryResource(
+                    ModelSupport.getResourceType(entry.getResourceType()),
+                    entry.getId(),
+                    entry.getUrl(),
+                    Version.from(entry.getVersion()),
+                    entry.getKind(),
+                    entry.getType(),
+                    packageDirectory + "/" + entry.getFileName(),
+                    snapshot,
+                    i));
+            }
+            return Collections.unmodifiableList(resources);
+        }
         for (Entry entry : readIndex(packageDirectory + "/.index.json")) {
             resources.add(new PackageRegistryResource(
                 ModelSupport.getResourceType(entry.getResourceType()),
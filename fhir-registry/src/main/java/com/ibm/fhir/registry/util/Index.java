@@ -214,7 +214,7 @@ public class Index {
         private final String kind;
         private final String type;
 
-        private Entry(
+        Entry(
                 String fileName,
                 String resourceType,
                 String id,
@@ -8,18 +8,27 @@ package com.ibm.fhir.registry.util;
 
 import static com.ibm.fhir.registry.util.FHIRRegistryUtil.loadResource;
 
+import java.lang.ref.SoftReference;
 import java.util.Objects;
 
 import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.resource.StructureDefinition;
 import com.ibm.fhir.registry.resource.FHIRRegistryResource;
 
 /**
  * A FHIR registry resource that can load a FHIR resource given a path
+ *
+ * <p>A loaded resource is kept for the lifetime of the registry resource. When soft eviction is enabled, loaded
+ * StructureDefinitions are only softly reachable instead, so that the garbage collector may reclaim the rarely used
+ * ones under memory pressure; they are loaded again the next time they are requested.
  */
 public class PackageRegistryResource extends FHIRRegistryResource {
+    private static volatile boolean softEvictionEnabled = false;
+
     protected final String path;
 
     protected volatile Resource resource;
+    private volatile SoftReference<Resource> softResource;
 
     public PackageRegistryResource(
             Class<? extends Resource> resourceType,
@@ -37,6 +46,30 @@ public class PackageRegistryResource extends FHIRRegistryResource {
         return path;
     }
 
+    /**
+     * Enable or disable soft eviction of the StructureDefinitions loaded from now on
+     *
+     * @param enabled
+     *     true to keep loaded StructureDefinitions only softly reachable
+     */
+    public static void setSoftEvictionEnabled(boolean enabled) {
+        softEvictionEnabled = enabled;
+    }
+
+    public static boolean isSoftEvictionEnabled() {
+        return softEvictionEnabled;
+    }
+
+    /**
+     * Indicates whether the FHIR resource associated with this registry resource is currently loaded
+     *
+     * @return
+     *     true if the FHIR resource is loaded and has not been evicted
+     */
+    public boolean isLoaded() {
+        return getLoadedResource() != null;
+    }
+
     /**
      * Get the FHIR resource associated with this registry resource
      *
@@ -45,16 +78,41 @@ public class PackageRegistryResource extends FHIRRegistryResource {
      */
     @Override
     public Resource getResource() {
-        Resource resource = this.resource;
+        Resource resource = getLoadedResource();
         if (resource == null) {
             synchronized (this) {
-                resource = this.resource;
+                resource = getLoadedResource();
                 if (resource == null) {
-                    resource = loadResource(path);
-                    this.resource = resource;
+                    resource = load();
+                    if (resource != null && softEvictionEnabled && StructureDefinition.class.equals(resourceType)) {
+                        softResource = new SoftReference<>(resource);
+                    } else {
+                        this.resource = resource;
+                    }
                 }
             }
         }
         return resource;
     }
+
+    /**
+     * Load the FHIR resource associated with this registry resource
+     *
+     * @return
+     *     the FHIR resource, or null if it could not be loaded
+     */
+    protected Resource load() {
+        return loadResource(path);
+    }
+
+    private Resource getLoadedResource() {
+        Resource resource = this.resource;
+        if (resource == null) {
+            SoftReference<Resource> softResource = this.softResource;
+            if (softResource != null) {
+                resource = softResource.get();
+            }
+        }
+        return resource;
+    }
 }
@@ -0,0 +1,310 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.registry.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.generator.FHIRGenerator;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.registry.util.Index.Entry;
+
+/**
+ * A compact, indexed snapshot of the resources in a registry package, in a single file.
+ *
+ * <p>The file starts with the index entries of the package, each with the offset and length of its resource, followed
+ * by the resources themselves as compact JSON. A snapshot file on the file system is memory-mapped, so only the index
+ * is read when the snapshot is opened and each resource is parsed straight from the mapped bytes the first time it is
+ * requested. A snapshot inside a jar file is read into a direct (off-heap) buffer instead.
+ *
+ * <p>Snapshots are created at build time with {@link #write(List, List, OutputStream)}, e.g. by
+ * {@link SnapshotGenerator}, and are stored next to the index of the package.
+ */
+public class RegistrySnapshot {
+    private static final Logger log = Logger.getLogger(RegistrySnapshot.class.getName());
+
+    public static final String FILE_NAME = ".snapshot";
+
+    // "FHIR"
+    private static final int MAGIC = 0x46484952;
+    private static final int FORMAT_VERSION = 1;
+
+    private final List<Entry> entries;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final ByteBuffer data;
+
+    private RegistrySnapshot(List<Entry> entries, int[] offsets, int[] lengths, ByteBuffer data) {
+        this.entries = Collections.unmodifiableList(entries);
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.data = data;
+    }
+
+    /**
+     * Get the index entries of the snapshot, in the order they were written
+     *
+     * @return
+     *     the index entries of the snapshot
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Get the size of the resource data in this snapshot
+     *
+     * @return
+     *     the number of bytes occupied by the resources in this snapshot
+     */
+    public int getDataSize() {
+        return data.capacity();
+    }
+
+    /**
+     * Parse the resource of the index entry at the given position
+     *
+     * @param index
+     *     the position of the entry in {@link #getEntries()}
+     * @return
+     *     the parsed resource
+     * @throws IOException
+     *     if the resource could not be parsed
+     */
+    public Resource getResource(int index) throws IOException {
+        ByteBuffer buffer = data.duplicate();
+        buffer.position(offsets[index]);
+        buffer.limit(offsets[index] + lengths[index]);
+        try (InputStream in = new ByteBufferInputStream(buffer)) {
+            return FHIRParser.parser(Format.JSON).parse(in);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Open the snapshot at the given class path location
+     *
+     * @param path
+     *     the class path location of the snapshot
+     * @return
+     *     the snapshot, or null if there is no snapshot at that location or it could not be read
+     */
+    public static RegistrySnapshot load(String path) {
+        URL url = RegistrySnapshot.class.getClassLoader().getResource(path);
+        if (url == null) {
+            return null;
+        }
+        try {
+            if ("file".equals(url.getProtocol())) {
+                return map(Paths.get(url.toURI()));
+            }
+            try (InputStream in = url.openStream()) {
+                return read(in);
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            log.warning("Unable to load snapshot: " + path + " due to the following exception: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Open the snapshot in the given file by memory-mapping it
+     *
+     * @param file
+     *     the snapshot file
+     * @return
+     *     the snapshot
+     * @throws IOException
+     *     if the file is not a valid snapshot or could not be read
+     */
+    public static RegistrySnapshot map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            return from(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Read a snapshot from the given input stream into a direct buffer
+     *
+     * @param in
+     *     the input stream
+     * @return
+     *     the snapshot
+     * @throws IOException
+     *     if the stream does not contain a valid snapshot or could not be read
+     */
+    public static RegistrySnapshot read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        byte[] bytes = out.toByteArray();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return from(buffer);
+    }
+
+    private static RegistrySnapshot from(ByteBuffer buffer) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new ByteBufferInputStream(buffer.duplicate())));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a registry snapshot");
+        }
+        int formatVersion = in.readInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("unsupported registry snapshot format version: " + formatVersion);
+        }
+        int headerSize = in.readInt();
+        int count = in.readInt();
+        List<Entry> entries = new ArrayList<>(count);
+        int[] offsets = new int[count];
+        int[] lengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            entries.add(new Entry(
+                in.readUTF(),
+                in.readUTF(),
+                in.readUTF(),
+                in.readUTF(),
+                in.readUTF(),
+                readOptionalUTF(in),
+                readOptionalUTF(in)));
+            offsets[i] = in.readInt();
+            lengths[i] = in.readInt();
+        }
+        ByteBuffer data = buffer.duplicate();
+        data.position(headerSize);
+        return new RegistrySnapshot(entries, offsets, lengths, data.slice());
+    }
+
+    /**
+     * Write a snapshot of the given resources
+     *
+     * @param entries
+     *     the index entries of the resources
+     * @param resources
+     *     the resources, in the same order as their index entries
+     * @param out
+     *     the output stream that the snapshot is written to
+     * @throws IOException
+     *     if the snapshot could not be written
+     */
+    public static void write(List<Entry> entries, List<Resource> resources, OutputStream out) throws IOException {
+        if (entries.size() != resources.size()) {
+            throw new IllegalArgumentException("each entry must have exactly one resource");
+        }
+        List<byte[]> data = new ArrayList<>(resources.size());
+        for (Resource resource : resources) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                FHIRGenerator.generator(Format.JSON, false).generate(resource, bytes);
+            } catch (Exception e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            data.add(bytes.toByteArray());
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream headerOut = new DataOutputStream(header);
+        headerOut.writeInt(entries.size());
+        int offset = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            headerOut.writeUTF(entry.getFileName());
+            headerOut.writeUTF(entry.getResourceType());
+            headerOut.writeUTF(entry.getId());
+            headerOut.writeUTF(entry.getUrl());
+            headerOut.writeUTF(entry.getVersion());
+            writeOptionalUTF(headerOut, entry.getKind());
+            writeOptionalUTF(headerOut, entry.getType());
+            headerOut.writeInt(offset);
+            headerOut.writeInt(data.get(i).length);
+            offset = Math.addExact(offset, data.get(i).length);
+        }
+        headerOut.flush();
+
+        DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+        dataOut.writeInt(MAGIC);
+        dataOut.writeInt(FORMAT_VERSION);
+        // the size of the header, i.e. the offset of the resource data in the file
+        dataOut.writeInt(3 * Integer.BYTES + header.size());
+        header.writeTo(dataOut);
+        for (byte[] bytes : data) {
+            dataOut.write(bytes);
+        }
+        dataOut.flush();
+    }
+
+    private static String readOptionalUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeOptionalUTF(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * An input stream that reads the remaining bytes of a byte buffer
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
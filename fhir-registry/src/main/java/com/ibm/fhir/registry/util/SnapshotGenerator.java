@@ -0,0 +1,78 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.registry.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.parser.exception.FHIRParserException;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.registry.util.Index.Entry;
+
+/**
+ * Creates the {@link RegistrySnapshot} of one or more registry packages from their index and resource files,
+ * e.g. {@code java com.ibm.fhir.registry.util.SnapshotGenerator src/main/resources/hl7/fhir/core/package}
+ *
+ * <p>The snapshot is written to the package directory, next to the index. Regenerate it whenever the package changes,
+ * because a registry package with a snapshot is loaded from the snapshot only.
+ */
+public class SnapshotGenerator {
+    private static final Logger log = Logger.getLogger(SnapshotGenerator.class.getName());
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: SnapshotGenerator <package directory>...");
+            System.exit(1);
+        }
+        for (String packageDirectory : args) {
+            generate(new File(packageDirectory));
+        }
+    }
+
+    /**
+     * Write the snapshot of the package in the given directory
+     *
+     * @param packageDirectory
+     *     the directory that contains the index and the resource files of the package
+     * @return
+     *     the snapshot file
+     */
+    public static File generate(File packageDirectory) throws Exception {
+        Index index = new Index();
+        try (InputStream in = new FileInputStream(new File(packageDirectory, ".index.json"))) {
+            index.load(in);
+        }
+        List<Entry> entries = new ArrayList<>();
+        List<Resource> resources = new ArrayList<>();
+        for (Entry entry : index.getEntries()) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(new File(packageDirectory, entry.getFileName())), StandardCharsets.UTF_8)) {
+                resources.add(FHIRParser.parser(Format.JSON).parse(reader));
+                entries.add(entry);
+            } catch (FHIRParserException e) {
+                // the registry would not be able to load it from the package either
+                log.warning("Skipping " + entry.getFileName() + ": " + e.getMessage());
+            }
+        }
+        File file = new File(packageDirectory, RegistrySnapshot.FILE_NAME);
+        try (OutputStream out = new FileOutputStream(file)) {
+            RegistrySnapshot.write(entries, resources, out);
+        }
+        log.info("Wrote " + entries.size() + " resources to " + file);
+        return file;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.registry.util;
+
+import java.util.Objects;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.model.resource.Resource;
+
+/**
+ * A FHIR registry resource that loads its FHIR resource from a {@link RegistrySnapshot}
+ */
+public class SnapshotRegistryResource extends PackageRegistryResource {
+    private static final Logger log = Logger.getLogger(SnapshotRegistryResource.class.getName());
+
+    private final RegistrySnapshot snapshot;
+    private final int index;
+
+    public SnapshotRegistryResource(
+            Class<? extends Resource> resourceType,
+            String id,
+            String url,
+            Version version,
+            String kind,
+            String type,
+            String path,
+            RegistrySnapshot snapshot,
+            int index) {
+        super(resourceType, id, url, version, kind, type, path);
+        this.snapshot = Objects.requireNonNull(snapshot);
+        this.index = index;
+    }
+
+    @Override
+    protected Resource load() {
+        try {
+            return snapshot.getResource(index);
+        } catch (Exception e) {
+            log.warning("Unable to load resource: " + path + " from snapshot due to the following exception: " + e.getMessage());
+        }
+        return null;
+    }
+}
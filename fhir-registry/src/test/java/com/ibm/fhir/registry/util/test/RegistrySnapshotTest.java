@@ -0,0 +1,255 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.registry.util.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.CodeSystem;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.resource.StructureDefinition;
+import com.ibm.fhir.model.resource.ValueSet;
+import com.ibm.fhir.model.type.Boolean;
+import com.ibm.fhir.model.type.Canonical;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.ElementDefinition;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.code.BindingStrength;
+import com.ibm.fhir.model.type.code.CodeSystemContentMode;
+import com.ibm.fhir.model.type.code.PublicationStatus;
+import com.ibm.fhir.model.type.code.StructureDefinitionKind;
+import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.registry.FHIRRegistry;
+import com.ibm.fhir.registry.resource.FHIRRegistryResource;
+import com.ibm.fhir.registry.resource.FHIRRegistryResource.Version;
+import com.ibm.fhir.registry.spi.FHIRRegistryResourceProvider;
+import com.ibm.fhir.registry.util.Index.Entry;
+import com.ibm.fhir.registry.util.PackageRegistryResource;
+import com.ibm.fhir.registry.util.RegistrySnapshot;
+import com.ibm.fhir.registry.util.SnapshotRegistryResource;
+
+public class RegistrySnapshotTest {
+    private static final String PROFILE_URL = "http://ibm.com/fhir/StructureDefinition/snapshot-test";
+    private static final String BOUND_VALUE_SET_URL = "http://ibm.com/fhir/ValueSet/snapshot-test-bound";
+
+    @AfterMethod
+    public void tearDown() {
+        PackageRegistryResource.setSoftEvictionEnabled(false);
+    }
+
+    @Test
+    public void testMappedSnapshot() throws Exception {
+        List<Resource> resources = buildResources();
+        Path file = Files.createTempFile("registry", RegistrySnapshot.FILE_NAME);
+        try {
+            try (OutputStream out = Files.newOutputStream(file)) {
+                RegistrySnapshot.write(buildEntries(resources), resources, out);
+            }
+            RegistrySnapshot snapshot = RegistrySnapshot.map(file);
+            assertEquals(snapshot.getEntries(), buildEntries(resources));
+            assertTrue(snapshot.getDataSize() > 0);
+            for (int i = 0; i < resources.size(); i++) {
+                assertEquals(snapshot.getResource(i), resources.get(i));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testStreamedSnapshot() throws Exception {
+        RegistrySnapshot snapshot = writeSnapshot(buildResources());
+        List<Resource> resources = buildResources();
+        // resources may be read in any order
+        for (int i = resources.size() - 1; i >= 0; i--) {
+            assertEquals(snapshot.getResource(i), resources.get(i));
+        }
+    }
+
+    @Test
+    public void testMissingSnapshot() {
+        assertNull(RegistrySnapshot.load("fhir/registry/test/package/" + RegistrySnapshot.FILE_NAME));
+    }
+
+    @Test
+    public void testSoftEviction() throws Exception {
+        List<FHIRRegistryResource> registryResources = buildRegistryResources(writeSnapshot(buildResources()));
+        PackageRegistryResource profile = registryResources.get(0).as(PackageRegistryResource.class);
+        PackageRegistryResource codeSystem = registryResources.get(2).as(PackageRegistryResource.class);
+        assertFalse(profile.isLoaded());
+
+        PackageRegistryResource.setSoftEvictionEnabled(true);
+        Resource resource = profile.getResource();
+        assertTrue(profile.isLoaded());
+        // a softly reachable resource is returned as long as it hasn't been reclaimed
+        assertSame(profile.getResource(), resource);
+        // soft eviction only applies to StructureDefinitions
+        assertSame(codeSystem.getResource(), codeSystem.getResource());
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        List<FHIRRegistryResource> registryResources = buildRegistryResources(writeSnapshot(buildResources()));
+        FHIRRegistry.getInstance().register(new TestRegistryResourceProvider(registryResources));
+
+        int count = FHIRRegistry.getInstance().warmUp(Collections.singleton(PROFILE_URL + "|1.0.0"), 2).get();
+
+        // the profile and the value set bound to its element, but not the code system
+        assertEquals(count, 2);
+        assertTrue(registryResources.get(0).as(PackageRegistryResource.class).isLoaded());
+        assertTrue(registryResources.get(1).as(PackageRegistryResource.class).isLoaded());
+        assertFalse(registryResources.get(2).as(PackageRegistryResource.class).isLoaded());
+    }
+
+    @Test
+    public void testWarmUpOnExecutor() throws Exception {
+        List<FHIRRegistryResource> registryResources = buildRegistryResources(writeSnapshot(buildResources()));
+        FHIRRegistry.getInstance().register(new TestRegistryResourceProvider(registryResources));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            AtomicInteger submitted = new AtomicInteger();
+            FHIRRegistry.getInstance().warmUp(Collections.singleton(PROFILE_URL), command -> {
+                submitted.incrementAndGet();
+                executor.execute(command);
+            }, 1).get();
+
+            assertTrue(registryResources.get(0).as(PackageRegistryResource.class).isLoaded());
+            assertTrue(registryResources.get(1).as(PackageRegistryResource.class).isLoaded());
+            assertFalse(registryResources.get(2).as(PackageRegistryResource.class).isLoaded());
+            // one task for the profiles and one for the bound value sets
+            assertEquals(submitted.get(), 2);
+            // the executor belongs to the caller
+            assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private RegistrySnapshot writeSnapshot(List<Resource> resources) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RegistrySnapshot.write(buildEntries(resources), resources, out);
+        return RegistrySnapshot.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private List<FHIRRegistryResource> buildRegistryResources(RegistrySnapshot snapshot) {
+        List<FHIRRegistryResource> registryResources = new ArrayList<>();
+        List<Entry> entries = snapshot.getEntries();
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            registryResources.add(new SnapshotRegistryResource(
+                ModelSupport.getResourceType(entry.getResourceType()),
+                entry.getId(),
+                entry.getUrl(),
+                Version.from(entry.getVersion()),
+                entry.getKind(),
+                entry.getType(),
+                "fhir/registry/test/package/" + entry.getFileName(),
+                snapshot,
+                i));
+        }
+        return registryResources;
+    }
+
+    private List<Entry> buildEntries(List<Resource> resources) {
+        return resources.stream().map(Entry::entry).collect(Collectors.toList());
+    }
+
+    private List<Resource> buildResources() {
+        StructureDefinition profile = StructureDefinition.builder()
+                .id("snapshot-test")
+                .url(Uri.of(PROFILE_URL))
+                .version(com.ibm.fhir.model.type.String.of("1.0.0"))
+                .name(com.ibm.fhir.model.type.String.of("SnapshotTest"))
+                .status(PublicationStatus.DRAFT)
+                .kind(StructureDefinitionKind.RESOURCE)
+                ._abstract(Boolean.FALSE)
+                .type(Uri.of("Basic"))
+                .differential(StructureDefinition.Differential.builder()
+                    .element(ElementDefinition.builder()
+                        .id("Basic.code")
+                        .path(com.ibm.fhir.model.type.String.of("Basic.code"))
+                        .binding(ElementDefinition.Binding.builder()
+                            .strength(BindingStrength.REQUIRED)
+                            .valueSet(Canonical.of(BOUND_VALUE_SET_URL, "1.0.0"))
+                            .build())
+                        .build())
+                    .build())
+                .build();
+        ValueSet valueSet = ValueSet.builder()
+                .id("snapshot-test-bound")
+                .url(Uri.of(BOUND_VALUE_SET_URL))
+                .version(com.ibm.fhir.model.type.String.of("1.0.0"))
+                .status(PublicationStatus.DRAFT)
+                .build();
+        CodeSystem codeSystem = CodeSystem.builder()
+                .id("snapshot-test")
+                .url(Uri.of("http://ibm.com/fhir/CodeSystem/snapshot-test"))
+                .version(com.ibm.fhir.model.type.String.of("1.0.0"))
+                .status(PublicationStatus.DRAFT)
+                .content(CodeSystemContentMode.COMPLETE)
+                .concept(CodeSystem.Concept.builder().code(Code.of("a")).build())
+                .build();
+        return Arrays.asList(profile, valueSet, codeSystem);
+    }
+
+    private static class TestRegistryResourceProvider implements FHIRRegistryResourceProvider {
+        private final List<FHIRRegistryResource> registryResources;
+
+        private TestRegistryResourceProvider(List<FHIRRegistryResource> registryResources) {
+            this.registryResources = registryResources;
+        }
+
+        @Override
+        public FHIRRegistryResource getRegistryResource(Class<? extends Resource> resourceType, String url, String version) {
+            return null;
+        }
+
+        @Override
+        public Collection<FHIRRegistryResource> getRegistryResources(Class<? extends Resource> resourceType) {
+            return registryResources.stream()
+                    .filter(registryResource -> registryResource.getResourceType().equals(resourceType))
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public Collection<FHIRRegistryResource> getRegistryResources() {
+            return registryResources;
+        }
+
+        @Override
+        public Collection<FHIRRegistryResource> getProfileResources(String type) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Collection<FHIRRegistryResource> getSearchParameterResources(String type) {
+            return Collections.emptyList();
+        }
+    }
+}
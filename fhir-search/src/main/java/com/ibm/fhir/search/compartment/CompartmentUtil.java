@@ -64,6 +64,10 @@ public class CompartmentUtil {
     public static final String FHIR_PATH_BUNDLE_ENTRY = "entry.children()";
     public static final String RESOURCE = "/compartments.json";
 
+    // The name of the internal parameter which records the compartments of a given type that a resource is a member of
+    public static final String COMPARTMENT_PARM_PREFIX = "ibm-internal-";
+    public static final String COMPARTMENT_PARM_SUFFIX = "-Compartment";
+
     // List of compartmentDefintions.
     private static final Set<String> compartmentDefinitions = new HashSet<String>() {
 
@@ -99,6 +103,9 @@ public class CompartmentUtil {
 
     private static final Map<String, CompartmentCache> compartmentMap = buildCompartmentMap();
 
+    // resource type -> inclusion criteria parameter -> compartments the parameter places the resource in
+    private static final Map<String, Map<String, Set<String>>> compartmentParamsByResourceType = buildCompartmentParamsMap();
+
     /**
      * Builds an in-memory model of the Compartment map defined in compartments.json, for supporting compartment based
      * FHIR searches.
@@ -161,6 +168,58 @@ public class CompartmentUtil {
 
     }
 
+    /**
+     * Inverts the compartment map so that the compartments of a resource can be determined from its reference
+     * parameters. Chained inclusion criteria are skipped because they can't be evaluated against the resource alone.
+     *
+     * @return an unmodifiable map of resource type to inclusion criteria parameter to compartment names
+     */
+    private static Map<String, Map<String, Set<String>>> buildCompartmentParamsMap() {
+        Map<String, Map<String, Set<String>>> result = new HashMap<>();
+        for (Map.Entry<String, CompartmentCache> compartment : compartmentMap.entrySet()) {
+            CompartmentCache cache = compartment.getValue();
+            for (String resourceType : cache.getResourceTypesInCompartment()) {
+                for (String param : cache.getParametersByResourceTypeInCompartment(resourceType)) {
+                    if (!param.contains(".")) {
+                        result.computeIfAbsent(resourceType, k -> new HashMap<>())
+                            .computeIfAbsent(param, k -> new HashSet<>())
+                            .add(compartment.getKey());
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<String, Map<String, Set<String>>> entry : result.entrySet()) {
+            for (Map.Entry<String, Set<String>> paramEntry : entry.getValue().entrySet()) {
+                paramEntry.setValue(Collections.unmodifiableSet(paramEntry.getValue()));
+            }
+            entry.setValue(Collections.unmodifiableMap(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * gets the reference parameters which make a resource of the given type a member of a compartment,
+     * mapped to the compartments each parameter applies to.
+     *
+     * @param resourceType
+     * @return a map of parameter code to compartment names; empty if the resource type isn't in any compartment
+     */
+    public static Map<String, Set<String>> getCompartmentParamsForResourceType(final String resourceType) {
+        return compartmentParamsByResourceType.getOrDefault(resourceType, Collections.emptyMap());
+    }
+
+    /**
+     * gets the name of the internal search parameter used to store the membership of resources in the given
+     * compartment, e.g. "ibm-internal-Patient-Compartment".
+     *
+     * @param compartment
+     * @return
+     */
+    public static String makeCompartmentParamName(final String compartment) {
+        return COMPARTMENT_PARM_PREFIX + compartment + COMPARTMENT_PARM_SUFFIX;
+    }
+
     /**
      * gets the compartment
      *
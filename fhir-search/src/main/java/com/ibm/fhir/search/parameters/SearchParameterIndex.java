@@ -0,0 +1,138 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.search.parameters;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.fhir.model.resource.SearchParameter;
+
+/**
+ * An immutable index of the search parameters in effect for one tenant, i.e. the built-in search parameters
+ * that pass the tenant's filter rules followed by the tenant's extension search parameters.
+ * <br>
+ * An index is built from one version of the tenant's search parameter filter configuration and extension
+ * search parameters. Once either of them is reloaded, {@link #isFor(Object, Map)} returns false and the
+ * index should be replaced by a new one.
+ */
+public final class SearchParameterIndex {
+    private final Object filterConfig;
+    private final Map<String, ParametersMap> extensionParameters;
+    private final Map<String, List<String>> filterRules;
+    private final Map<String, ApplicableParameters> applicableParameters;
+
+    /**
+     * @param filterConfig
+     *     the configuration object the filter rules were read from, or null if the tenant has none
+     * @param extensionParameters
+     *     the tenant's extension search parameters, or null if the tenant has none
+     * @param filterRules
+     *     the tenant's filter rules, keyed by resource type
+     * @param applicableParameters
+     *     the applicable search parameters of each resource type, including those inherited from
+     *     Resource and DomainResource
+     */
+    public SearchParameterIndex(Object filterConfig, Map<String, ParametersMap> extensionParameters,
+            Map<String, List<String>> filterRules, Map<String, List<SearchParameter>> applicableParameters) {
+        this.filterConfig = filterConfig;
+        this.extensionParameters = extensionParameters;
+
+        Map<String, List<String>> rules = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : filterRules.entrySet()) {
+            rules.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+        }
+        this.filterRules = Collections.unmodifiableMap(rules);
+
+        Map<String, ApplicableParameters> parameters = new HashMap<>();
+        for (Map.Entry<String, List<SearchParameter>> entry : applicableParameters.entrySet()) {
+            parameters.put(entry.getKey(), new ApplicableParameters(entry.getValue()));
+        }
+        this.applicableParameters = Collections.unmodifiableMap(parameters);
+    }
+
+    /**
+     * @param filterConfig
+     * @param extensionParameters
+     * @return true if this index was built from exactly these filter configuration and extension search
+     *     parameter objects
+     */
+    public boolean isFor(Object filterConfig, Map<String, ParametersMap> extensionParameters) {
+        return this.filterConfig == filterConfig && this.extensionParameters == extensionParameters;
+    }
+
+    /**
+     * @return the unmodifiable filter rules of the tenant, keyed by resource type
+     */
+    public Map<String, List<String>> getFilterRules() {
+        return filterRules;
+    }
+
+    /**
+     * @param resourceType
+     * @return the applicable search parameters of the resource type, or null if the resource type is not indexed
+     */
+    public ApplicableParameters getApplicableParameters(String resourceType) {
+        return applicableParameters.get(resourceType);
+    }
+
+    /**
+     * The search parameters applicable to one resource type, as a list and keyed by code and by url.
+     * When several parameters have the same code or url, the last one in the list wins.
+     */
+    public static final class ApplicableParameters {
+        private final List<SearchParameter> parameters;
+        private final Map<String, SearchParameter> codeMap;
+        private final Map<String, SearchParameter> urlMap;
+
+        public ApplicableParameters(List<SearchParameter> parameters) {
+            this.parameters = Collections.unmodifiableList(new ArrayList<>(parameters));
+            Map<String, SearchParameter> codeMap = new HashMap<>();
+            Map<String, SearchParameter> urlMap = new HashMap<>();
+            for (SearchParameter parameter : parameters) {
+                codeMap.put(parameter.getCode().getValue(), parameter);
+                if (parameter.getUrl() != null) {
+                    urlMap.put(parameter.getUrl().getValue(), parameter);
+                }
+            }
+            this.codeMap = Collections.unmodifiableMap(codeMap);
+            this.urlMap = Collections.unmodifiableMap(urlMap);
+        }
+
+        /**
+         * @return the unmodifiable list of applicable search parameters
+         */
+        public List<SearchParameter> getParameters() {
+            return parameters;
+        }
+
+        /**
+         * @return the unmodifiable map of applicable search parameters, keyed by code
+         */
+        public Map<String, SearchParameter> getParametersByCode() {
+            return codeMap;
+        }
+
+        /**
+         * @param code
+         * @return the applicable search parameter with the given code, or null if there is none
+         */
+        public SearchParameter lookupByCode(String code) {
+            return codeMap.get(code);
+        }
+
+        /**
+         * @param url
+         * @return the applicable search parameter with the given url, or null if there is none
+         */
+        public SearchParameter lookupByUrl(String url) {
+            return urlMap.get(url);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.search.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+
+import com.ibm.fhir.model.resource.SearchParameter;
+import com.ibm.fhir.path.FHIRPathLexer;
+import com.ibm.fhir.path.FHIRPathNode;
+import com.ibm.fhir.path.FHIRPathParser;
+import com.ibm.fhir.path.FHIRPathParser.ExpressionContext;
+import com.ibm.fhir.path.FHIRPathParser.FunctionContext;
+import com.ibm.fhir.path.FHIRPathParser.FunctionInvocationContext;
+import com.ibm.fhir.path.FHIRPathParser.IdentifierContext;
+import com.ibm.fhir.path.FHIRPathParser.InvocationContext;
+import com.ibm.fhir.path.FHIRPathParser.InvocationExpressionContext;
+import com.ibm.fhir.path.FHIRPathParser.InvocationTermContext;
+import com.ibm.fhir.path.FHIRPathParser.MemberInvocationContext;
+import com.ibm.fhir.path.FHIRPathParser.ParenthesizedTermContext;
+import com.ibm.fhir.path.FHIRPathParser.TermContext;
+import com.ibm.fhir.path.FHIRPathParser.TermExpressionContext;
+import com.ibm.fhir.path.FHIRPathParser.TypeExpressionContext;
+import com.ibm.fhir.path.FHIRPathParser.UnionExpressionContext;
+import com.ibm.fhir.path.FHIRPathType;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
+
+/**
+ * A precompiled plan for extracting the values of a list of search parameters from a resource in a single pass.
+ * <br>
+ * Each search parameter expression is parsed once. Expressions whose union branches consist only of member
+ * navigation and type casts (e.g. {@code Patient.name.given | Patient.name.family} or
+ * {@code (Observation.value as Quantity)}) are merged into a trie keyed by path step, so that a common prefix
+ * like {@code Observation.component} is navigated once for all of the parameters that share it.
+ * <br>
+ * Expressions that use anything else (functions like where(), resolve() or exists(), indexers, operators)
+ * are not compiled; {@link #isCompiled(SearchParameter)} returns false for them and the caller is expected
+ * to evaluate them with the {@link FHIRPathEvaluator}.
+ * <br>
+ * For compiled expressions, the values returned by {@link #evaluate(EvaluationContext)} are the same, and in
+ * the same order, as the ones returned by the FHIRPathEvaluator.
+ */
+public class ExtractionPlan {
+    private static final String SYSTEM_NAMESPACE = "System";
+
+    private final List<SearchParameter> parameters;
+    private final Step root = new Step("");
+    private final Map<SearchParameter, List<Step>> branches = new IdentityHashMap<>();
+
+    private ExtractionPlan(List<SearchParameter> parameters) {
+        this.parameters = new ArrayList<>(parameters);
+        for (SearchParameter parameter : this.parameters) {
+            if (parameter.getExpression() == null || branches.containsKey(parameter)) {
+                continue;
+            }
+            List<List<Step>> paths = compile(parameter.getExpression().getValue());
+            if (paths != null) {
+                List<Step> leaves = new ArrayList<>(paths.size());
+                for (List<Step> path : paths) {
+                    leaves.add(root.add(path));
+                }
+                branches.put(parameter, leaves);
+            }
+        }
+    }
+
+    /**
+     * Compile the expressions of the passed search parameters into a single extraction plan.
+     *
+     * @param parameters
+     *     the search parameters applicable to a resource type
+     * @return
+     *     the extraction plan
+     */
+    public static ExtractionPlan compile(List<SearchParameter> parameters) {
+        return new ExtractionPlan(parameters);
+    }
+
+    /**
+     * @param parameters
+     *     a list of search parameters
+     * @return
+     *     true if this plan was compiled from exactly the same search parameter instances, in the same order
+     */
+    public boolean isFor(List<SearchParameter> parameters) {
+        if (parameters.size() != this.parameters.size()) {
+            return false;
+        }
+        for (int i = 0; i < parameters.size(); i++) {
+            if (parameters.get(i) != this.parameters.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param parameter
+     *     a search parameter
+     * @return
+     *     true if the expression of the search parameter is evaluated by this plan
+     */
+    public boolean isCompiled(SearchParameter parameter) {
+        return branches.containsKey(parameter);
+    }
+
+    /**
+     * Evaluate all compiled expressions against the root of the evaluation context tree.
+     *
+     * @param evaluationContext
+     *     the evaluation context
+     * @return
+     *     the (possibly empty) values for each compiled search parameter
+     */
+    public Map<SearchParameter, Collection<FHIRPathNode>> evaluate(EvaluationContext evaluationContext) {
+        Map<Step, Collection<FHIRPathNode>> values = new IdentityHashMap<>();
+        root.evaluate(Collections.singletonList(evaluationContext.getTree().getRoot()), values);
+
+        Map<SearchParameter, Collection<FHIRPathNode>> result = new IdentityHashMap<>();
+        for (Map.Entry<SearchParameter, List<Step>> entry : branches.entrySet()) {
+            List<Step> leaves = entry.getValue();
+            if (leaves.size() == 1) {
+                result.put(entry.getKey(), values.getOrDefault(leaves.get(0), Collections.emptyList()));
+                continue;
+            }
+            // union semantics: remove duplicates, preserve order
+            Set<FHIRPathNode> union = new LinkedHashSet<>();
+            for (Step leaf : leaves) {
+                union.addAll(values.getOrDefault(leaf, Collections.emptyList()));
+            }
+            result.put(entry.getKey(), new ArrayList<>(union));
+        }
+        return result;
+    }
+
+    /**
+     * Parse the expression and translate each of its union branches into a path of steps.
+     *
+     * @return
+     *     the paths or null if the expression cannot be compiled
+     */
+    private static List<List<Step>> compile(String expr) {
+        FHIRPathLexer lexer = new FHIRPathLexer(CharStreams.fromString(expr));
+        lexer.removeErrorListeners();
+        FHIRPathParser parser = new FHIRPathParser(new CommonTokenStream(lexer));
+        parser.removeErrorListeners();
+        ExpressionContext expressionContext = parser.expression();
+        if (parser.getNumberOfSyntaxErrors() > 0) {
+            return null;
+        }
+        return compileUnion(expressionContext);
+    }
+
+    private static List<List<Step>> compileUnion(ExpressionContext ctx) {
+        if (ctx instanceof UnionExpressionContext) {
+            List<List<Step>> left = compileUnion(((UnionExpressionContext) ctx).expression(0));
+            List<List<Step>> right = compileUnion(((UnionExpressionContext) ctx).expression(1));
+            if (left == null || right == null) {
+                return null;
+            }
+            List<List<Step>> result = new ArrayList<>(left);
+            result.addAll(right);
+            return result;
+        }
+        if (ctx instanceof TermExpressionContext && ((TermExpressionContext) ctx).term() instanceof ParenthesizedTermContext) {
+            return compileUnion(((ParenthesizedTermContext) ((TermExpressionContext) ctx).term()).expression());
+        }
+        List<Step> path = compilePath(ctx);
+        return (path != null) ? Collections.singletonList(path) : null;
+    }
+
+    private static List<Step> compilePath(ExpressionContext ctx) {
+        if (ctx instanceof TermExpressionContext) {
+            TermContext term = ((TermExpressionContext) ctx).term();
+            if (term instanceof ParenthesizedTermContext) {
+                return compilePath(((ParenthesizedTermContext) term).expression());
+            }
+            if (term instanceof InvocationTermContext
+                    && ((InvocationTermContext) term).invocation() instanceof MemberInvocationContext) {
+                List<Step> path = new ArrayList<>();
+                path.add(new MemberStep(identifier(((MemberInvocationContext) ((InvocationTermContext) term).invocation()).identifier())));
+                return path;
+            }
+            return null;
+        }
+
+        if (ctx instanceof InvocationExpressionContext) {
+            List<Step> path = compilePath(((InvocationExpressionContext) ctx).expression());
+            if (path == null) {
+                return null;
+            }
+            InvocationContext invocation = ((InvocationExpressionContext) ctx).invocation();
+            if (invocation instanceof MemberInvocationContext) {
+                path.add(new MemberStep(identifier(((MemberInvocationContext) invocation).identifier())));
+                return path;
+            }
+            if (invocation instanceof FunctionInvocationContext) {
+                FunctionContext function = ((FunctionInvocationContext) invocation).function();
+                if ("as".equals(identifier(function.identifier()))
+                        && function.paramList() != null && function.paramList().expression().size() == 1) {
+                    FHIRPathType type = FHIRPathType.from(function.paramList().expression(0).getText().replace("`", ""));
+                    if (type != null) {
+                        path.add(new AsStep(type, true));
+                        return path;
+                    }
+                }
+            }
+            return null;
+        }
+
+        if (ctx instanceof TypeExpressionContext && "as".equals(ctx.getChild(1).getText())) {
+            List<Step> path = compilePath(((TypeExpressionContext) ctx).expression());
+            FHIRPathType type = FHIRPathType.from(((TypeExpressionContext) ctx).typeSpecifier().getText().replace("`", ""));
+            if (path == null || type == null) {
+                return null;
+            }
+            path.add(new AsStep(type, false));
+            return path;
+        }
+
+        return null;
+    }
+
+    private static String identifier(IdentifierContext ctx) {
+        String text = ctx.getText();
+        return text.startsWith("`") ? text.substring(1, text.length() - 1) : text;
+    }
+
+    /**
+     * A node in the trie; maps an input collection to an output collection.
+     */
+    private static class Step {
+        private final String key;
+        private final Map<String, Step> children = new LinkedHashMap<>();
+
+        private Step(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Add the path below this step, reusing existing steps with the same key, and return the last step.
+         */
+        private Step add(List<Step> path) {
+            Step step = this;
+            for (Step next : path) {
+                step = step.children.computeIfAbsent(next.key, k -> next);
+            }
+            return step;
+        }
+
+        private void evaluate(Collection<FHIRPathNode> input, Map<Step, Collection<FHIRPathNode>> values) {
+            values.put(this, input);
+            if (input.isEmpty()) {
+                // every step maps the empty collection to the empty collection
+                return;
+            }
+            for (Step child : children.values()) {
+                child.evaluate(child.apply(input), values);
+            }
+        }
+
+        protected Collection<FHIRPathNode> apply(Collection<FHIRPathNode> input) {
+            return input;
+        }
+    }
+
+    /**
+     * Member invocation, with the same semantics as FHIRPathEvaluator.EvaluatingVisitor.visitMemberInvocation.
+     */
+    private static class MemberStep extends Step {
+        private final String identifier;
+
+        private MemberStep(String identifier) {
+            super("." + identifier);
+            this.identifier = identifier;
+        }
+
+        @Override
+        protected Collection<FHIRPathNode> apply(Collection<FHIRPathNode> input) {
+            if (input.size() == 1) {
+                FHIRPathNode node = input.iterator().next();
+                if (closure(node.type()).contains(identifier)) {
+                    return input;
+                }
+            }
+            return input.stream()
+                    .flatMap(node -> node.children().stream())
+                    .filter(node -> identifier.equals(node.name()))
+                    .collect(Collectors.toList());
+        }
+
+        private static Set<String> closure(FHIRPathType type) {
+            if (SYSTEM_NAMESPACE.equals(type.namespace())) {
+                return Collections.emptySet();
+            }
+            Set<String> closure = new HashSet<>();
+            while (!FHIRPathType.FHIR_ANY.equals(type)) {
+                closure.add(type.getName());
+                type = type.baseType();
+            }
+            return closure;
+        }
+    }
+
+    /**
+     * Type cast with either the 'as' operator or the as() function.
+     */
+    private static class AsStep extends Step {
+        private final FHIRPathType type;
+        private final boolean function;
+
+        private AsStep(FHIRPathType type, boolean function) {
+            super((function ? ".as(" : " as ") + type.getName() + "|" + type.namespace());
+            this.type = type;
+            this.function = function;
+        }
+
+        @Override
+        protected Collection<FHIRPathNode> apply(Collection<FHIRPathNode> input) {
+            List<FHIRPathNode> result = new ArrayList<>();
+            for (FHIRPathNode node : input) {
+                FHIRPathType nodeType = node.type();
+                if (function && SYSTEM_NAMESPACE.equals(type.namespace()) && node.hasValue()) {
+                    nodeType = node.getValue().type();
+                }
+                if (type.isAssignableFrom(nodeType)) {
+                    result.add(node);
+                }
+            }
+            return result;
+        }
+    }
+}
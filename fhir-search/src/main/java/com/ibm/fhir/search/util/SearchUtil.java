@@ -22,6 +22,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -46,6 +47,7 @@ import com.ibm.fhir.search.SearchConstants;
 import com.ibm.fhir.search.SearchConstants.Modifier;
 import com.ibm.fhir.search.SearchConstants.Type;
 import com.ibm.fhir.search.SummaryValueSet;
+import com.ibm.fhir.search.TotalValueSet;
 import com.ibm.fhir.search.compartment.CompartmentUtil;
 import com.ibm.fhir.search.context.FHIRSearchContext;
 import com.ibm.fhir.search.context.FHIRSearchContextFactory;
@@ -57,6 +59,8 @@ import com.ibm.fhir.search.parameters.ParametersMap;
 import com.ibm.fhir.search.parameters.ParametersUtil;
 import com.ibm.fhir.search.parameters.QueryParameter;
 import com.ibm.fhir.search.parameters.QueryParameterValue;
+import com.ibm.fhir.search.parameters.SearchParameterIndex;
+import com.ibm.fhir.search.parameters.SearchParameterIndex.ApplicableParameters;
 import com.ibm.fhir.search.parameters.cache.TenantSpecificSearchParameterCache;
 import com.ibm.fhir.search.sort.Sort;
 import com.ibm.fhir.search.uri.UriBuilder;
@@ -123,6 +127,12 @@ public class SearchUtil {
      */
     private static TenantSpecificSearchParameterCache searchParameterCache = new TenantSpecificSearchParameterCache();
 
+    // The effective search parameters of each tenant, keyed by tenant-id
+    private static final Map<String, SearchParameterIndex> searchParameterIndexes = new ConcurrentHashMap<>();
+
+    // Compiled extraction plans keyed by tenant-id and resource type
+    private static final Map<String, ExtractionPlan> extractionPlanCache = new ConcurrentHashMap<>();
+
     private SearchUtil() {
         // No Operation
         // Hides the Initialization
@@ -188,7 +198,7 @@ public class SearchUtil {
             ParametersMap spMapResourceType = ParametersUtil.getBuiltInSearchParametersMap().get(resourceType);
             if (spMapResourceType != null && !spMapResourceType.isEmpty()) {
                 // Retrieve the current tenant's search parameter filtering rules.
-                Map<String, List<String>> filterRules = getFilterRules();
+                Map<String, List<String>> filterRules = getSearchParameterIndex().getFilterRules();
 
                 // Add only the "included" search parameters for this resource type to our result list.
                 result.addAll(filterSearchParameters(filterRules, resourceType, spMapResourceType.values()));
@@ -216,9 +226,13 @@ public class SearchUtil {
      * @throws Exception
      */
     protected static List<SearchParameter> getUserDefinedSearchParameters(String resourceType) throws Exception {
-        List<SearchParameter> result = new ArrayList<>();
         String tenantId = FHIRRequestContext.get().getTenantId();
-        Map<String, ParametersMap> spMapTenant = getTenantOrDefaultSPMap(tenantId);
+        return getUserDefinedSearchParameters(getTenantOrDefaultSPMap(tenantId), resourceType);
+    }
+
+    private static List<SearchParameter> getUserDefinedSearchParameters(Map<String, ParametersMap> spMapTenant,
+            String resourceType) {
+        List<SearchParameter> result = new ArrayList<>();
 
         if (spMapTenant != null) {
             ParametersMap spMapResourceType = spMapTenant.get(resourceType);
@@ -240,13 +254,16 @@ public class SearchUtil {
      * @throws Exception
      */
     protected static List<SearchParameter> getFilteredBuiltinSearchParameters(String resourceType) throws Exception {
+        // Retrieve the current tenant's search parameter filtering rules.
+        return getFilteredBuiltinSearchParameters(getSearchParameterIndex().getFilterRules(), resourceType);
+    }
+
+    private static List<SearchParameter> getFilteredBuiltinSearchParameters(Map<String, List<String>> filterRules,
+            String resourceType) {
         List<SearchParameter> result = new ArrayList<>();
 
         Map<String, ParametersMap> spBuiltin = ParametersUtil.getBuiltInSearchParametersMap();
 
-        // Retrieve the current tenant's search parameter filtering rules.
-        Map<String, List<String>> filterRules = getFilterRules();
-
         // Retrieve the SPs associated with the specified resource type and filter per the filter rules.
         ParametersMap spMap = spBuiltin.get(resourceType);
         if (spMap != null && !spMap.isEmpty()) {
@@ -322,16 +339,67 @@ public class SearchUtil {
     }
 
     /**
-     * Retrieves the search parameter filtering rules for the current tenant.
+     * Returns the index of the search parameters in effect for the current tenant. The index is built on first use
+     * and replaced as a whole once the tenant's search parameter filter configuration or extension search parameters
+     * are reloaded, so that the effective search parameters aren't recomputed on each call.
      *
      * @throws Exception
      */
-    @SuppressWarnings("unchecked")
-    private static Map<String, List<String>> getFilterRules() throws Exception {
-        Map<String, List<String>> result = new HashMap<>();
+    private static SearchParameterIndex getSearchParameterIndex() throws Exception {
+        String tenantId = FHIRRequestContext.get().getTenantId();
 
         // Retrieve the "searchParameterFilter" config property group.
+        // Its JSON object stays the same until the configuration is reloaded.
         PropertyGroup spFilter = FHIRConfigHelper.getPropertyGroup(FHIRConfiguration.PROPERTY_SEARCH_PARAMETER_FILTER);
+        Object filterConfig = (spFilter != null) ? spFilter.getJsonObj() : null;
+        Map<String, ParametersMap> spMapTenant = getTenantOrDefaultSPMap(tenantId);
+
+        SearchParameterIndex index = searchParameterIndexes.get(tenantId);
+        if (index == null || !index.isFor(filterConfig, spMapTenant)) {
+            index = buildSearchParameterIndex(filterConfig, getFilterRules(spFilter), spMapTenant);
+            searchParameterIndexes.put(tenantId, index);
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Built the search parameter index for tenant-id '" + tenantId + "'");
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Computes the applicable search parameters of all resource types for the passed filter rules and extension
+     * search parameters.
+     */
+    private static SearchParameterIndex buildSearchParameterIndex(Object filterConfig, Map<String, List<String>> filterRules,
+            Map<String, ParametersMap> spMapTenant) {
+        Set<String> resourceTypes = new HashSet<>();
+        for (Class<? extends Resource> resourceType : ModelSupport.getResourceTypes()) {
+            resourceTypes.add(resourceType.getSimpleName());
+        }
+        resourceTypes.addAll(ParametersUtil.getBuiltInSearchParametersMap().keySet());
+        if (spMapTenant != null) {
+            resourceTypes.addAll(spMapTenant.keySet());
+        }
+
+        Map<String, List<SearchParameter>> applicableParameters = new HashMap<>();
+        for (String resourceType : resourceTypes) {
+            List<SearchParameter> parameters = getFilteredBuiltinSearchParameters(filterRules, resourceType);
+            parameters.addAll(getUserDefinedSearchParameters(spMapTenant, resourceType));
+            applicableParameters.put(resourceType, parameters);
+        }
+        return new SearchParameterIndex(filterConfig, spMapTenant, filterRules, applicableParameters);
+    }
+
+    /**
+     * Retrieves the search parameter filtering rules from the passed "searchParameterFilter" property group.
+     *
+     * @param spFilter
+     *                 the property group, or null if the tenant has no filtering rules
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, List<String>> getFilterRules(PropertyGroup spFilter) throws Exception {
+        Map<String, List<String>> result = new HashMap<>();
+
         List<PropertyEntry> ruleEntries = null;
         if (spFilter != null) {
             ruleEntries = spFilter.getProperties();
@@ -408,52 +476,17 @@ public class SearchUtil {
     }
 
     /**
+     * Looks up the search parameter with the given code among the search parameters in effect for the current
+     * tenant, i.e. the built-in search parameters that pass the tenant's filter rules and the tenant's extension
+     * search parameters, which take precedence.
+     *
      * @param resourceType
      * @param code
-     * @return
+     * @return the SearchParameter for type {@code resourceType} with code {@code code} or null if it doesn't exist
      * @throws Exception
      */
     public static SearchParameter getSearchParameter(String resourceType, String code) throws Exception {
-        String tenantId = FHIRRequestContext.get().getTenantId();
-
-        // First try to find the search parameter within the specified tenant's map.
-        SearchParameter result = getSearchParameterByCodeIfPresent(getTenantOrDefaultSPMap(tenantId), resourceType, code);
-
-        // If we didn't find it within the tenant's map, then look within the built-in map.
-        if (result == null) {
-            result = getSearchParameterByCodeIfPresent(ParametersUtil.getBuiltInSearchParametersMap(), resourceType, code);
-
-            // If we found it within the built-in search parameters, apply our filtering rules.
-            if (result != null) {
-
-                ResourceType rt = result.getBase().get(0).as(ResourceType.class);
-                Collection<SearchParameter> filteredResult =
-                        filterSearchParameters(getFilterRules(), rt.getValue(), Collections.singleton(result));
-
-                // If our filtered result is non-empty, then just return the first (and only) item.
-                result = (filteredResult.isEmpty() ? null : filteredResult.iterator().next());
-            }
-        }
-        return result;
-    }
-
-    /**
-     * @param spMaps
-     * @param resourceType
-     * @param uri
-     * @return the SearchParameter for type {@code resourceType} with code {@code code} or null if it doesn't exist
-     */
-    private static SearchParameter getSearchParameterByCodeIfPresent(Map<String, ParametersMap> spMaps, String resourceType, String code) {
-        SearchParameter result = null;
-
-        if (spMaps != null && !spMaps.isEmpty()) {
-            ParametersMap parametersMap = spMaps.get(resourceType);
-            if (parametersMap != null && !parametersMap.isEmpty()) {
-                result = parametersMap.lookupByCode(code);
-            }
-        }
-
-        return result;
+        return getApplicableParameters(resourceType).lookupByCode(code);
     }
 
     public static SearchParameter getSearchParameter(Class<?> resourceType, Canonical uri) throws Exception {
@@ -461,54 +494,18 @@ public class SearchUtil {
     }
 
     /**
-     * @param resourceType
-     * @param name
-     * @return
-     * @throws Exception
-     */
-    public static SearchParameter getSearchParameter(String resourceType, Canonical uri) throws Exception {
-        String tenantId = FHIRRequestContext.get().getTenantId();
-
-        // First try to find the search parameter within the specified tenant's map.
-        SearchParameter result = getSearchParameterByUrlIfPresent(getTenantOrDefaultSPMap(tenantId), resourceType, uri);
-
-        // If we didn't find it within the tenant's map, then look within the built-in map.
-        if (result == null) {
-            result = getSearchParameterByUrlIfPresent(ParametersUtil.getBuiltInSearchParametersMap(), resourceType, uri);
-
-            // If we found it within the built-in search parameters, apply our filtering rules.
-            if (result != null) {
-                ResourceType rt = result.getBase().get(0);
-                Collection<SearchParameter> filteredResult =
-                        filterSearchParameters(getFilterRules(), rt.getValue(), Collections.singleton(result));
-
-                // If our filtered result is non-empty, then just return the first (and only) item.
-                result = (filteredResult.isEmpty() ? null : filteredResult.iterator().next());
-            }
-        }
-        return result;
-    }
-
-    /**
-     * @param spMaps
+     * Looks up the search parameter with the given url among the search parameters in effect for the current
+     * tenant, like {@link #getSearchParameter(String, String)}.
+     *
      * @param resourceType
      * @param uri
      * @return the SearchParameter for type {@code resourceType} with url {@code uri} or null if it doesn't exist
+     * @throws Exception
      */
-    private static SearchParameter getSearchParameterByUrlIfPresent(Map<String, ParametersMap> spMaps, String resourceType, Canonical uri) {
-        SearchParameter result = null;
-
-        if (spMaps != null && !spMaps.isEmpty()) {
-            ParametersMap parametersMap = spMaps.get(resourceType);
-            if (parametersMap != null && !parametersMap.isEmpty()) {
-                result = parametersMap.lookupByUrl(uri.getValue());
-            }
-        }
-
-        return result;
+    public static SearchParameter getSearchParameter(String resourceType, Canonical uri) throws Exception {
+        return getApplicableParameters(resourceType).lookupByUrl(uri.getValue());
     }
 
-
     /**
      * skips the empty extracted search parameters
      *
@@ -538,11 +535,24 @@ public class SearchUtil {
         Class<?> resourceType = resource.getClass();
 
         // Create one time.
+        // Most expressions only navigate a few elements of the resource, so the tree is built lazily.
         FHIRPathEvaluator evaluator = FHIRPathEvaluator.evaluator();
-        EvaluationContext evaluationContext = new EvaluationContext(resource);
+        EvaluationContext evaluationContext = new EvaluationContext(resource, true);
 
         List<SearchParameter> parameters = getApplicableSearchParameters(resourceType.getSimpleName());
 
+        // Expressions that only navigate the resource are evaluated together, in one pass, by the extraction plan.
+        // The rest are evaluated one at a time by the FHIRPathEvaluator.
+        ExtractionPlan plan = getExtractionPlan(resourceType.getSimpleName(), parameters);
+        Map<SearchParameter, Collection<FHIRPathNode>> planResults = null;
+        try {
+            planResults = plan.evaluate(evaluationContext);
+        } catch (RuntimeException e) {
+            // Evaluate each expression on its own instead, so that a failure only affects its own parameter
+            log.log(Level.WARNING, "Unable to evaluate the extraction plan of " + resourceType.getSimpleName()
+                    + "; evaluating the search parameter expressions one at a time", e);
+        }
+
         for (SearchParameter parameter : parameters) {
 
             com.ibm.fhir.model.type.String expression = parameter.getExpression();
@@ -565,7 +575,8 @@ public class SearchUtil {
                 continue;
             }
             try {
-                Collection<FHIRPathNode> tmpResults = evaluator.evaluate(evaluationContext, expression.getValue());
+                Collection<FHIRPathNode> tmpResults = (planResults != null && plan.isCompiled(parameter)) ?
+                        planResults.get(parameter) : evaluator.evaluate(evaluationContext, expression.getValue());
 
                 if (log.isLoggable(Level.FINEST)) {
                     log.finest("Expression [" + expression.getValue() + "] parameter-code ["
@@ -587,6 +598,25 @@ public class SearchUtil {
         return result;
     }
 
+    /**
+     * Get the extraction plan for the passed resource type and search parameters, compiling it if the current
+     * tenant does not have one yet or if its search parameters have changed since it was compiled.
+     *
+     * @param resourceType
+     * @param parameters
+     *            the search parameters applicable to the resource type
+     * @return
+     */
+    private static ExtractionPlan getExtractionPlan(String resourceType, List<SearchParameter> parameters) {
+        String key = FHIRRequestContext.get().getTenantId() + "/" + resourceType;
+        ExtractionPlan plan = extractionPlanCache.get(key);
+        if (plan == null || !plan.isFor(parameters)) {
+            plan = ExtractionPlan.compile(parameters);
+            extractionPlanCache.put(key, plan);
+        }
+        return plan;
+    }
+
     public static FHIRSearchContext parseQueryParameters(Class<?> resourceType,
             Map<String, List<String>> queryParameters)
             throws Exception {
@@ -981,22 +1011,31 @@ public class SearchUtil {
      * search parameter name for quick access.
      */
     public static Map<String, SearchParameter> getApplicableSearchParametersMap(String resourceType) throws Exception {
-        Map<String, SearchParameter> result = new HashMap<>();
-        List<SearchParameter> list = getApplicableSearchParameters(resourceType);
-        for (SearchParameter sp : list) {
-            result.put(sp.getCode().getValue(), sp);
-        }
-        return result;
+        return getApplicableParameters(resourceType).getParametersByCode();
     }
 
     /**
      * Returns a list of SearchParameters that consist of those associated with the
      * "Resource" base resource type, as
      * well as those associated with the specified resource type.
+     * The returned list is unmodifiable.
      */
     public static List<SearchParameter> getApplicableSearchParameters(String resourceType) throws Exception {
-        List<SearchParameter> result = getFilteredBuiltinSearchParameters(resourceType);
-        result.addAll(getUserDefinedSearchParameters(resourceType));
+        return getApplicableParameters(resourceType).getParameters();
+    }
+
+    /**
+     * Looks up the applicable search parameters of the resource type in the current tenant's index.
+     * Resource types which aren't indexed (i.e. unknown ones) are computed on each call.
+     */
+    private static ApplicableParameters getApplicableParameters(String resourceType) throws Exception {
+        SearchParameterIndex index = getSearchParameterIndex();
+        ApplicableParameters result = index.getApplicableParameters(resourceType);
+        if (result == null) {
+            List<SearchParameter> parameters = getFilteredBuiltinSearchParameters(index.getFilterRules(), resourceType);
+            parameters.addAll(getUserDefinedSearchParameters(resourceType));
+            result = new ApplicableParameters(parameters);
+        }
         return result;
     }
 
@@ -1093,6 +1132,8 @@ public class SearchUtil {
             } else if (SearchConstants.PAGE.equals(name)) {
                 int pageNumber = Integer.parseInt(first);
                 context.setPageNumber(pageNumber);
+            } else if (SearchConstants.CURSOR.equals(name)) {
+                context.setPageToken(first);
             } else if (SearchConstants.SORT.equals(name)) {
                 // in R4, we only look for _sort
                 sort.parseSortParameter(resourceTypeName, context, values, lenient);
@@ -1102,6 +1143,8 @@ public class SearchUtil {
                 parseElementsParameter(resourceType, context, values, lenient);
             } else if (SearchConstants.SUMMARY.equals(name) && first != null) {
                 context.setSummaryParameter(SummaryValueSet.from(first));
+            } else if (SearchConstants.TOTAL.equals(name) && first != null) {
+                context.setTotalParameter(TotalValueSet.from(first));
             }
         } catch (FHIRSearchException se) {
             throw se;
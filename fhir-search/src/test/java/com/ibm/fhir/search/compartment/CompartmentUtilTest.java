@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019
+ * (C) Copyright IBM Corp. 2019, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -16,6 +16,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.testng.annotations.Test;
 
@@ -108,6 +109,21 @@ public class CompartmentUtilTest extends BaseSearchTest {
         assertFalse(results.isEmpty());
     }
 
+    @Test()
+    public void testGetCompartmentParamsForResourceType() {
+        Map<String, Set<String>> params = CompartmentUtil.getCompartmentParamsForResourceType("Observation");
+        // Observation.subject may refer to a Patient or a Device, and Observation.performer to any of these
+        assertEquals(params.get("subject").size(), 2);
+        assertTrue(params.get("subject").contains("Patient"));
+        assertTrue(params.get("subject").contains("Device"));
+        assertEquals(params.get("performer").size(), 3);
+        assertTrue(params.get("encounter").contains("Encounter"));
+        assertFalse(params.containsKey("code"));
+
+        assertTrue(CompartmentUtil.getCompartmentParamsForResourceType("FrenchFood").isEmpty());
+        assertEquals(CompartmentUtil.makeCompartmentParamName("Patient"), "ibm-internal-Patient-Compartment");
+    }
+
     @Test()
     public void testBuildCompositeBundle() {
         try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream(); PrintStream out = new PrintStream(outputStream);) {
@@ -1,12 +1,14 @@
 /*
- * (C) Copyright IBM Corp. 2019
+ * (C) Copyright IBM Corp. 2019, 2020
  *
  * SPDX-License-Identifier: Apache-2.0
  */
 
 package com.ibm.fhir.search.parameters;
 
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertSame;
 import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertNotNull;
 import static org.testng.AssertJUnit.assertNull;
@@ -14,6 +16,7 @@ import static org.testng.AssertJUnit.assertTrue;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
@@ -391,6 +394,45 @@ public class MultiTenantSearchParameterTest extends BaseSearchTest {
         assertEquals(35, result.size());
     }
 
+    @Test
+    public void testApplicableSearchParametersIndexed() throws Exception {
+        FHIRRequestContext.set(new FHIRRequestContext("tenant1"));
+
+        // The effective search parameters are computed once and shared.
+        List<SearchParameter> result = SearchUtil.getApplicableSearchParameters("Observation");
+        assertSame(SearchUtil.getApplicableSearchParameters("Observation"), result);
+
+        Map<String, SearchParameter> map = SearchUtil.getApplicableSearchParametersMap("Observation");
+        assertSame(SearchUtil.getApplicableSearchParametersMap("Observation"), map);
+        assertSame(map.get("code"), result.get(0));
+        assertNull(map.get("category"));
+
+        // Each tenant has its own index.
+        FHIRRequestContext.set(new FHIRRequestContext("default"));
+        assertNotNull(SearchUtil.getApplicableSearchParametersMap("Observation").get("category"));
+    }
+
+    @Test
+    void testDynamicApplicableSearchParameters() throws Exception {
+        // Test that the index is rebuilt when the tenant's search parameters are reloaded.
+        FHIRRequestContext.set(new FHIRRequestContext("tenant2"));
+
+        String mainFile = "target/test-classes/config/tenant2/extension-search-parameters.json";
+        String hiddenFile1 = mainFile + ".hide1";
+
+        deleteFile(mainFile);
+        assertFalse(SearchUtil.getApplicableSearchParametersMap("Patient").containsKey("favorite-mlb-team"));
+
+        // Sleep a bit to allow file mod times to register.
+        Thread.sleep(1000);
+
+        copyFile(hiddenFile1, mainFile);
+        assertTrue(SearchUtil.getApplicableSearchParametersMap("Patient").containsKey("favorite-mlb-team"));
+
+        deleteFile(mainFile);
+        assertFalse(SearchUtil.getApplicableSearchParametersMap("Patient").containsKey("favorite-mlb-team"));
+    }
+
     /**
      * This function returns a list containing the names of the SearchParameters contained in the input list.
      * 
@@ -0,0 +1,126 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.search.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.examples.ExamplesUtil;
+import com.ibm.fhir.examples.Index;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.resource.SearchParameter;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.Markdown;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.code.PublicationStatus;
+import com.ibm.fhir.model.type.code.ResourceType;
+import com.ibm.fhir.model.type.code.SearchParamType;
+import com.ibm.fhir.path.FHIRPathNode;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
+import com.ibm.fhir.search.util.ExtractionPlan;
+import com.ibm.fhir.search.util.SearchUtil;
+
+/**
+ * Tests that the compiled extraction plan produces the same values as the FHIRPathEvaluator.
+ */
+public class ExtractionPlanTest extends BaseSearchTest {
+
+    @Test
+    public void testPlanMatchesEvaluatorForExamples() throws Exception {
+        FHIRPathEvaluator evaluator = FHIRPathEvaluator.evaluator();
+        int compiled = 0;
+        int resources = 0;
+
+        try (BufferedReader index = new BufferedReader(ExamplesUtil.indexReader(Index.MINIMAL_JSON))) {
+            String line;
+            while ((line = index.readLine()) != null) {
+                String[] tokens = line.trim().split("\\s+");
+                if (tokens.length != 2 || !"OK".equals(tokens[0])) {
+                    continue;
+                }
+                Resource resource;
+                try (Reader reader = ExamplesUtil.resourceReader(tokens[1])) {
+                    resource = FHIRParser.parser(Format.JSON).parse(reader);
+                }
+                resources++;
+
+                List<SearchParameter> parameters = SearchUtil.getApplicableSearchParameters(resource.getClass().getSimpleName());
+                ExtractionPlan plan = ExtractionPlan.compile(parameters);
+                EvaluationContext evaluationContext = new EvaluationContext(resource, true);
+                Map<SearchParameter, Collection<FHIRPathNode>> actual = plan.evaluate(evaluationContext);
+
+                for (SearchParameter parameter : parameters) {
+                    if (!plan.isCompiled(parameter)) {
+                        continue;
+                    }
+                    compiled++;
+                    String expression = parameter.getExpression().getValue();
+                    Collection<FHIRPathNode> expected = evaluator.evaluate(evaluationContext, expression);
+                    assertEquals(new ArrayList<>(actual.get(parameter)), new ArrayList<>(expected), tokens[1] + " " + expression);
+                }
+            }
+        }
+
+        assertTrue(resources > 0);
+        assertTrue(compiled > 0);
+    }
+
+    @Test
+    public void testCompiledForms() throws Exception {
+        SearchParameter path = searchParameter("Patient.name.given | Patient.name.family");
+        SearchParameter cast = searchParameter("(Observation.value as Quantity) | (Observation.component.value as Quantity)");
+        SearchParameter function = searchParameter("Observation.effective.as(dateTime)");
+        SearchParameter where = searchParameter("Patient.telecom.where(system='email')");
+        SearchParameter resolve = searchParameter("Observation.subject.where(resolve() is Patient)");
+        SearchParameter indexer = searchParameter("Bundle.entry[0].resource");
+
+        List<SearchParameter> parameters = new ArrayList<>();
+        parameters.add(path);
+        parameters.add(cast);
+        parameters.add(function);
+        parameters.add(where);
+        parameters.add(resolve);
+        parameters.add(indexer);
+
+        ExtractionPlan plan = ExtractionPlan.compile(parameters);
+        assertTrue(plan.isCompiled(path));
+        assertTrue(plan.isCompiled(cast));
+        assertTrue(plan.isCompiled(function));
+        assertFalse(plan.isCompiled(where));
+        assertFalse(plan.isCompiled(resolve));
+        assertFalse(plan.isCompiled(indexer));
+
+        assertTrue(plan.isFor(parameters));
+        assertFalse(plan.isFor(parameters.subList(1, parameters.size())));
+    }
+
+    private static SearchParameter searchParameter(String expression) {
+        return SearchParameter.builder()
+                .url(Uri.of("http://example.com/SearchParameter/test"))
+                .name(com.ibm.fhir.model.type.String.of("test"))
+                .status(PublicationStatus.DRAFT)
+                .description(Markdown.of("test"))
+                .code(Code.of("test"))
+                .base(ResourceType.PATIENT)
+                .type(SearchParamType.TOKEN)
+                .expression(com.ibm.fhir.model.type.String.of(expression))
+                .build();
+    }
+}
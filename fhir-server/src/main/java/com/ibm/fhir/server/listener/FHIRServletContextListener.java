@@ -11,11 +11,17 @@ import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_BOOTSTRAP_DB;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_KAFKA_CONNECTIONPROPS;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_KAFKA_ENABLED;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_KAFKA_TOPICNAME;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_REGISTRY_SOFT_EVICTION;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_REGISTRY_WARM_UP;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_REGISTRY_WARM_UP_PARALLELISM;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_SERVER_REGISTRY_RESOURCE_PROVIDER_ENABLED;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_WEBSOCKET_ENABLED;
 
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -37,6 +43,7 @@ import com.ibm.fhir.config.PropertyGroup.PropertyEntry;
 import com.ibm.fhir.database.utils.derby.DerbyServerPropertiesMgr;
 import com.ibm.fhir.model.config.FHIRModelConfig;
 import com.ibm.fhir.model.util.FHIRUtil;
+import com.ibm.fhir.notification.FHIRNotificationService;
 import com.ibm.fhir.notification.websocket.impl.FHIRNotificationServiceEndpointConfig;
 import com.ibm.fhir.notifications.kafka.impl.FHIRNotificationKafkaPublisher;
 import com.ibm.fhir.operation.registry.FHIROperationRegistry;
@@ -44,7 +51,9 @@ import com.ibm.fhir.persistence.helper.FHIRPersistenceHelper;
 import com.ibm.fhir.persistence.interceptor.impl.FHIRPersistenceInterceptorMgr;
 import com.ibm.fhir.persistence.jdbc.util.DerbyBootstrapper;
 import com.ibm.fhir.registry.FHIRRegistry;
+import com.ibm.fhir.registry.util.PackageRegistryResource;
 import com.ibm.fhir.search.util.SearchUtil;
+import com.ibm.fhir.server.helper.FHIRServerUtils;
 import com.ibm.fhir.server.registry.ServerRegistryResourceProvider;
 
 @WebListener("IBM FHIR Server Servlet Context Listener")
@@ -53,8 +62,11 @@ public class FHIRServletContextListener implements ServletContextListener {
 
     private static final String ATTRNAME_WEBSOCKET_SERVERCONTAINER = "javax.websocket.server.ServerContainer";
     private static final String DEFAULT_KAFKA_TOPICNAME = "fhirNotifications";
+    private static final int DEFAULT_REGISTRY_WARM_UP_PARALLELISM = 4;
+    private static final String MANAGED_EXECUTOR_JNDI_NAME = "java:comp/DefaultManagedExecutorService";
     public static final String FHIR_SERVER_INIT_COMPLETE = "com.ibm.fhir.webappInitComplete";
     private static FHIRNotificationKafkaPublisher kafkaPublisher = null;
+    private static boolean notificationsEnabled = false;
 
     @Override
     public void contextInitialized(ServletContextEvent event) {
@@ -126,14 +138,19 @@ public class FHIRServletContextListener implements ServletContextListener {
             } else {
                 log.info("Bypassing Kafka notification init.");
             }
+            notificationsEnabled = websocketEnabled || kafkaEnabled;
 
             Boolean checkReferenceTypes = fhirConfig.getBooleanProperty(PROPERTY_CHECK_REFERENCE_TYPES, Boolean.TRUE);
             FHIRModelConfig.setCheckReferenceTypes(checkReferenceTypes);
 
             bootstrapDerbyDatabases(fhirConfig);
 
+            Boolean registrySoftEviction = fhirConfig.getBooleanProperty(PROPERTY_REGISTRY_SOFT_EVICTION, Boolean.FALSE);
+            PackageRegistryResource.setSoftEvictionEnabled(registrySoftEviction);
+
             log.fine("Initializing FHIRRegistry...");
             FHIRRegistry.getInstance();
+            warmUpRegistry(fhirConfig);
 
             Boolean serverRegistryResourceProviderEnabled = fhirConfig.getBooleanProperty(PROPERTY_SERVER_REGISTRY_RESOURCE_PROVIDER_ENABLED, Boolean.FALSE);
             if (serverRegistryResourceProviderEnabled) {
@@ -156,6 +173,35 @@ public class FHIRServletContextListener implements ServletContextListener {
         }
     }
 
+    /**
+     * Loads the profiles and value sets listed in the configuration of each tenant in the background, if any,
+     * on the managed executor of the server.
+     */
+    private void warmUpRegistry(PropertyGroup fhirConfig) throws Exception {
+        Set<String> urls = new LinkedHashSet<>();
+        FHIRConfiguration configuration = FHIRConfiguration.getInstance();
+        for (String tenantId : configuration.getConfiguredTenants()) {
+            PropertyGroup tenantConfig = configuration.loadConfigurationForTenant(tenantId);
+            List<String> tenantUrls = (tenantConfig != null) ? tenantConfig.getStringListProperty(PROPERTY_REGISTRY_WARM_UP) : null;
+            if (tenantUrls != null) {
+                urls.addAll(tenantUrls);
+            }
+        }
+        if (urls.isEmpty()) {
+            log.fine("No FHIRRegistry resources to warm up.");
+            return;
+        }
+        int parallelism = fhirConfig.getIntProperty(PROPERTY_REGISTRY_WARM_UP_PARALLELISM, DEFAULT_REGISTRY_WARM_UP_PARALLELISM);
+        log.info("Warming up " + urls.size() + " FHIRRegistry resources with " + parallelism + " threads...");
+        Executor executor = FHIRServerUtils.getJNDIValue(MANAGED_EXECUTOR_JNDI_NAME, null);
+        if (executor != null) {
+            FHIRRegistry.getInstance().warmUp(urls, executor, parallelism);
+        } else {
+            log.fine(MANAGED_EXECUTOR_JNDI_NAME + " is not available, warming up FHIRRegistry resources on threads of its own.");
+            FHIRRegistry.getInstance().warmUp(urls, parallelism);
+        }
+    }
+
     /**
      * Bootstraps derby databases during server startup if requested.
      */
@@ -221,6 +267,12 @@ public class FHIRServletContextListener implements ServletContextListener {
             // Set our "initComplete" flag back to false.
             event.getServletContext().setAttribute(FHIR_SERVER_INIT_COMPLETE, Boolean.FALSE);
 
+            // Deliver the notification events still queued before the publishers go away.
+            if (notificationsEnabled) {
+                FHIRNotificationService.getInstance().shutdown();
+                notificationsEnabled = false;
+            }
+
             // If we previously initialized the Kafka publisher, then shut it down now.
             if (kafkaPublisher != null) {
                 kafkaPublisher.shutdown();
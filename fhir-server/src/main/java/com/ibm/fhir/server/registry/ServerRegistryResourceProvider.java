@@ -20,7 +20,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
-import com.ibm.fhir.core.util.LRUCache;
+import com.ibm.fhir.core.util.ConcurrentBoundedCache;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.resource.SearchParameter;
 import com.ibm.fhir.model.resource.StructureDefinition;
@@ -42,7 +42,7 @@ public class ServerRegistryResourceProvider implements FHIRRegistryResourceProvi
     public static final Logger log = Logger.getLogger(ServerRegistryResourceProvider.class.getName());
 
     private final PersistenceHelper persistenceHelper;
-    private final Map<String, List<FHIRRegistryResource>> registryResourceMap = LRUCache.createLRUCache(1024);
+    private final ConcurrentBoundedCache<String, List<FHIRRegistryResource>> registryResourceMap = ConcurrentBoundedCache.createCache(1024);
 
     public ServerRegistryResourceProvider(PersistenceHelper persistenceHelper) {
         try {
@@ -17,12 +17,21 @@ import java.net.URI;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -67,6 +76,7 @@ import com.ibm.fhir.operation.registry.FHIROperationRegistry;
 import com.ibm.fhir.operation.util.FHIROperationUtil;
 import com.ibm.fhir.persistence.FHIRPersistence;
 import com.ibm.fhir.persistence.FHIRPersistenceTransaction;
+import com.ibm.fhir.persistence.ResourceKey;
 import com.ibm.fhir.persistence.SingleResourceResult;
 import com.ibm.fhir.persistence.context.FHIRHistoryContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
@@ -75,6 +85,7 @@ import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceResourceDeletedException;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceResourceNotFoundException;
 import com.ibm.fhir.persistence.helper.FHIRTransactionHelper;
+import com.ibm.fhir.persistence.helper.PersistenceHelper;
 import com.ibm.fhir.persistence.interceptor.FHIRPersistenceEvent;
 import com.ibm.fhir.persistence.interceptor.impl.FHIRPersistenceInterceptorMgr;
 import com.ibm.fhir.persistence.util.FHIRPersistenceUtil;
@@ -83,10 +94,12 @@ import com.ibm.fhir.rest.FHIRResourceHelpers;
 import com.ibm.fhir.rest.FHIRRestOperationResponse;
 import com.ibm.fhir.search.SearchConstants;
 import com.ibm.fhir.search.SummaryValueSet;
+import com.ibm.fhir.search.TotalValueSet;
 import com.ibm.fhir.search.context.FHIRSearchContext;
 import com.ibm.fhir.search.exception.FHIRSearchException;
 import com.ibm.fhir.search.util.SearchUtil;
 import com.ibm.fhir.server.exception.FHIRRestBundledRequestException;
+import com.ibm.fhir.server.helper.FHIRServerUtils;
 import com.ibm.fhir.validation.FHIRValidator;
 import com.ibm.fhir.validation.exception.FHIRValidationException;
 
@@ -112,8 +125,19 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
             .appendPattern(", dd-MMM-yy HH:mm:ss")
             .optionalEnd().toFormatter();
 
+    // The executor used to process the entries of batch bundles concurrently
+    private static final String BATCH_EXECUTOR_JNDI_NAME = "java:comp/DefaultManagedExecutorService";
+    private static final int DEFAULT_BATCH_MAX_CONCURRENCY_PER_TENANT = 16;
+
+    // The number of executor threads each tenant may use at once for batch bundle entries,
+    // shared by all of its requests so that a single large bundle can't starve the others
+    private static final Map<String, Semaphore> batchTenantPermits = new ConcurrentHashMap<>();
+
     private FHIRPersistence persistence = null;
 
+    // Used to obtain a FHIRPersistence instance for each thread processing batch bundle entries concurrently
+    private PersistenceHelper persistenceHelper = null;
+
     // These values are used for correlating requests within a bundle.
     private String bundleTransactionCorrelationId = null;
     private String bundleRequestCorrelationId = null;
@@ -122,6 +146,18 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         this.persistence = persistence;
     }
 
+    /**
+     * @param persistence
+     *            the FHIRPersistence instance used by this helper
+     * @param persistenceHelper
+     *            used to obtain a FHIRPersistence instance for each additional thread when the entries of a batch bundle
+     *            are processed concurrently; without it, the entries are processed one at a time
+     */
+    public FHIRRestHelper(FHIRPersistence persistence, PersistenceHelper persistenceHelper) {
+        this.persistence = persistence;
+        this.persistenceHelper = persistenceHelper;
+    }
+
     @Override
     public FHIRRestOperationResponse doCreate(String type, Resource resource, String ifNoneExist,
             Map<String, String> requestProperties) throws Exception {
@@ -802,6 +838,72 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         }
     }
 
+    @Override
+    public List<Resource> doReadMany(List<ResourceKey> keys, boolean includeDeleted, Map<String, String> requestProperties)
+            throws Exception {
+        log.entering(this.getClass().getName(), "doReadMany");
+
+        FHIRTransactionHelper txn = new FHIRTransactionHelper(getTransaction());
+
+        // Save the current request context.
+        FHIRRequestContext requestContext = FHIRRequestContext.get();
+
+        try {
+            // Start a new txn in the persistence layer if one is not already active.
+            txn.begin();
+
+            // First, invoke the 'beforeRead' or 'beforeVread' interceptor methods for each key.
+            List<FHIRPersistenceEvent> events = new ArrayList<>(keys.size());
+            for (ResourceKey key : keys) {
+                FHIRPersistenceEvent event =
+                        new FHIRPersistenceEvent(null, buildPersistenceEventProperties(key.getResourceType().getSimpleName(),
+                            key.getLogicalId(), key.getVersionId(), requestProperties));
+                if (key.getVersionId() == null) {
+                    getInterceptorMgr().fireBeforeReadEvent(event);
+                } else {
+                    getInterceptorMgr().fireBeforeVreadEvent(event);
+                }
+                events.add(event);
+            }
+
+            FHIRPersistenceEvent event =
+                    new FHIRPersistenceEvent(null, buildPersistenceEventProperties(null, null, null, requestProperties));
+            FHIRPersistenceContext persistenceContext =
+                    FHIRPersistenceContextFactory.createPersistenceContext(event, includeDeleted);
+            List<SingleResourceResult<Resource>> results = persistence.readMany(persistenceContext, keys);
+
+            // Invoke the 'afterRead' or 'afterVread' interceptor methods for each resource.
+            List<Resource> resources = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                Resource resource = results.get(i).getResource();
+                if (keys.get(i).getVersionId() == null) {
+                    events.get(i).setFhirResource(resource);
+                    getInterceptorMgr().fireAfterReadEvent(events.get(i));
+                } else if (resource != null) {
+                    events.get(i).setFhirResource(resource);
+                    getInterceptorMgr().fireAfterVreadEvent(events.get(i));
+                }
+                resources.add(resource);
+            }
+
+            // Commit our transaction if we started one before.
+            txn.commit();
+            txn = null;
+
+            return resources;
+        } finally {
+            // Restore the original request context.
+            FHIRRequestContext.set(requestContext);
+
+            // If we previously started a transaction and it's still active, we need to rollback due to an error.
+            if (txn != null) {
+                txn.rollback();
+            }
+
+            log.exiting(this.getClass().getName(), "doReadMany");
+        }
+    }
+
     /**
      * Performs the work of retrieving versions of a Resource.
      *
@@ -1457,7 +1559,7 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                         + bundleTransactionCorrelationId);
             }
 
-            Map<String, String> localRefMap = new HashMap<>();
+            Map<String, String> localRefMap = new ConcurrentHashMap<>();
 
             // Next, process entries in the correct order.
             responseBundle = processEntriesForMethod(requestBundle, responseBundle, HTTPVerb.DELETE,
@@ -1493,6 +1595,121 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         }
     }
 
+    /**
+     * Reads the resources of the read and vread GET request entries with a single readMany call.
+     * <br>
+     * No interceptor methods are invoked here. They are invoked once per entry when the entry is processed, by
+     * {@link #firePrefetchedReadEvents} for the resources that were found, or by doRead and doVRead for the entries
+     * that fall back to being read on their own.
+     *
+     * @param requestBundle
+     *            the bundle containing the request entries
+     * @param entryIndices
+     *            the indices of the GET request entries
+     * @return the resources that were found, keyed by the index of their request entry
+     */
+    private Map<Integer, Resource> prefetchReadEntries(Bundle requestBundle, List<Integer> entryIndices) {
+        List<Integer> indices = new ArrayList<>();
+        List<ResourceKey> keys = new ArrayList<>();
+        for (Integer entryIndex : entryIndices) {
+            Bundle.Entry.Request request = requestBundle.getEntry().get(entryIndex).getRequest();
+            if (request == null || request.getUrl() == null || request.getUrl().getValue() == null) {
+                continue;
+            }
+            String[] pathTokens = new FHIRUrlParser(request.getUrl().getValue()).getPathTokens();
+            if (pathTokens.length == 0 || !ModelSupport.isResourceType(pathTokens[0])) {
+                continue;
+            }
+            // Only plain reads (Type/id) and vreads (Type/id/_history/vid), not searches, histories or operations
+            if (pathTokens.length == 2 && isPlainIdToken(pathTokens[1])) {
+                keys.add(new ResourceKey(getResourceType(pathTokens[0]), pathTokens[1]));
+                indices.add(entryIndex);
+            } else if (pathTokens.length == 4 && isPlainIdToken(pathTokens[1]) && "_history".equals(pathTokens[2])
+                    && isPlainIdToken(pathTokens[3])) {
+                keys.add(new ResourceKey(getResourceType(pathTokens[0]), pathTokens[1], pathTokens[3]));
+                indices.add(entryIndex);
+            }
+        }
+
+        // Not worth it for a single entry
+        if (keys.size() < 2) {
+            return Collections.emptyMap();
+        }
+
+        FHIRRequestContext requestContext = FHIRRequestContext.get();
+        FHIRTransactionHelper txn = null;
+        Map<Integer, Resource> result = new HashMap<>();
+        try {
+            // Rolling back would mark an enclosing transaction as rollback-only, so only use our own.
+            FHIRPersistenceTransaction transaction = getTransaction();
+            if (transaction == null || !transaction.isActive()) {
+                txn = new FHIRTransactionHelper(transaction);
+                txn.begin();
+            }
+
+            FHIRPersistenceEvent event =
+                    new FHIRPersistenceEvent(null, buildPersistenceEventProperties(null, null, null, null));
+            FHIRPersistenceContext persistenceContext = FHIRPersistenceContextFactory.createPersistenceContext(event, false);
+            List<SingleResourceResult<Resource>> results = persistence.readMany(persistenceContext, keys);
+            for (int i = 0; i < results.size(); i++) {
+                Resource resource = results.get(i).getResource();
+                if (resource != null) {
+                    result.put(indices.get(i), resource);
+                }
+            }
+
+            if (txn != null) {
+                txn.commit();
+                txn = null;
+            }
+        } catch (Exception e) {
+            // Each entry is read again on its own, which reports the error for the entries it applies to
+            log.log(Level.FINE, "Unable to read the bundle request entries together", e);
+            return Collections.emptyMap();
+        } finally {
+            FHIRRequestContext.set(requestContext);
+            if (txn != null) {
+                txn.rollback();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the path token is a logical id or version id rather than a keyword like _history or $operation
+     */
+    private boolean isPlainIdToken(String pathToken) {
+        return !pathToken.isEmpty() && !pathToken.startsWith("_") && !pathToken.startsWith("$");
+    }
+
+    /**
+     * Invokes the 'beforeRead' and 'afterRead' interceptor methods, or the 'beforeVread' and 'afterVread' interceptor
+     * methods if a version id is given, for a resource that was read by {@link #prefetchReadEntries}.
+     *
+     * @return the resource, as returned by the read or vread
+     */
+    private Resource firePrefetchedReadEvents(String type, String id, String versionId, Resource resource) throws Exception {
+        // Save the current request context.
+        FHIRRequestContext requestContext = FHIRRequestContext.get();
+        try {
+            FHIRPersistenceEvent event =
+                    new FHIRPersistenceEvent(null, buildPersistenceEventProperties(type, id, versionId, null));
+            if (versionId == null) {
+                getInterceptorMgr().fireBeforeReadEvent(event);
+                event.setFhirResource(resource);
+                getInterceptorMgr().fireAfterReadEvent(event);
+            } else {
+                getInterceptorMgr().fireBeforeVreadEvent(event);
+                event.setFhirResource(resource);
+                getInterceptorMgr().fireAfterVreadEvent(event);
+            }
+            return resource;
+        } finally {
+            // Restore the original request context.
+            FHIRRequestContext.set(requestContext);
+        }
+    }
+
     /**
      * Processes request entries in the specified request bundle whose method matches 'httpMethod'.
      *
@@ -1550,383 +1767,538 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                 }
             }
 
+            // Next, for GET requests, read the resources of all of the read and vread request entries up front,
+            // so that they are read with one query per resource type instead of one query per entry.
+            // Entries whose resource isn't found here are read on their own as usual, which reports the error.
+            Map<Integer, Resource> prefetchedResources = Collections.emptyMap();
+            if (httpMethod.equals(HTTPVerb.GET)) {
+                prefetchedResources = prefetchReadEntries(requestBundle, entryIndices);
+            }
+
             // Now visit each of the request entries using the list of indices obtained above.
-            // Use hashmap to store both the index and the according updated response bundle entry.
-            HashMap<Integer, Bundle.Entry> responseIndexAndEntries =
-                    new HashMap<Integer, Bundle.Entry>();
-            for (Integer entryIndex : entryIndices) {
-                Bundle.Entry requestEntry = requestBundle.getEntry().get(entryIndex);
-                Bundle.Entry responseEntry = responseBundle.getEntry().get(entryIndex);
-                Bundle.Entry.Builder responseEntryBuilder = responseEntry.toBuilder();
-
-                Bundle.Entry.Request request = requestEntry.getRequest();
-                Bundle.Entry.Response response = responseEntry.getResponse();
-
-                StringBuffer requestDescription = new StringBuffer();
-                long initialTime = System.currentTimeMillis();
-                try {
-                    FHIRUrlParser requestURL = new FHIRUrlParser(request.getUrl().getValue());
-
-                    String path = requestURL.getPath();
-                    String query = requestURL.getQuery();
-                    if (log.isLoggable(Level.FINER)) {
-                        log.finer("Processing bundle request entry " + entryIndex + "; method="
-                                + request.getMethod().getValue() + ", url="
-                                + request.getUrl().getValue());
-                        log.finer("--> path: " + path);
-                        log.finer("--> query: " + query);
-                    }
+            // Use a map to store both the index and the according updated response bundle entry.
+            // The entries of a batch bundle are independent, so they may be processed concurrently.
+            Map<Integer, Bundle.Entry> responseIndexAndEntries = new ConcurrentHashMap<>();
+            int parallelism = failFast ? 1 : getBatchParallelism(entryIndices.size());
+            if (parallelism > 1) {
+                processEntriesConcurrently(parallelism, entryIndices, requestBundle, responseBundle, localRefMap,
+                        bundleRequestCorrelationId, prefetchedResources, responseIndexAndEntries);
+            } else {
+                for (Integer entryIndex : entryIndices) {
+                    processEntry(entryIndex, requestBundle, responseBundle, failFast, localRefMap,
+                            bundleRequestCorrelationId, prefetchedResources, responseIndexAndEntries);
+                }
+            }
 
-                    // Log our initial info message for this request.
-                    requestDescription.append("entryIndex:[");
-                    requestDescription.append(entryIndex);
-                    requestDescription.append("] correlationId:[");
-                    requestDescription.append(bundleRequestCorrelationId);
-                    requestDescription.append("] method:[");
-                    requestDescription.append(request.getMethod().getValue());
-                    requestDescription.append("] uri:[");
-                    requestDescription.append(request.getUrl().getValue());
-                    requestDescription.append("]");
-                    log.info("Received bundle request: " + requestDescription.toString());
-
-                    String[] pathTokens = requestURL.getPathTokens();
-                    MultivaluedMap<String, String> queryParams = requestURL.getQueryParameters();
-
-                    // Construct the absolute requestUri to be used for any response bundles associated
-                    // with history and search requests.
-                    String absoluteUri =
-                            getAbsoluteUri(getRequestUri(), request.getUrl().getValue());
-
-                    if (request.getMethod().equals(HTTPVerb.GET)) {
-                        Resource resource = null;
-                        int httpStatus = SC_OK;
-
-                        // Process a GET (read, vread, history, search, etc.).
-                        // Determine the type of request from the path tokens.
-                        if (pathTokens.length > 0
-                                && pathTokens[pathTokens.length - 1].startsWith("$")) {
-                            // This is a custom operation request
-
-                            // Chop off the '$' and save the name
-                            String operationName = pathTokens[pathTokens.length - 1].substring(1);
-
-                            // FHIROperationContext operationContext;
-                            switch (pathTokens.length) {
-                            case 1: {
-                                FHIROperationContext operationContext =
-                                        FHIROperationContext.createSystemOperationContext();
-                                resource =
-                                        doInvoke(operationContext, null, null, null, operationName, null, queryParams, null);
-                            }
-                                break;
-                            case 2: {
-                                FHIROperationContext operationContext =
-                                        FHIROperationContext.createResourceTypeOperationContext();
-                                resource =
-                                        doInvoke(operationContext, pathTokens[0], null, null, operationName, null, queryParams, null);
-                            }
-                                break;
-                            case 3: {
-                                FHIROperationContext operationContext =
-                                        FHIROperationContext.createInstanceOperationContext();
-                                resource =
-                                        doInvoke(operationContext, pathTokens[0], pathTokens[1], null, operationName, null, queryParams, null);
-                            }
-                                break;
-                            default:
-                                String msg = "Invalid URL for custom operation '"
-                                        + pathTokens[pathTokens.length - 1] + "'";
-                                throw buildRestException(msg, IssueType.NOT_FOUND);
-                            }
-                        } else if (pathTokens.length == 1) {
-                            // This is a 'search' request.
-                            if ("_search".equals(pathTokens[0])) {
-                                resource =
-                                        doSearch("Resource", null, null, queryParams, absoluteUri, null, null);
-                            } else {
-                                resource =
-                                        doSearch(pathTokens[0], null, null, queryParams, absoluteUri, null, null);
-                            }
-                        } else if (pathTokens.length == 2) {
-                            // This is a 'read' request.
-                            resource =
-                                    doRead(pathTokens[0], pathTokens[1], true, false, null, null);
-                        } else if (pathTokens.length == 3) {
-                            if ("_history".equals(pathTokens[2])) {
-                                // This is a 'history' request.
-                                resource =
-                                        doHistory(pathTokens[0], pathTokens[1], queryParams, absoluteUri, null);
-                            } else {
-                                // This is a compartment based search
-                                resource =
-                                        doSearch(pathTokens[2], pathTokens[0], pathTokens[1], queryParams, absoluteUri, null, null);
-                            }
-                        } else if (pathTokens.length == 4 && pathTokens[2].equals("_history")) {
-                            // This is a 'vread' request.
-                            resource = doVRead(pathTokens[0], pathTokens[1], pathTokens[3], null);
-                        } else {
-                            String msg = "Unrecognized path in request URL: " + path;
-                            throw buildRestException(msg, IssueType.NOT_FOUND);
-                        }
+            // Now, let's re-construct the responseBundle
+            responseBundle = reconstructResponseBundle(responseBundle, responseIndexAndEntries);
+            return responseBundle;
 
-                        // Save the results of the operation in the bundle response field.
-                        Bundle.Entry.Response.Builder responseBuilder = response.toBuilder();
-                        responseBuilder.status(string(Integer.toString(httpStatus)));
-                        setBundleResponseStatus(response, httpStatus, requestDescription.toString(), initialTime);
-
-                        responseIndexAndEntries.put(entryIndex, responseEntryBuilder.resource(resource).response(responseBuilder.build()).build());
-                    } else if (request.getMethod().equals(HTTPVerb.POST)) {
-                        // Process a POST (create or search, or custom operation).
-                        if (pathTokens.length > 0
-                                && pathTokens[pathTokens.length - 1].startsWith("$")) {
-                            // This is a custom operation request
-
-                            // Chop off the '$' and save the name
-                            String operationName = pathTokens[pathTokens.length - 1].substring(1);
-
-                            // Retrieve the resource from the request entry.
-                            Resource resource = requestEntry.getResource();
-
-                            FHIROperationContext operationContext;
-                            Resource result;
-                            switch (pathTokens.length) {
-                            case 1:
-                                operationContext =
-                                        FHIROperationContext.createSystemOperationContext();
-                                result = doInvoke(operationContext, null, null, null, operationName, resource, queryParams, null);
-                                break;
-                            case 2:
-                                operationContext =
-                                        FHIROperationContext.createResourceTypeOperationContext();
-                                result = doInvoke(operationContext, pathTokens[0], null, null, operationName, resource, queryParams, null);
-                                break;
-                            case 3:
-                                operationContext =
-                                        FHIROperationContext.createInstanceOperationContext();
-                                result = doInvoke(operationContext, pathTokens[0], pathTokens[1], null, operationName, resource, queryParams, null);
-                                break;
-                            default:
-                                String msg = "Invalid URL for custom operation '"
-                                        + pathTokens[pathTokens.length - 1] + "'";
-                                throw buildRestException(msg, IssueType.NOT_FOUND);
-                            }
+        } finally {
+            log.exiting(this.getClass().getName(), "processEntriesForMethod");
+        }
+    }
 
-                            Bundle.Entry.Response.Builder responseBuilder = response.toBuilder();
-                            // Add warning and hint issues to response outcome if any.
-                            if (result instanceof OperationOutcome) {
-                                if (((OperationOutcome) result).getIssue() != null) {
-                                    responseBuilder.outcome(result);
-                                }
-                            }
+    /**
+     * Returns the number of threads to use for processing the specified number of batch bundle entries.
+     */
+    private int getBatchParallelism(int entryCount) {
+        if (persistenceHelper == null || entryCount < 2) {
+            return 1;
+        }
+        int parallelism = FHIRConfigHelper.getIntProperty(FHIRConfiguration.PROPERTY_BATCH_PARALLELISM, 1);
+        return Math.max(1, Math.min(parallelism, entryCount));
+    }
 
-                            responseBuilder.status(string(Integer.toString(SC_OK)));
-                            responseIndexAndEntries.put(entryIndex, responseEntryBuilder
-                                    .resource(result)
-                                    .response(responseBuilder.build())
-                                    .build());
-                            setBundleResponseStatus(response, SC_OK, requestDescription.toString(), initialTime);
-
-                        } else if (pathTokens.length == 2 && "_search".equals(pathTokens[1])) {
-                            // This is a 'search' request.
-                            Bundle searchResults =
-                                    doSearch(pathTokens[0], null, null, queryParams, absoluteUri, null, null);
-
-                            // Save the results of the operation in the bundle response field.
-                            Bundle.Entry.Response.Builder responseBuilder = response.toBuilder();
-                            responseBuilder.status(string(Integer.toString(SC_OK)));
-
-                            responseIndexAndEntries.put(entryIndex, responseEntryBuilder
-                                    .resource(searchResults)
-                                    .response(responseBuilder.build())
-                                    .build());
-
-                            setBundleResponseStatus(response, SC_OK, requestDescription.toString(), initialTime);
-                        } else if (pathTokens.length == 1) {
-                            // This is a 'create' request.
-
-                            // Retrieve the local identifier from the request entry (if present).
-                            String localIdentifier =
-                                    retrieveLocalIdentifier(requestEntry, localRefMap);
-
-                            // Retrieve the resource from the request entry.
-                            Resource resource = requestEntry.getResource();
-                            if (resource == null) {
-                                String msg =
-                                        "BundleEntry.resource is required for bundled create requests.";
-                                throw buildRestException(msg, IssueType.NOT_FOUND);
-                            }
+    /**
+     * @return the executor used to process the entries of batch bundles concurrently, or null if there is none
+     */
+    protected ExecutorService getBatchExecutor() {
+        return FHIRServerUtils.getJNDIValue(BATCH_EXECUTOR_JNDI_NAME, null);
+    }
 
-                            // Convert any local references found within the resource to their
-                            // corresponding external reference.
-
-                            ReferenceMappingVisitor<Resource> visitor =
-                                    new ReferenceMappingVisitor<Resource>(localRefMap);
-                            resource.accept(visitor);
-                            resource = visitor.getResult();
-
-                            // Perform the 'create' operation.
-                            String ifNoneExist = request.getIfNoneExist() != null
-                                    ? request.getIfNoneExist().getValue() : null;
-                            FHIRRestOperationResponse ior =
-                                    doCreate(pathTokens[0], resource, ifNoneExist, null);
-
-                            // Get the updated resource from FHIRRestOperationResponse which has the correct ID, meta
-                            // etc.
-                            resource = ior.getResource();
-
-                            // Process and replace bundler Entry
-                            Bundle.Entry resultEntry = setBundleResponseFields(responseEntry, resource, ior.getOperationOutcome(),
-                                    ior.getLocationURI(), ior.getStatus().getStatusCode(), requestDescription.toString(), initialTime);
-
-                            responseIndexAndEntries.put(entryIndex, resultEntry);
-
-                            // Next, if a local identifier was present, we'll need to map this to the
-                            // correct external identifier (e.g. Patient/12345).
-                            addLocalRefMapping(localRefMap, localIdentifier, resource);
-                        } else {
-                            String msg =
-                                    "Request URL for bundled create requests should have a path with exactly one token (<resourceType>).";
-                            throw buildRestException(msg, IssueType.NOT_FOUND);
-                        }
-                    } else if (request.getMethod().equals(HTTPVerb.PUT)) {
-                        String type = null;
-                        String id = null;
-
-                        // Process a PUT (update).
-                        if (pathTokens.length == 1) {
-                            // A single-part url would be a conditional update: <type>?<query>
-                            type = pathTokens[0];
-                            if (query == null || query.isEmpty()) {
-                                String msg =
-                                        "A search query string is required for a conditional update operation.";
-                                throw buildRestException(msg, IssueType.INVALID);
-                            }
-                        } else if (pathTokens.length == 2) {
-                            // A two-part url would be a normal update: <type>/<id>.
-                            type = pathTokens[0];
-                            id = pathTokens[1];
-                        } else {
-                            // A url with any other pattern is an error.
-                            String msg = "Request URL for bundled PUT request should have path part with either one or two tokens "
-                                    + "(<resourceType> or <resourceType>/<id>).";
-                            throw buildRestException(msg, IssueType.INVALID);
-                        }
+    /**
+     * Processes the specified entries of a batch bundle on up to 'parallelism' threads: the current thread plus
+     * as many executor threads as the tenant has available. Each entry runs in its own transaction. Each executor
+     * thread gets its own copy of the request context of the current thread, since processing an entry may
+     * change the context. Response entries are stored by index, so the order of the response bundle is preserved.
+     */
+    private void processEntriesConcurrently(int parallelism, List<Integer> entryIndices, Bundle requestBundle,
+            Bundle responseBundle, Map<String, String> localRefMap, String bundleRequestCorrelationId,
+            Map<Integer, Resource> prefetchedResources, Map<Integer, Bundle.Entry> responseIndexAndEntries) throws Exception {
+        FHIRRequestContext requestContext = FHIRRequestContext.get();
+        ExecutorService executor = getBatchExecutor();
+
+        // Never block waiting for the tenant's permits; the current thread can always process the entries on its own
+        Semaphore tenantPermits = batchTenantPermits.computeIfAbsent(requestContext.getTenantId(),
+            tenantId -> new Semaphore(FHIRConfigHelper.getIntProperty(FHIRConfiguration.PROPERTY_BATCH_MAX_CONCURRENCY_PER_TENANT,
+                DEFAULT_BATCH_MAX_CONCURRENCY_PER_TENANT)));
+        int permits = 0;
+        while (executor != null && permits < parallelism - 1 && tenantPermits.tryAcquire()) {
+            permits++;
+        }
 
-                        // Retrieve the resource from the request entry.
-                        Resource resource = requestEntry.getResource();
+        AtomicInteger nextEntry = new AtomicInteger();
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Future<?>> futures = new ArrayList<>(permits);
+        Throwable failure = null;
+        try {
+            for (int i = 0; i < permits; i++) {
+                FHIRRequestContext workerContext = new FHIRRequestContext(requestContext);
+                futures.add(executor.submit(() -> {
+                    FHIRRequestContext.set(workerContext);
+                    try {
+                        FHIRRestHelper helper = new FHIRRestHelper(persistenceHelper.getFHIRPersistenceImplementation(), persistenceHelper);
+                        helper.processEntries(nextEntry, failed, entryIndices, requestBundle, responseBundle, localRefMap,
+                                bundleRequestCorrelationId, prefetchedResources, responseIndexAndEntries);
+                    } finally {
+                        FHIRRequestContext.remove();
+                    }
+                    return null;
+                }));
+            }
+        } catch (RejectedExecutionException e) {
+            log.fine("Batch bundle entry executor is busy; processing the remaining entries on fewer threads");
+        }
 
-                        // Convert any local references found within the resource to their
-                        // corresponding external reference.
-                        ReferenceMappingVisitor<Resource> visitor =
-                                new ReferenceMappingVisitor<Resource>(localRefMap);
-                        resource.accept(visitor);
-                        resource = visitor.getResult();
-
-                        // Perform the 'update' operation.
-                        String ifMatchBundleValue = null;
-                        if (request.getIfMatch() != null) {
-                            ifMatchBundleValue = request.getIfMatch().getValue();
-                        }
-                        FHIRRestOperationResponse ior =
-                                doUpdate(type, id, resource, ifMatchBundleValue, query, null);
-
-                        // Process and replace bundler Entry
-                        Bundle.Entry resultEntry = setBundleResponseFields(responseEntry, ior.getResource(), ior.getOperationOutcome(),
-                                ior.getLocationURI(), ior.getStatus().getStatusCode(), requestDescription.toString(), initialTime);
-
-                        responseIndexAndEntries.put(entryIndex, resultEntry);
-
-                    } else if (request.getMethod().equals(HTTPVerb.DELETE)) {
-                        String type = null;
-                        String id = null;
-
-                        // Process a DELETE.
-                        if (pathTokens.length == 1) {
-                            // A single-part url would be a conditional delete: <type>?<query>
-                            type = pathTokens[0];
-                            if (query == null || query.isEmpty()) {
-                                String msg =
-                                        "A search query string is required for a conditional delete operation.";
-                                throw buildRestException(msg, IssueType.INVALID);
-                            }
-                        } else if (pathTokens.length == 2) {
-                            type = pathTokens[0];
-                            id = pathTokens[1];
-                        } else {
-                            String msg = "Request URL for bundled DELETE request should have path part with one or two tokens "
-                                    + "(<resourceType> or <resourceType>/<id>).";
-                            throw buildRestException(msg, IssueType.INVALID);
-                        }
+        try {
+            processEntries(nextEntry, failed, entryIndices, requestBundle, responseBundle, localRefMap,
+                    bundleRequestCorrelationId, prefetchedResources, responseIndexAndEntries);
+        } catch (Throwable t) {
+            failure = t;
+        } finally {
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failed.set(true);
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+            tenantPermits.release(permits);
+        }
 
-                        // Perform the 'delete' operation.
-                        FHIRRestOperationResponse ior = doDelete(type, id, query, null);
+        if (failure instanceof Exception) {
+            throw (Exception) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+    }
 
-                        // Process and replace bundler Entry
-                        Bundle.Entry resultEntry = setBundleResponseFields(responseEntry, ior.getResource(), ior.getOperationOutcome(),
-                                null, ior.getStatus().getStatusCode(), requestDescription.toString(), initialTime);
+    /**
+     * Processes the entries of a batch bundle, taking the next unprocessed entry each time, until there are
+     * none left or an entry fails with an unexpected error.
+     */
+    private void processEntries(AtomicInteger nextEntry, AtomicBoolean failed, List<Integer> entryIndices,
+            Bundle requestBundle, Bundle responseBundle, Map<String, String> localRefMap, String bundleRequestCorrelationId,
+            Map<Integer, Resource> prefetchedResources, Map<Integer, Bundle.Entry> responseIndexAndEntries) throws Exception {
+        int next;
+        while (!failed.get() && (next = nextEntry.getAndIncrement()) < entryIndices.size()) {
+            try {
+                processEntry(entryIndices.get(next), requestBundle, responseBundle, false, localRefMap,
+                        bundleRequestCorrelationId, prefetchedResources, responseIndexAndEntries);
+            } catch (Throwable t) {
+                failed.set(true);
+                throw t;
+            }
+        }
+    }
+
+    /**
+     * Processes a single request entry of the specified request bundle and stores its response entry.
+     *
+     * @param entryIndex
+     *            the index of the request entry
+     * @param requestBundle
+     *            the bundle containing the request entries
+     * @param responseBundle
+     *            the bundle containing the corresponding response entries
+     * @param responseIndexAndEntries
+     *            receives the updated response entry, keyed by the index of the request entry
+     */
+    private void processEntry(Integer entryIndex, Bundle requestBundle, Bundle responseBundle, boolean failFast,
+            Map<String, String> localRefMap, String bundleRequestCorrelationId, Map<Integer, Resource> prefetchedResources,
+            Map<Integer, Bundle.Entry> responseIndexAndEntries) throws Exception {
+        Bundle.Entry requestEntry = requestBundle.getEntry().get(entryIndex);
+        Bundle.Entry responseEntry = responseBundle.getEntry().get(entryIndex);
+        Bundle.Entry.Builder responseEntryBuilder = responseEntry.toBuilder();
+
+        Bundle.Entry.Request request = requestEntry.getRequest();
+        Bundle.Entry.Response response = responseEntry.getResponse();
+
+        StringBuffer requestDescription = new StringBuffer();
+        long initialTime = System.currentTimeMillis();
+        try {
+            FHIRUrlParser requestURL = new FHIRUrlParser(request.getUrl().getValue());
 
-                        responseIndexAndEntries.put(entryIndex, resultEntry);
+            String path = requestURL.getPath();
+            String query = requestURL.getQuery();
+            if (log.isLoggable(Level.FINER)) {
+                log.finer("Processing bundle request entry " + entryIndex + "; method="
+                        + request.getMethod().getValue() + ", url="
+                        + request.getUrl().getValue());
+                log.finer("--> path: " + path);
+                log.finer("--> query: " + query);
+            }
+
+            // Log our initial info message for this request.
+            requestDescription.append("entryIndex:[");
+            requestDescription.append(entryIndex);
+            requestDescription.append("] correlationId:[");
+            requestDescription.append(bundleRequestCorrelationId);
+            requestDescription.append("] method:[");
+            requestDescription.append(request.getMethod().getValue());
+            requestDescription.append("] uri:[");
+            requestDescription.append(request.getUrl().getValue());
+            requestDescription.append("]");
+            log.info("Received bundle request: " + requestDescription.toString());
+
+            String[] pathTokens = requestURL.getPathTokens();
+            MultivaluedMap<String, String> queryParams = requestURL.getQueryParameters();
+
+            // Construct the absolute requestUri to be used for any response bundles associated
+            // with history and search requests.
+            String absoluteUri =
+                    getAbsoluteUri(getRequestUri(), request.getUrl().getValue());
+
+            if (request.getMethod().equals(HTTPVerb.GET)) {
+                Resource resource = null;
+                int httpStatus = SC_OK;
+
+                // Process a GET (read, vread, history, search, etc.).
+                // Determine the type of request from the path tokens.
+                if (pathTokens.length > 0
+                        && pathTokens[pathTokens.length - 1].startsWith("$")) {
+                    // This is a custom operation request
+
+                    // Chop off the '$' and save the name
+                    String operationName = pathTokens[pathTokens.length - 1].substring(1);
+
+                    // FHIROperationContext operationContext;
+                    switch (pathTokens.length) {
+                    case 1: {
+                        FHIROperationContext operationContext =
+                                FHIROperationContext.createSystemOperationContext();
+                        resource =
+                                doInvoke(operationContext, null, null, null, operationName, null, queryParams, null);
+                    }
+                        break;
+                    case 2: {
+                        FHIROperationContext operationContext =
+                                FHIROperationContext.createResourceTypeOperationContext();
+                        resource =
+                                doInvoke(operationContext, pathTokens[0], null, null, operationName, null, queryParams, null);
+                    }
+                        break;
+                    case 3: {
+                        FHIROperationContext operationContext =
+                                FHIROperationContext.createInstanceOperationContext();
+                        resource =
+                                doInvoke(operationContext, pathTokens[0], pathTokens[1], null, operationName, null, queryParams, null);
+                    }
+                        break;
+                    default:
+                        String msg = "Invalid URL for custom operation '"
+                                + pathTokens[pathTokens.length - 1] + "'";
+                        throw buildRestException(msg, IssueType.NOT_FOUND);
+                    }
+                } else if (pathTokens.length == 1) {
+                    // This is a 'search' request.
+                    if ("_search".equals(pathTokens[0])) {
+                        resource =
+                                doSearch("Resource", null, null, queryParams, absoluteUri, null, null);
+                    } else {
+                        resource =
+                                doSearch(pathTokens[0], null, null, queryParams, absoluteUri, null, null);
+                    }
+                } else if (pathTokens.length == 2) {
+                    // This is a 'read' request.
+                    resource = prefetchedResources.get(entryIndex);
+                    if (resource != null) {
+                        resource = firePrefetchedReadEvents(pathTokens[0], pathTokens[1], null, resource);
+                    } else {
+                        resource =
+                                doRead(pathTokens[0], pathTokens[1], true, false, null, null);
+                    }
+                } else if (pathTokens.length == 3) {
+                    if ("_history".equals(pathTokens[2])) {
+                        // This is a 'history' request.
+                        resource =
+                                doHistory(pathTokens[0], pathTokens[1], queryParams, absoluteUri, null);
                     } else {
-                        // Internal error, should not get here!
-                        throw new IllegalStateException("Internal Server Error: reached an unexpected code location.");
+                        // This is a compartment based search
+                        resource =
+                                doSearch(pathTokens[2], pathTokens[0], pathTokens[1], queryParams, absoluteUri, null, null);
                     }
-                } catch (FHIRPersistenceResourceNotFoundException e) {
-                    if (failFast) {
-                        String msg = "Error while processing request bundle.";
-                        throw new FHIRRestBundledRequestException(msg).withIssue(e.getIssues());
+                } else if (pathTokens.length == 4 && pathTokens[2].equals("_history")) {
+                    // This is a 'vread' request.
+                    resource = prefetchedResources.get(entryIndex);
+                    if (resource != null) {
+                        resource = firePrefetchedReadEvents(pathTokens[0], pathTokens[1], pathTokens[3], resource);
+                    } else {
+                        resource = doVRead(pathTokens[0], pathTokens[1], pathTokens[3], null);
                     }
+                } else {
+                    String msg = "Unrecognized path in request URL: " + path;
+                    throw buildRestException(msg, IssueType.NOT_FOUND);
+                }
+
+                // Save the results of the operation in the bundle response field.
+                Bundle.Entry.Response.Builder responseBuilder = response.toBuilder();
+                responseBuilder.status(string(Integer.toString(httpStatus)));
+                setBundleResponseStatus(response, httpStatus, requestDescription.toString(), initialTime);
+
+                responseIndexAndEntries.put(entryIndex, responseEntryBuilder.resource(resource).response(responseBuilder.build()).build());
+            } else if (request.getMethod().equals(HTTPVerb.POST)) {
+                // Process a POST (create or search, or custom operation).
+                if (pathTokens.length > 0
+                        && pathTokens[pathTokens.length - 1].startsWith("$")) {
+                    // This is a custom operation request
+
+                    // Chop off the '$' and save the name
+                    String operationName = pathTokens[pathTokens.length - 1].substring(1);
+
+                    // Retrieve the resource from the request entry.
+                    Resource resource = requestEntry.getResource();
+
+                    FHIROperationContext operationContext;
+                    Resource result;
+                    switch (pathTokens.length) {
+                    case 1:
+                        operationContext =
+                                FHIROperationContext.createSystemOperationContext();
+                        result = doInvoke(operationContext, null, null, null, operationName, resource, queryParams, null);
+                        break;
+                    case 2:
+                        operationContext =
+                                FHIROperationContext.createResourceTypeOperationContext();
+                        result = doInvoke(operationContext, pathTokens[0], null, null, operationName, resource, queryParams, null);
+                        break;
+                    case 3:
+                        operationContext =
+                                FHIROperationContext.createInstanceOperationContext();
+                        result = doInvoke(operationContext, pathTokens[0], pathTokens[1], null, operationName, resource, queryParams, null);
+                        break;
+                    default:
+                        String msg = "Invalid URL for custom operation '"
+                                + pathTokens[pathTokens.length - 1] + "'";
+                        throw buildRestException(msg, IssueType.NOT_FOUND);
+                    }
+
                     Bundle.Entry.Response.Builder responseBuilder = response.toBuilder();
-                    responseBuilder.status(string(Integer.toString(SC_NOT_FOUND)));
+                    // Add warning and hint issues to response outcome if any.
+                    if (result instanceof OperationOutcome) {
+                        if (((OperationOutcome) result).getIssue() != null) {
+                            responseBuilder.outcome(result);
+                        }
+                    }
 
+                    responseBuilder.status(string(Integer.toString(SC_OK)));
                     responseIndexAndEntries.put(entryIndex, responseEntryBuilder
-                            .resource(FHIRUtil.buildOperationOutcome(e, false))
+                            .resource(result)
                             .response(responseBuilder.build())
                             .build());
+                    setBundleResponseStatus(response, SC_OK, requestDescription.toString(), initialTime);
 
-                    setBundleResponseStatus(response, SC_NOT_FOUND, requestDescription.toString(), initialTime);
-                } catch (FHIRPersistenceResourceDeletedException e) {
-                    if (failFast) {
-                        String msg = "Error while processing request bundle.";
-                        throw new FHIRRestBundledRequestException(msg).withIssue(e.getIssues());
-                    }
+                } else if (pathTokens.length == 2 && "_search".equals(pathTokens[1])) {
+                    // This is a 'search' request.
+                    Bundle searchResults =
+                            doSearch(pathTokens[0], null, null, queryParams, absoluteUri, null, null);
+
+                    // Save the results of the operation in the bundle response field.
                     Bundle.Entry.Response.Builder responseBuilder = response.toBuilder();
-                    responseBuilder.status(string(Integer.toString(SC_GONE)));
+                    responseBuilder.status(string(Integer.toString(SC_OK)));
 
                     responseIndexAndEntries.put(entryIndex, responseEntryBuilder
-                            .resource(FHIRUtil.buildOperationOutcome(e, false))
+                            .resource(searchResults)
                             .response(responseBuilder.build())
                             .build());
 
-                    setBundleResponseStatus(response, SC_GONE, requestDescription.toString(), initialTime);
-                } catch (FHIROperationException e) {
-                    if (failFast) {
-                        String msg = "Error while processing request bundle.";
-                        throw new FHIRRestBundledRequestException(msg).withIssue(e.getIssues());
+                    setBundleResponseStatus(response, SC_OK, requestDescription.toString(), initialTime);
+                } else if (pathTokens.length == 1) {
+                    // This is a 'create' request.
+
+                    // Retrieve the local identifier from the request entry (if present).
+                    String localIdentifier =
+                            retrieveLocalIdentifier(requestEntry, localRefMap);
+
+                    // Retrieve the resource from the request entry.
+                    Resource resource = requestEntry.getResource();
+                    if (resource == null) {
+                        String msg =
+                                "BundleEntry.resource is required for bundled create requests.";
+                        throw buildRestException(msg, IssueType.NOT_FOUND);
                     }
 
-                    Status status;
-                    if (e instanceof FHIRSearchException) {
-                        status = Status.BAD_REQUEST;
-                    } else {
-                        status = IssueTypeToHttpStatusMapper.issueListToStatus(e.getIssues());
+                    // Convert any local references found within the resource to their
+                    // corresponding external reference.
+
+                    ReferenceMappingVisitor<Resource> visitor =
+                            new ReferenceMappingVisitor<Resource>(localRefMap);
+                    resource.accept(visitor);
+                    resource = visitor.getResult();
+
+                    // Perform the 'create' operation.
+                    String ifNoneExist = request.getIfNoneExist() != null
+                            ? request.getIfNoneExist().getValue() : null;
+                    FHIRRestOperationResponse ior =
+                            doCreate(pathTokens[0], resource, ifNoneExist, null);
+
+                    // Get the updated resource from FHIRRestOperationResponse which has the correct ID, meta
+                    // etc.
+                    resource = ior.getResource();
+
+                    // Process and replace bundler Entry
+                    Bundle.Entry resultEntry = setBundleResponseFields(responseEntry, resource, ior.getOperationOutcome(),
+                            ior.getLocationURI(), ior.getStatus().getStatusCode(), requestDescription.toString(), initialTime);
+
+                    responseIndexAndEntries.put(entryIndex, resultEntry);
+
+                    // Next, if a local identifier was present, we'll need to map this to the
+                    // correct external identifier (e.g. Patient/12345).
+                    addLocalRefMapping(localRefMap, localIdentifier, resource);
+                } else {
+                    String msg =
+                            "Request URL for bundled create requests should have a path with exactly one token (<resourceType>).";
+                    throw buildRestException(msg, IssueType.NOT_FOUND);
+                }
+            } else if (request.getMethod().equals(HTTPVerb.PUT)) {
+                String type = null;
+                String id = null;
+
+                // Process a PUT (update).
+                if (pathTokens.length == 1) {
+                    // A single-part url would be a conditional update: <type>?<query>
+                    type = pathTokens[0];
+                    if (query == null || query.isEmpty()) {
+                        String msg =
+                                "A search query string is required for a conditional update operation.";
+                        throw buildRestException(msg, IssueType.INVALID);
                     }
+                } else if (pathTokens.length == 2) {
+                    // A two-part url would be a normal update: <type>/<id>.
+                    type = pathTokens[0];
+                    id = pathTokens[1];
+                } else {
+                    // A url with any other pattern is an error.
+                    String msg = "Request URL for bundled PUT request should have path part with either one or two tokens "
+                            + "(<resourceType> or <resourceType>/<id>).";
+                    throw buildRestException(msg, IssueType.INVALID);
+                }
 
-                    Bundle.Entry.Response.Builder responseBuilder = response.toBuilder();
-                    responseBuilder.status(string(Integer.toString(status.getStatusCode())));
+                // Retrieve the resource from the request entry.
+                Resource resource = requestEntry.getResource();
 
-                    responseIndexAndEntries.put(entryIndex, responseEntryBuilder.resource(FHIRUtil.buildOperationOutcome(e, false))
-                            .response(responseBuilder.build()).build());
+                // Convert any local references found within the resource to their
+                // corresponding external reference.
+                ReferenceMappingVisitor<Resource> visitor =
+                        new ReferenceMappingVisitor<Resource>(localRefMap);
+                resource.accept(visitor);
+                resource = visitor.getResult();
 
-                    setBundleResponseStatus(response, status.getStatusCode(), requestDescription.toString(), initialTime);
+                // Perform the 'update' operation.
+                String ifMatchBundleValue = null;
+                if (request.getIfMatch() != null) {
+                    ifMatchBundleValue = request.getIfMatch().getValue();
                 }
-            } // end foreach entry
+                FHIRRestOperationResponse ior =
+                        doUpdate(type, id, resource, ifMatchBundleValue, query, null);
 
-            // Now, let's re-construct the responseBundle
-            responseBundle = reconstructResponseBundle(responseBundle, responseIndexAndEntries);
-            return responseBundle;
+                // Process and replace bundler Entry
+                Bundle.Entry resultEntry = setBundleResponseFields(responseEntry, ior.getResource(), ior.getOperationOutcome(),
+                        ior.getLocationURI(), ior.getStatus().getStatusCode(), requestDescription.toString(), initialTime);
 
-        } finally {
-            log.exiting(this.getClass().getName(), "processEntriesForMethod");
+                responseIndexAndEntries.put(entryIndex, resultEntry);
+
+            } else if (request.getMethod().equals(HTTPVerb.DELETE)) {
+                String type = null;
+                String id = null;
+
+                // Process a DELETE.
+                if (pathTokens.length == 1) {
+                    // A single-part url would be a conditional delete: <type>?<query>
+                    type = pathTokens[0];
+                    if (query == null || query.isEmpty()) {
+                        String msg =
+                                "A search query string is required for a conditional delete operation.";
+                        throw buildRestException(msg, IssueType.INVALID);
+                    }
+                } else if (pathTokens.length == 2) {
+                    type = pathTokens[0];
+                    id = pathTokens[1];
+                } else {
+                    String msg = "Request URL for bundled DELETE request should have path part with one or two tokens "
+                            + "(<resourceType> or <resourceType>/<id>).";
+                    throw buildRestException(msg, IssueType.INVALID);
+                }
+
+                // Perform the 'delete' operation.
+                FHIRRestOperationResponse ior = doDelete(type, id, query, null);
+
+                // Process and replace bundler Entry
+                Bundle.Entry resultEntry = setBundleResponseFields(responseEntry, ior.getResource(), ior.getOperationOutcome(),
+                        null, ior.getStatus().getStatusCode(), requestDescription.toString(), initialTime);
+
+                responseIndexAndEntries.put(entryIndex, resultEntry);
+            } else {
+                // Internal error, should not get here!
+                throw new IllegalStateException("Internal Server Error: reached an unexpected code location.");
+            }
+        } catch (FHIRPersistenceResourceNotFoundException e) {
+            if (failFast) {
+                String msg = "Error while processing request bundle.";
+                throw new FHIRRestBundledRequestException(msg).withIssue(e.getIssues());
+            }
+            Bundle.Entry.Response.Builder responseBuilder = response.toBuilder();
+            responseBuilder.status(string(Integer.toString(SC_NOT_FOUND)));
+
+            responseIndexAndEntries.put(entryIndex, responseEntryBuilder
+                    .resource(FHIRUtil.buildOperationOutcome(e, false))
+                    .response(responseBuilder.build())
+                    .build());
+
+            setBundleResponseStatus(response, SC_NOT_FOUND, requestDescription.toString(), initialTime);
+        } catch (FHIRPersistenceResourceDeletedException e) {
+            if (failFast) {
+                String msg = "Error while processing request bundle.";
+                throw new FHIRRestBundledRequestException(msg).withIssue(e.getIssues());
+            }
+            Bundle.Entry.Response.Builder responseBuilder = response.toBuilder();
+            responseBuilder.status(string(Integer.toString(SC_GONE)));
+
+            responseIndexAndEntries.put(entryIndex, responseEntryBuilder
+                    .resource(FHIRUtil.buildOperationOutcome(e, false))
+                    .response(responseBuilder.build())
+                    .build());
+
+            setBundleResponseStatus(response, SC_GONE, requestDescription.toString(), initialTime);
+        } catch (FHIROperationException e) {
+            if (failFast) {
+                String msg = "Error while processing request bundle.";
+                throw new FHIRRestBundledRequestException(msg).withIssue(e.getIssues());
+            }
+
+            Status status;
+            if (e instanceof FHIRSearchException) {
+                status = Status.BAD_REQUEST;
+            } else {
+                status = IssueTypeToHttpStatusMapper.issueListToStatus(e.getIssues());
+            }
+
+            Bundle.Entry.Response.Builder responseBuilder = response.toBuilder();
+            responseBuilder.status(string(Integer.toString(status.getStatusCode())));
+
+            responseIndexAndEntries.put(entryIndex, responseEntryBuilder.resource(FHIRUtil.buildOperationOutcome(e, false))
+                    .response(responseBuilder.build()).build());
+
+            setBundleResponseStatus(response, status.getStatusCode(), requestDescription.toString(), initialTime);
         }
     }
 
@@ -1936,7 +2308,7 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
      * @return
      */
     private Bundle reconstructResponseBundle(Bundle responseBundle,
-        HashMap<Integer, Bundle.Entry> responseIndexAndEntries) {
+        Map<Integer, Bundle.Entry> responseIndexAndEntries) {
         // Re-construct the responseBundle
         List<Bundle.Entry> responseEntries = new ArrayList<Bundle.Entry>();
         for (int i = 0; i < responseBundle.getEntry().size(); i++) {
@@ -2186,13 +2558,19 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
     private Bundle createSearchBundle(List<Resource> resources, FHIRSearchContext searchContext, String type)
         throws Exception {
 
-        // throws if we have a count of more than 2,147,483,647 resources
-        UnsignedInt totalCount = UnsignedInt.of(searchContext.getTotalCount());
-        // generate ID for this bundle and set total
+        // generate ID for this bundle
         Bundle.Builder bundleBuider = Bundle.builder()
                                             .type(BundleType.SEARCHSET)
-                                            .id(UUID.randomUUID().toString())
-                                            .total(totalCount);
+                                            .id(UUID.randomUUID().toString());
+
+        // set total, unless the client explicitly asked for it to be omitted via _total=none;
+        // the total is all that _summary=count asks for, so it is always set in that case
+        if (!TotalValueSet.NONE.equals(searchContext.getTotalParameter())
+                || SummaryValueSet.COUNT.equals(searchContext.getSummaryParameter())) {
+            // throws if we have a count of more than 2,147,483,647 resources
+            UnsignedInt totalCount = UnsignedInt.of(searchContext.getTotalCount());
+            bundleBuider.total(totalCount);
+        }
 
         for (Resource resource : resources) {
             if (resource.getId() == null) {
@@ -2340,6 +2718,14 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                 // add new _page parameter to the query string
                 nextLinkUrl += "_page=" + nextPageNumber;
 
+                // when keyset paging is enabled, also carry the position of the next page as an opaque _cursor
+                // so the persistence layer can seek to it directly instead of skipping over the previous pages
+                nextLinkUrl = removeQueryParameter(nextLinkUrl, SearchConstants.CURSOR);
+                if (context.getNextPageToken() != null
+                        && FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_SEARCH_KEYSET_PAGING, false)) {
+                    nextLinkUrl += "&" + SearchConstants.CURSOR + "=" + context.getNextPageToken();
+                }
+
                 // create 'next' link
                 Bundle.Link nextLink =
                         Bundle.Link.builder().relation(string("next")).url(Url.of(nextLinkUrl)).build();
@@ -2349,8 +2735,8 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
             int prevPageNumber = context.getPageNumber() - 1;
             if (prevPageNumber > 0) {
 
-                // starting with the original request URI
-                String prevLinkUrl = requestUri;
+                // starting with the original request URI, without any _cursor which points forward
+                String prevLinkUrl = removeQueryParameter(requestUri, SearchConstants.CURSOR);
 
                 // remove existing _page parameters from the query string
                 prevLinkUrl =
@@ -2380,6 +2766,21 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         return bundleBuilder.build();
     }
 
+    /**
+     * Remove all occurrences of the named parameter from the query string of the passed URI.
+     */
+    private String removeQueryParameter(String uri, String name) {
+        int queryStart = uri.indexOf('?');
+        if (queryStart < 0) {
+            return uri;
+        }
+        String query = uri.substring(queryStart + 1);
+        String filtered = Arrays.stream(query.split("&"))
+                .filter(p -> !p.equals(name) && !p.startsWith(name + "="))
+                .collect(Collectors.joining("&"));
+        return uri.substring(0, queryStart + 1) + filtered;
+    }
+
     /**
      * Get the original request URI from either the HttpServletRequest or a configured Header (in case of re-writing proxies).
      *
@@ -0,0 +1,484 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.server.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.model.resource.Bundle;
+import com.ibm.fhir.model.resource.OperationOutcome;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.code.BundleType;
+import com.ibm.fhir.model.type.code.HTTPVerb;
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.FHIRPersistenceTransaction;
+import com.ibm.fhir.persistence.MultiResourceResult;
+import com.ibm.fhir.persistence.ResourceKey;
+import com.ibm.fhir.persistence.SingleResourceResult;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.helper.PersistenceHelper;
+import com.ibm.fhir.persistence.interceptor.FHIRPersistenceEvent;
+import com.ibm.fhir.persistence.interceptor.FHIRPersistenceInterceptor;
+import com.ibm.fhir.persistence.interceptor.impl.FHIRPersistenceInterceptorMgr;
+import com.ibm.fhir.server.exception.FHIRRestBundledRequestException;
+import com.ibm.fhir.server.util.FHIRRestHelper;
+
+/**
+ * Tests the concurrent processing of batch bundle entries by FHIRRestHelper, and the reading of the read request
+ * entries up front, and the total of the search bundles. The test configuration sets batchParallelism to 4 and
+ * batchMaxConcurrencyPerTenant to 2.
+ */
+public class FHIRRestHelperTest {
+    private static final String BASE_URI = "https://localhost:9443/fhir-server/api/v4";
+
+    private static final CountingInterceptor interceptor = new CountingInterceptor();
+
+    private ExecutorService threadPool;
+    private FHIRRequestContext requestContext;
+
+    @BeforeClass
+    public void setUpClass() {
+        FHIRConfiguration.setConfigHome("target/test-classes");
+        FHIRPersistenceInterceptorMgr.getInstance().addInterceptor(interceptor);
+        threadPool = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public void tearDownClass() {
+        threadPool.shutdownNow();
+    }
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        requestContext = new FHIRRequestContext("default");
+        requestContext.setOriginalRequestUri(BASE_URI);
+        FHIRRequestContext.set(requestContext);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        FHIRRequestContext.remove();
+    }
+
+    @Test
+    public void testResponseOrder() throws Exception {
+        StubPersistence persistence = new StubPersistence(false);
+        CountingExecutor executor = new CountingExecutor(threadPool);
+        FHIRRestHelper helper = new TestRestHelper(persistence, executor);
+
+        Bundle response = helper.doBundle(readBundle(BundleType.BATCH, "1", "2", "3", "4", "5", "6", "7", "8"), null);
+
+        assertEquals(executor.submitted.get(), 2);
+        assertEquals(response.getEntry().size(), 8);
+        for (int i = 0; i < 8; i++) {
+            Bundle.Entry entry = response.getEntry().get(i);
+            assertEquals(entry.getResponse().getStatus().getValue(), "200");
+            assertEquals(entry.getResource().getId(), Integer.toString(i + 1));
+        }
+    }
+
+    @Test
+    public void testRequestContextPerThread() throws Exception {
+        StubPersistence persistence = new StubPersistence(false);
+        FHIRRestHelper helper = new TestRestHelper(persistence, new CountingExecutor(threadPool));
+
+        helper.doBundle(readBundle(BundleType.BATCH, "1", "2", "3", "4", "5", "6", "7", "8"), null);
+
+        // each thread sees its own copy of the context of the request
+        Set<FHIRRequestContext> contexts = ConcurrentHashMap.newKeySet();
+        contexts.addAll(persistence.contexts.values());
+        assertEquals(contexts.size(), persistence.contexts.size());
+        for (Map.Entry<Thread, FHIRRequestContext> entry : persistence.contexts.entrySet()) {
+            FHIRRequestContext context = entry.getValue();
+            if (entry.getKey() != Thread.currentThread()) {
+                assertNotEquals(context, requestContext);
+            }
+            assertEquals(context.getTenantId(), requestContext.getTenantId());
+            assertEquals(context.getRequestUniqueId(), requestContext.getRequestUniqueId());
+            assertEquals(context.getOriginalRequestUri(), BASE_URI);
+        }
+        assertEquals(FHIRRequestContext.get(), requestContext);
+    }
+
+    @Test
+    public void testEntryFailureIsolation() throws Exception {
+        StubPersistence persistence = new StubPersistence(false);
+        FHIRRestHelper helper = new TestRestHelper(persistence, new CountingExecutor(threadPool));
+
+        Bundle response = helper.doBundle(readBundle(BundleType.BATCH, "1", "missing", "3", "error", "5", "6"), null);
+
+        List<Bundle.Entry> entries = response.getEntry();
+        assertEquals(entries.get(0).getResponse().getStatus().getValue(), "200");
+        assertEquals(entries.get(1).getResponse().getStatus().getValue(), "404");
+        assertTrue(entries.get(1).getResource() instanceof OperationOutcome);
+        assertEquals(entries.get(2).getResponse().getStatus().getValue(), "200");
+        assertEquals(entries.get(3).getResponse().getStatus().getValue(), "500");
+        assertTrue(entries.get(3).getResource() instanceof OperationOutcome);
+        assertEquals(entries.get(4).getResponse().getStatus().getValue(), "200");
+        assertEquals(entries.get(5).getResource().getId(), "6");
+    }
+
+    @Test
+    public void testFailFast() throws Exception {
+        StubPersistence persistence = new StubPersistence(true);
+        CountingExecutor executor = new CountingExecutor(threadPool);
+        FHIRRestHelper helper = new TestRestHelper(persistence, executor);
+
+        try {
+            helper.doBundle(readBundle(BundleType.TRANSACTION, "1", "2", "missing", "4", "5", "6"), null);
+            fail("expected the transaction bundle to fail");
+        } catch (FHIRRestBundledRequestException e) {
+            // expected
+        }
+
+        // the entries of a transaction bundle are processed one at a time, and the processing stops at the failure
+        assertEquals(executor.submitted.get(), 0);
+        assertEquals(persistence.reads.get(), 3);
+    }
+
+    @Test
+    public void testPermitsReleasedOnRejection() throws Exception {
+        StubPersistence persistence = new StubPersistence(false);
+        ExecutorService rejectingExecutor = new CountingExecutor(threadPool) {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException("busy");
+            }
+        };
+
+        // the current thread processes all of the entries when the executor rejects them
+        for (int i = 0; i < 3; i++) {
+            Bundle response = new TestRestHelper(persistence, rejectingExecutor).doBundle(
+                readBundle(BundleType.BATCH, "1", "2", "3", "4"), null);
+            assertEquals(response.getEntry().get(3).getResource().getId(), "4");
+        }
+
+        // the tenant's permits are available again afterwards
+        CountingExecutor executor = new CountingExecutor(threadPool);
+        new TestRestHelper(persistence, executor).doBundle(readBundle(BundleType.BATCH, "1", "2", "3", "4"), null);
+        assertEquals(executor.submitted.get(), 2);
+    }
+
+    @Test
+    public void testPrefetchedReadEvents() throws Exception {
+        StubPersistence persistence = new StubPersistence(false, true);
+        FHIRRestHelper helper = new TestRestHelper(persistence, new CountingExecutor(threadPool));
+        interceptor.reset();
+
+        Bundle response = helper.doBundle(readBundle(BundleType.BATCH, "1", "missing", "3", "_history", "$everything"), null);
+
+        // only the plain reads are read up front
+        assertEquals(persistence.readManyKeys.size(), 3);
+        for (ResourceKey key : persistence.readManyKeys) {
+            assertTrue(!key.getLogicalId().startsWith("_") && !key.getLogicalId().startsWith("$"));
+        }
+        List<Bundle.Entry> entries = response.getEntry();
+        assertEquals(entries.get(0).getResource().getId(), "1");
+        assertEquals(entries.get(1).getResponse().getStatus().getValue(), "404");
+        assertEquals(entries.get(2).getResource().getId(), "3");
+
+        assertEquals(entries.get(3).getResponse().getStatus().getValue(), "404");
+
+        // the entries that weren't read up front are read on their own, and each read fires its events once
+        assertEquals(persistence.reads.get(), 2);
+        assertEquals(interceptor.beforeRead.get(), 4);
+        assertEquals(interceptor.afterRead.get(), 2);
+    }
+
+    @Test
+    public void testSearchTotal() throws Exception {
+        FHIRRestHelper helper = new TestRestHelper(new StubPersistence(false), new CountingExecutor(threadPool));
+
+        MultivaluedMap<String, String> queryParameters = new MultivaluedHashMap<>();
+        assertEquals(helper.doSearch("Patient", null, null, queryParameters, null, null, null).getTotal().getValue(), (Integer) 3);
+
+        queryParameters.putSingle("_total", "none");
+        assertNull(helper.doSearch("Patient", null, null, queryParameters, null, null, null).getTotal());
+
+        // _summary=count only asks for the total, so _total=none doesn't drop it
+        queryParameters.putSingle("_summary", "count");
+        assertEquals(helper.doSearch("Patient", null, null, queryParameters, null, null, null).getTotal().getValue(), (Integer) 3);
+    }
+
+    /**
+     * Builds a bundle of read requests for the Patients with the given ids.
+     */
+    private Bundle readBundle(BundleType type, String... ids) {
+        Bundle.Builder builder = Bundle.builder().type(type);
+        for (String id : ids) {
+            builder.entry(Bundle.Entry.builder()
+                .request(Bundle.Entry.Request.builder()
+                    .method(HTTPVerb.GET)
+                    .url(Uri.of("Patient/" + id))
+                    .build())
+                .build());
+        }
+        return builder.build();
+    }
+
+    /**
+     * FHIRRestHelper with the given batch executor
+     */
+    private static class TestRestHelper extends FHIRRestHelper {
+        private final ExecutorService executor;
+
+        TestRestHelper(FHIRPersistence persistence, ExecutorService executor) {
+            super(persistence, new PersistenceHelper() {
+                @Override
+                public FHIRPersistence getFHIRPersistenceImplementation() {
+                    return persistence;
+                }
+
+                @Override
+                public FHIRPersistence getFHIRPersistenceImplementation(String factoryPropertyName) {
+                    return persistence;
+                }
+            });
+            this.executor = executor;
+        }
+
+        @Override
+        protected ExecutorService getBatchExecutor() {
+            return executor;
+        }
+    }
+
+    /**
+     * Counts the tasks submitted to the wrapped executor
+     */
+    private static class CountingExecutor extends AbstractExecutorService {
+        private final ExecutorService delegate;
+        final AtomicInteger submitted = new AtomicInteger();
+
+        CountingExecutor(ExecutorService delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            submitted.incrementAndGet();
+            delegate.execute(command);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return null;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return false;
+        }
+    }
+
+    /**
+     * Counts the read events
+     */
+    private static class CountingInterceptor implements FHIRPersistenceInterceptor {
+        final AtomicInteger beforeRead = new AtomicInteger();
+        final AtomicInteger afterRead = new AtomicInteger();
+
+        void reset() {
+            beforeRead.set(0);
+            afterRead.set(0);
+        }
+
+        @Override
+        public void beforeRead(FHIRPersistenceEvent event) {
+            beforeRead.incrementAndGet();
+        }
+
+        @Override
+        public void afterRead(FHIRPersistenceEvent event) {
+            afterRead.incrementAndGet();
+        }
+    }
+
+    /**
+     * Reads a Patient with the requested id, except for the ids "missing" (not found) and "error" (fails).
+     * Unless enabled, reading many resources at once isn't supported, so that each entry is read on its own.
+     */
+    private static class StubPersistence implements FHIRPersistence {
+        private final boolean transactional;
+        private final boolean readManySupported;
+        final AtomicInteger reads = new AtomicInteger();
+        final Map<Thread, FHIRRequestContext> contexts = new ConcurrentHashMap<>();
+        final List<ResourceKey> readManyKeys = new ArrayList<>();
+
+        StubPersistence(boolean transactional) {
+            this(transactional, false);
+        }
+
+        StubPersistence(boolean transactional, boolean readManySupported) {
+            this.transactional = transactional;
+            this.readManySupported = readManySupported;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T extends Resource> SingleResourceResult<T> read(FHIRPersistenceContext context, Class<T> resourceType, String logicalId)
+                throws FHIRPersistenceException {
+            reads.incrementAndGet();
+            contexts.put(Thread.currentThread(), FHIRRequestContext.get());
+            try {
+                // give the other threads a chance to take entries
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if ("error".equals(logicalId)) {
+                throw new FHIRPersistenceException("read failed");
+            }
+            T resource = isMissing(logicalId) ? null : (T) Patient.builder().id(logicalId).build();
+            return new SingleResourceResult.Builder<T>().success(true).resource(resource).build();
+        }
+
+        @Override
+        public List<SingleResourceResult<Resource>> readMany(FHIRPersistenceContext context, List<ResourceKey> keys) throws FHIRPersistenceException {
+            if (!readManySupported) {
+                throw new FHIRPersistenceException("not supported");
+            }
+            readManyKeys.addAll(keys);
+            List<SingleResourceResult<Resource>> results = new ArrayList<>();
+            for (ResourceKey key : keys) {
+                Resource resource = isMissing(key.getLogicalId()) ? null : Patient.builder().id(key.getLogicalId()).build();
+                results.add(new SingleResourceResult.Builder<Resource>().success(true).resource(resource).build());
+            }
+            return results;
+        }
+
+        private boolean isMissing(String logicalId) {
+            // a keyword like _history isn't a valid id
+            return "missing".equals(logicalId) || logicalId.startsWith("_");
+        }
+
+        @Override
+        public <T extends Resource> SingleResourceResult<T> create(FHIRPersistenceContext context, T resource) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T extends Resource> SingleResourceResult<T> vread(FHIRPersistenceContext context, Class<T> resourceType, String logicalId,
+                String versionId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T extends Resource> SingleResourceResult<T> update(FHIRPersistenceContext context, String logicalId, T resource) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T extends Resource> MultiResourceResult<T> history(FHIRPersistenceContext context, Class<T> resourceType, String logicalId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MultiResourceResult<Resource> search(FHIRPersistenceContext context, Class<? extends Resource> resourceType) {
+            // finds 3 resources, but doesn't return them
+            context.getSearchContext().setTotalCount(3);
+            return new MultiResourceResult.Builder<Resource>().success(true).build();
+        }
+
+        @Override
+        public boolean isTransactional() {
+            return transactional;
+        }
+
+        @Override
+        public FHIRPersistenceTransaction getTransaction() {
+            return transactional ? new StubTransaction() : null;
+        }
+
+        @Override
+        public OperationOutcome getHealth() {
+            return null;
+        }
+    }
+
+    /**
+     * A transaction that only tracks whether it is active
+     */
+    private static class StubTransaction implements FHIRPersistenceTransaction {
+        private static final ThreadLocal<Boolean> active = ThreadLocal.withInitial(() -> false);
+
+        @Override
+        public boolean isActive() {
+            return active.get();
+        }
+
+        @Override
+        public void begin() {
+            active.set(true);
+        }
+
+        @Override
+        public void commit() {
+            active.set(false);
+        }
+
+        @Override
+        public void rollback() {
+            active.set(false);
+        }
+
+        @Override
+        public void setRollbackOnly() {
+        }
+
+        @Override
+        public void enroll() {
+        }
+
+        @Override
+        public void unenroll() {
+        }
+    }
+}
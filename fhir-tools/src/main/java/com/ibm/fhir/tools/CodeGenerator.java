@@ -2361,6 +2361,7 @@ public class CodeGenerator {
         cb._import("java.io.InputStream");
         cb._import("java.io.Reader");
         cb._import("java.nio.charset.StandardCharsets");
+        cb._import("java.util.ArrayList");
         cb._import("java.util.Collection");
         cb._import("java.util.Stack");
         cb._import("java.util.StringJoiner");
@@ -2369,12 +2370,14 @@ public class CodeGenerator {
         cb._import("javax.annotation.Generated");
         cb._import("javax.json.Json");
         cb._import("javax.json.JsonArray");
+        cb._import("javax.json.JsonBuilderFactory");
         cb._import("javax.json.JsonNumber");
         cb._import("javax.json.JsonObject");
-        cb._import("javax.json.JsonReader");
-        cb._import("javax.json.JsonReaderFactory");
+        cb._import("javax.json.JsonObjectBuilder");
         cb._import("javax.json.JsonString");
         cb._import("javax.json.JsonValue");
+        cb._import("javax.json.stream.JsonParser");
+        cb._import("javax.json.stream.JsonParserFactory");
         cb.newLine();
 
         cb._import("com.ibm.fhir.model.parser.FHIRParser");
@@ -2396,7 +2399,8 @@ public class CodeGenerator {
         cb.annotation("Generated", quote("com.ibm.fhir.tools.CodeGenerator"));
         cb._class(mods("public"), "FHIRJsonParser", "FHIRAbstractParser");
         cb.field(mods("public", "static"), "boolean", "DEBUG", "false");
-        cb.field(mods("private", "static", "final"), "JsonReaderFactory", "JSON_READER_FACTORY", "Json.createReaderFactory(null)");
+        cb.field(mods("private", "static", "final"), "JsonParserFactory", "JSON_PARSER_FACTORY", "Json.createParserFactory(null)");
+        cb.field(mods("private", "static", "final"), "JsonBuilderFactory", "JSON_BUILDER_FACTORY", "Json.createBuilderFactory(null)");
         cb.newLine();
 
         cb.field(mods("private", "final"), "Stack<java.lang.String>", "stack", _new("Stack<>"));
@@ -2416,9 +2420,8 @@ public class CodeGenerator {
 
         // public <T extends Resource> T parseAndFilter(InputStream in, java.util.List<java.lang.String> elementsToInclude) throws FHIRException
         cb.method(mods("public"), "<T extends Resource> T", "parseAndFilter", params("InputStream in", "Collection<java.lang.String> elementsToInclude"), throwsExceptions("FHIRParserException"))
-            ._try("JsonReader jsonReader = JSON_READER_FACTORY.createReader(nonClosingInputStream(in), StandardCharsets.UTF_8)")
-                .assign("JsonObject jsonObject", "jsonReader.readObject()")
-                ._return("parseAndFilter(jsonObject, elementsToInclude)")
+            ._try("JsonParser jsonParser = JSON_PARSER_FACTORY.createParser(nonClosingInputStream(in), StandardCharsets.UTF_8)")
+                ._return("parseAndFilter(jsonParser, elementsToInclude)")
             ._catch("FHIRParserException e")
                 ._throw("e")
             ._catch("Exception e")
@@ -2436,9 +2439,8 @@ public class CodeGenerator {
 
         // public <T extends Resource> T parseAndFilter(Reader reader, java.util.List<java.lang.String> elementsToInclude) throws FHIRException
         cb.method(mods("public"), "<T extends Resource> T", "parseAndFilter", params("Reader reader", "Collection<java.lang.String> elementsToInclude"), throwsExceptions("FHIRParserException"))
-            ._try("JsonReader jsonReader = JSON_READER_FACTORY.createReader(nonClosingReader(reader))")
-                .assign("JsonObject jsonObject", "jsonReader.readObject()")
-                ._return("parseAndFilter(jsonObject, elementsToInclude)")
+            ._try("JsonParser jsonParser = JSON_PARSER_FACTORY.createParser(nonClosingReader(reader))")
+                ._return("parseAndFilter(jsonParser, elementsToInclude)")
             ._catch("FHIRParserException e")
                 ._throw("e")
             ._catch("Exception e")
@@ -2469,6 +2471,20 @@ public class CodeGenerator {
         .end();
         cb.newLine();
 
+        // private <T extends Resource> T parseAndFilter(JsonParser jsonParser, java.util.List<java.lang.String> elementsToInclude) throws FHIRException
+        cb.annotation("SuppressWarnings", quote("unchecked"));
+        cb.method(mods("private"), "<T extends Resource> T", "parseAndFilter", params("JsonParser jsonParser", "Collection<java.lang.String> elementsToInclude"), throwsExceptions("FHIRParserException"))
+            .invoke("reset", args())
+            ._if("!jsonParser.hasNext() || jsonParser.next() != JsonParser.Event.START_OBJECT")
+                ._throw("new IllegalArgumentException(\"Expected: OBJECT\")")
+            ._end()
+            ._if("elementsToInclude != null")
+                ._return("parseAndFilter(jsonParser.getObject(), elementsToInclude)")
+            ._end()
+            ._return("(T) parseResource(jsonParser)")
+        .end();
+        cb.newLine();
+
         cb.method(mods("private"), "void", "reset")
             .invoke("stack", "clear", args())
         .end();
@@ -2483,6 +2499,46 @@ public class CodeGenerator {
         .end();
         cb.newLine();
 
+        cb.method(mods("private"), "Resource", "parseResource", params("JsonParser jsonParser"))
+            .comment("the entries of a Bundle are parsed one at a time so that only a single entry is held as a JsonObject at once")
+            .assign("JsonObjectBuilder objectBuilder", "JSON_BUILDER_FACTORY.createObjectBuilder()")
+            .assign("java.lang.String resourceTypeName", "null")
+            .assign("java.util.List<Bundle.Entry> entries", "null")
+            ._while("jsonParser.next() == JsonParser.Event.KEY_NAME")
+                .assign("java.lang.String key", "jsonParser.getString()")
+                .assign("JsonParser.Event event", "jsonParser.next()")
+                ._if("\"entry\".equals(key) && \"Bundle\".equals(resourceTypeName) && event == JsonParser.Event.START_ARRAY")
+                    .assign("entries", "parseBundleEntries(jsonParser)")
+                ._else()
+                    .assign("JsonValue jsonValue", "jsonParser.getValue()")
+                    ._if("\"resourceType\".equals(key) && jsonValue.getValueType() == JsonValue.ValueType.STRING")
+                        .assign("resourceTypeName", "((JsonString) jsonValue).getString()")
+                    ._end()
+                    .invoke("objectBuilder", "add", args("key", "jsonValue"))
+                ._end()
+            ._end()
+            .assign("JsonObject jsonObject", "objectBuilder.build()")
+            .assign("Class<?> resourceType", "getResourceType(jsonObject)")
+            ._if("entries == null")
+                ._return("parseResource(resourceType.getSimpleName(), jsonObject, -1)")
+            ._end()
+            .assign("Bundle bundle", "parseBundle(resourceType.getSimpleName(), jsonObject, -1)")
+            ._return("bundle.toBuilder().entry(entries).build()")
+        .end();
+        cb.newLine();
+
+        cb.method(mods("private"), "java.util.List<Bundle.Entry>", "parseBundleEntries", params("JsonParser jsonParser"))
+            .invoke("stackPush", args(quote("Bundle"), "-1"))
+            .assign("java.util.List<Bundle.Entry> entries", "new ArrayList<>()")
+            ._while("jsonParser.next() != JsonParser.Event.END_ARRAY")
+                .assign("JsonValue jsonValue", "jsonParser.getValue()")
+                .invoke("entries", "add", args("parseBundleEntry(\"entry\", (JsonObject) jsonValue, entries.size())"))
+            ._end()
+            .invoke("stackPop", args())
+            ._return("entries")
+        .end();
+        cb.newLine();
+
         cb.method(mods("private"), "Resource", "parseResource", params("java.lang.String elementName", "JsonObject jsonObject", "int elementIndex"));
         cb._if("jsonObject == null");
         cb._return("null");
@@ -28,7 +28,6 @@ import com.ibm.fhir.model.resource.StructureDefinition;
 import com.ibm.fhir.model.type.CodeableConcept;
 import com.ibm.fhir.model.type.code.IssueSeverity;
 import com.ibm.fhir.model.type.code.IssueType;
-import com.ibm.fhir.model.util.ModelSupport;
 import com.ibm.fhir.path.FHIRPathElementNode;
 import com.ibm.fhir.path.FHIRPathNode;
 import com.ibm.fhir.path.FHIRPathResourceNode;
@@ -38,6 +37,9 @@ import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
 import com.ibm.fhir.path.visitor.FHIRPathDefaultNodeVisitor;
 import com.ibm.fhir.profile.ProfileSupport;
 import com.ibm.fhir.validation.exception.FHIRValidationException;
+import com.ibm.fhir.validation.util.CompiledConstraints;
+import com.ibm.fhir.validation.util.CompiledConstraints.CompiledConstraint;
+import com.ibm.fhir.validation.util.CompiledConstraints.Result;
 
 public class FHIRValidator {
     private static final Logger log = Logger.getLogger(FHIRValidator.class.getName());
@@ -261,7 +263,10 @@ public class FHIRValidator {
          */
         private void validate(FHIRPathElementNode elementNode) {
             Class<?> elementType = elementNode.element().getClass();
-            validate(elementType, elementNode, ModelSupport.getConstraints(elementType));
+            List<Constraint> constraints = CompiledConstraints.getApplicableConstraints(elementType);
+            if (!constraints.isEmpty()) {
+                validate(elementType, elementNode, constraints);
+            }
         }
 
         /**
@@ -269,7 +274,7 @@ public class FHIRValidator {
          */
         private void validate(FHIRPathResourceNode resourceNode) {
             Class<?> resourceType = resourceNode.resource().getClass();
-            validate(resourceType, resourceNode, ModelSupport.getConstraints(resourceType));
+            validate(resourceType, resourceNode, CompiledConstraints.getApplicableConstraints(resourceType));
             if (includeResourceAssertedProfiles) {
                 List<String> resourceAssertedProfiles = ProfileSupport.getResourceAssertedProfiles(resourceNode.resource());
                 validateProfileReferences(resourceNode, resourceAssertedProfiles, true, issues);
@@ -291,6 +296,16 @@ public class FHIRValidator {
                     }
                     continue;
                 }
+                CompiledConstraint compiledConstraint = CompiledConstraints.getCompiledConstraint(constraint);
+                if (compiledConstraint != null) {
+                    Result result = compiledConstraint.evaluate(getTarget(node));
+                    if (result != Result.UNDECIDED) {
+                        if (result == Result.VIOLATED) {
+                            issues.add(buildInvariantIssue(constraint, node));
+                        }
+                        continue;
+                    }
+                }
                 evaluationContext.setConstraint(constraint);
                 validate(type, node, constraint);
                 evaluationContext.unsetConstraint();
@@ -314,8 +329,6 @@ public class FHIRValidator {
                     evaluationContext.clearIssues();
                 }
 
-                IssueSeverity severity = Constraint.LEVEL_WARNING.equals(constraint.level()) ? IssueSeverity.WARNING : IssueSeverity.ERROR;
-
                 for (FHIRPathNode contextNode : initialContext) {
                     evaluationContext.setExternalConstant("rootResource", getRootResourceNode(contextNode));
                     evaluationContext.setExternalConstant("resource", getResourceNode(contextNode));
@@ -325,14 +338,7 @@ public class FHIRValidator {
 
                     if (evaluatesToBoolean(result) && isFalse(result)) {
                         // constraint validation failed
-                        issues.add(Issue.builder()
-                            .severity(severity)
-                            .code(IssueType.INVARIANT)
-                            .details(CodeableConcept.builder()
-                                .text(string(constraint.id() + ": " + constraint.description()))
-                                .build())
-                            .expression(string(contextNode.path()))
-                            .build());
+                        issues.add(buildInvariantIssue(constraint, contextNode));
                     }
 
                     if (log.isLoggable(Level.FINE)) {
@@ -346,6 +352,28 @@ public class FHIRValidator {
             }
         }
 
+        /**
+         * Build the issue reported when the passed node does not satisfy the passed constraint.
+         */
+        private Issue buildInvariantIssue(Constraint constraint, FHIRPathNode node) {
+            IssueSeverity severity = Constraint.LEVEL_WARNING.equals(constraint.level()) ? IssueSeverity.WARNING : IssueSeverity.ERROR;
+            return Issue.builder()
+                .severity(severity)
+                .code(IssueType.INVARIANT)
+                .details(CodeableConcept.builder()
+                    .text(string(constraint.id() + ": " + constraint.description()))
+                    .build())
+                .expression(string(node.path()))
+                .build();
+        }
+
+        /**
+         * Get the model object (element or resource) of the passed node.
+         */
+        private Object getTarget(FHIRPathNode node) {
+            return node.isResourceNode() ? node.asResourceNode().resource() : node.asElementNode().element();
+        }
+
         /**
          * Get the resource node to use as a value for the %resource external constant.
          *
@@ -0,0 +1,223 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.validation.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ibm.fhir.model.annotation.Constraint;
+import com.ibm.fhir.model.resource.DomainResource;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Attachment;
+import com.ibm.fhir.model.type.ContactPoint;
+import com.ibm.fhir.model.type.Expression;
+import com.ibm.fhir.model.type.Extension;
+import com.ibm.fhir.model.type.Meta;
+import com.ibm.fhir.model.type.Period;
+import com.ibm.fhir.model.type.Quantity;
+import com.ibm.fhir.model.type.Range;
+import com.ibm.fhir.model.type.Reference;
+import com.ibm.fhir.model.util.ModelSupport;
+
+/**
+ * Java implementations of frequently evaluated base specification constraints, used by the validator in place of
+ * evaluating their FHIRPath expressions.
+ * <br>
+ * A compiled constraint may decide only the common cases and leave the rest to the FHIRPath evaluator, e.g. dom-3
+ * is decided without FHIRPath only when the resource has no contained resources. A compiled constraint is used only
+ * if both the id and the expression of the constraint match those it was written for, so that a profile constraint
+ * reusing the id of a base constraint is still evaluated through FHIRPath.
+ */
+public final class CompiledConstraints {
+    /**
+     * The outcome of evaluating a compiled constraint
+     */
+    public enum Result {
+        SATISFIED,
+        VIOLATED,
+        /**
+         * The compiled constraint can't decide this case; its FHIRPath expression must be evaluated
+         */
+        UNDECIDED;
+
+        private static Result of(boolean satisfied) {
+            return satisfied ? SATISFIED : VIOLATED;
+        }
+    }
+
+    /**
+     * A Java implementation of a constraint
+     */
+    @FunctionalInterface
+    public interface CompiledConstraint {
+        /**
+         * @param target
+         *     the element or resource the constraint applies to
+         * @return whether the target satisfies the constraint, or {@link Result#UNDECIDED}
+         */
+        Result evaluate(Object target);
+    }
+
+    private static final Map<String, Entry> COMPILED_CONSTRAINTS = buildCompiledConstraints();
+
+    // The constraints of each model class that aren't already enforced by the model
+    private static final Map<Class<?>, List<Constraint>> APPLICABLE_CONSTRAINTS = new ConcurrentHashMap<>();
+
+    private CompiledConstraints() { }
+
+    /**
+     * @param constraint
+     * @return the compiled form of the constraint, or null if the constraint must be evaluated through FHIRPath
+     */
+    public static CompiledConstraint getCompiledConstraint(Constraint constraint) {
+        Entry entry = COMPILED_CONSTRAINTS.get(constraint.id());
+        if (entry != null && entry.expression.equals(constraint.expression())
+                && Constraint.LOCATION_BASE.equals(constraint.location())) {
+            return entry.compiledConstraint;
+        }
+        return null;
+    }
+
+    /**
+     * @param modelClass
+     * @return the unmodifiable list of constraints of the model class which aren't model-checked, in the order
+     *     returned by {@link ModelSupport#getConstraints(Class)}
+     */
+    public static List<Constraint> getApplicableConstraints(Class<?> modelClass) {
+        return APPLICABLE_CONSTRAINTS.computeIfAbsent(modelClass, CompiledConstraints::computeApplicableConstraints);
+    }
+
+    private static List<Constraint> computeApplicableConstraints(Class<?> modelClass) {
+        List<Constraint> constraints = new ArrayList<>();
+        for (Constraint constraint : ModelSupport.getConstraints(modelClass)) {
+            if (!constraint.modelChecked()) {
+                constraints.add(constraint);
+            }
+        }
+        return constraints.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(constraints);
+    }
+
+    private static Map<String, Entry> buildCompiledConstraints() {
+        Map<String, Entry> map = new HashMap<>();
+
+        // ele-1 is model-checked, so it isn't listed here
+
+        add(map, "ext-1", Extension.class, "extension.exists() != value.exists()", target -> {
+            Extension extension = (Extension) target;
+            return Result.of(!extension.getExtension().isEmpty() != (extension.getValue() != null));
+        });
+
+        add(map, "dom-2", DomainResource.class, "contained.contained.empty()", target -> {
+            for (Resource contained : ((DomainResource) target).getContained()) {
+                if (contained instanceof DomainResource && !((DomainResource) contained).getContained().isEmpty()) {
+                    return Result.VIOLATED;
+                }
+            }
+            return Result.SATISFIED;
+        });
+
+        add(map, "dom-3", DomainResource.class, "contained.where((('#'+id in (%resource.descendants().reference | %resource.descendants().as(canonical) | %resource.descendants().as(uri) | %resource.descendants().as(url))) or descendants().where(reference = '#').exists() or descendants().where(as(canonical) = '#').exists() or descendants().where(as(canonical) = '#').exists()).not()).trace('unmatched', id).empty()", target -> {
+            // Searching the references is left to FHIRPath
+            return ((DomainResource) target).getContained().isEmpty() ? Result.SATISFIED : Result.UNDECIDED;
+        });
+
+        add(map, "dom-4", DomainResource.class, "contained.meta.versionId.empty() and contained.meta.lastUpdated.empty()", target -> {
+            for (Resource contained : ((DomainResource) target).getContained()) {
+                Meta meta = contained.getMeta();
+                if (meta != null && (meta.getVersionId() != null || meta.getLastUpdated() != null)) {
+                    return Result.VIOLATED;
+                }
+            }
+            return Result.SATISFIED;
+        });
+
+        add(map, "dom-5", DomainResource.class, "contained.meta.security.empty()", target -> {
+            for (Resource contained : ((DomainResource) target).getContained()) {
+                Meta meta = contained.getMeta();
+                if (meta != null && !meta.getSecurity().isEmpty()) {
+                    return Result.VIOLATED;
+                }
+            }
+            return Result.SATISFIED;
+        });
+
+        add(map, "dom-6", DomainResource.class, "text.`div`.exists()", target -> {
+            DomainResource domainResource = (DomainResource) target;
+            return Result.of(domainResource.getText() != null && domainResource.getText().getDiv() != null);
+        });
+
+        add(map, "ref-1", Reference.class, "reference.startsWith('#').not() or (reference.substring(1).trace('url') in %rootResource.contained.id.trace('ids'))", target -> {
+            // Looking up local references is left to FHIRPath
+            com.ibm.fhir.model.type.String reference = ((Reference) target).getReference();
+            if (reference == null || (reference.getValue() != null && !reference.getValue().startsWith("#"))) {
+                return Result.SATISFIED;
+            }
+            return Result.UNDECIDED;
+        });
+
+        add(map, "att-1", Attachment.class, "data.empty() or contentType.exists()", target -> {
+            Attachment attachment = (Attachment) target;
+            return Result.of(attachment.getData() == null || attachment.getContentType() != null);
+        });
+
+        add(map, "cpt-2", ContactPoint.class, "value.empty() or system.exists()", target -> {
+            ContactPoint contactPoint = (ContactPoint) target;
+            return Result.of(contactPoint.getValue() == null || contactPoint.getSystem() != null);
+        });
+
+        add(map, "exp-1", Expression.class, "expression.exists() or reference.exists()", target -> {
+            Expression expression = (Expression) target;
+            return Result.of(expression.getExpression() != null || expression.getReference() != null);
+        });
+
+        add(map, "qty-3", Quantity.class, "code.empty() or system.exists()", target -> {
+            Quantity quantity = (Quantity) target;
+            return Result.of(quantity.getCode() == null || quantity.getSystem() != null);
+        });
+
+        add(map, "per-1", Period.class, "start.hasValue().not() or end.hasValue().not() or (start <= end)", target -> {
+            // Comparing the dates is left to FHIRPath
+            Period period = (Period) target;
+            if (period.getStart() == null || period.getStart().getValue() == null
+                    || period.getEnd() == null || period.getEnd().getValue() == null) {
+                return Result.SATISFIED;
+            }
+            return Result.UNDECIDED;
+        });
+
+        add(map, "rng-2", Range.class, "low.empty() or high.empty() or (low <= high)", target -> {
+            // Comparing the quantities is left to FHIRPath
+            Range range = (Range) target;
+            return (range.getLow() == null || range.getHigh() == null) ? Result.SATISFIED : Result.UNDECIDED;
+        });
+
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Registers a compiled constraint which is only applied to instances of the passed target type
+     */
+    private static void add(Map<String, Entry> map, String id, Class<?> targetType, String expression,
+            CompiledConstraint compiledConstraint) {
+        map.put(id, new Entry(expression,
+                target -> targetType.isInstance(target) ? compiledConstraint.evaluate(target) : Result.UNDECIDED));
+    }
+
+    private static class Entry {
+        private final String expression;
+        private final CompiledConstraint compiledConstraint;
+
+        private Entry(String expression, CompiledConstraint compiledConstraint) {
+            this.expression = expression;
+            this.compiledConstraint = compiledConstraint;
+        }
+    }
+}
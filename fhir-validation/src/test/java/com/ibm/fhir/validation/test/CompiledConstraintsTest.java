@@ -0,0 +1,167 @@
+/*
+ * (C) Copyright IBM Corp. 2020
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.validation.test;
+
+import static com.ibm.fhir.path.util.FHIRPathUtil.evaluatesToBoolean;
+import static com.ibm.fhir.path.util.FHIRPathUtil.isFalse;
+import static com.ibm.fhir.path.util.FHIRPathUtil.singleton;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.annotation.Constraint;
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.resource.OperationOutcome.Issue;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Attachment;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.CodeableConcept;
+import com.ibm.fhir.model.type.ContactPoint;
+import com.ibm.fhir.model.type.Extension;
+import com.ibm.fhir.model.type.Id;
+import com.ibm.fhir.model.type.Meta;
+import com.ibm.fhir.model.type.Narrative;
+import com.ibm.fhir.model.type.Quantity;
+import com.ibm.fhir.model.type.Reference;
+import com.ibm.fhir.model.type.String;
+import com.ibm.fhir.model.type.Xhtml;
+import com.ibm.fhir.model.type.code.NarrativeStatus;
+import com.ibm.fhir.model.type.code.ObservationStatus;
+import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.path.FHIRPathNode;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
+import com.ibm.fhir.validation.FHIRValidator;
+import com.ibm.fhir.validation.util.CompiledConstraints;
+import com.ibm.fhir.validation.util.CompiledConstraints.CompiledConstraint;
+import com.ibm.fhir.validation.util.CompiledConstraints.Result;
+
+public class CompiledConstraintsTest {
+    @Test
+    public void testCompiledConstraintsMatchModel() {
+        Set<java.lang.String> compiled = new HashSet<>();
+        for (Class<?> modelClass : ModelSupport.getModelClasses()) {
+            for (Constraint constraint : CompiledConstraints.getApplicableConstraints(modelClass)) {
+                if (CompiledConstraints.getCompiledConstraint(constraint) != null) {
+                    compiled.add(constraint.id());
+                }
+            }
+        }
+        // each compiled constraint must match the id and expression of a constraint in the model
+        assertEquals(compiled, new HashSet<>(Arrays.asList("ext-1", "dom-2", "dom-3", "dom-4", "dom-5", "dom-6",
+                "ref-1", "att-1", "cpt-2", "exp-1", "qty-3", "per-1", "rng-2")));
+    }
+
+    @Test
+    public void testApplicableConstraints() {
+        // ele-1 is model-checked
+        assertTrue(CompiledConstraints.getApplicableConstraints(String.class).isEmpty());
+        assertEquals(CompiledConstraints.getApplicableConstraints(Extension.class).size(), 1);
+    }
+
+    @Test
+    public void testAgreesWithFHIRPath() throws Exception {
+        for (Resource resource : Arrays.asList(buildInvalidPatient(), buildValidObservation())) {
+            EvaluationContext evaluationContext = new EvaluationContext(resource);
+            evaluationContext.setExternalConstant("rootResource", evaluationContext.getTree().getRoot());
+            evaluationContext.setExternalConstant("resource", evaluationContext.getTree().getRoot());
+            checkAgreesWithFHIRPath(evaluationContext, evaluationContext.getTree().getRoot());
+        }
+    }
+
+    @Test
+    public void testViolationsReported() throws Exception {
+        List<Issue> issues = FHIRValidator.validator().validate(buildInvalidPatient());
+        Set<java.lang.String> ids = issues.stream()
+                .map(issue -> issue.getDetails().getText().getValue().split(":")[0])
+                .collect(Collectors.toSet());
+        // dom-3 is reported by the FHIRPath fallback, because the nested resource isn't referenced
+        assertEquals(ids, new HashSet<>(Arrays.asList("ext-1", "dom-2", "dom-3", "dom-4", "dom-5", "dom-6", "cpt-2",
+                "att-1", "qty-3")));
+
+        assertTrue(FHIRValidator.validator().validate(buildValidObservation()).isEmpty());
+    }
+
+    private void checkAgreesWithFHIRPath(EvaluationContext evaluationContext, FHIRPathNode node) throws Exception {
+        Object target = node.isResourceNode() ? node.asResourceNode().resource() :
+            node.isElementNode() ? node.asElementNode().element() : null;
+        if (target != null) {
+            for (Constraint constraint : CompiledConstraints.getApplicableConstraints(target.getClass())) {
+                CompiledConstraint compiledConstraint = CompiledConstraints.getCompiledConstraint(constraint);
+                if (compiledConstraint == null) {
+                    continue;
+                }
+                Result result = compiledConstraint.evaluate(target);
+                if (result == Result.UNDECIDED) {
+                    continue;
+                }
+                Collection<FHIRPathNode> expected = FHIRPathEvaluator.evaluator().evaluate(evaluationContext,
+                        constraint.expression(), singleton(node));
+                assertTrue(evaluatesToBoolean(expected));
+                assertEquals(result == Result.VIOLATED, isFalse(expected), constraint.id() + " at " + node.path());
+            }
+        }
+        for (FHIRPathNode child : node.children()) {
+            checkAgreesWithFHIRPath(evaluationContext, child);
+        }
+    }
+
+    private Patient buildInvalidPatient() {
+        Patient nested = Patient.builder().id("nested").build();
+        Patient contained = Patient.builder()
+                .id("contained")
+                .meta(Meta.builder()
+                    .versionId(Id.of("1"))
+                    .security(com.ibm.fhir.model.type.Coding.builder().code(Code.of("R")).build())
+                    .build())
+                .contained(nested)
+                .build();
+        return Patient.builder()
+                .contained(contained)
+                .extension(Extension.builder()
+                    .url("http://example.com/extension")
+                    .value(String.of("value"))
+                    .extension(Extension.builder().url("nested").value(String.of("nested")).build())
+                    .build())
+                .telecom(ContactPoint.builder().value(String.of("555-1234")).build())
+                .photo(Attachment.builder()
+                    .data(com.ibm.fhir.model.type.Base64Binary.builder().value("hello".getBytes()).build())
+                    .build())
+                .generalPractitioner(Reference.builder().reference(String.of("#contained")).build())
+                .extension(Extension.builder()
+                    .url("http://example.com/quantity")
+                    .value(Quantity.builder().code(Code.of("kg")).build())
+                    .build())
+                .build();
+    }
+
+    private Observation buildValidObservation() {
+        return Observation.builder()
+                .text(Narrative.builder()
+                    .status(NarrativeStatus.GENERATED)
+                    .div(Xhtml.of("<div xmlns=\"http://www.w3.org/1999/xhtml\">observation</div>"))
+                    .build())
+                .status(ObservationStatus.FINAL)
+                .code(CodeableConcept.builder().text(String.of("code")).build())
+                .subject(Reference.builder().reference(String.of("Patient/1")).build())
+                .value(Quantity.builder()
+                    .value(com.ibm.fhir.model.type.Decimal.of(70))
+                    .system(com.ibm.fhir.model.type.Uri.of("http://unitsofmeasure.org"))
+                    .code(Code.of("kg"))
+                    .build())
+                .build();
+    }
+}